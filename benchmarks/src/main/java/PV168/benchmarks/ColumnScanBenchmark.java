@@ -0,0 +1,71 @@
+package PV168.benchmarks;
+
+import PV168.Lease;
+import PV168.LeaseColumnLoader;
+import PV168.LeaseColumns;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Sum of prices of the leases overlapping a month and costing at least a
+ * minimum: scanning {@link LeaseColumns} against filtering hydrated leases,
+ * and loading the columns.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ColumnScanBenchmark {
+
+    private static final LocalDate FROM = LocalDate.of(2010, 3, 1);
+    private static final LocalDate TO = LocalDate.of(2010, 3, 31);
+    private static final long MIN_CENTS = 50000;
+
+    private LeaseColumnLoader loader;
+    private LeaseColumns columns;
+
+    @Setup(Level.Trial)
+    public void setUp(FleetState fleet) {
+        loader = new LeaseColumnLoader(fleet.getDataSource());
+        columns = loader.load();
+    }
+
+    @Benchmark
+    public long scanColumns() {
+        return columns.scan().overlapping(FROM, TO).priceBetween(MIN_CENTS, Long.MAX_VALUE).sumPriceCents();
+    }
+
+    @Benchmark
+    public BigDecimal filterLeases(FleetState fleet) {
+        BigDecimal min = BigDecimal.valueOf(MIN_CENTS, 2);
+        try (Stream<Lease> leases = fleet.leaseManager.streamAllLeases()) {
+            return leases
+                    .filter(lease -> !lease.getDateFrom().isAfter(TO) && !lease.getDateTo().isBefore(FROM))
+                    .map(Lease::getPrice)
+                    .filter(price -> price.compareTo(min) >= 0)
+                    .reduce(BigDecimal.ZERO, BigDecimal::add);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public LeaseColumns loadColumns() {
+        return loader.load();
+    }
+}
@@ -0,0 +1,189 @@
+package PV168.benchmarks;
+
+import PV168.CarManagerImpl;
+import PV168.CustomerManagerImpl;
+import PV168.DailyStats;
+import PV168.LeaseManagerImpl;
+import PV168.SchemaMigrator;
+import org.apache.commons.dbcp.BasicDataSource;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedded in-memory Derby database with the production schema, seeded with a
+ * deterministic fleet of the given number of leases. Every trial starts with a
+ * new database, so results of different commits are comparable.
+ */
+@State(Scope.Benchmark)
+public class FleetState {
+
+    private static final String[] MODELS = {
+            "Audi A3", "BMW X6", "VW Passat", "Skoda Fabia", "Skoda Octavia", "Ford Focus",
+            "Toyota Yaris", "Renault Clio", "Peugeot 308", "Opel Astra", "Kia Ceed", "Hyundai i30"
+    };
+
+    /**
+     * First day of the leases created by benchmarks, far after all seeded leases.
+     */
+    private static final LocalDate FREE_DATES = LocalDate.of(2200, 1, 1);
+
+    @Param({"1000", "100000", "1000000"})
+    public int leases;
+
+    public int cars;
+    public int customers;
+
+    private String url;
+    private BasicDataSource dataSource;
+    private final AtomicLong freeDateCounter = new AtomicLong();
+
+    public CarManagerImpl carManager;
+    public CustomerManagerImpl customerManager;
+    public LeaseManagerImpl leaseManager;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        cars = Math.max(10, leases / 50);
+        customers = Math.max(10, leases / 20);
+        url = "jdbc:derby:memory:fleet-bench-" + leases + "-" + System.nanoTime();
+
+        dataSource = new BasicDataSource();
+        dataSource.setDriverClassName("org.apache.derby.jdbc.EmbeddedDriver");
+        dataSource.setUrl(url + ";create=true");
+        dataSource.setMaxActive(64);
+        dataSource.setMaxIdle(64);
+
+        // indexes and daily statistics are created after seeding, which is faster than maintaining them
+        SchemaMigrator migrator = new SchemaMigrator(dataSource);
+        migrator.migrate(1);
+        seed(new Random(42));
+        if (createIndexes()) {
+            migrator.migrate();
+            new DailyStats(dataSource).rebuild();
+        }
+
+        carManager = new CarManagerImpl(dataSource);
+        customerManager = new CustomerManagerImpl(dataSource);
+        leaseManager = new LeaseManagerImpl(dataSource);
+        leaseManager.loadLeaseIndex();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        dataSource.close();
+        try {
+            DriverManager.getConnection(url + ";drop=true").close();
+        } catch (SQLException ex) {
+            // Derby reports a successful drop by SQL state 08006
+            if (!"08006".equals(ex.getSQLState())) {
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * @return whether the schema is migrated to the latest version, with indexes, after seeding
+     */
+    protected boolean createIndexes() {
+        return true;
+    }
+
+    public BasicDataSource getDataSource() {
+        return dataSource;
+    }
+
+    public long randomCarId() {
+        return 1 + ThreadLocalRandom.current().nextInt(cars);
+    }
+
+    public long randomCustomerId() {
+        return 1 + ThreadLocalRandom.current().nextInt(customers);
+    }
+
+    public long randomLeaseId() {
+        return 1 + ThreadLocalRandom.current().nextInt(leases);
+    }
+
+    public String licensePlate(long carId) {
+        return String.format("BA%07d", carId);
+    }
+
+    /**
+     * @return first day of a week which no lease uses yet
+     */
+    public LocalDate nextFreeWeek() {
+        return FREE_DATES.plusWeeks(freeDateCounter.getAndIncrement());
+    }
+
+    private void seed(Random random) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement st = conn.prepareStatement(
+                    "INSERT INTO CARS (LICENSEPLATE, MODEL, PRICE, NUMBEROFKM) VALUES (?,?,?,?)")) {
+                for (int i = 1; i <= cars; i++) {
+                    st.setString(1, licensePlate(i));
+                    st.setString(2, MODELS[random.nextInt(MODELS.length)]);
+                    st.setBigDecimal(3, BigDecimal.valueOf(20 + random.nextInt(180)));
+                    st.setBigDecimal(4, BigDecimal.valueOf(random.nextInt(300000)));
+                    addToBatch(st, conn, i);
+                }
+                st.executeBatch();
+            }
+            try (PreparedStatement st = conn.prepareStatement(
+                    "INSERT INTO CUSTOMERS (NAME, ADDRESS, PHONENUMBER) VALUES (?,?,?)")) {
+                for (int i = 1; i <= customers; i++) {
+                    st.setString(1, "Customer " + i);
+                    st.setString(2, "Street " + random.nextInt(1000) + ", Brno");
+                    st.setString(3, String.format("+420%09d", i));
+                    addToBatch(st, conn, i);
+                }
+                st.executeBatch();
+            }
+            LocalDate[] nextFree = new LocalDate[cars];
+            for (int i = 0; i < cars; i++) {
+                nextFree[i] = LocalDate.of(2010, 1, 1).plusDays(random.nextInt(30));
+            }
+            try (PreparedStatement st = conn.prepareStatement(
+                    "INSERT INTO LEASES (IDCUSTOMER, IDCAR, DATEFROM, DATETO, PRICE) VALUES (?,?,?,?,?)")) {
+                for (int i = 1; i <= leases; i++) {
+                    int car = i % cars;
+                    int days = 1 + random.nextInt(7);
+                    LocalDate from = nextFree[car];
+                    LocalDate to = from.plusDays(days - 1);
+                    nextFree[car] = to.plusDays(1 + random.nextInt(4));
+                    st.setLong(1, 1 + random.nextInt(customers));
+                    st.setLong(2, car + 1);
+                    st.setDate(3, Date.valueOf(from));
+                    st.setDate(4, Date.valueOf(to));
+                    st.setBigDecimal(5, BigDecimal.valueOf(days * (20 + random.nextInt(180)), 0).setScale(2));
+                    addToBatch(st, conn, i);
+                }
+                st.executeBatch();
+            }
+            conn.commit();
+        }
+    }
+
+    private static void addToBatch(PreparedStatement st, Connection conn, int row) throws SQLException {
+        st.addBatch();
+        if (row % 10000 == 0) {
+            st.executeBatch();
+            conn.commit();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package PV168.benchmarks;
+
+import PV168.Car;
+import PV168.CarManager;
+import PV168.Customer;
+import PV168.CustomerManager;
+import PV168.InMemoryFleetStore;
+import PV168.Lease;
+import PV168.LeaseManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The lookups of {@link LookupBenchmark} on an {@link InMemoryFleetStore} holding
+ * the seeded fleet, as the baseline of the JDBC managers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InMemoryLookupBenchmark {
+
+    private static final int PAGE_SIZE = 10000;
+
+    private CarManager carManager;
+    private CustomerManager customerManager;
+    private LeaseManager leaseManager;
+
+    /**
+     * Copies the fleet in the order of ids, so the ids of the store match those
+     * of the database.
+     */
+    @Setup(Level.Trial)
+    public void setUp(FleetState fleet) {
+        InMemoryFleetStore store = new InMemoryFleetStore();
+        carManager = store.getCarManager();
+        customerManager = store.getCustomerManager();
+        leaseManager = store.getLeaseManager();
+
+        Map<Long, Car> cars = new HashMap<>();
+        for (Car car : fleet.carManager.getAllCars()) {
+            Car copy = new Car(car.getLicensePlate(), car.getModel(), car.getPrice(), car.getNumberOfKM());
+            carManager.addCar(copy);
+            cars.put(car.getId(), copy);
+        }
+        Map<Long, Customer> customers = new HashMap<>();
+        for (Customer customer : fleet.customerManager.getAllCustomers()) {
+            Customer copy = new Customer(customer.getName(), customer.getAddress(), customer.getPhoneNumber());
+            customerManager.createCustomer(copy);
+            customers.put(customer.getId(), copy);
+        }
+        List<Lease> page = fleet.leaseManager.getLeasesAfter(null, PAGE_SIZE);
+        while (!page.isEmpty()) {
+            for (Lease lease : page) {
+                leaseManager.createLease(new Lease(null, customers.get(lease.getCustomer().getId()),
+                        cars.get(lease.getCar().getId()), lease.getDateFrom(), lease.getPrice(), lease.getDateTo()));
+            }
+            page = fleet.leaseManager.getLeasesAfter(page.get(page.size() - 1).getId(), PAGE_SIZE);
+        }
+    }
+
+    @Benchmark
+    public Car getCarById(FleetState fleet) {
+        return carManager.getCarById(fleet.randomCarId());
+    }
+
+    @Benchmark
+    public Car getCarByLicensePlate(FleetState fleet) {
+        return carManager.getCarByLicensePlate(fleet.licensePlate(fleet.randomCarId()));
+    }
+
+    @Benchmark
+    public Customer findCustomerById(FleetState fleet) {
+        return customerManager.findCustomerById(fleet.randomCustomerId());
+    }
+
+    @Benchmark
+    public Lease getLeaseById(FleetState fleet) {
+        return leaseManager.getLeaseByID(fleet.randomLeaseId());
+    }
+}
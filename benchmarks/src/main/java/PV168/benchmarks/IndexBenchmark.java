@@ -0,0 +1,75 @@
+package PV168.benchmarks;
+
+import PV168.Car;
+import PV168.Customer;
+import PV168.Lease;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups served by the secondary indexes, with and without them. Meant to be
+ * run on the largest fleet: {@code -p leases=1000000}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Fleet extends FleetState {
+
+        @Param({"true", "false"})
+        public boolean indexed;
+
+        @Override
+        protected boolean createIndexes() {
+            return indexed;
+        }
+    }
+
+    @Benchmark
+    public Car getCarByLicensePlate(Fleet fleet) {
+        return fleet.carManager.getCarByLicensePlate(fleet.licensePlate(fleet.randomCarId()));
+    }
+
+    @Benchmark
+    public List<Lease> findLeasesForCar(Fleet fleet) {
+        Car car = new Car();
+        car.setId(fleet.randomCarId());
+        return fleet.leaseManager.findLeasesForCar(car);
+    }
+
+    @Benchmark
+    public List<Lease> findLeasesForCustomer(Fleet fleet) {
+        Customer customer = new Customer();
+        customer.setId(fleet.randomCustomerId());
+        return fleet.leaseManager.findLeasesForCustomer(customer);
+    }
+
+    @Benchmark
+    public List<Lease> getAllLeasesByEndDate(Fleet fleet) {
+        LocalDate endDate = LocalDate.of(2010, 1, 1).plusDays(ThreadLocalRandom.current().nextInt(365));
+        return fleet.leaseManager.getAllLeasesByEndDate(endDate);
+    }
+
+    @Benchmark
+    public boolean isCarAvailable(Fleet fleet) {
+        LocalDate from = LocalDate.of(2010, 1, 1).plusDays(ThreadLocalRandom.current().nextInt(365));
+        return fleet.carManager.isCarAvailable(fleet.randomCarId(), from, from.plusDays(7));
+    }
+}
@@ -0,0 +1,63 @@
+package PV168.benchmarks;
+
+import PV168.Car;
+import PV168.Customer;
+import PV168.Lease;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single entity lookups by key.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LookupBenchmark {
+
+    /**
+     * Size of the car and customer caches, zero measures the database path.
+     */
+    @Param({"0", "1000"})
+    public int cacheSize;
+
+    @Setup(Level.Trial)
+    public void setUp(FleetState fleet) {
+        fleet.carManager.configureCache(cacheSize, 60, TimeUnit.SECONDS);
+        fleet.customerManager.configureCache(cacheSize, 60, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public Car getCarById(FleetState fleet) {
+        return fleet.carManager.getCarById(fleet.randomCarId());
+    }
+
+    @Benchmark
+    public Car getCarByLicensePlate(FleetState fleet) {
+        return fleet.carManager.getCarByLicensePlate(fleet.licensePlate(fleet.randomCarId()));
+    }
+
+    @Benchmark
+    public Customer findCustomerById(FleetState fleet) {
+        return fleet.customerManager.findCustomerById(fleet.randomCustomerId());
+    }
+
+    @Benchmark
+    public Lease getLeaseById(FleetState fleet) {
+        return fleet.leaseManager.getLeaseByID(fleet.randomLeaseId());
+    }
+}
@@ -0,0 +1,54 @@
+package PV168.benchmarks;
+
+import PV168.Car;
+import PV168.Lease;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrent mix of lookups, lease searches and bookings sharing one pool,
+ * roughly the shape of the booking front end: 6 readers, 1 searcher and 1 writer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MixedWorkloadBenchmark {
+
+    @Benchmark
+    @Group("booking")
+    @GroupThreads(6)
+    public Lease lookup(FleetState fleet) {
+        return fleet.leaseManager.getLeaseByID(fleet.randomLeaseId());
+    }
+
+    @Benchmark
+    @Group("booking")
+    @GroupThreads(1)
+    public List<Lease> search(FleetState fleet) {
+        Car car = new Car();
+        car.setId(fleet.randomCarId());
+        return fleet.leaseManager.findLeasesForCar(car);
+    }
+
+    @Benchmark
+    @Group("booking")
+    @GroupThreads(1)
+    public Lease book(FleetState fleet) {
+        Lease lease = MutationBenchmark.newLease(fleet);
+        fleet.leaseManager.createLease(lease);
+        fleet.leaseManager.deleteLease(lease);
+        return lease;
+    }
+}
@@ -0,0 +1,75 @@
+package PV168.benchmarks;
+
+import PV168.Car;
+import PV168.Customer;
+import PV168.Lease;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Create, update and delete throughput. Every created entity is deleted in the
+ * same invocation, so the size of the tables stays constant during the trial.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MutationBenchmark {
+
+    @Benchmark
+    public Lease createAndDeleteLease(FleetState fleet) {
+        Lease lease = newLease(fleet);
+        fleet.leaseManager.createLease(lease);
+        fleet.leaseManager.deleteLease(lease);
+        return lease;
+    }
+
+    @Benchmark
+    public Lease updateLease(FleetState fleet) {
+        Lease lease = fleet.leaseManager.getLeaseByID(fleet.randomLeaseId());
+        lease.setPrice(lease.getPrice().add(BigDecimal.ONE));
+        fleet.leaseManager.updateLease(lease);
+        return lease;
+    }
+
+    @Benchmark
+    public Car addAndDeleteCar(FleetState fleet) {
+        Car car = new Car("BENCH " + System.nanoTime(), "Skoda Fabia", new BigDecimal(50), new BigDecimal(1000));
+        fleet.carManager.addCar(car);
+        fleet.carManager.deleteCar(car);
+        return car;
+    }
+
+    @Benchmark
+    public Car editCar(FleetState fleet) {
+        Car car = fleet.carManager.getCarById(fleet.randomCarId());
+        car.setNumberOfKM(car.getNumberOfKM().add(BigDecimal.ONE));
+        fleet.carManager.editCar(car);
+        return car;
+    }
+
+    static Lease newLease(FleetState fleet) {
+        Car car = new Car();
+        car.setId(fleet.randomCarId());
+        Customer customer = new Customer();
+        customer.setId(fleet.randomCustomerId());
+        LocalDate from = fleet.nextFreeWeek();
+        Lease lease = new Lease();
+        lease.setCar(car);
+        lease.setCustomer(customer);
+        lease.setDateFrom(from);
+        lease.setDateTo(from.plusDays(3));
+        lease.setPrice(new BigDecimal(200));
+        return lease;
+    }
+}
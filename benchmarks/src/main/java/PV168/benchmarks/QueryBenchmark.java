@@ -0,0 +1,74 @@
+package PV168.benchmarks;
+
+import PV168.Lease;
+import PV168.LeaseManagerImpl;
+import PV168.LeaseQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Leases of a model overlapping a month and costing at least an amount:
+ * {@link LeaseManagerImpl#findLeases} on a pool of the given parallelism against
+ * filtering all leases on one thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class QueryBenchmark {
+
+    private static final LeaseQuery QUERY = LeaseQuery.forModel("Skoda Octavia")
+            .and(LeaseQuery.overlapping(LocalDate.of(2010, 3, 1), LocalDate.of(2010, 3, 31)))
+            .and(LeaseQuery.priceBetween(new BigDecimal("300.00"), null));
+
+    @Param({"1", "4", "8"})
+    public int parallelism;
+
+    private ForkJoinPool pool;
+    private LeaseManagerImpl manager;
+
+    @Setup(Level.Trial)
+    public void setUp(FleetState fleet) {
+        pool = new ForkJoinPool(parallelism);
+        manager = new LeaseManagerImpl(fleet.getDataSource());
+        manager.setQueryPool(pool);
+        manager.setQueryPartitionSize(1000);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public List<Lease> findLeases() {
+        return manager.findLeases(QUERY);
+    }
+
+    @Benchmark
+    public List<Lease> filterAllLeases() {
+        return manager.getAllLeases().stream()
+                .filter(QUERY::test)
+                .collect(Collectors.toList());
+    }
+}
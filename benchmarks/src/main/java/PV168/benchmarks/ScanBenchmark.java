@@ -0,0 +1,63 @@
+package PV168.benchmarks;
+
+import PV168.Car;
+import PV168.Customer;
+import PV168.Lease;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queries returning many entities, including the lease hydration path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ScanBenchmark {
+
+    @Benchmark
+    public List<Car> getAllCars(FleetState fleet) {
+        return fleet.carManager.getAllCars();
+    }
+
+    @Benchmark
+    public List<Customer> getAllCustomers(FleetState fleet) {
+        return fleet.customerManager.getAllCustomers();
+    }
+
+    @Benchmark
+    public List<Lease> getAllLeases(FleetState fleet) {
+        return fleet.leaseManager.getAllLeases();
+    }
+
+    @Benchmark
+    public List<Lease> findLeasesForCar(FleetState fleet) {
+        Car car = new Car();
+        car.setId(fleet.randomCarId());
+        return fleet.leaseManager.findLeasesForCar(car);
+    }
+
+    @Benchmark
+    public List<Lease> findLeasesForCustomer(FleetState fleet) {
+        Customer customer = new Customer();
+        customer.setId(fleet.randomCustomerId());
+        return fleet.leaseManager.findLeasesForCustomer(customer);
+    }
+
+    @Benchmark
+    public List<Lease> getAllLeasesByEndDate(FleetState fleet) {
+        LocalDate endDate = LocalDate.of(2010, 1, 1).plusDays(ThreadLocalRandom.current().nextInt(365));
+        return fleet.leaseManager.getAllLeasesByEndDate(endDate);
+    }
+}
@@ -0,0 +1,62 @@
+package PV168.benchmarks;
+
+import PV168.FleetSnapshot;
+import PV168.InMemoryFleetStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start of an {@link InMemoryFleetStore} holding the seeded fleet: from a
+ * {@link FleetSnapshot} against reading everything from the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SnapshotBenchmark {
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp(FleetState fleet) throws IOException {
+        file = Files.createTempFile("fleet", ".snapshot");
+        Files.delete(file);
+        InMemoryFleetStore store = FleetSnapshot.warmUp(file, fleet.carManager, fleet.customerManager, fleet.leaseManager);
+        FleetSnapshot.write(store, file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public InMemoryFleetStore readSnapshot() throws IOException {
+        return FleetSnapshot.read(file);
+    }
+
+    @Benchmark
+    public InMemoryFleetStore readDatabase(FleetState fleet) {
+        InMemoryFleetStore store = new InMemoryFleetStore();
+        FleetSnapshot.catchUp(store, fleet.carManager, fleet.customerManager, fleet.leaseManager,
+                FleetSnapshot.DEFAULT_PAGE_SIZE);
+        return store;
+    }
+}
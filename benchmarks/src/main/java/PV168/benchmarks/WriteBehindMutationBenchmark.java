@@ -0,0 +1,76 @@
+package PV168.benchmarks;
+
+import PV168.Lease;
+import PV168.Migration;
+import PV168.SchemaMigrator;
+import PV168.WriteBehindLeaseManager;
+import PV168.WriteBehindSchema;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The lease mutations of {@link MutationBenchmark} acknowledged from the journal
+ * of a {@link WriteBehindLeaseManager}, on the fleet migrated with
+ * {@link WriteBehindSchema#migrations()}. Run with several threads ({@code -t}) to
+ * see mutations share the journal fsync.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBehindMutationBenchmark {
+
+    private Path journalFile;
+    private WriteBehindLeaseManager leaseManager;
+
+    @Setup(Level.Trial)
+    public void setUp(FleetState fleet) throws IOException {
+        List<Migration> migrations = new ArrayList<>(SchemaMigrator.defaultMigrations());
+        migrations.addAll(WriteBehindSchema.migrations());
+        new SchemaMigrator(fleet.getDataSource(), migrations).migrate();
+        journalFile = Files.createTempFile("leases", ".journal");
+        leaseManager = new WriteBehindLeaseManager(fleet.getDataSource(), journalFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        leaseManager.close();
+        Files.deleteIfExists(journalFile);
+    }
+
+    @Benchmark
+    public Lease createAndDeleteLease(FleetState fleet) {
+        Lease lease = MutationBenchmark.newLease(fleet);
+        leaseManager.createLease(lease);
+        leaseManager.deleteLease(lease);
+        return lease;
+    }
+
+    @Benchmark
+    public Lease updateLease(FleetState fleet) {
+        Lease lease = leaseManager.getLeaseByID(fleet.randomLeaseId());
+        lease.setPrice(lease.getPrice().add(BigDecimal.ONE));
+        leaseManager.updateLease(lease);
+        return lease;
+    }
+}
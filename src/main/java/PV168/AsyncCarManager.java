@@ -0,0 +1,40 @@
+package PV168;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking variant of {@link CarManager}. Every method returns at once with
+ * a future of the result of the corresponding {@link CarManager} method.
+ * Streaming is not offered, an open stream would hold its connection outside of
+ * the executor.
+ */
+public interface AsyncCarManager {
+
+    CompletableFuture<Void> addCar(Car car);
+
+    CompletableFuture<BulkInsertResult<Car>> addCars(Collection<Car> cars);
+
+    CompletableFuture<Void> deleteCar(Car car);
+
+    CompletableFuture<Integer> deleteAllCars();
+
+    CompletableFuture<Void> editCar(Car car);
+
+    CompletableFuture<List<Car>> getAllCars();
+
+    CompletableFuture<List<Car>> getCarsAfter(Long lastId, int limit);
+
+    CompletableFuture<Car> getCarById(Long id);
+
+    CompletableFuture<Car> getCarByLicensePlate(String licensePlate);
+
+    CompletableFuture<Boolean> getAvailabilityOfCar(Long id);
+
+    CompletableFuture<Boolean> isCarAvailable(Long id, LocalDate from, LocalDate to);
+
+    CompletableFuture<Set<Long>> getAvailableCars(Collection<Long> ids, LocalDate from, LocalDate to);
+}
@@ -0,0 +1,84 @@
+package PV168;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs the calls of a {@link CarManager} on a {@link ManagerExecutor}.
+ */
+public class AsyncCarManagerImpl implements AsyncCarManager {
+
+    private final CarManager manager;
+    private final ManagerExecutor executor;
+
+    public AsyncCarManagerImpl(CarManager manager, ManagerExecutor executor) {
+        if (manager == null || executor == null) {
+            throw new IllegalArgumentException("manager or executor is null");
+        }
+        this.manager = manager;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<Void> addCar(Car car) {
+        return executor.run(() -> manager.addCar(car));
+    }
+
+    @Override
+    public CompletableFuture<BulkInsertResult<Car>> addCars(Collection<Car> cars) {
+        return executor.submit(() -> manager.addCars(cars));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteCar(Car car) {
+        return executor.run(() -> manager.deleteCar(car));
+    }
+
+    @Override
+    public CompletableFuture<Integer> deleteAllCars() {
+        return executor.submit(manager::deleteAllCars);
+    }
+
+    @Override
+    public CompletableFuture<Void> editCar(Car car) {
+        return executor.run(() -> manager.editCar(car));
+    }
+
+    @Override
+    public CompletableFuture<List<Car>> getAllCars() {
+        return executor.submit(manager::getAllCars);
+    }
+
+    @Override
+    public CompletableFuture<List<Car>> getCarsAfter(Long lastId, int limit) {
+        return executor.submit(() -> manager.getCarsAfter(lastId, limit));
+    }
+
+    @Override
+    public CompletableFuture<Car> getCarById(Long id) {
+        return executor.submit(() -> manager.getCarById(id));
+    }
+
+    @Override
+    public CompletableFuture<Car> getCarByLicensePlate(String licensePlate) {
+        return executor.submit(() -> manager.getCarByLicensePlate(licensePlate));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> getAvailabilityOfCar(Long id) {
+        return executor.submit(() -> manager.getAvailabilityOfCar(id));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> isCarAvailable(Long id, LocalDate from, LocalDate to) {
+        return executor.submit(() -> manager.isCarAvailable(id, from, to));
+    }
+
+    @Override
+    public CompletableFuture<Set<Long>> getAvailableCars(Collection<Long> ids, LocalDate from, LocalDate to) {
+        return executor.submit(() -> manager.getAvailableCars(ids, from, to));
+    }
+}
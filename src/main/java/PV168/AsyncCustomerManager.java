@@ -0,0 +1,30 @@
+package PV168;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking variant of {@link CustomerManager}. Every method returns at once
+ * with a future of the result of the corresponding {@link CustomerManager} method.
+ * Streaming is not offered, an open stream would hold its connection outside of
+ * the executor.
+ */
+public interface AsyncCustomerManager {
+
+    CompletableFuture<Void> createCustomer(Customer customer);
+
+    CompletableFuture<BulkInsertResult<Customer>> createCustomers(Collection<Customer> customers);
+
+    CompletableFuture<Void> updateCustomer(Customer customer);
+
+    CompletableFuture<Void> deleteCustomer(Customer customer);
+
+    CompletableFuture<Integer> deleteAllCustomers();
+
+    CompletableFuture<Customer> findCustomerById(Long id);
+
+    CompletableFuture<List<Customer>> getAllCustomers();
+
+    CompletableFuture<List<Customer>> getCustomersAfter(Long lastId, int limit);
+}
@@ -0,0 +1,62 @@
+package PV168;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs the calls of a {@link CustomerManager} on a {@link ManagerExecutor}.
+ */
+public class AsyncCustomerManagerImpl implements AsyncCustomerManager {
+
+    private final CustomerManager manager;
+    private final ManagerExecutor executor;
+
+    public AsyncCustomerManagerImpl(CustomerManager manager, ManagerExecutor executor) {
+        if (manager == null || executor == null) {
+            throw new IllegalArgumentException("manager or executor is null");
+        }
+        this.manager = manager;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<Void> createCustomer(Customer customer) {
+        return executor.run(() -> manager.createCustomer(customer));
+    }
+
+    @Override
+    public CompletableFuture<BulkInsertResult<Customer>> createCustomers(Collection<Customer> customers) {
+        return executor.submit(() -> manager.createCustomers(customers));
+    }
+
+    @Override
+    public CompletableFuture<Void> updateCustomer(Customer customer) {
+        return executor.run(() -> manager.updateCustomer(customer));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteCustomer(Customer customer) {
+        return executor.run(() -> manager.deleteCustomer(customer));
+    }
+
+    @Override
+    public CompletableFuture<Integer> deleteAllCustomers() {
+        return executor.submit(manager::deleteAllCustomers);
+    }
+
+    @Override
+    public CompletableFuture<Customer> findCustomerById(Long id) {
+        return executor.submit(() -> manager.findCustomerById(id));
+    }
+
+    @Override
+    public CompletableFuture<List<Customer>> getAllCustomers() {
+        return executor.submit(manager::getAllCustomers);
+    }
+
+    @Override
+    public CompletableFuture<List<Customer>> getCustomersAfter(Long lastId, int limit) {
+        return executor.submit(() -> manager.getCustomersAfter(lastId, limit));
+    }
+}
@@ -0,0 +1,45 @@
+package PV168;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking variant of {@link LeaseManager}. Every method returns at once with
+ * a future of the result of the corresponding {@link LeaseManager} method.
+ * Streaming is not offered, an open stream would hold its connection outside of
+ * the executor.
+ */
+public interface AsyncLeaseManager {
+
+    CompletableFuture<Void> createLease(Lease lease);
+
+    CompletableFuture<BulkInsertResult<Lease>> createLeases(Collection<Lease> leases);
+
+    CompletableFuture<Lease> getLeaseByID(Long id);
+
+    CompletableFuture<List<Lease>> getAllLeases();
+
+    CompletableFuture<List<Lease>> getLeasesAfter(Long lastId, int limit);
+
+    CompletableFuture<List<Lease>> getLeasesByDateFromAfter(LocalDate lastDateFrom, Long lastId, int limit);
+
+    CompletableFuture<List<Lease>> getLeasesByDateToAfter(LocalDate lastDateTo, Long lastId, int limit);
+
+    CompletableFuture<List<Lease>> getAllLeasesByEndDate(LocalDate endDate);
+
+    CompletableFuture<List<Lease>> findLeasesForCustomer(Customer customer);
+
+    CompletableFuture<List<Lease>> findLeasesForCar(Car car);
+
+    CompletableFuture<List<Lease>> findLeases(LeaseQuery query);
+
+    CompletableFuture<Void> updateLease(Lease lease);
+
+    CompletableFuture<Void> deleteLease(Lease lease);
+
+    CompletableFuture<Integer> deleteAllLeases();
+
+    CompletableFuture<Integer> deleteLeasesEndedBefore(LocalDate date);
+}
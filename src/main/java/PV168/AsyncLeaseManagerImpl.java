@@ -0,0 +1,98 @@
+package PV168;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs the calls of a {@link LeaseManager} on a {@link ManagerExecutor}.
+ */
+public class AsyncLeaseManagerImpl implements AsyncLeaseManager {
+
+    private final LeaseManager manager;
+    private final ManagerExecutor executor;
+
+    public AsyncLeaseManagerImpl(LeaseManager manager, ManagerExecutor executor) {
+        if (manager == null || executor == null) {
+            throw new IllegalArgumentException("manager or executor is null");
+        }
+        this.manager = manager;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<Void> createLease(Lease lease) {
+        return executor.run(() -> manager.createLease(lease));
+    }
+
+    @Override
+    public CompletableFuture<BulkInsertResult<Lease>> createLeases(Collection<Lease> leases) {
+        return executor.submit(() -> manager.createLeases(leases));
+    }
+
+    @Override
+    public CompletableFuture<Lease> getLeaseByID(Long id) {
+        return executor.submit(() -> manager.getLeaseByID(id));
+    }
+
+    @Override
+    public CompletableFuture<List<Lease>> getAllLeases() {
+        return executor.submit(manager::getAllLeases);
+    }
+
+    @Override
+    public CompletableFuture<List<Lease>> getLeasesAfter(Long lastId, int limit) {
+        return executor.submit(() -> manager.getLeasesAfter(lastId, limit));
+    }
+
+    @Override
+    public CompletableFuture<List<Lease>> getLeasesByDateFromAfter(LocalDate lastDateFrom, Long lastId, int limit) {
+        return executor.submit(() -> manager.getLeasesByDateFromAfter(lastDateFrom, lastId, limit));
+    }
+
+    @Override
+    public CompletableFuture<List<Lease>> getLeasesByDateToAfter(LocalDate lastDateTo, Long lastId, int limit) {
+        return executor.submit(() -> manager.getLeasesByDateToAfter(lastDateTo, lastId, limit));
+    }
+
+    @Override
+    public CompletableFuture<List<Lease>> getAllLeasesByEndDate(LocalDate endDate) {
+        return executor.submit(() -> manager.getAllLeasesByEndDate(endDate));
+    }
+
+    @Override
+    public CompletableFuture<List<Lease>> findLeasesForCustomer(Customer customer) {
+        return executor.submit(() -> manager.findLeasesForCustomer(customer));
+    }
+
+    @Override
+    public CompletableFuture<List<Lease>> findLeasesForCar(Car car) {
+        return executor.submit(() -> manager.findLeasesForCar(car));
+    }
+
+    @Override
+    public CompletableFuture<List<Lease>> findLeases(LeaseQuery query) {
+        return executor.submit(() -> manager.findLeases(query));
+    }
+
+    @Override
+    public CompletableFuture<Void> updateLease(Lease lease) {
+        return executor.run(() -> manager.updateLease(lease));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteLease(Lease lease) {
+        return executor.run(() -> manager.deleteLease(lease));
+    }
+
+    @Override
+    public CompletableFuture<Integer> deleteAllLeases() {
+        return executor.submit(manager::deleteAllLeases);
+    }
+
+    @Override
+    public CompletableFuture<Integer> deleteLeasesEndedBefore(LocalDate date) {
+        return executor.submit(() -> manager.deleteLeasesEndedBefore(date));
+    }
+}
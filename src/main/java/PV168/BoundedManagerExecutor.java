@@ -0,0 +1,161 @@
+package PV168;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Executes manager calls on a fixed number of threads with a bounded queue.
+ * <p>
+ * The number of threads should match the maximum of active connections of the
+ * pool, more threads would only wait for connections. When all threads are busy
+ * and the queue is full, new calls are rejected at once instead of piling up,
+ * so callers get backpressure. Calls which do not finish within the timeout,
+ * queueing included, complete with {@link TimeoutException}. A call still in the
+ * queue then never runs, a running call is not interrupted and runs to its end
+ * with its result discarded, so a timed out mutation may still be committed.
+ */
+public class BoundedManagerExecutor implements ManagerExecutor {
+
+    private static final AtomicInteger executorCount = new AtomicInteger();
+
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService timer;
+    private final long timeoutNanos;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    /**
+     * @param threads number of threads
+     * @param queueCapacity number of calls waiting for a thread
+     * @param timeout timeout of a call, zero for none
+     * @param unit unit of the timeout
+     */
+    public BoundedManagerExecutor(int threads, int queueCapacity, long timeout, TimeUnit unit) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("number of threads is not positive");
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queue capacity is not positive");
+        }
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout is negative");
+        }
+        String prefix = "manager-executor-" + executorCount.incrementAndGet();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), daemonThreads(prefix), new ThreadPoolExecutor.AbortPolicy());
+        this.timer = Executors.newSingleThreadScheduledExecutor(daemonThreads(prefix + "-timer"));
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Creates executor with as many threads as the pool has connections.
+     *
+     * @param pool connection pool used by the managers
+     * @param queueCapacity number of calls waiting for a thread
+     * @param timeout timeout of a call, zero for none
+     * @param unit unit of the timeout
+     * @return new executor
+     */
+    public static BoundedManagerExecutor forPool(ConnectionPool pool, int queueCapacity, long timeout, TimeUnit unit) {
+        int maxActive = pool.getStats().getMaxActive();
+        if (maxActive <= 0) {
+            throw new IllegalArgumentException("pool has no limit of active connections");
+        }
+        return new BoundedManagerExecutor(maxActive, queueCapacity, timeout, unit);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> submit(Supplier<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task;
+        try {
+            task = executor.submit(() -> {
+                if (result.isDone()) {
+                    // timed out or cancelled while queued
+                    return;
+                }
+                try {
+                    result.complete(call.get());
+                } catch (Throwable ex) {
+                    result.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            rejected.increment();
+            result.completeExceptionally(ex);
+            return result;
+        }
+        ScheduledFuture<?> timeout = timeoutNanos == 0 ? null : timer.schedule(() -> {
+            if (result.completeExceptionally(new TimeoutException("Call did not finish in "
+                    + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms"))) {
+                timedOut.increment();
+            }
+        }, timeoutNanos, TimeUnit.NANOSECONDS);
+        result.whenComplete((value, ex) -> {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            if (ex != null) {
+                // drops the call when it was cancelled or timed out in the queue, a running
+                // call is left to finish so that its transaction is not broken off
+                task.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return number of calls waiting for a thread
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return number of calls being executed
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return number of calls rejected because the queue was full
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return number of calls which did not finish in time
+     */
+    public long getTimedOutCount() {
+        return timedOut.sum();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        timer.shutdown();
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
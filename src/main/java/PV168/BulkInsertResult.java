@@ -0,0 +1,92 @@
+package PV168;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a bulk insert. Entities which were inserted have their generated id
+ * set, the others are reported together with the reason of the failure.
+ *
+ * @param <T> type of the inserted entities
+ */
+public class BulkInsertResult<T> {
+
+    private final List<T> inserted = new ArrayList<>();
+    private final List<Failure<T>> failures = new ArrayList<>();
+
+    void addInserted(T entity) {
+        inserted.add(entity);
+    }
+
+    void addFailure(int index, T entity, RuntimeException cause) {
+        failures.add(new Failure<>(index, entity, cause));
+    }
+
+    /**
+     * @return inserted entities in the order in which they were given
+     */
+    public List<T> getInserted() {
+        return Collections.unmodifiableList(inserted);
+    }
+
+    /**
+     * @return entities which were not inserted in the order in which they were given
+     */
+    public List<Failure<T>> getFailures() {
+        return Collections.unmodifiableList(failures);
+    }
+
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "BulkInsertResult{" +
+                "inserted=" + inserted.size() +
+                ", failures=" + failures +
+                '}';
+    }
+
+    /**
+     * Entity which was not inserted.
+     *
+     * @param <T> type of the entity
+     */
+    public static class Failure<T> {
+
+        private final int index;
+        private final T entity;
+        private final RuntimeException cause;
+
+        Failure(int index, T entity, RuntimeException cause) {
+            this.index = index;
+            this.entity = entity;
+            this.cause = cause;
+        }
+
+        /**
+         * @return position of the entity in the given collection
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public T getEntity() {
+            return entity;
+        }
+
+        public RuntimeException getCause() {
+            return cause;
+        }
+
+        @Override
+        public String toString() {
+            return "Failure{" +
+                    "index=" + index +
+                    ", cause=" + cause.getMessage() +
+                    '}';
+        }
+    }
+}
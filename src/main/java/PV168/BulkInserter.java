@@ -0,0 +1,169 @@
+package PV168;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Inserts many entities in chunks, each chunk in one transaction through one
+ * prepared statement.
+ * <p>
+ * The rows are executed one by one instead of with {@code executeBatch}, because
+ * Derby returns generated keys only for single-row executions and the ids have
+ * to be assigned back to the entities. The per-row cost which dominates the
+ * single-row methods - obtaining a connection, preparing the statement and
+ * committing - is paid once per chunk.
+ * <p>
+ * Entities which fail validation or whose row is rejected by the database are
+ * reported and skipped, the rest of the chunk is still inserted. Errors which roll
+ * back the whole transaction fail the call with {@link ServiceFailureException}
+ * and clear the ids assigned in the chunk; chunks committed before stay inserted.
+ *
+ * @param <T> type of the inserted entities
+ */
+abstract class BulkInserter<T> {
+
+    static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private final StatementRegistry statements;
+    private final StatementRegistry.Sql sql;
+
+    BulkInserter(StatementRegistry statements, StatementRegistry.Sql sql) {
+        this.statements = statements;
+        this.sql = sql;
+    }
+
+    /**
+     * @throws IllegalArgumentException or other runtime exception when the entity can not be inserted
+     */
+    protected abstract void validate(T entity);
+
+    /**
+     * Sets the parameters of the insert statement. Runtime exceptions reject the entity.
+     */
+    protected abstract void bind(PreparedStatement st, T entity) throws SQLException;
+
+    protected abstract void setId(T entity, Long id);
+
+    /**
+     * Called in the transaction of the chunk before the row of the entity is inserted.
+     * Runtime exceptions reject the entity.
+     */
+    protected void beforeInsert(Connection conn, T entity) throws SQLException {
+    }
+
+    /**
+     * Called in the transaction of the chunk after the row of the entity was inserted.
+     * Exceptions fail the whole chunk, since the row can not be taken back alone.
+     */
+    protected void afterInsert(Connection conn, T entity) throws SQLException {
+    }
+
+    /**
+     * Called when the row of the entity was inserted, before the transaction is committed.
+     * Runtime exceptions fail the whole chunk.
+     */
+    protected void inserted(T entity) {
+    }
+
+    /**
+     * Called when the transaction with the given entities was committed.
+     */
+    protected void committed(List<T> entities) {
+    }
+
+    BulkInsertResult<T> insert(DataSource dataSource, Collection<T> entities, int chunkSize) {
+        if (dataSource == null) {
+            throw new IllegalStateException("DataSource is not set");
+        }
+        if (entities == null) {
+            throw new IllegalArgumentException("entities are null");
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunk size is not positive");
+        }
+        BulkInsertResult<T> result = new BulkInsertResult<>();
+        List<T> chunk = new ArrayList<>(Math.min(chunkSize, entities.size()));
+        int index = 0;
+        int chunkStart = 0;
+        for (T entity : entities) {
+            chunk.add(entity);
+            index++;
+            if (chunk.size() == chunkSize || index == entities.size()) {
+                insertChunk(dataSource, chunk, chunkStart, result);
+                chunk.clear();
+                chunkStart = index;
+            }
+        }
+        return result;
+    }
+
+    private void insertChunk(DataSource dataSource, List<T> chunk, int chunkStart, BulkInsertResult<T> result) {
+        List<T> inserted = new ArrayList<>(chunk.size());
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = dataSource.getConnection();
+            conn.setAutoCommit(false);
+            st = statements.prepareReturningKeys(conn, sql);
+            for (int i = 0; i < chunk.size(); i++) {
+                T entity = chunk.get(i);
+                try {
+                    validate(entity);
+                } catch (RuntimeException ex) {
+                    result.addFailure(chunkStart + i, entity, ex);
+                    continue;
+                }
+                try {
+                    beforeInsert(conn, entity);
+                    bind(st, entity);
+                    DBUtils.checkUpdatesCount(st.executeUpdate(), entity, true);
+                    try (ResultSet keyRS = st.getGeneratedKeys()) {
+                        setId(entity, DBUtils.getId(keyRS));
+                    }
+                } catch (SQLException ex) {
+                    if (isTransactionLost(ex)) {
+                        throw ex;
+                    }
+                    result.addFailure(chunkStart + i, entity,
+                            new ServiceFailureException("Error when inserting " + entity, ex));
+                    continue;
+                } catch (RuntimeException ex) {
+                    result.addFailure(chunkStart + i, entity, ex);
+                    continue;
+                }
+                inserted.add(entity);
+                afterInsert(conn, entity);
+                inserted(entity);
+            }
+            conn.commit();
+        } catch (SQLException | RuntimeException ex) {
+            // the rows are rolled back, so their ids do not exist
+            for (T entity : inserted) {
+                setId(entity, null);
+            }
+            throw new ServiceFailureException("Error when inserting chunk starting at " + chunkStart, ex);
+        } finally {
+            DBUtils.doRollbackQuietly(conn);
+            DBUtils.closeQuietly(conn, st);
+        }
+        for (T entity : inserted) {
+            result.addInserted(entity);
+        }
+        committed(inserted);
+    }
+
+    /**
+     * Derby rolls back the whole transaction for errors of the transaction
+     * rollback (40) and connection (08) classes, other errors only undo the statement.
+     */
+    private static boolean isTransactionLost(SQLException ex) {
+        String state = ex.getSQLState();
+        return state == null || state.startsWith("40") || state.startsWith("08");
+    }
+}
@@ -1,6 +1,10 @@
 package PV168;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * Created by jima88 on 16.3.2016.
@@ -8,11 +12,65 @@ import java.util.List;
 public interface CarManager {
 
     void addCar(Car car);
+
+    /**
+     * Inserts many cars at once, much faster than calling {@link #addCar(Car)} for each.
+     * Cars which can not be inserted are reported in the result, the others are inserted.
+     *
+     * @param cars new cars
+     * @return inserted cars with ids set and the failures
+     */
+    BulkInsertResult<Car> addCars(Collection<Car> cars);
     void deleteCar(Car car);
+
+    /**
+     * Deletes all cars together with their leases.
+     *
+     * @return number of deleted cars
+     */
+    int deleteAllCars();
     void editCar(Car car);
     List<Car> getAllCars();
+
+    /**
+     * Streams all cars from a database cursor. The stream holds a connection
+     * and must be closed, e.g. with try-with-resources.
+     *
+     * @return stream of all cars
+     */
+    Stream<Car> streamAllCars();
+
+    /**
+     * Returns a page of cars ordered by id. The next page is requested with the id
+     * of the last car of the previous page, so every page costs the same.
+     *
+     * @param lastId id of the last car of the previous page, null for the first page
+     * @param limit maximal number of cars in the page
+     * @return cars with id greater than lastId
+     */
+    List<Car> getCarsAfter(Long lastId, int limit);
     Car getCarById(Long id);
     Car getCarByLicensePlate(String licensePlate);
     boolean getAvailabilityOfCar (Long id);
 
+    /**
+     * Checks whether the car is not leased on any day of the given range.
+     *
+     * @param id id of the car
+     * @param from first day of the range
+     * @param to last day of the range
+     * @return true when the car exists and no lease overlaps the range
+     */
+    boolean isCarAvailable(Long id, LocalDate from, LocalDate to);
+
+    /**
+     * Returns those of the given cars which are not leased on any day of the given range.
+     *
+     * @param ids ids of the cars to check
+     * @param from first day of the range
+     * @param to last day of the range
+     * @return ids of existing cars with no lease overlapping the range
+     */
+    Set<Long> getAvailableCars(Collection<Long> ids, LocalDate from, LocalDate to);
+
 }
@@ -3,20 +3,109 @@ package PV168;
 import javax.sql.DataSource;
 import java.math.BigDecimal;
 import java.sql.*;
+import java.time.Clock;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Created by jima88 on 16.3.2016.
  */
 public class CarManagerImpl implements CarManager {
 
+    /**
+     * Numbers of car ids checked by the availability queries, the last one is
+     * the maximum of one query.
+     */
+    private static final int[] AVAILABILITY_BUCKETS = {1, 8, 32, 128, 500};
+    private static final int AVAILABILITY_CHUNK_SIZE = AVAILABILITY_BUCKETS[AVAILABILITY_BUCKETS.length - 1];
+
+    public static final int DEFAULT_CACHE_SIZE = 1000;
+    public static final long DEFAULT_CACHE_TTL_SECONDS = 60;
+
+    private static final String CAR_COLUMNS = "SELECT ID, LICENSEPLATE, MODEL, PRICE, NUMBEROFKM FROM CARS";
+
+    private final StatementRegistry statements = new StatementRegistry();
+    private final StatementRegistry.Sql insertCar = statements.register("insertCar",
+            "INSERT INTO CARS (LICENSEPLATE,MODEL,PRICE,NUMBEROFKM) VALUES (?,?,?,?)");
+    private final StatementRegistry.Sql updateCar = statements.register("updateCar",
+            "UPDATE CARS SET LICENSEPLATE = ?, NUMBEROFKM = ?, MODEL = ?, PRICE = ? WHERE ID = ?");
+    private final StatementRegistry.Sql deleteCar = statements.register("deleteCar",
+            "DELETE FROM CARS WHERE ID = ?");
+    private final StatementRegistry.Sql deleteAllCars = statements.register("deleteAllCars",
+            "DELETE FROM CARS");
+    private final StatementRegistry.Sql allCars = statements.register("allCars",
+            CAR_COLUMNS);
+    private final StatementRegistry.Sql firstCars = statements.register("firstCars",
+            CAR_COLUMNS + " ORDER BY ID FETCH FIRST ? ROWS ONLY");
+    private final StatementRegistry.Sql carsAfter = statements.register("carsAfter",
+            CAR_COLUMNS + " WHERE ID > ? ORDER BY ID FETCH FIRST ? ROWS ONLY");
+    private final StatementRegistry.Sql carById = statements.register("carById",
+            CAR_COLUMNS + " WHERE ID = ?");
+    private final StatementRegistry.Sql carByLicensePlate = statements.register("carByLicensePlate",
+            CAR_COLUMNS + " WHERE LICENSEPLATE = ?");
+    /** availability queries by the index of their bucket */
+    private final StatementRegistry.Sql[] carsAvailable = registerAvailabilityQueries();
+
     private final DataSource dataSource;
+    private final Clock clock;
+    private int fetchSize = DBUtils.DEFAULT_FETCH_SIZE;
+    private volatile EntityCache<Long, Car> cache =
+            new EntityCache<>(DEFAULT_CACHE_SIZE, DEFAULT_CACHE_TTL_SECONDS, TimeUnit.SECONDS);
 
     public CarManagerImpl(DataSource dataSource) {
+        this(dataSource, Clock.systemDefaultZone());
+    }
+
+    public CarManagerImpl(DataSource dataSource, Clock clock) {
         this.dataSource = dataSource;
+        this.clock = clock;
+    }
+
+    /**
+     * Sets number of rows fetched at once by {@link #streamAllCars()}.
+     *
+     * @param fetchSize positive number of rows
+     */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException("fetch size is not positive");
+        }
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Replaces the cache used by {@link #getCarById(Long)}. Cars changed through
+     * this manager are invalidated immediately, changes done elsewhere become
+     * visible after the time to live.
+     *
+     * @param maxSize maximal number of cached cars, zero disables the cache
+     * @param ttl how long a car stays cached after it was loaded
+     * @param unit unit of the ttl
+     */
+    public void configureCache(int maxSize, long ttl, TimeUnit unit) {
+        cache = new EntityCache<>(maxSize, ttl, unit);
+    }
+
+    public CacheStats getCacheStats() {
+        return cache.getStats();
+    }
+
+    /**
+     * @return execution statistics of the statements of this manager by their names
+     */
+    public Map<String, StatementStats> getStatementStats() {
+        return statements.getStats();
     }
 
     private void checkDataSource() {
@@ -40,8 +129,7 @@ public class CarManagerImpl implements CarManager {
         try {
             conn = dataSource.getConnection();
             conn.setAutoCommit(false);
-            st = conn.prepareStatement("INSERT INTO CARS (LICENSEPLATE,MODEL,PRICE,NUMBEROFKM) VALUES (?,?,?,?)",
-                    Statement.RETURN_GENERATED_KEYS);
+            st = statements.prepareReturningKeys(conn, insertCar);
 
             st.setString(1, car.getLicensePlate());
             st.setString(2, car.getModel());
@@ -66,6 +154,45 @@ public class CarManagerImpl implements CarManager {
         }
     }
 
+    public BulkInsertResult<Car> addCars(Collection<Car> cars) {
+        return addCars(cars, BulkInserter.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Inserts the cars in transactions of the given number of cars.
+     *
+     * @param cars new cars
+     * @param chunkSize number of cars inserted in one transaction
+     * @return inserted cars with ids set and the failures
+     */
+    public BulkInsertResult<Car> addCars(Collection<Car> cars, int chunkSize) {
+        return new BulkInserter<Car>(statements, insertCar) {
+            @Override
+            protected void validate(Car car) {
+                if (car == null){
+                    throw new IllegalArgumentException("car is null");
+                }
+                if (car.getId() != null){
+                    throw new IllegalArgumentException("new car should not have id");
+                }
+                CarManagerImpl.validate(car);
+            }
+
+            @Override
+            protected void bind(PreparedStatement st, Car car) throws SQLException {
+                st.setString(1, car.getLicensePlate());
+                st.setString(2, car.getModel());
+                st.setBigDecimal(3, car.getPrice());
+                st.setBigDecimal(4, car.getNumberOfKM());
+            }
+
+            @Override
+            protected void setId(Car car, Long id) {
+                car.setId(id);
+            }
+        }.insert(dataSource, cars, chunkSize);
+    }
+
     private Long getKey(ResultSet keyRS, Car car ) throws ServiceFailureException, SQLException {
         if (keyRS.next()) {
             if (keyRS.getMetaData().getColumnCount() != 1) {
@@ -91,7 +218,7 @@ public class CarManagerImpl implements CarManager {
         validate(car);
 
         try (Connection conn = dataSource.getConnection()){
-            try(PreparedStatement st = conn.prepareStatement("DELETE FROM CARS WHERE ID = ?")){
+            try(PreparedStatement st = statements.prepare(conn, deleteCar)){
                 st.setLong(1, car.getId());
                 if (st.executeUpdate() != 1) {
                     throw new ServiceFailureException("did not delete car " + car);
@@ -99,14 +226,34 @@ public class CarManagerImpl implements CarManager {
             }
         } catch (SQLException ex){
             throw new ServiceFailureException("Error when deleting car from DB", ex);
+        } finally {
+            cache.invalidate(car.getId());
         }
 
     }
 
-    public void deleteAllCars(){
-        Collection<Car> cars = new ArrayList<>(getAllCars());
-        for(Car c : cars) {
-            deleteCar(c);
+    /**
+     * Deletes all cars, together with their leases, by one statement.
+     *
+     * @return number of deleted cars
+     */
+    public int deleteAllCars(){
+        checkDataSource();
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = dataSource.getConnection();
+            conn.setAutoCommit(false);
+            st = statements.prepare(conn, deleteAllCars);
+            int count = st.executeUpdate();
+            conn.commit();
+            return count;
+        } catch (SQLException ex) {
+            throw new ServiceFailureException("Error when deleting all cars from DB", ex);
+        } finally {
+            DBUtils.doRollbackQuietly(conn);
+            DBUtils.closeQuietly(conn, st);
+            cache.invalidateAll();
         }
     }
 
@@ -117,7 +264,7 @@ public class CarManagerImpl implements CarManager {
         validate(car);
 
         try (Connection conn = dataSource.getConnection()){
-            try(PreparedStatement st = conn.prepareStatement("UPDATE CARS SET LICENSEPLATE = ?, NUMBEROFKM = ?, MODEL = ?, PRICE = ? WHERE ID = ?")) {
+            try(PreparedStatement st = statements.prepare(conn, updateCar)) {
                 st.setString(1, car.getLicensePlate());
                 st.setBigDecimal(2, car.getNumberOfKM());
                 st.setString(3, car.getModel());
@@ -129,29 +276,56 @@ public class CarManagerImpl implements CarManager {
             }
         } catch(SQLException ex){
             throw new ServiceFailureException("Error, when updating car from DB.", ex);
+        } finally {
+            cache.invalidate(car.getId());
         }
 
 
     }
 
     public List<Car> getAllCars() throws ServiceFailureException{
-        try (Connection connection = dataSource.getConnection()){
-            try(PreparedStatement st = connection.prepareStatement("SELECT id,licensePlate,model,price,numberOfKm FROM cars")) {
+        try (Stream<Car> cars = streamAllCars()) {
+            return cars.collect(Collectors.toList());
+        }
+    }
 
-                ResultSet rs = st.executeQuery();
+    public Stream<Car> streamAllCars() throws ServiceFailureException {
+        checkDataSource();
+        return DBUtils.openCursor(dataSource, statements, allCars, fetchSize, this::resultSetToCar);
+    }
 
-                List<Car> result = new ArrayList<>();
-                while (rs.next()) {
-                    result.add(resultSetToCar(rs));
-                }
-                return result;
+
+    public List<Car> getCarsAfter(Long lastId, int limit) {
+        checkDataSource();
+        if (limit <= 0) {
+            throw new IllegalArgumentException("page limit is not positive");
+        }
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = dataSource.getConnection();
+            if (lastId == null) {
+                st = statements.prepare(conn, firstCars);
+                st.setInt(1, limit);
+            } else {
+                st = statements.prepare(conn, carsAfter);
+                st.setLong(1, lastId);
+                st.setInt(2, limit);
             }
+            ResultSet rs = st.executeQuery();
+
+            List<Car> result = new ArrayList<>();
+            while (rs.next()) {
+                result.add(resultSetToCar(rs));
+            }
+            return result;
         } catch (SQLException ex) {
-            throw new ServiceFailureException("Error when retrieving all cars", ex);
+            throw new ServiceFailureException("Error when retrieving cars after id " + lastId, ex);
+        } finally {
+            DBUtils.closeQuietly(conn, st);
         }
     }
 
-
     public Car getCarById(Long id) {
         checkDataSource();
         if (id == null){
@@ -160,10 +334,24 @@ public class CarManagerImpl implements CarManager {
         if(id < 0){
             throw new IllegalArgumentException("id is negative ");
         }
+        EntityCache<Long, Car> cache = this.cache;
+        Car cached = cache.get(id);
+        if (cached != null) {
+            return copyOf(cached);
+        }
+        long stamp = cache.stamp();
+        Car car = loadCarById(id);
+        if (car != null) {
+            cache.put(id, copyOf(car), stamp);
+        }
+        return car;
+    }
+
+    private Car loadCarById(Long id) {
         Connection conn = null;
         PreparedStatement st = null;
         try {conn = dataSource.getConnection();
-            st = conn.prepareStatement("SELECT ID, LICENSEPLATE, MODEL, PRICE, NUMBEROFKM FROM CARS WHERE ID = ?");
+            st = statements.prepare(conn, carById);
 
             st.setLong(1, id);
             ResultSet rs = st.executeQuery();
@@ -190,6 +378,13 @@ public class CarManagerImpl implements CarManager {
         }
     }
 
+    private static Car copyOf(Car car) {
+        Car copy = new Car(car.getLicensePlate(), car.getModel(), car.getPrice(), car.getNumberOfKM());
+        copy.setId(car.getId());
+        copy.setIsBorrowed(car.getIsBorrowed());
+        return copy;
+    }
+
     private Car resultSetToCar(ResultSet rs) throws SQLException{
         Car car = new Car();
         car.setId(rs.getLong("id"));
@@ -208,8 +403,7 @@ public class CarManagerImpl implements CarManager {
         Connection conn = null;
         PreparedStatement st = null;
         try {conn = dataSource.getConnection();
-            st = conn.prepareStatement(
-                        "SELECT ID, LICENSEPLATE, MODEL, PRICE, NUMBEROFKM FROM CARS WHERE LICENSEPLATE = ?");
+            st = statements.prepare(conn, carByLicensePlate);
 
             st.setString(1, licensePlate);
             ResultSet rs = st.executeQuery();
@@ -231,25 +425,124 @@ public class CarManagerImpl implements CarManager {
         } catch (SQLException ex) {
             throw new ServiceFailureException(
                     "Error when retrieving car with license plate " + licensePlate, ex);
+        } finally {
+            DBUtils.closeQuietly(conn,st);
         }
     }
 
+    /**
+     * Checks whether the car is not leased today.
+     */
     public boolean getAvailabilityOfCar(Long id) {
-       /* if (id == null){
+        LocalDate today = LocalDate.now(clock);
+        return isCarAvailable(id, today, today);
+    }
+
+    public boolean isCarAvailable(Long id, LocalDate from, LocalDate to) {
+        if (id == null) {
             throw new IllegalArgumentException("id is null");
         }
-        Car car = getCarById(id);
-        List<Lease> leases = findLeasesForCar(car);
-        if()*/
-
+        if (id < 0) {
+            throw new IllegalArgumentException("id is negative ");
+        }
+        return getAvailableCars(Collections.singletonList(id), from, to).contains(id);
+    }
 
+    /**
+     * The cars are checked in chunks, each chunk by one query which looks up the
+     * leases overlapping the range for every car in the chunk.
+     */
+    public Set<Long> getAvailableCars(Collection<Long> ids, LocalDate from, LocalDate to) {
+        checkDataSource();
+        if (ids == null) {
+            throw new IllegalArgumentException("ids are null");
+        }
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("date range is null");
+        }
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("Date to should not be before date from");
+        }
+        Set<Long> available = new LinkedHashSet<>();
+        if (ids.isEmpty()) {
+            return available;
+        }
+        Connection conn = null;
+        try {
+            conn = dataSource.getConnection();
+            Iterator<Long> it = ids.iterator();
+            List<Long> chunk = new ArrayList<>(Math.min(ids.size(), AVAILABILITY_CHUNK_SIZE));
+            while (it.hasNext()) {
+                Long id = it.next();
+                if (id == null) {
+                    throw new IllegalArgumentException("id is null");
+                }
+                chunk.add(id);
+                if (chunk.size() == AVAILABILITY_CHUNK_SIZE || !it.hasNext()) {
+                    addAvailableCars(conn, chunk, from, to, available);
+                    chunk.clear();
+                }
+            }
+            Set<Long> result = new LinkedHashSet<>();
+            for (Long id : ids) {
+                if (available.contains(id)) {
+                    result.add(id);
+                }
+            }
+            return result;
+        } catch (SQLException ex) {
+            throw new ServiceFailureException("Error when checking availability of cars " + ids, ex);
+        } finally {
+            DBUtils.closeQuietly(conn);
+        }
+    }
 
+    /**
+     * A chunk runs the registered statement of the smallest bucket holding it and
+     * repeats its last id up to the size of the bucket, so a few statements serve
+     * chunks of any size without binding many more ids than the chunk has.
+     */
+    private void addAvailableCars(Connection conn, List<Long> ids, LocalDate from, LocalDate to,
+                                  Set<Long> available) throws SQLException {
+        int bucket = 0;
+        while (AVAILABILITY_BUCKETS[bucket] < ids.size()) {
+            bucket++;
+        }
+        int size = AVAILABILITY_BUCKETS[bucket];
+        try (PreparedStatement st = statements.prepare(conn, carsAvailable[bucket])) {
+            int index = 1;
+            for (int i = 0; i < size; i++) {
+                st.setLong(index++, ids.get(Math.min(i, ids.size() - 1)));
+            }
+            st.setDate(index++, Date.valueOf(to));
+            st.setDate(index, Date.valueOf(from));
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    available.add(rs.getLong(1));
+                }
+            }
+        }
+    }
 
+    private StatementRegistry.Sql[] registerAvailabilityQueries() {
+        StatementRegistry.Sql[] queries = new StatementRegistry.Sql[AVAILABILITY_BUCKETS.length];
+        for (int i = 0; i < AVAILABILITY_BUCKETS.length; i++) {
+            queries[i] = statements.register("carsAvailable[" + AVAILABILITY_BUCKETS[i] + "]",
+                    availabilityQuery(AVAILABILITY_BUCKETS[i]));
+        }
+        return queries;
+    }
 
-        return false;
+    private static String availabilityQuery(int ids) {
+        StringBuilder sql = new StringBuilder("SELECT C.ID FROM CARS C WHERE C.ID IN (?");
+        for (int i = 1; i < ids; i++) {
+            sql.append(",?");
+        }
+        return sql.append(") AND NOT EXISTS (SELECT 1 FROM LEASES L WHERE L.IDCAR = C.ID"
+                + " AND (L.DATEFROM IS NULL OR L.DATEFROM <= ?) AND (L.DATETO IS NULL OR L.DATETO >= ?))").toString();
     }
 
-    private void validate(Car car ){
+    static void validate(Car car ){
         if (car == null) {
             throw new IllegalArgumentException("Car is null");
         }
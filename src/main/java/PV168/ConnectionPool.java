@@ -0,0 +1,30 @@
+package PV168;
+
+import javax.sql.DataSource;
+
+/**
+ * Pool of database connections.
+ * <p>
+ * Implementations are created by {@link DBUtils#createConnectionPool(java.util.Properties)}
+ * from the configuration properties. A custom implementation is selected by the
+ * {@code DBPoolProvider} property and must have a public constructor taking
+ * {@link java.util.Properties}.
+ */
+public interface ConnectionPool extends AutoCloseable {
+
+    /**
+     * @return data source handing out pooled connections
+     */
+    DataSource getDataSource();
+
+    /**
+     * @return current statistics of the pool
+     */
+    PoolStats getStats();
+
+    /**
+     * Closes all idle connections and refuses new requests.
+     */
+    @Override
+    void close();
+}
@@ -1,6 +1,8 @@
 package PV168;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Created by TomyAngelo on 9. 3. 2016.
@@ -13,8 +15,43 @@ public interface CustomerManager {
      * @throws IllegalArgumentException
      */
     void createCustomer(Customer customer);
+
+    /**
+     * Inserts many customers at once, much faster than calling
+     * {@link #createCustomer(Customer)} for each. Customers which can not be inserted
+     * are reported in the result, the others are inserted.
+     *
+     * @param customers new customers
+     * @return inserted customers with ids set and the failures
+     */
+    BulkInsertResult<Customer> createCustomers(Collection<Customer> customers);
     void updateCustomer(Customer customer);
     void deleteCustomer(Customer customer);
+
+    /**
+     * Deletes all customers together with their leases.
+     *
+     * @return number of deleted customers
+     */
+    int deleteAllCustomers();
     Customer findCustomerById(Long id);
     List<Customer> getAllCustomers();
+
+    /**
+     * Streams all customers from a database cursor. The stream holds a connection
+     * and must be closed, e.g. with try-with-resources.
+     *
+     * @return stream of all customers
+     */
+    Stream<Customer> streamAllCustomers();
+
+    /**
+     * Returns a page of customers ordered by id. The next page is requested with
+     * the id of the last customer of the previous page, so every page costs the same.
+     *
+     * @param lastId id of the last customer of the previous page, null for the first page
+     * @param limit maximal number of customers in the page
+     * @return customers with id greater than lastId
+     */
+    List<Customer> getCustomersAfter(Long lastId, int limit);
 }
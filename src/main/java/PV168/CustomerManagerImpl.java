@@ -4,7 +4,11 @@ import java.sql.*;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.sql.DataSource;
 
 /**
@@ -13,12 +17,75 @@ import javax.sql.DataSource;
 public class CustomerManagerImpl implements CustomerManager {
     //final static Logger log = LoggerFactory.getLogger(GraveManagerImpl.class);
 
+    public static final int DEFAULT_CACHE_SIZE = 1000;
+    public static final long DEFAULT_CACHE_TTL_SECONDS = 60;
+
+    private static final String CUSTOMER_COLUMNS = "SELECT ID,NAME,ADDRESS,PHONENUMBER FROM CUSTOMERS";
+
+    private final StatementRegistry statements = new StatementRegistry();
+    private final StatementRegistry.Sql insertCustomer = statements.register("insertCustomer",
+            "INSERT INTO CUSTOMERS (NAME,ADDRESS,PHONENUMBER) VALUES (?,?,?)");
+    private final StatementRegistry.Sql updateCustomer = statements.register("updateCustomer",
+            "UPDATE CUSTOMERS SET NAME = ?, ADDRESS = ?,  PHONENUMBER = ? WHERE ID = ?");
+    private final StatementRegistry.Sql deleteCustomer = statements.register("deleteCustomer",
+            "DELETE FROM CUSTOMERS WHERE id=?");
+    private final StatementRegistry.Sql deleteAllCustomers = statements.register("deleteAllCustomers",
+            "DELETE FROM CUSTOMERS");
+    private final DailyStatsWriter dailyStats = new DailyStatsWriter(statements);
+    private final StatementRegistry.Sql allCustomers = statements.register("allCustomers",
+            CUSTOMER_COLUMNS);
+    private final StatementRegistry.Sql firstCustomers = statements.register("firstCustomers",
+            CUSTOMER_COLUMNS + " ORDER BY ID FETCH FIRST ? ROWS ONLY");
+    private final StatementRegistry.Sql customersAfter = statements.register("customersAfter",
+            CUSTOMER_COLUMNS + " WHERE ID > ? ORDER BY ID FETCH FIRST ? ROWS ONLY");
+    private final StatementRegistry.Sql customerById = statements.register("customerById",
+            CUSTOMER_COLUMNS + " WHERE ID = ?");
+
     private final DataSource dataSource;
+    private int fetchSize = DBUtils.DEFAULT_FETCH_SIZE;
+    private volatile EntityCache<Long, Customer> cache =
+            new EntityCache<>(DEFAULT_CACHE_SIZE, DEFAULT_CACHE_TTL_SECONDS, TimeUnit.SECONDS);
 
     public CustomerManagerImpl(DataSource dataSource) {
         this.dataSource = dataSource;
     }
 
+    /**
+     * Sets number of rows fetched at once by {@link #streamAllCustomers()}.
+     *
+     * @param fetchSize positive number of rows
+     */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException("fetch size is not positive");
+        }
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Replaces the cache used by {@link #findCustomerById(Long)}. Customers changed
+     * through this manager are invalidated immediately, changes done elsewhere
+     * become visible after the time to live.
+     *
+     * @param maxSize maximal number of cached customers, zero disables the cache
+     * @param ttl how long a customer stays cached after it was loaded
+     * @param unit unit of the ttl
+     */
+    public void configureCache(int maxSize, long ttl, TimeUnit unit) {
+        cache = new EntityCache<>(maxSize, ttl, unit);
+    }
+
+    public CacheStats getCacheStats() {
+        return cache.getStats();
+    }
+
+    /**
+     * @return execution statistics of the statements of this manager by their names
+     */
+    public Map<String, StatementStats> getStatementStats() {
+        return statements.getStats();
+    }
+
     private void checkDataSource() {
         if (dataSource == null) {
             throw new IllegalStateException("DataSource is not set");
@@ -41,7 +108,7 @@ public class CustomerManagerImpl implements CustomerManager {
         try{
             conn = dataSource.getConnection();
             conn.setAutoCommit(false);
-            st = conn.prepareStatement("INSERT INTO CUSTOMERS (NAME,ADDRESS,PHONENUMBER) VALUES (?,?,?)",Statement.RETURN_GENERATED_KEYS);
+            st = statements.prepareReturningKeys(conn, insertCustomer);
             st.setString(1, customer.getName());
             st.setString(2, customer.getAddress());
             st.setString(3, customer.getPhoneNumber());
@@ -62,6 +129,44 @@ public class CustomerManagerImpl implements CustomerManager {
         }
     }
 
+    public BulkInsertResult<Customer> createCustomers(Collection<Customer> customers) {
+        return createCustomers(customers, BulkInserter.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Inserts the customers in transactions of the given number of customers.
+     *
+     * @param customers new customers
+     * @param chunkSize number of customers inserted in one transaction
+     * @return inserted customers with ids set and the failures
+     */
+    public BulkInsertResult<Customer> createCustomers(Collection<Customer> customers, int chunkSize) {
+        return new BulkInserter<Customer>(statements, insertCustomer) {
+            @Override
+            protected void validate(Customer customer) {
+                if(customer==null){
+                    throw new IllegalArgumentException("Customer is null");
+                }
+                if(customer.getId()!=null) {
+                    throw new IllegalArgumentException("Customer is already in DB");
+                }
+                CustomerManagerImpl.validate(customer);
+            }
+
+            @Override
+            protected void bind(PreparedStatement st, Customer customer) throws SQLException {
+                st.setString(1, customer.getName());
+                st.setString(2, customer.getAddress());
+                st.setString(3, customer.getPhoneNumber());
+            }
+
+            @Override
+            protected void setId(Customer customer, Long id) {
+                customer.setId(id);
+            }
+        }.insert(dataSource, customers, chunkSize);
+    }
+
     private Long getKey(ResultSet keyRS, Customer customer) throws ServiceFailureException, SQLException {
         if (keyRS.next()) {
             if (keyRS.getMetaData().getColumnCount() != 1) {
@@ -98,7 +203,7 @@ public class CustomerManagerImpl implements CustomerManager {
         try{
             conn = dataSource.getConnection();
             conn.setAutoCommit(false);
-            st = conn.prepareStatement("UPDATE CUSTOMERS SET NAME = ?, ADDRESS = ?,  PHONENUMBER = ? WHERE ID = ?");
+            st = statements.prepare(conn, updateCustomer);
             st.setString(1, customer.getName());
             st.setString(2, customer.getAddress());
             st.setString(3, customer.getPhoneNumber());
@@ -114,6 +219,7 @@ public class CustomerManagerImpl implements CustomerManager {
         }finally {
             DBUtils.doRollbackQuietly(conn);
             DBUtils.closeQuietly(conn,st);
+            cache.invalidate(customer.getId());
         }
     }
 
@@ -131,7 +237,9 @@ public class CustomerManagerImpl implements CustomerManager {
         try{
             conn = dataSource.getConnection();
             conn.setAutoCommit(false);
-            st = conn.prepareStatement("DELETE FROM CUSTOMERS WHERE id=?");
+            // the leases of the customer are deleted by the cascade, which does not reach DAILY_STATS
+            dailyStats.removeLeasesOfCustomer(conn, customer.getId());
+            st = statements.prepare(conn, deleteCustomer);
             st.setLong(1, customer.getId());
             if (st.executeUpdate() == 0) {
                 throw new IllegalArgumentException("customer not found");
@@ -142,13 +250,34 @@ public class CustomerManagerImpl implements CustomerManager {
         }finally {
             DBUtils.doRollbackQuietly(conn);
             DBUtils.closeQuietly(conn,st);
+            cache.invalidate(customer.getId());
         }
     }
 
-    public void deleteAllCustomers(){
-        Collection<Customer> customers = new ArrayList<>(getAllCustomers());
-        for(Customer c : customers) {
-            deleteCustomer(c);
+    /**
+     * Deletes all customers, together with their leases, by one statement; the
+     * leases are subtracted from the daily statistics in the same transaction.
+     *
+     * @return number of deleted customers
+     */
+    public int deleteAllCustomers(){
+        checkDataSource();
+        Connection conn = null;
+        PreparedStatement st = null;
+        try{
+            conn = dataSource.getConnection();
+            conn.setAutoCommit(false);
+            dailyStats.removeLeasesOfAllCustomers(conn);
+            st = statements.prepare(conn, deleteAllCustomers);
+            int count = st.executeUpdate();
+            conn.commit();
+            return count;
+        } catch (SQLException ex) {
+            throw new ServiceFailureException("Error when deleting all customers from DB", ex);
+        }finally {
+            DBUtils.doRollbackQuietly(conn);
+            DBUtils.closeQuietly(conn,st);
+            cache.invalidateAll();
         }
     }
 
@@ -160,11 +289,25 @@ public class CustomerManagerImpl implements CustomerManager {
         if(id < 0){
             throw new IllegalArgumentException("id is negative ");
         }
+        EntityCache<Long, Customer> cache = this.cache;
+        Customer cached = cache.get(id);
+        if (cached != null) {
+            return copyOf(cached);
+        }
+        long stamp = cache.stamp();
+        Customer customer = loadCustomerById(id);
+        if (customer != null) {
+            cache.put(id, copyOf(customer), stamp);
+        }
+        return customer;
+    }
+
+    private Customer loadCustomerById(Long id) {
         Connection conn = null;
         PreparedStatement st = null;
         try{
             conn = dataSource.getConnection();
-            st = conn.prepareStatement("SELECT ID,NAME,ADDRESS,PHONENUMBER FROM CUSTOMERS WHERE ID = ?");
+            st = statements.prepare(conn, customerById);
 
             st.setLong(1, id);
             ResultSet rs = st.executeQuery();
@@ -191,6 +334,12 @@ public class CustomerManagerImpl implements CustomerManager {
         }
     }
 
+    private static Customer copyOf(Customer customer) {
+        Customer copy = new Customer(customer.getName(), customer.getAddress(), customer.getPhoneNumber());
+        copy.setId(customer.getId());
+        return copy;
+    }
+
     private Customer resultSetToCustomer(ResultSet rs) throws SQLException{
         Customer customer = new Customer();
         customer.setId(rs.getLong("id"));
@@ -202,13 +351,33 @@ public class CustomerManagerImpl implements CustomerManager {
     }
 
     public List<Customer> getAllCustomers() {
+        try (Stream<Customer> customers = streamAllCustomers()) {
+            return customers.collect(Collectors.toList());
+        }
+    }
+
+    public Stream<Customer> streamAllCustomers() {
         checkDataSource();
+        return DBUtils.openCursor(dataSource, statements, allCustomers, fetchSize, this::resultSetToCustomer);
+    }
+
+    public List<Customer> getCustomersAfter(Long lastId, int limit) {
+        checkDataSource();
+        if (limit <= 0) {
+            throw new IllegalArgumentException("page limit is not positive");
+        }
         Connection conn = null;
         PreparedStatement st = null;
         try{
             conn = dataSource.getConnection();
-            st = conn.prepareStatement("SELECT ID,NAME,ADDRESS,PHONENUMBER FROM CUSTOMERS");
-
+            if (lastId == null) {
+                st = statements.prepare(conn, firstCustomers);
+                st.setInt(1, limit);
+            } else {
+                st = statements.prepare(conn, customersAfter);
+                st.setLong(1, lastId);
+                st.setInt(2, limit);
+            }
             ResultSet rs = st.executeQuery();
 
             List<Customer> result = new ArrayList<>();
@@ -219,13 +388,13 @@ public class CustomerManagerImpl implements CustomerManager {
 
         } catch (SQLException ex) {
             throw new ServiceFailureException(
-                    "Error when retrieving all customers", ex);
+                    "Error when retrieving customers after id " + lastId, ex);
         }finally {
             DBUtils.closeQuietly(conn,st);
         }
     }
 
-    private void validate(Customer customer){
+    static void validate(Customer customer){
 
         if (customer.getAddress()==null || customer.getAddress().isEmpty()) {
             throw new IllegalArgumentException("Customer address is null or empty");
@@ -1,16 +1,22 @@
 package PV168;
 
-import org.apache.commons.dbcp.BasicDataSource;
-
 import java.io.*;
 import java.net.URL;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import javax.sql.DataSource;
 
 /**
@@ -23,6 +29,12 @@ public class DBUtils {
     private static final Logger log = Logger.getLogger(
             DBUtils.class.getName());
 
+    /**
+     * Default number of rows fetched at once by cursors opened with
+     * {@link #openCursor(DataSource, StatementRegistry, StatementRegistry.Sql, int, RowMapper)}.
+     */
+    public static final int DEFAULT_FETCH_SIZE = 100;
+
     /**
      * Closes connection and logs possible error.
      *
@@ -94,17 +106,15 @@ public class DBUtils {
     }
 
     /**
-     * Reads SQL statements from file. SQL commands in file must be separated by
-     * a semicolon.
+     * Reads SQL script from file.
      *
      * @param url url of the file
-     * @return array of command  strings
+     * @return content of the file
      */
-    private static String[] readSqlStatements(URL url) {
-        try {
+    static String readSqlScript(URL url) {
+        try (InputStreamReader reader = new InputStreamReader(url.openStream(), "UTF-8")) {
             char buffer[] = new char[256];
             StringBuilder result = new StringBuilder();
-            InputStreamReader reader = new InputStreamReader(url.openStream(), "UTF-8");
             while (true) {
                 int count = reader.read(buffer);
                 if (count < 0) {
@@ -112,33 +122,59 @@ public class DBUtils {
                 }
                 result.append(buffer, 0, count);
             }
-            return result.toString().split(";");
+            return result.toString();
         } catch (IOException ex) {
             throw new RuntimeException("Cannot read " + url, ex);
         }
     }
 
+    /**
+     * Splits SQL script to statements. Statements must be separated by
+     * a semicolon, lines starting with {@code --} are ignored.
+     *
+     * @param script SQL script
+     * @return trimmed non-empty statements
+     */
+    static List<String> splitSqlStatements(String script) {
+        StringBuilder withoutComments = new StringBuilder();
+        for (String line : script.split("\\r?\\n")) {
+            if (!line.trim().startsWith("--")) {
+                withoutComments.append(line).append('\n');
+            }
+        }
+        List<String> statements = new ArrayList<>();
+        for (String sqlStatement : withoutComments.toString().split(";")) {
+            if (!sqlStatement.trim().isEmpty()) {
+                statements.add(sqlStatement.trim());
+            }
+        }
+        return statements;
+    }
+
     /**
      * Try to execute script for creating tables. If tables already exist,
-     * appropriate exception is catched and ignored.
+     * appropriate exception is catched and ignored. Missing indexes of
+     * {@link SchemaIndexes} are created in both cases.
      *
      * @param ds dataSource
      * @param scriptUrl url of script for creating tables
      * @throws SQLException when operation fails
+     * @deprecated a partially created schema is taken for a complete one, use
+     * {@link SchemaMigrator#migrate()}
      */
+    @Deprecated
     public static void tryCreateTables(DataSource ds, URL scriptUrl) throws SQLException {
         try {
             executeSqlScript(ds, scriptUrl);
             log.log(Level.INFO, "Tables created");
         } catch (SQLException ex) {
-            if ("X0Y32".equals(ex.getSQLState())) {
-                // This code represents "Table/View/... already exists"
+            if (!"X0Y32".equals(ex.getSQLState())) {
+                // X0Y32 represents "Table/View/... already exists"
                 // This code is Derby specific!
-                return;
-            } else {
                 throw ex;
             }
         }
+        SchemaIndexes.apply(ds);
     }
 
     /**
@@ -150,15 +186,15 @@ public class DBUtils {
      */
     public static void executeSqlScript(DataSource ds, URL scriptUrl) throws SQLException {
         Connection conn = null;
+        Statement st = null;
         try {
             conn = ds.getConnection();
-            for (String sqlStatement : readSqlStatements(scriptUrl)) {
-                if (!sqlStatement.trim().isEmpty()) {
-                    conn.prepareStatement(sqlStatement).executeUpdate();
-                }
+            st = conn.createStatement();
+            for (String sqlStatement : splitSqlStatements(readSqlScript(scriptUrl))) {
+                st.executeUpdate(sqlStatement);
             }
         } finally {
-            closeQuietly(conn);
+            closeQuietly(conn, st);
         }
     }
 
@@ -182,7 +218,71 @@ public class DBUtils {
         }
     }
 
-    public static DataSource connectToDB(){
+    /**
+     * Opens a forward-only, read-only cursor for given query and exposes its rows
+     * as a lazily evaluated stream. Rows are fetched from the database in chunks
+     * of the given fetch size as the stream is consumed, so memory use does not
+     * depend on the size of the result. The connection stays open until the
+     * stream is closed, so the stream must always be closed by the caller.
+     *
+     * @param ds datasource
+     * @param statements registry of the query
+     * @param sql query to be executed
+     * @param fetchSize number of rows fetched from the database at once
+     * @param mapper mapper of the rows
+     * @param <T> type of the mapped entities
+     * @return stream of the mapped rows
+     * @throws ServiceFailureException when the query can not be executed
+     */
+    public static <T> Stream<T> openCursor(DataSource ds, StatementRegistry statements, StatementRegistry.Sql sql,
+                                           int fetchSize, RowMapper<T> mapper) throws ServiceFailureException {
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = ds.getConnection();
+            st = statements.prepare(conn, sql);
+            st.setFetchSize(fetchSize);
+            return stream(conn, st, st.executeQuery(), mapper);
+        } catch (SQLException ex) {
+            closeQuietly(conn, st);
+            throw new ServiceFailureException("Error when executing query " + sql.getSql(), ex);
+        }
+    }
+
+    private static <T> Stream<T> stream(final Connection conn, final Statement st, final ResultSet rs,
+                                        final RowMapper<T> mapper) {
+        Spliterator<T> rows = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                try {
+                    if (!rs.next()) {
+                        return false;
+                    }
+                    action.accept(mapper.map(rs));
+                    return true;
+                } catch (SQLException ex) {
+                    throw new ServiceFailureException("Error when reading rows", ex);
+                }
+            }
+        };
+        return StreamSupport.stream(rows, false).onClose(() -> {
+            try {
+                rs.close();
+            } catch (SQLException ex) {
+                log.log(Level.SEVERE, "Error when closing result set", ex);
+            }
+            closeQuietly(conn, st);
+        });
+    }
+
+    /**
+     * Loads {@code config.properties} from the classpath.
+     *
+     * @return loaded properties
+     * @throws ServiceFailureException when the file is missing or can not be read
+     */
+    public static Properties loadConfig() throws ServiceFailureException {
         Properties prop = new Properties();
         String propFileName = "config.properties";
 
@@ -194,20 +294,57 @@ public class DBUtils {
             } catch (IOException ex){
                 log.log(Level.SEVERE, "Cannot load property from input stream.");
                 throw new ServiceFailureException("Cannot load property from input stream.");
+            } finally {
+                try {
+                    inputStream.close();
+                } catch (IOException ex) {
+                    log.log(Level.SEVERE, "Error when closing property file", ex);
+                }
             }
         } else {
             log.log(Level.SEVERE, "property file '" + propFileName + "' not found in the classpath");
             throw new ServiceFailureException("property file '" + propFileName + "' not found in the classpath");
         }
+        return prop;
+    }
 
-        BasicDataSource bds = new BasicDataSource();
-        bds.setDriverClassName(prop.getProperty("DBDriverClassName"));
-        System.out.println(prop.getProperty("DBDriverClassName"));
-        bds.setUrl(prop.getProperty("DBUrl") + prop.getProperty("DBName"));
-        //bds.setUsername(prop.getProperty("DBUsername"));
-        //bds.setPassword(prop.getProperty("DBPassword"));
-        log.log(Level.INFO, "Connection to DB successful");
+    /**
+     * Creates connection pool configured by given properties. The implementation
+     * is {@link DbcpConnectionPool} unless the {@code DBPoolProvider} property
+     * names another class implementing {@link ConnectionPool}.
+     *
+     * @param prop configuration properties
+     * @return new connection pool
+     * @throws ServiceFailureException when the configured implementation can not be created
+     */
+    public static ConnectionPool createConnectionPool(Properties prop) throws ServiceFailureException {
+        String provider = prop.getProperty("DBPoolProvider");
+        if (provider == null || provider.trim().isEmpty()) {
+            return new DbcpConnectionPool(prop);
+        }
+        try {
+            return Class.forName(provider.trim())
+                    .asSubclass(ConnectionPool.class)
+                    .getConstructor(Properties.class)
+                    .newInstance(prop);
+        } catch (ReflectiveOperationException | ClassCastException ex) {
+            throw new ServiceFailureException("Cannot create connection pool " + provider, ex);
+        }
+    }
 
-        return bds;
+    /**
+     * Creates connection pool configured by {@code config.properties}.
+     *
+     * @return new connection pool
+     * @throws ServiceFailureException when the configuration can not be loaded
+     */
+    public static ConnectionPool createConnectionPool() throws ServiceFailureException {
+        ConnectionPool pool = createConnectionPool(loadConfig());
+        log.log(Level.INFO, "Connection pool created");
+        return pool;
+    }
+
+    public static DataSource connectToDB(){
+        return createConnectionPool().getDataSource();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,186 @@
+package PV168;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Revenue and occupancy per day from the DAILY_STATS table.
+ * <p>
+ * The table holds a row per car and leased day with the part of the lease price
+ * which belongs to the day, see {@link DailyStatsWriter}. {@link LeaseManagerImpl}
+ * keeps it up to date in the transactions which change leases, and
+ * {@link CustomerManagerImpl} in those which delete leases with customers, so a day is read
+ * through the primary key without scanning the leases. Leases changed before the
+ * table was created or outside of the manager are counted after {@link #rebuild()}.
+ */
+public class DailyStats {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final StatementRegistry statements = new StatementRegistry();
+    private final StatementRegistry.Sql lockLeases = statements.register("lockLeases",
+            "LOCK TABLE LEASES IN SHARE MODE");
+    private final StatementRegistry.Sql lockDailyStats = statements.register("lockDailyStats",
+            "LOCK TABLE DAILY_STATS IN EXCLUSIVE MODE");
+    private final StatementRegistry.Sql deleteAllDays = statements.register("deleteAllDays",
+            "DELETE FROM DAILY_STATS");
+    private final StatementRegistry.Sql leasesByCar = statements.register("leasesByCar",
+            "SELECT IDCAR, " + EpochDays.ymd("DATEFROM") + ", " + EpochDays.ymd("DATETO") + ", "
+            + EpochDays.cents("PRICE") + " FROM LEASES WHERE IDCAR IS NOT NULL AND DATEFROM IS NOT NULL"
+            + " AND DATETO IS NOT NULL AND PRICE IS NOT NULL ORDER BY IDCAR");
+    private final StatementRegistry.Sql insertDay = statements.register("insertDay",
+            "INSERT INTO DAILY_STATS (DAY, IDCAR, REVENUE, LEASES) VALUES (?,?,?,?)");
+    private final StatementRegistry.Sql summaryOfDays = statements.register("summaryOfDays",
+            "SELECT DAY, SUM(REVENUE), COUNT(*) FROM DAILY_STATS WHERE DAY BETWEEN ? AND ? AND LEASES > 0"
+            + " GROUP BY DAY ORDER BY DAY");
+
+    private final DataSource dataSource;
+
+    public DailyStats(DataSource dataSource) {
+        if (dataSource == null) {
+            throw new IllegalArgumentException("dataSource is null");
+        }
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * @return execution statistics of the statements of this service by their names
+     */
+    public Map<String, StatementStats> getStatementStats() {
+        return statements.getStats();
+    }
+
+    /**
+     * Recomputes the table from all leases in one transaction. Changes of leases
+     * wait until the rebuild is finished.
+     *
+     * @return number of rows of the table
+     * @throws ServiceFailureException when the table can not be rebuilt
+     */
+    public int rebuild() throws ServiceFailureException {
+        Connection conn = null;
+        PreparedStatement insertSt = null;
+        PreparedStatement leasesSt = null;
+        try {
+            conn = dataSource.getConnection();
+            conn.setAutoCommit(false);
+            for (StatementRegistry.Sql sql : new StatementRegistry.Sql[]{lockLeases, lockDailyStats, deleteAllDays}) {
+                try (PreparedStatement st = statements.prepare(conn, sql)) {
+                    st.execute();
+                }
+            }
+            insertSt = statements.prepare(conn, insertDay);
+            leasesSt = statements.prepare(conn, leasesByCar);
+            leasesSt.setFetchSize(BATCH_SIZE);
+            int rows = 0;
+            long carId = 0;
+            TreeMap<Long, long[]> days = new TreeMap<>();
+            try (ResultSet rs = leasesSt.executeQuery()) {
+                while (rs.next()) {
+                    if (rs.getLong(1) != carId) {
+                        rows += insertDays(insertSt, carId, days);
+                        carId = rs.getLong(1);
+                    }
+                    long firstDay = EpochDays.fromYmd(rs.getInt(2));
+                    long lastDay = EpochDays.fromYmd(rs.getInt(3));
+                    long cents = rs.getLong(4);
+                    int count = (int) (lastDay - firstDay + 1);
+                    for (int i = 0; i < count; i++) {
+                        long[] day = days.computeIfAbsent(firstDay + i, d -> new long[2]);
+                        day[0] += DailyStatsWriter.dayCents(cents, count, i);
+                        day[1]++;
+                    }
+                }
+            }
+            rows += insertDays(insertSt, carId, days);
+            conn.commit();
+            return rows;
+        } catch (SQLException ex) {
+            throw new ServiceFailureException("Error when rebuilding daily statistics", ex);
+        } finally {
+            DBUtils.doRollbackQuietly(conn);
+            DBUtils.closeQuietly(conn, insertSt, leasesSt);
+        }
+    }
+
+    private static int insertDays(PreparedStatement st, long carId, TreeMap<Long, long[]> days) throws SQLException {
+        int rows = 0;
+        for (Map.Entry<Long, long[]> day : days.entrySet()) {
+            st.setDate(1, Date.valueOf(LocalDate.ofEpochDay(day.getKey())));
+            st.setLong(2, carId);
+            st.setBigDecimal(3, BigDecimal.valueOf(day.getValue()[0], 2));
+            st.setInt(4, (int) day.getValue()[1]);
+            st.addBatch();
+            if (++rows % BATCH_SIZE == 0) {
+                st.executeBatch();
+            }
+        }
+        if (rows % BATCH_SIZE != 0) {
+            st.executeBatch();
+        }
+        days.clear();
+        return rows;
+    }
+
+    /**
+     * @param day day
+     * @return revenue and number of leased cars in the day
+     * @throws ServiceFailureException when the table can not be read
+     */
+    public DailySummary getSummary(LocalDate day) throws ServiceFailureException {
+        return getSummaries(day, day).get(0);
+    }
+
+    /**
+     * @param from first day
+     * @param to last day
+     * @return revenue and number of leased cars in every day of the range, in chronological order
+     * @throws ServiceFailureException when the table can not be read
+     */
+    public List<DailySummary> getSummaries(LocalDate from, LocalDate to) throws ServiceFailureException {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("range is null");
+        }
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("range ends before it starts");
+        }
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = dataSource.getConnection();
+            st = statements.prepare(conn, summaryOfDays);
+            st.setDate(1, Date.valueOf(from));
+            st.setDate(2, Date.valueOf(to));
+            List<DailySummary> summaries = new ArrayList<>();
+            LocalDate next = from;
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    LocalDate day = rs.getDate(1).toLocalDate();
+                    for (; next.isBefore(day); next = next.plusDays(1)) {
+                        summaries.add(new DailySummary(next, BigDecimal.valueOf(0, 2), 0));
+                    }
+                    summaries.add(new DailySummary(day, rs.getBigDecimal(2), rs.getInt(3)));
+                    next = day.plusDays(1);
+                }
+            }
+            for (; !next.isAfter(to); next = next.plusDays(1)) {
+                summaries.add(new DailySummary(next, BigDecimal.valueOf(0, 2), 0));
+            }
+            return summaries;
+        } catch (SQLException ex) {
+            throw new ServiceFailureException("Error when reading daily statistics", ex);
+        } finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package PV168;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the DAILY_STATS table in step with mutations of leases, in the
+ * transaction of the mutation.
+ * <p>
+ * The price of a lease is spread over its days in whole cents; the remainder of
+ * the division goes to the first days, so the days of a lease always sum up to
+ * its price and removing a lease subtracts exactly what adding it added. A day is
+ * updated in place and inserted only when its row is missing, rows of days which
+ * are no longer leased are deleted. Leases without a car or without both dates
+ * are not counted.
+ * <p>
+ * A lease is written by a few set-based statements independent of its length
+ * (up to {@value #MAX_OFFSETS} days per insert): the missing days are inserted by one {@code INSERT ... SELECT} over a
+ * generated range of day offsets, and the days of the lease are updated or
+ * deleted by one statement over the range of days.
+ * <p>
+ * Two leases of one car never share a day, so concurrent transactions change
+ * different rows of the table and need no locking beyond that of the leases.
+ */
+final class DailyStatsWriter {
+
+    private final StatementRegistry statements;
+    private final StatementRegistry.Sql leaseRow;
+    private final StatementRegistry.Sql leasesEndedBefore;
+    private final StatementRegistry.Sql leasesOfCustomer;
+    private final StatementRegistry.Sql leasesWithCustomer;
+    /**
+     * Number of decimal digits of the day offsets generated by the insert
+     * statements; a longer lease is inserted in parts.
+     */
+    private static final int MAX_OFFSET_DIGITS = 5;
+    private static final long MAX_OFFSETS = 100000;
+
+    private final StatementRegistry.Sql updateDays;
+    /** inserts of missing days by the number of digits of their offsets, minus one */
+    private final StatementRegistry.Sql[] insertMissingDays = new StatementRegistry.Sql[MAX_OFFSET_DIGITS];
+    private final StatementRegistry.Sql deleteEmptyDays;
+    private final StatementRegistry.Sql deleteAllDays;
+
+    private static final Logger log = Logger.getLogger(DailyStatsWriter.class.getName());
+
+    private volatile boolean enabled;
+    private volatile boolean warned;
+
+    DailyStatsWriter(StatementRegistry statements) {
+        this.statements = statements;
+        leaseRow = statements.register("dailyStatsLeaseRow",
+                "SELECT IDCAR, DATEFROM, DATETO, PRICE FROM LEASES WHERE ID=?");
+        leasesEndedBefore = statements.register("dailyStatsLeasesEndedBefore",
+                "SELECT IDCAR, DATEFROM, DATETO, PRICE FROM LEASES WHERE DATETO < ?");
+        leasesOfCustomer = statements.register("dailyStatsLeasesOfCustomer",
+                "SELECT IDCAR, DATEFROM, DATETO, PRICE FROM LEASES WHERE IDCUSTOMER = ?");
+        leasesWithCustomer = statements.register("dailyStatsLeasesWithCustomer",
+                "SELECT IDCAR, DATEFROM, DATETO, PRICE FROM LEASES WHERE IDCUSTOMER IS NOT NULL");
+        updateDays = statements.register("dailyStatsUpdateDays",
+                "UPDATE DAILY_STATS SET REVENUE = REVENUE + CASE WHEN DAY < ? THEN ? ELSE ? END,"
+                + " LEASES = LEASES + ? WHERE IDCAR=? AND DAY BETWEEN ? AND ?");
+        for (int digits = 1; digits <= MAX_OFFSET_DIGITS; digits++) {
+            insertMissingDays[digits - 1] = statements.register("dailyStatsInsertMissingDays[" + digits + "]",
+                    insertMissingDaysQuery(digits));
+        }
+        deleteEmptyDays = statements.register("dailyStatsDeleteEmptyDays",
+                "DELETE FROM DAILY_STATS WHERE IDCAR=? AND DAY BETWEEN ? AND ? AND LEASES <= 0");
+        deleteAllDays = statements.register("dailyStatsDeleteAllDays",
+                "DELETE FROM DAILY_STATS");
+    }
+
+    /**
+     * Forgets whether the table exists, e.g. when the data source was replaced.
+     */
+    void reset() {
+        enabled = false;
+        warned = false;
+    }
+
+    /**
+     * The table is created by a migration which may not have been applied yet.
+     * Once the table is found it is remembered; while it is missing, it is looked
+     * up again by every mutation, so the statistics are kept from the first
+     * mutation after the migration, and a warning is logged the first time.
+     * Leases changed before are counted after {@link DailyStats#rebuild()}.
+     *
+     * @return true when the DAILY_STATS table exists
+     */
+    boolean isEnabled(Connection conn) throws SQLException {
+        if (enabled) {
+            return true;
+        }
+        DatabaseMetaData metaData = conn.getMetaData();
+        try (ResultSet rs = metaData.getTables(null, null, "DAILY_STATS", new String[]{"TABLE"})) {
+            enabled = rs.next();
+        }
+        if (!enabled && !warned) {
+            warned = true;
+            log.log(Level.WARNING, "Table DAILY_STATS does not exist, daily statistics are not kept"
+                    + " until the database is migrated");
+        }
+        return enabled;
+    }
+
+    void addLease(Connection conn, long carId, LocalDate from, LocalDate to, BigDecimal price) throws SQLException {
+        if (isEnabled(conn) && from != null && to != null && price != null) {
+            apply(conn, carId, from.toEpochDay(), to.toEpochDay(), toCents(price), 1);
+        }
+    }
+
+    /**
+     * Subtracts the lease as it is stored in the database, before it is updated or deleted.
+     */
+    void removeLease(Connection conn, long leaseId) throws SQLException {
+        if (!isEnabled(conn)) {
+            return;
+        }
+        try (PreparedStatement st = statements.prepare(conn, leaseRow)) {
+            st.setLong(1, leaseId);
+            try (ResultSet rs = st.executeQuery()) {
+                if (rs.next()) {
+                    removeRow(conn, rs);
+                }
+            }
+        }
+    }
+
+    /**
+     * Subtracts the leases which are going to be deleted by {@code deleteLeasesEndedBefore}.
+     */
+    void removeLeasesEndedBefore(Connection conn, LocalDate date) throws SQLException {
+        if (!isEnabled(conn)) {
+            return;
+        }
+        try (PreparedStatement st = statements.prepare(conn, leasesEndedBefore)) {
+            st.setDate(1, Date.valueOf(date));
+            removeRows(conn, st);
+        }
+    }
+
+    /**
+     * Subtracts the leases of the customer, which are deleted together with it.
+     */
+    void removeLeasesOfCustomer(Connection conn, long customerId) throws SQLException {
+        if (!isEnabled(conn)) {
+            return;
+        }
+        try (PreparedStatement st = statements.prepare(conn, leasesOfCustomer)) {
+            st.setLong(1, customerId);
+            removeRows(conn, st);
+        }
+    }
+
+    /**
+     * Subtracts the leases of all customers, which are deleted together with them;
+     * leases without a customer stay counted.
+     */
+    void removeLeasesOfAllCustomers(Connection conn) throws SQLException {
+        if (!isEnabled(conn)) {
+            return;
+        }
+        try (PreparedStatement st = statements.prepare(conn, leasesWithCustomer)) {
+            removeRows(conn, st);
+        }
+    }
+
+    void removeAll(Connection conn) throws SQLException {
+        if (isEnabled(conn)) {
+            try (PreparedStatement st = statements.prepare(conn, deleteAllDays)) {
+                st.executeUpdate();
+            }
+        }
+    }
+
+    private void removeRows(Connection conn, PreparedStatement st) throws SQLException {
+        try (ResultSet rs = st.executeQuery()) {
+            while (rs.next()) {
+                removeRow(conn, rs);
+            }
+        }
+    }
+
+    private void removeRow(Connection conn, ResultSet rs) throws SQLException {
+        long carId = rs.getLong(1);
+        boolean noCar = rs.wasNull();
+        Date from = rs.getDate(2);
+        Date to = rs.getDate(3);
+        BigDecimal price = rs.getBigDecimal(4);
+        if (!noCar && from != null && to != null && price != null) {
+            apply(conn, carId, from.toLocalDate().toEpochDay(), to.toLocalDate().toEpochDay(), toCents(price), -1);
+        }
+    }
+
+    private void apply(Connection conn, long carId, long firstDay, long lastDay, long cents, int sign)
+            throws SQLException {
+        if (lastDay < firstDay) {
+            return;
+        }
+        long days = lastDay - firstDay + 1;
+        if (sign > 0) {
+            // empty rows for the missing days, updated below like the existing ones
+            for (long first = firstDay; first <= lastDay; first += MAX_OFFSETS) {
+                insertMissingDays(conn, carId, first, Math.min(lastDay - first + 1, MAX_OFFSETS));
+            }
+        }
+        // the remainder of the division goes to the first days, see dayCents
+        try (PreparedStatement st = statements.prepare(conn, updateDays)) {
+            st.setDate(1, Date.valueOf(LocalDate.ofEpochDay(firstDay + cents % days)));
+            st.setBigDecimal(2, BigDecimal.valueOf(sign * (cents / days + 1), 2));
+            st.setBigDecimal(3, BigDecimal.valueOf(sign * (cents / days), 2));
+            st.setInt(4, sign);
+            st.setLong(5, carId);
+            st.setDate(6, Date.valueOf(LocalDate.ofEpochDay(firstDay)));
+            st.setDate(7, Date.valueOf(LocalDate.ofEpochDay(lastDay)));
+            st.executeUpdate();
+        }
+        if (sign < 0) {
+            try (PreparedStatement st = statements.prepare(conn, deleteEmptyDays)) {
+                st.setLong(1, carId);
+                st.setTimestamp(2, Timestamp.valueOf(LocalDate.ofEpochDay(firstDay).atStartOfDay()));
+                st.setDate(3, Date.valueOf(LocalDate.ofEpochDay(lastDay)));
+                st.executeUpdate();
+            }
+        }
+    }
+
+    private void insertMissingDays(Connection conn, long carId, long firstDay, long days) throws SQLException {
+        int digits = 1;
+        for (long offsets = 10; offsets < days; offsets *= 10) {
+            digits++;
+        }
+        try (PreparedStatement st = statements.prepare(conn, insertMissingDays[digits - 1])) {
+            st.setLong(1, carId);
+            st.setTimestamp(2, Timestamp.valueOf(LocalDate.ofEpochDay(firstDay).atStartOfDay()));
+            st.setLong(3, days);
+            st.setLong(4, carId);
+            st.executeUpdate();
+        }
+    }
+
+    /**
+     * Days are generated as offsets from the first day, which are numbers of the
+     * given digits built by joining one table of the ten digits per position.
+     */
+    private static String insertMissingDaysQuery(int digits) {
+        StringBuilder offset = new StringBuilder("D0.N");
+        StringBuilder tables = new StringBuilder("(VALUES 0,1,2,3,4,5,6,7,8,9) AS D0(N)");
+        for (int i = 1, weight = 10; i < digits; i++, weight *= 10) {
+            offset.append(" + ").append(weight).append(" * D").append(i).append(".N");
+            tables.append(", (VALUES 0,1,2,3,4,5,6,7,8,9) AS D").append(i).append("(N)");
+        }
+        return "INSERT INTO DAILY_STATS (DAY, IDCAR, REVENUE, LEASES)"
+                + " SELECT O.DAY, CAST(? AS INT), 0, 0 FROM ("
+                + "SELECT CAST({fn TIMESTAMPADD(SQL_TSI_DAY, " + offset + ", CAST(? AS TIMESTAMP))} AS DATE) AS DAY, " + offset + " AS N"
+                + " FROM " + tables + ") O"
+                + " WHERE O.N < ? AND NOT EXISTS"
+                + " (SELECT 1 FROM DAILY_STATS S WHERE S.IDCAR = ? AND S.DAY = O.DAY)";
+    }
+
+    /**
+     * @return part of the price in cents which belongs to the day with the given index
+     */
+    static long dayCents(long cents, int days, int index) {
+        return cents / days + (index < cents % days ? 1 : 0);
+    }
+
+    static long toCents(BigDecimal price) {
+        return price.setScale(2).unscaledValue().longValueExact();
+    }
+}
@@ -0,0 +1,47 @@
+package PV168;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Revenue and occupancy of the fleet in one day.
+ */
+public class DailySummary {
+
+    private final LocalDate day;
+    private final BigDecimal revenue;
+    private final int occupiedCars;
+
+    public DailySummary(LocalDate day, BigDecimal revenue, int occupiedCars) {
+        this.day = day;
+        this.revenue = revenue;
+        this.occupiedCars = occupiedCars;
+    }
+
+    public LocalDate getDay() {
+        return day;
+    }
+
+    /**
+     * @return sum of the parts of lease prices which belong to the day
+     */
+    public BigDecimal getRevenue() {
+        return revenue;
+    }
+
+    /**
+     * @return number of cars leased in the day
+     */
+    public int getOccupiedCars() {
+        return occupiedCars;
+    }
+
+    @Override
+    public String toString() {
+        return "DailySummary{" +
+                "day=" + day +
+                ", revenue=" + revenue +
+                ", occupiedCars=" + occupiedCars +
+                '}';
+    }
+}
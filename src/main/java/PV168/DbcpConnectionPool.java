@@ -0,0 +1,96 @@
+package PV168;
+
+import org.apache.commons.dbcp.BasicDataSource;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Connection pool backed by commons-dbcp {@link BasicDataSource}.
+ * <p>
+ * Recognized properties are {@code DBDriverClassName}, {@code DBUrl},
+ * {@code DBName}, {@code DBUsername}, {@code DBPassword} and the pool settings
+ * {@code DBPoolInitialSize}, {@code DBPoolMinIdle}, {@code DBPoolMaxIdle},
+ * {@code DBPoolMaxActive}, {@code DBPoolMaxWait} (milliseconds),
+ * {@code DBPoolValidationQuery} and {@code DBPoolMaxOpenStatements}. Statement
+ * pooling is enabled unless the last one is zero.
+ */
+public class DbcpConnectionPool implements ConnectionPool {
+
+    private static final Logger log = Logger.getLogger(
+            DbcpConnectionPool.class.getName());
+
+    /**
+     * Enough for all statements of the managers, which go through {@link StatementRegistry}.
+     */
+    public static final int DEFAULT_MAX_OPEN_STATEMENTS = 100;
+
+    private final BasicDataSource pool;
+    private final InstrumentedDataSource dataSource;
+
+    public DbcpConnectionPool(Properties prop) {
+        pool = new BasicDataSource();
+        pool.setDriverClassName(prop.getProperty("DBDriverClassName"));
+        pool.setUrl(prop.getProperty("DBUrl") + prop.getProperty("DBName", ""));
+        if (prop.getProperty("DBUsername") != null) {
+            pool.setUsername(prop.getProperty("DBUsername"));
+            pool.setPassword(prop.getProperty("DBPassword"));
+        }
+
+        pool.setInitialSize(intProperty(prop, "DBPoolInitialSize", 0));
+        pool.setMinIdle(intProperty(prop, "DBPoolMinIdle", 0));
+        pool.setMaxIdle(intProperty(prop, "DBPoolMaxIdle", 8));
+        pool.setMaxActive(intProperty(prop, "DBPoolMaxActive", 8));
+        pool.setMaxWait(intProperty(prop, "DBPoolMaxWait", -1));
+
+        String validationQuery = prop.getProperty("DBPoolValidationQuery");
+        if (validationQuery != null && !validationQuery.trim().isEmpty()) {
+            pool.setValidationQuery(validationQuery);
+            pool.setTestOnBorrow(true);
+        }
+
+        int maxOpenStatements = intProperty(prop, "DBPoolMaxOpenStatements", DEFAULT_MAX_OPEN_STATEMENTS);
+        if (maxOpenStatements > 0) {
+            pool.setPoolPreparedStatements(true);
+            pool.setMaxOpenPreparedStatements(maxOpenStatements);
+        }
+
+        dataSource = new InstrumentedDataSource(pool);
+    }
+
+    @Override
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    @Override
+    public PoolStats getStats() {
+        return new PoolStats(pool.getNumActive(), pool.getNumIdle(), pool.getMaxActive(),
+                dataSource.getWaiters(), dataSource.getConnectionsServed(),
+                dataSource.getTotalWaitNanos(), dataSource.getMaxWaitNanos());
+    }
+
+    @Override
+    public void close() {
+        try {
+            pool.close();
+        } catch (SQLException ex) {
+            log.log(Level.SEVERE, "Error when closing connection pool", ex);
+        }
+    }
+
+    static int intProperty(Properties prop, String name, int defaultValue) {
+        String value = prop.getProperty(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("property " + name + " is not a number: " + value, ex);
+        }
+    }
+}
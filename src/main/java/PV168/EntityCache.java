@@ -0,0 +1,115 @@
+package PV168;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded cache of entities with least recently used eviction and a time to live.
+ * <p>
+ * Values loaded from the database can race with invalidations of the same entity,
+ * so {@link #put(Object, Object, long)} takes the stamp obtained by {@link #stamp()}
+ * before the value was loaded and drops the value when anything was invalidated
+ * in the meantime.
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the cached entities
+ */
+public class EntityCache<K, V> {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<K, Entry<V>> entries;
+    private long invalidations;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxSize maximal number of cached entities, zero disables the cache
+     * @param ttl how long an entity stays in the cache after it was loaded
+     * @param unit unit of the ttl
+     */
+    public EntityCache(int maxSize, long ttl, TimeUnit unit) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("cache size is negative");
+        }
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("time to live is not positive");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @param key key of the entity
+     * @return cached entity or null when it is not cached or expired
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && System.nanoTime() - entry.loaded > ttlNanos) {
+            entries.remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    /**
+     * @return stamp to be passed to {@link #put(Object, Object, long)}
+     */
+    public synchronized long stamp() {
+        return invalidations;
+    }
+
+    /**
+     * Caches the entity unless an invalidation happened since the stamp was taken.
+     *
+     * @param key key of the entity
+     * @param value entity loaded after the stamp was taken
+     * @param stamp value of {@link #stamp()} taken before the entity was loaded
+     */
+    public synchronized void put(K key, V value, long stamp) {
+        if (maxSize == 0 || stamp != invalidations) {
+            return;
+        }
+        entries.put(key, new Entry<>(value, System.nanoTime()));
+        Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxSize) {
+            eldest.next();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void invalidate(K key) {
+        invalidations++;
+        entries.remove(key);
+    }
+
+    public synchronized void invalidateAll() {
+        invalidations++;
+        entries.clear();
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hits, misses, evictions, entries.size());
+    }
+
+    private static final class Entry<V> {
+
+        private final V value;
+        private final long loaded;
+
+        Entry(V value, long loaded) {
+            this.value = value;
+            this.loaded = loaded;
+        }
+    }
+}
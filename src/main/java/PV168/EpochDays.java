@@ -0,0 +1,69 @@
+package PV168;
+
+/**
+ * Conversions of dates to days since 1970-01-01 without allocating {@code java.sql.Date}
+ * or {@code LocalDate} objects.
+ * <p>
+ * Date columns are selected as integers {@code yyyymmdd} with the expression of
+ * {@link #ymd(String)}, read with {@code ResultSet.getInt} and converted by
+ * {@link #fromYmd(int)}. Amounts are selected as scaled cents with the expression
+ * of {@link #cents(String)} and read with {@code ResultSet.getLong}.
+ */
+final class EpochDays {
+
+    private EpochDays() {
+    }
+
+    /**
+     * @param column date column
+     * @return SQL expression of the date as the integer {@code yyyymmdd}, null when the date is null
+     */
+    static String ymd(String column) {
+        return "(YEAR(" + column + ") * 10000 + MONTH(" + column + ") * 100 + DAY(" + column + "))";
+    }
+
+    /**
+     * The decimal is multiplied exactly and the cast only drops the zero fraction,
+     * so amounts of scale 2 are read without rounding.
+     *
+     * @param column DECIMAL column of scale 2
+     * @return SQL expression of the amount in cents as BIGINT, null when the amount is null
+     */
+    static String cents(String column) {
+        return "CAST(" + column + " * 100 AS BIGINT)";
+    }
+
+    /**
+     * @param ymd date as the integer {@code yyyymmdd}
+     * @return number of days since 1970-01-01
+     */
+    static long fromYmd(int ymd) {
+        return of(ymd / 10000, ymd / 100 % 100, ymd % 100);
+    }
+
+    /**
+     * Days of the proleptic Gregorian calendar, as {@code LocalDate.toEpochDay}.
+     *
+     * @param year year
+     * @param month month from 1 to 12
+     * @param day day of the month from 1
+     * @return number of days since 1970-01-01
+     */
+    static long of(long year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * @param epochDay number of days since 1970-01-01
+     * @return first day, a Monday, of the ISO week of the day
+     */
+    static long weekStart(long epochDay) {
+        // 1970-01-01 was a Thursday
+        return epochDay - Math.floorMod(epochDay + 3, 7);
+    }
+}
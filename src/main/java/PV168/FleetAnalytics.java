@@ -0,0 +1,250 @@
+package PV168;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes utilization of the fleet from the leases.
+ * <p>
+ * The leases overlapping the period are read in one pass over a forward-only
+ * cursor, reading only the aggregated columns as primitives, see {@link EpochDays},
+ * without hydrating {@link Lease} objects. The per-car sums are kept in primitive
+ * arrays indexed by the position of the car in the sorted array of car ids, so
+ * reading a row does not allocate. Leases are split into months in Java, because
+ * Derby has no function to count days between dates or to clip a range to a month.
+ * <p>
+ * A lease contributes its leased days, clipped to the period, to every month it
+ * overlaps. Its price, count and length are attributed to the month it starts in,
+ * so leases starting before the period contribute days but no revenue. Lengths of
+ * leases ending after the period are counted up to its last day.
+ */
+public class FleetAnalytics {
+
+    private final StatementRegistry statements = new StatementRegistry();
+    private final StatementRegistry.Sql allCars = statements.register("allCars",
+            "SELECT ID, MODEL FROM CARS ORDER BY ID");
+    private final StatementRegistry.Sql leasesInPeriod = statements.register("leasesInPeriod",
+            "SELECT IDCAR, " + EpochDays.ymd("DATEFROM") + ", " + EpochDays.ymd("DATETO") + ", "
+            + EpochDays.cents("PRICE") + " FROM LEASES WHERE IDCAR IS NOT NULL"
+            + " AND (DATEFROM IS NULL OR DATEFROM <= ?) AND (DATETO IS NULL OR DATETO >= ?)");
+
+    private final DataSource dataSource;
+    private int fetchSize = 1000;
+
+    public FleetAnalytics(DataSource dataSource) {
+        if (dataSource == null) {
+            throw new IllegalArgumentException("dataSource is null");
+        }
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Sets number of rows fetched at once when reading the leases.
+     *
+     * @param fetchSize positive number of rows
+     */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException("fetch size is not positive");
+        }
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * @return execution statistics of the statements of this service by their names
+     */
+    public Map<String, StatementStats> getStatementStats() {
+        return statements.getStats();
+    }
+
+    /**
+     * Computes utilization of the fleet in the given period.
+     *
+     * @param from first day of the period
+     * @param to last day of the period
+     * @return utilization per car, per model and per month
+     * @throws IllegalArgumentException when the period is null or empty
+     * @throws ServiceFailureException when the leases can not be read
+     */
+    public UtilizationReport utilization(LocalDate from, LocalDate to) throws ServiceFailureException {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("period is null");
+        }
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("period ends before it starts");
+        }
+        Connection conn = null;
+        PreparedStatement carsSt = null;
+        PreparedStatement leasesSt = null;
+        try {
+            conn = dataSource.getConnection();
+            carsSt = statements.prepare(conn, allCars);
+            Accumulator acc = new Accumulator(from, to, readCars(carsSt));
+            leasesSt = statements.prepare(conn, leasesInPeriod);
+            leasesSt.setFetchSize(fetchSize);
+            leasesSt.setDate(1, Date.valueOf(to));
+            leasesSt.setDate(2, Date.valueOf(from));
+            try (ResultSet rs = leasesSt.executeQuery()) {
+                while (rs.next()) {
+                    long carId = rs.getLong(1);
+                    int dateFrom = rs.getInt(2);
+                    long leaseFrom = rs.wasNull() ? Long.MIN_VALUE : EpochDays.fromYmd(dateFrom);
+                    int dateTo = rs.getInt(3);
+                    long leaseTo = rs.wasNull() ? Long.MAX_VALUE : EpochDays.fromYmd(dateTo);
+                    acc.add(carId, leaseFrom, leaseTo, rs.getLong(4));
+                }
+            }
+            return acc.toReport();
+        } catch (SQLException ex) {
+            throw new ServiceFailureException("Error when computing utilization", ex);
+        } finally {
+            DBUtils.closeQuietly(conn, carsSt, leasesSt);
+        }
+    }
+
+    private static List<Object[]> readCars(PreparedStatement st) throws SQLException {
+        List<Object[]> cars = new ArrayList<>();
+        try (ResultSet rs = st.executeQuery()) {
+            while (rs.next()) {
+                cars.add(new Object[]{rs.getLong(1), rs.getString(2)});
+            }
+        }
+        return cars;
+    }
+
+    /**
+     * Sums of one pass over the leases.
+     */
+    private static final class Accumulator {
+
+        private final LocalDate periodFrom;
+        private final LocalDate periodTo;
+        private final long firstDay;
+        private final long lastDay;
+
+        private final long[] carIds;
+        private final String[] models;
+        private final long[] carLeasedDays;
+        private final long[] carRevenue;
+        private final int[] carLeaseCount;
+        private final long[] carLeaseDays;
+
+        /** monthStart[i] is the first day of the i-th month of the period, clipped to the period */
+        private final long[] monthStart;
+        private final long[] monthLeasedDays;
+        private final long[] monthRevenue;
+        private final int[] monthLeaseCount;
+        private final long[] monthLeaseDays;
+
+        Accumulator(LocalDate from, LocalDate to, List<Object[]> cars) {
+            periodFrom = from;
+            periodTo = to;
+            firstDay = from.toEpochDay();
+            lastDay = to.toEpochDay();
+
+            int n = cars.size();
+            carIds = new long[n];
+            models = new String[n];
+            for (int i = 0; i < n; i++) {
+                carIds[i] = (Long) cars.get(i)[0];
+                models[i] = (String) cars.get(i)[1];
+            }
+            carLeasedDays = new long[n];
+            carRevenue = new long[n];
+            carLeaseCount = new int[n];
+            carLeaseDays = new long[n];
+
+            List<Long> starts = new ArrayList<>();
+            for (YearMonth month = YearMonth.from(from); !month.isAfter(YearMonth.from(to)); month = month.plusMonths(1)) {
+                starts.add(Math.max(firstDay, month.atDay(1).toEpochDay()));
+            }
+            monthStart = new long[starts.size()];
+            for (int i = 0; i < monthStart.length; i++) {
+                monthStart[i] = starts.get(i);
+            }
+            monthLeasedDays = new long[monthStart.length];
+            monthRevenue = new long[monthStart.length];
+            monthLeaseCount = new int[monthStart.length];
+            monthLeaseDays = new long[monthStart.length];
+        }
+
+        void add(long carId, long leaseFrom, long leaseTo, long priceCents) {
+            int car = Arrays.binarySearch(carIds, carId);
+            if (car < 0) {
+                // the car was inserted after the cars were read
+                return;
+            }
+            long from = Math.max(leaseFrom, firstDay);
+            long to = Math.min(leaseTo, lastDay);
+            carLeasedDays[car] += to - from + 1;
+            for (int month = monthOf(from); month < monthStart.length && monthStart[month] <= to; month++) {
+                long monthEnd = month + 1 < monthStart.length ? monthStart[month + 1] - 1 : lastDay;
+                monthLeasedDays[month] += Math.min(to, monthEnd) - Math.max(from, monthStart[month]) + 1;
+            }
+            if (leaseFrom >= firstDay) {
+                long length = Math.min(leaseTo, lastDay) - leaseFrom + 1;
+                int month = monthOf(leaseFrom);
+                carRevenue[car] += priceCents;
+                carLeaseCount[car]++;
+                carLeaseDays[car] += length;
+                monthRevenue[month] += priceCents;
+                monthLeaseCount[month]++;
+                monthLeaseDays[month] += length;
+            }
+        }
+
+        private int monthOf(long day) {
+            int index = Arrays.binarySearch(monthStart, day);
+            return index >= 0 ? index : -index - 2;
+        }
+
+        UtilizationReport toReport() {
+            long periodDays = lastDay - firstDay + 1;
+            Map<Long, UtilizationStats> byCar = new LinkedHashMap<>();
+            Map<String, long[]> modelSums = new HashMap<>();
+            long[] total = new long[5];
+            for (int i = 0; i < carIds.length; i++) {
+                byCar.put(carIds[i], new UtilizationStats(periodDays, carLeasedDays[i],
+                        carRevenue[i], carLeaseCount[i], carLeaseDays[i]));
+                long[] sums = modelSums.computeIfAbsent(models[i], model -> new long[5]);
+                for (long[] s : new long[][]{sums, total}) {
+                    s[0] += periodDays;
+                    s[1] += carLeasedDays[i];
+                    s[2] += carRevenue[i];
+                    s[3] += carLeaseCount[i];
+                    s[4] += carLeaseDays[i];
+                }
+            }
+            Map<String, UtilizationStats> byModel = new HashMap<>();
+            for (Map.Entry<String, long[]> entry : modelSums.entrySet()) {
+                byModel.put(entry.getKey(), toStats(entry.getValue()));
+            }
+            Map<YearMonth, UtilizationStats> byMonth = new LinkedHashMap<>();
+            YearMonth month = YearMonth.from(periodFrom);
+            for (int i = 0; i < monthStart.length; i++, month = month.plusMonths(1)) {
+                long monthEnd = i + 1 < monthStart.length ? monthStart[i + 1] - 1 : lastDay;
+                byMonth.put(month, new UtilizationStats(carIds.length * (monthEnd - monthStart[i] + 1),
+                        monthLeasedDays[i], monthRevenue[i], monthLeaseCount[i], monthLeaseDays[i]));
+            }
+            return new UtilizationReport(periodFrom, periodTo, toStats(total), Collections.unmodifiableMap(byCar),
+                    Collections.unmodifiableMap(byModel), Collections.unmodifiableMap(byMonth));
+        }
+
+        private static UtilizationStats toStats(long[] sums) {
+            return new UtilizationStats(sums[0], sums[1], sums[2], (int) sums[3], sums[4]);
+        }
+    }
+}
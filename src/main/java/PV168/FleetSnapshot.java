@@ -0,0 +1,440 @@
+package PV168;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary snapshot of an {@link InMemoryFleetStore}, to start a store warm
+ * instead of reading all cars, customers and leases from the database.
+ * <p>
+ * The file holds a header, a table of the distinct strings, fixed-width records
+ * of cars, customers and leases referring to the strings by index, and the
+ * CRC32 of everything before it. It is read through a {@link MappedByteBuffer},
+ * every distinct string is decoded once and shared by the records using it, and
+ * the indexes of the store are built in bulk. A snapshot is written to a
+ * temporary file which then replaces the previous one, so readers never see a
+ * partial snapshot.
+ * <p>
+ * The header records the greatest car, customer and lease id of the store when
+ * the snapshot was written. {@link #catchUp} reads only the rows with greater
+ * ids from the managers of the database, by keyset pages. Rows with lower ids
+ * which were changed or deleted after the snapshot was written are not seen,
+ * so the snapshot has to be written often enough, see {@link #writePeriodically}.
+ */
+public final class FleetSnapshot {
+
+    private static final Logger log = Logger.getLogger(
+            FleetSnapshot.class.getName());
+
+    static final int MAGIC = 0x52435331;
+    static final int VERSION = 1;
+    /** magic, version, numbers of strings, string bytes, cars, customers, leases, greatest ids */
+    static final int HEADER_SIZE = 7 * 4 + 3 * 8;
+    /** id, license plate, model, price, kilometers */
+    static final int CAR_SIZE = 8 + 4 + 4 + 9 + 9;
+    /** id, name, address, phone number */
+    static final int CUSTOMER_SIZE = 8 + 4 + 4 + 4;
+    /** id, customer id, car id, first day, last day, price */
+    static final int LEASE_SIZE = 8 + 8 + 8 + 4 + 4 + 9;
+
+    public static final int DEFAULT_PAGE_SIZE = 10000;
+
+    private static final int NO_STRING = -1;
+    private static final int NO_DAY = Integer.MIN_VALUE;
+    private static final byte NO_DECIMAL = Byte.MIN_VALUE;
+    private static final int MAX_SHARED_PRICES = 1 << 16;
+
+    private FleetSnapshot() {
+    }
+
+    /**
+     * Writes a snapshot of the store. Entities changed while the snapshot is
+     * written may be in the snapshot in their old or new state.
+     *
+     * @param store written store
+     * @param file snapshot file, replaced when it exists
+     * @throws IOException when the file can not be written
+     * @throws IllegalArgumentException when a price or a number of kilometers
+     *         does not fit 64 bits with a scale of one byte
+     */
+    public static void write(InMemoryFleetStore store, Path file) throws IOException {
+        long highCarId = store.carSequence.get();
+        long highCustomerId = store.customerSequence.get();
+        long highLeaseId = store.leaseSequence.get();
+        List<Car> cars = store.cars.values();
+        List<Customer> customers = store.customers.values();
+        List<InMemoryFleetStore.LeaseRow> leases = store.leases.values();
+
+        StringTable strings = new StringTable();
+        for (Car car : cars) {
+            strings.add(car.getLicensePlate());
+            strings.add(car.getModel());
+        }
+        for (Customer customer : customers) {
+            strings.add(customer.getName());
+            strings.add(customer.getAddress());
+            strings.add(customer.getPhoneNumber());
+        }
+
+        Path dir = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            CRC32 crc = new CRC32();
+            try (OutputStream os = Files.newOutputStream(temp)) {
+                CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(os, 1 << 16), crc);
+                DataOutputStream out = new DataOutputStream(checked);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(strings.size());
+                out.writeInt(strings.bytes);
+                out.writeInt(cars.size());
+                out.writeInt(customers.size());
+                out.writeInt(leases.size());
+                out.writeLong(highCarId);
+                out.writeLong(highCustomerId);
+                out.writeLong(highLeaseId);
+                int offset = 0;
+                for (byte[] value : strings.values) {
+                    out.writeInt(offset);
+                    offset += value.length;
+                }
+                out.writeInt(offset);
+                for (byte[] value : strings.values) {
+                    out.write(value);
+                }
+                for (Car car : cars) {
+                    out.writeLong(car.getId());
+                    out.writeInt(strings.indexOf(car.getLicensePlate()));
+                    out.writeInt(strings.indexOf(car.getModel()));
+                    writeDecimal(out, car.getPrice());
+                    writeDecimal(out, car.getNumberOfKM());
+                }
+                for (Customer customer : customers) {
+                    out.writeLong(customer.getId());
+                    out.writeInt(strings.indexOf(customer.getName()));
+                    out.writeInt(strings.indexOf(customer.getAddress()));
+                    out.writeInt(strings.indexOf(customer.getPhoneNumber()));
+                }
+                for (InMemoryFleetStore.LeaseRow row : leases) {
+                    out.writeLong(row.id);
+                    out.writeLong(row.customerId);
+                    out.writeLong(row.carId);
+                    out.writeInt(row.dateFrom == null ? NO_DAY : (int) row.dateFrom.toEpochDay());
+                    out.writeInt(row.dateTo == null ? NO_DAY : (int) row.dateTo.toEpochDay());
+                    writeDecimal(out, row.price);
+                }
+                out.flush();
+                // the checksum itself is not checksummed
+                new DataOutputStream(os).writeInt((int) crc.getValue());
+            }
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Reads a snapshot into a new store.
+     *
+     * @param file snapshot file
+     * @return store with the entities of the snapshot
+     * @throws IOException when the file can not be read or is damaged
+     */
+    public static InMemoryFleetStore read(Path file) throws IOException {
+        return read(file, Clock.systemDefaultZone());
+    }
+
+    /**
+     * Reads a snapshot into a new store.
+     *
+     * @param file snapshot file
+     * @param clock clock of the store
+     * @return store with the entities of the snapshot
+     * @throws IOException when the file can not be read or is damaged
+     */
+    public static InMemoryFleetStore read(Path file, Clock clock) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + 8 || size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot " + file + " has wrong size " + size);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        int checksumAt = buffer.limit() - 4;
+        ByteBuffer content = buffer.duplicate();
+        content.limit(checksumAt);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        if ((int) crc.getValue() != buffer.getInt(checksumAt)) {
+            throw new IOException("Snapshot " + file + " is damaged");
+        }
+
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("File " + file + " is not a fleet snapshot of version " + VERSION);
+        }
+        int stringCount = buffer.getInt();
+        int stringBytes = buffer.getInt();
+        int carCount = buffer.getInt();
+        int customerCount = buffer.getInt();
+        int leaseCount = buffer.getInt();
+        long highCarId = buffer.getLong();
+        long highCustomerId = buffer.getLong();
+        long highLeaseId = buffer.getLong();
+        long expected = (long) HEADER_SIZE + 4L * (stringCount + 1) + stringBytes
+                + (long) CAR_SIZE * carCount + (long) CUSTOMER_SIZE * customerCount
+                + (long) LEASE_SIZE * leaseCount + 4;
+        if (stringCount < 0 || stringBytes < 0 || carCount < 0 || customerCount < 0 || leaseCount < 0
+                || expected != buffer.limit()) {
+            throw new IOException("Snapshot " + file + " has inconsistent header");
+        }
+
+        String[] strings = new String[stringCount];
+        int stringsAt = buffer.position() + 4 * (stringCount + 1);
+        byte[] bytes = new byte[stringBytes];
+        ByteBuffer stringData = buffer.duplicate();
+        stringData.position(stringsAt);
+        stringData.get(bytes);
+        int start = buffer.getInt();
+        for (int i = 0; i < stringCount; i++) {
+            int end = buffer.getInt();
+            strings[i] = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+            start = end;
+        }
+        buffer.position(stringsAt + stringBytes);
+
+        List<Car> cars = new ArrayList<>(carCount);
+        for (int i = 0; i < carCount; i++) {
+            long id = buffer.getLong();
+            String licensePlate = string(strings, buffer.getInt());
+            String model = string(strings, buffer.getInt());
+            BigDecimal price = readDecimal(buffer);
+            BigDecimal numberOfKM = readDecimal(buffer);
+            Car car = new Car(licensePlate, model, price, numberOfKM);
+            car.setId(id);
+            cars.add(car);
+        }
+        List<Customer> customers = new ArrayList<>(customerCount);
+        for (int i = 0; i < customerCount; i++) {
+            long id = buffer.getLong();
+            Customer customer = new Customer(string(strings, buffer.getInt()),
+                    string(strings, buffer.getInt()), string(strings, buffer.getInt()));
+            customer.setId(id);
+            customers.add(customer);
+        }
+        // leases share their days and prices, like the cars and customers share strings
+        List<InMemoryFleetStore.LeaseRow> leases = new ArrayList<>(leaseCount);
+        Map<Integer, LocalDate> days = new HashMap<>();
+        Map<BigDecimal, BigDecimal> prices = new HashMap<>();
+        for (int i = 0; i < leaseCount; i++) {
+            long id = buffer.getLong();
+            long customerId = buffer.getLong();
+            long carId = buffer.getLong();
+            LocalDate from = day(days, buffer.getInt());
+            LocalDate to = day(days, buffer.getInt());
+            BigDecimal price = readDecimal(buffer);
+            if (price != null && prices.size() < MAX_SHARED_PRICES) {
+                price = prices.computeIfAbsent(price, p -> p);
+            } else if (price != null) {
+                price = prices.getOrDefault(price, price);
+            }
+            leases.add(new InMemoryFleetStore.LeaseRow(id, customerId, carId, from, to, price));
+        }
+
+        InMemoryFleetStore store = new InMemoryFleetStore(clock);
+        store.restore(cars, customers, leases);
+        store.carSequence.accumulateAndGet(highCarId, Math::max);
+        store.customerSequence.accumulateAndGet(highCustomerId, Math::max);
+        store.leaseSequence.accumulateAndGet(highLeaseId, Math::max);
+        return store;
+    }
+
+    /**
+     * Adds to the store the cars, customers and leases of the given managers
+     * with ids greater than the greatest ids of the store, e.g. those created
+     * in the database after the snapshot the store was read from was written.
+     * Leases without a car, customer or dates are not added, the store can not
+     * hold them.
+     *
+     * @param store store to update
+     * @param carManager source of cars
+     * @param customerManager source of customers
+     * @param leaseManager source of leases
+     * @param pageSize number of rows read at once
+     * @return number of added entities
+     */
+    public static int catchUp(InMemoryFleetStore store, CarManager carManager, CustomerManager customerManager,
+                              LeaseManager leaseManager, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("page size is not positive");
+        }
+        List<Car> cars = new ArrayList<>();
+        List<Car> carPage = carManager.getCarsAfter(store.carSequence.get(), pageSize);
+        while (!carPage.isEmpty()) {
+            for (Car car : carPage) {
+                cars.add(InMemoryFleetStore.copy(car));
+            }
+            carPage = carManager.getCarsAfter(carPage.get(carPage.size() - 1).getId(), pageSize);
+        }
+        List<Customer> customers = new ArrayList<>();
+        List<Customer> customerPage = customerManager.getCustomersAfter(store.customerSequence.get(), pageSize);
+        while (!customerPage.isEmpty()) {
+            for (Customer customer : customerPage) {
+                customers.add(InMemoryFleetStore.copy(customer));
+            }
+            customerPage = customerManager.getCustomersAfter(
+                    customerPage.get(customerPage.size() - 1).getId(), pageSize);
+        }
+        List<InMemoryFleetStore.LeaseRow> leases = new ArrayList<>();
+        List<Lease> leasePage = leaseManager.getLeasesAfter(store.leaseSequence.get(), pageSize);
+        while (!leasePage.isEmpty()) {
+            for (Lease lease : leasePage) {
+                if (lease.getCar() != null && lease.getCustomer() != null
+                        && lease.getDateFrom() != null && lease.getDateTo() != null) {
+                    leases.add(new InMemoryFleetStore.LeaseRow(lease.getId(), lease));
+                }
+            }
+            leasePage = leaseManager.getLeasesAfter(leasePage.get(leasePage.size() - 1).getId(), pageSize);
+        }
+        store.restore(cars, customers, leases);
+        return cars.size() + customers.size() + leases.size();
+    }
+
+    /**
+     * Reads the snapshot when it exists and adds what the managers of the
+     * database hold beyond it; without a snapshot everything is read from the
+     * managers.
+     *
+     * @param file snapshot file
+     * @param carManager source of cars
+     * @param customerManager source of customers
+     * @param leaseManager source of leases
+     * @return warm store
+     * @throws IOException when the snapshot can not be read or is damaged
+     */
+    public static InMemoryFleetStore warmUp(Path file, CarManager carManager, CustomerManager customerManager,
+                                            LeaseManager leaseManager) throws IOException {
+        long start = System.nanoTime();
+        InMemoryFleetStore store = Files.exists(file) ? read(file) : new InMemoryFleetStore();
+        long read = System.nanoTime();
+        int added = catchUp(store, carManager, customerManager, leaseManager, DEFAULT_PAGE_SIZE);
+        log.log(Level.INFO, "Fleet store warmed up from " + file + " in "
+                + TimeUnit.NANOSECONDS.toMillis(read - start) + " ms, " + added + " newer entities read in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - read) + " ms");
+        return store;
+    }
+
+    /**
+     * Writes a snapshot of the store with a fixed delay between the snapshots.
+     * Failures are logged and the next snapshot is attempted.
+     *
+     * @param store written store
+     * @param file snapshot file
+     * @param executor executor running the writes
+     * @param period delay between the end of a write and the start of the next one
+     * @param unit unit of the period
+     * @return future cancelling the writes
+     */
+    public static ScheduledFuture<?> writePeriodically(InMemoryFleetStore store, Path file,
+                                                       ScheduledExecutorService executor, long period, TimeUnit unit) {
+        if (store == null || file == null || executor == null) {
+            throw new IllegalArgumentException("store, file or executor is null");
+        }
+        return executor.scheduleWithFixedDelay(() -> {
+            try {
+                write(store, file);
+            } catch (IOException | RuntimeException ex) {
+                log.log(Level.WARNING, "Writing snapshot " + file + " failed", ex);
+            }
+        }, period, period, unit);
+    }
+
+    private static void writeDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        if (value == null) {
+            out.writeLong(0);
+            out.writeByte(NO_DECIMAL);
+            return;
+        }
+        BigInteger unscaled = value.unscaledValue();
+        if (unscaled.bitLength() > 63 || value.scale() <= NO_DECIMAL || value.scale() > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("value " + value + " does not fit the snapshot");
+        }
+        out.writeLong(unscaled.longValue());
+        out.writeByte(value.scale());
+    }
+
+    private static BigDecimal readDecimal(ByteBuffer buffer) {
+        long unscaled = buffer.getLong();
+        byte scale = buffer.get();
+        return scale == NO_DECIMAL ? null : BigDecimal.valueOf(unscaled, scale);
+    }
+
+    private static String string(String[] strings, int index) throws IOException {
+        if (index == NO_STRING) {
+            return null;
+        }
+        if (index < 0 || index >= strings.length) {
+            throw new IOException("Snapshot refers to missing string " + index);
+        }
+        return strings[index];
+    }
+
+    private static LocalDate day(Map<Integer, LocalDate> days, int day) {
+        return day == NO_DAY ? null : days.computeIfAbsent(day, LocalDate::ofEpochDay);
+    }
+
+    /**
+     * Distinct strings in the order they were added.
+     */
+    private static final class StringTable {
+
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<byte[]> values = new ArrayList<>();
+        private int bytes;
+
+        void add(String value) {
+            if (value != null && !indexes.containsKey(value)) {
+                byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+                indexes.put(value, values.size());
+                values.add(encoded);
+                bytes += encoded.length;
+            }
+        }
+
+        int indexOf(String value) {
+            return value == null ? NO_STRING : indexes.get(value);
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package PV168;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Secondary index from a key to the ids of the entities with the key.
+ * <p>
+ * The ids of one key are an immutable sorted array which is replaced on every
+ * change of the key, so readers get a consistent snapshot without locking.
+ * The index is updated after the primary map, so readers check the entities
+ * they find against the looked up key.
+ *
+ * @param <K> type of the keys
+ */
+final class IdIndex<K> {
+
+    private static final long[] NO_IDS = new long[0];
+
+    private final ConcurrentMap<K, long[]> ids;
+
+    /**
+     * @param sorted whether the keys are kept in their natural order for range queries
+     */
+    IdIndex(boolean sorted) {
+        ids = sorted ? new ConcurrentSkipListMap<>() : new ConcurrentHashMap<>();
+    }
+
+    void add(K key, long id) {
+        if (key != null) {
+            ids.compute(key, (k, old) -> with(old == null ? NO_IDS : old, id));
+        }
+    }
+
+    /**
+     * Adds the id only when no other id has the key, atomically with the check.
+     *
+     * @return true when the key has just the id afterwards
+     */
+    boolean addIfAbsent(K key, long id) {
+        if (key == null) {
+            return true;
+        }
+        long[] result = ids.compute(key, (k, old) -> old == null || old.length == 0 ? new long[]{id} : old);
+        return result.length == 1 && result[0] == id;
+    }
+
+    void remove(K key, long id) {
+        if (key != null) {
+            ids.computeIfPresent(key, (k, old) -> without(old, id));
+        }
+    }
+
+    /**
+     * @return ids with the key in ascending order
+     */
+    long[] get(K key) {
+        long[] result = key == null ? null : ids.get(key);
+        return result == null ? NO_IDS : result;
+    }
+
+    /**
+     * @return ids by keys in the natural order of the keys, only for a sorted index
+     */
+    NavigableMap<K, long[]> sorted() {
+        return (NavigableMap<K, long[]>) ids;
+    }
+
+    void clear() {
+        ids.clear();
+    }
+
+    /**
+     * Creates a loader which adds many ids at once, copying the ids of every
+     * key once instead of once per added id.
+     *
+     * @return new loader
+     */
+    Loader loader() {
+        return new Loader();
+    }
+
+    /**
+     * Collects ids by keys and adds them to the index.
+     */
+    final class Loader {
+
+        private final Map<K, Ids> added = new HashMap<>();
+
+        void add(K key, long id) {
+            if (key == null) {
+                return;
+            }
+            Ids ids = added.get(key);
+            if (ids == null) {
+                ids = new Ids();
+                added.put(key, ids);
+            }
+            ids.add(id);
+        }
+
+        /**
+         * Adds the collected ids to the index.
+         */
+        void install() {
+            for (Map.Entry<K, Ids> entry : added.entrySet()) {
+                long[] values = Arrays.copyOf(entry.getValue().values, entry.getValue().size);
+                Arrays.sort(values);
+                ids.merge(entry.getKey(), distinct(values), IdIndex::union);
+            }
+        }
+    }
+
+    /**
+     * Growable ids of one key collected by a {@link Loader}.
+     */
+    private static final class Ids {
+
+        long[] values = new long[4];
+        int size;
+
+        void add(long id) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = id;
+        }
+    }
+
+    private static long[] distinct(long[] sorted) {
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[n++] = sorted[i];
+            }
+        }
+        return n == sorted.length ? sorted : Arrays.copyOf(sorted, n);
+    }
+
+    /**
+     * @return sorted ids of both sorted arrays, each once
+     */
+    private static long[] union(long[] a, long[] b) {
+        long[] result = new long[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length || j < b.length) {
+            long next;
+            if (j == b.length || (i < a.length && a[i] <= b[j])) {
+                next = a[i++];
+            } else {
+                next = b[j++];
+            }
+            if (n == 0 || result[n - 1] != next) {
+                result[n++] = next;
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    private static long[] with(long[] ids, long id) {
+        int pos = Arrays.binarySearch(ids, id);
+        if (pos >= 0) {
+            return ids;
+        }
+        pos = -pos - 1;
+        long[] result = new long[ids.length + 1];
+        System.arraycopy(ids, 0, result, 0, pos);
+        result[pos] = id;
+        System.arraycopy(ids, pos, result, pos + 1, ids.length - pos);
+        return result;
+    }
+
+    /**
+     * @return the ids without the id, null when none is left so that the key is removed
+     */
+    private static long[] without(long[] ids, long id) {
+        int pos = Arrays.binarySearch(ids, id);
+        if (pos < 0) {
+            return ids;
+        }
+        if (ids.length == 1) {
+            return null;
+        }
+        long[] result = new long[ids.length - 1];
+        System.arraycopy(ids, 0, result, 0, pos);
+        System.arraycopy(ids, pos + 1, result, pos, ids.length - pos - 1);
+        return result;
+    }
+}
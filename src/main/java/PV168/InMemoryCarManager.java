@@ -0,0 +1,259 @@
+package PV168;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * {@link CarManager} of an {@link InMemoryFleetStore}.
+ */
+class InMemoryCarManager implements CarManager {
+
+    private static final Comparator<Car> BY_ID = Comparator.comparingLong(Car::getId);
+
+    private final InMemoryFleetStore store;
+
+    InMemoryCarManager(InMemoryFleetStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void addCar(Car car) {
+        if (car == null) {
+            throw new IllegalArgumentException("car is null");
+        }
+        if (car.getId() != null) {
+            throw new IllegalArgumentException("new car should not have id");
+        }
+        CarManagerImpl.validate(car);
+        long id = store.carSequence.incrementAndGet();
+        Car stored = InMemoryFleetStore.copy(car);
+        stored.setId(id);
+        reserveLicensePlate(stored.getLicensePlate(), id, "Error when inserting car " + car);
+        store.cars.put(id, stored);
+        car.setId(id);
+    }
+
+    /**
+     * Adds the cars one by one; a car which is not valid or whose license plate
+     * is already used is reported as a failure and the others are added.
+     */
+    @Override
+    public BulkInsertResult<Car> addCars(Collection<Car> cars) {
+        if (cars == null) {
+            throw new IllegalArgumentException("cars are null");
+        }
+        BulkInsertResult<Car> result = new BulkInsertResult<>();
+        int index = 0;
+        for (Car car : cars) {
+            try {
+                addCar(car);
+                result.addInserted(car);
+            } catch (IllegalArgumentException | ServiceFailureException ex) {
+                result.addFailure(index, car, ex);
+            }
+            index++;
+        }
+        return result;
+    }
+
+    @Override
+    public void deleteCar(Car car) {
+        CarManagerImpl.validate(car);
+        if (car.getId() == null) {
+            throw new IllegalArgumentException("car id is null");
+        }
+        long id = car.getId();
+        if (!removeCar(id)) {
+            throw new ServiceFailureException("did not delete car " + car);
+        }
+    }
+
+    /**
+     * Deletes all cars, together with their leases.
+     *
+     * @return number of deleted cars
+     */
+    @Override
+    public int deleteAllCars() {
+        int count = 0;
+        for (Car car : store.cars.values()) {
+            if (removeCar(car.getId())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Removes the car under its lock, so that no lease is created for it
+     * afterwards, and then its leases.
+     *
+     * @return true when the car existed
+     */
+    private boolean removeCar(long id) {
+        Car stored;
+        Lock lock = store.carLocks.lock(id);
+        try {
+            stored = store.cars.remove(id);
+        } finally {
+            lock.unlock();
+        }
+        if (stored == null) {
+            return false;
+        }
+        store.carsByLicensePlate.remove(stored.getLicensePlate(), id);
+        store.removeLeases(store.leasesByCar.get(id));
+        return true;
+    }
+
+    @Override
+    public void editCar(Car car) {
+        if (car == null) {
+            throw new IllegalArgumentException("car is null");
+        }
+        CarManagerImpl.validate(car);
+        if (car.getId() == null) {
+            throw new IllegalArgumentException("car id is null");
+        }
+        long id = car.getId();
+        Lock lock = store.carLocks.lock(id);
+        try {
+            Car old = store.cars.get(id);
+            if (old == null) {
+                throw new IllegalArgumentException("cannot update car" + car);
+            }
+            boolean plateChanged = !old.getLicensePlate().equals(car.getLicensePlate());
+            if (plateChanged) {
+                reserveLicensePlate(car.getLicensePlate(), id, "Error, when updating car from DB.");
+            }
+            store.cars.put(id, InMemoryFleetStore.copy(car));
+            if (plateChanged) {
+                store.carsByLicensePlate.remove(old.getLicensePlate(), id);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Indexes the license plate for the car unless another car has it, which
+     * fails like the unique license plate index of the database.
+     */
+    private void reserveLicensePlate(String licensePlate, long id, String message) {
+        if (!store.carsByLicensePlate.addIfAbsent(licensePlate, id)) {
+            throw new ServiceFailureException(message + ": license plate " + licensePlate + " is already used");
+        }
+    }
+
+    @Override
+    public List<Car> getAllCars() {
+        List<Car> cars = store.cars.values();
+        cars.sort(BY_ID);
+        cars.replaceAll(InMemoryFleetStore::copy);
+        return cars;
+    }
+
+    @Override
+    public Stream<Car> streamAllCars() {
+        return getAllCars().stream();
+    }
+
+    @Override
+    public List<Car> getCarsAfter(Long lastId, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("page limit is not positive");
+        }
+        long after = lastId == null ? 0 : lastId;
+        return store.cars.values().stream()
+                .filter(car -> car.getId() > after)
+                .sorted(BY_ID)
+                .limit(limit)
+                .map(InMemoryFleetStore::copy)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Car getCarById(Long id) {
+        if (id == null) {
+            throw new IllegalArgumentException("id is null");
+        }
+        if (id < 0) {
+            throw new IllegalArgumentException("id is negative ");
+        }
+        Car car = store.cars.get(id);
+        return car == null ? null : InMemoryFleetStore.copy(car);
+    }
+
+    @Override
+    public Car getCarByLicensePlate(String licensePlate) {
+        if (licensePlate == null) {
+            throw new IllegalArgumentException("license plate is null");
+        }
+        List<Car> found = new ArrayList<>();
+        for (long id : store.carsByLicensePlate.get(licensePlate)) {
+            Car car = store.cars.get(id);
+            if (car != null && car.getLicensePlate().equals(licensePlate)) {
+                found.add(car);
+            }
+        }
+        if (found.size() > 1) {
+            throw new ServiceFailureException(
+                    "Internal error: More cars with the same license plate found "
+                            + "(license plate: " + licensePlate + ", found " + found.get(0) + " and " + found.get(1));
+        }
+        return found.isEmpty() ? null : InMemoryFleetStore.copy(found.get(0));
+    }
+
+    /**
+     * Checks whether the car is not leased today.
+     */
+    @Override
+    public boolean getAvailabilityOfCar(Long id) {
+        LocalDate today = LocalDate.now(store.clock);
+        return isCarAvailable(id, today, today);
+    }
+
+    @Override
+    public boolean isCarAvailable(Long id, LocalDate from, LocalDate to) {
+        if (id == null) {
+            throw new IllegalArgumentException("id is null");
+        }
+        if (id < 0) {
+            throw new IllegalArgumentException("id is negative ");
+        }
+        return getAvailableCars(Collections.singletonList(id), from, to).contains(id);
+    }
+
+    @Override
+    public Set<Long> getAvailableCars(Collection<Long> ids, LocalDate from, LocalDate to) {
+        if (ids == null) {
+            throw new IllegalArgumentException("ids are null");
+        }
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("date range is null");
+        }
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("Date to should not be before date from");
+        }
+        Set<Long> available = new LinkedHashSet<>();
+        for (Long id : ids) {
+            if (id == null) {
+                throw new IllegalArgumentException("id is null");
+            }
+            if (id > 0 && store.cars.get(id) != null
+                    && store.leaseRanges.findConflict(id, from, to, null) == null) {
+                available.add(id);
+            }
+        }
+        return available;
+    }
+}
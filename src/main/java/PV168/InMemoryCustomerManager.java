@@ -0,0 +1,157 @@
+package PV168;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * {@link CustomerManager} of an {@link InMemoryFleetStore}.
+ */
+class InMemoryCustomerManager implements CustomerManager {
+
+    private static final Comparator<Customer> BY_ID = Comparator.comparingLong(Customer::getId);
+
+    private final InMemoryFleetStore store;
+
+    InMemoryCustomerManager(InMemoryFleetStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void createCustomer(Customer customer) {
+        if (customer == null) {
+            throw new IllegalArgumentException("Customer is null");
+        }
+        if (customer.getId() != null) {
+            throw new IllegalArgumentException("Customer is already in DB");
+        }
+        CustomerManagerImpl.validate(customer);
+        long id = store.customerSequence.incrementAndGet();
+        Customer stored = InMemoryFleetStore.copy(customer);
+        stored.setId(id);
+        store.customers.put(id, stored);
+        customer.setId(id);
+    }
+
+    /**
+     * Creates the customers one by one; a customer who is not valid is reported
+     * as a failure and the others are created.
+     */
+    @Override
+    public BulkInsertResult<Customer> createCustomers(Collection<Customer> customers) {
+        if (customers == null) {
+            throw new IllegalArgumentException("customers are null");
+        }
+        BulkInsertResult<Customer> result = new BulkInsertResult<>();
+        int index = 0;
+        for (Customer customer : customers) {
+            try {
+                createCustomer(customer);
+                result.addInserted(customer);
+            } catch (IllegalArgumentException ex) {
+                result.addFailure(index, customer, ex);
+            }
+            index++;
+        }
+        return result;
+    }
+
+    @Override
+    public void updateCustomer(Customer customer) {
+        if (customer == null) {
+            throw new IllegalArgumentException("Customer is null");
+        }
+        if (customer.getId() == null) {
+            throw new IllegalArgumentException("Customer isn't in DB");
+        }
+        CustomerManagerImpl.validate(customer);
+        if (store.customers.replace(customer.getId(), InMemoryFleetStore.copy(customer)) == null) {
+            throw new IllegalArgumentException("customer id not found");
+        }
+    }
+
+    @Override
+    public void deleteCustomer(Customer customer) {
+        if (customer == null) {
+            throw new IllegalArgumentException("Customer is null");
+        }
+        if (customer.getId() == null) {
+            throw new IllegalArgumentException("Customer isn't in DB");
+        }
+        if (!removeCustomer(customer.getId())) {
+            throw new IllegalArgumentException("customer not found");
+        }
+    }
+
+    /**
+     * Deletes all customers, together with their leases.
+     *
+     * @return number of deleted customers
+     */
+    @Override
+    public int deleteAllCustomers() {
+        int count = 0;
+        for (Customer customer : store.customers.values()) {
+            if (removeCustomer(customer.getId())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Removes the customer and then the leases of the customer. A lease created
+     * concurrently checks that its customer still exists after it is stored, so
+     * it is either found here or removed by its creator.
+     *
+     * @return true when the customer existed
+     */
+    private boolean removeCustomer(long id) {
+        if (store.customers.remove(id) == null) {
+            return false;
+        }
+        store.removeLeases(store.leasesByCustomer.get(id));
+        return true;
+    }
+
+    @Override
+    public Customer findCustomerById(Long id) {
+        if (id == null) {
+            throw new IllegalArgumentException("argumentis null");
+        }
+        if (id < 0) {
+            throw new IllegalArgumentException("id is negative ");
+        }
+        Customer customer = store.customers.get(id);
+        return customer == null ? null : InMemoryFleetStore.copy(customer);
+    }
+
+    @Override
+    public List<Customer> getAllCustomers() {
+        List<Customer> customers = store.customers.values();
+        customers.sort(BY_ID);
+        customers.replaceAll(InMemoryFleetStore::copy);
+        return customers;
+    }
+
+    @Override
+    public Stream<Customer> streamAllCustomers() {
+        return getAllCustomers().stream();
+    }
+
+    @Override
+    public List<Customer> getCustomersAfter(Long lastId, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("page limit is not positive");
+        }
+        long after = lastId == null ? 0 : lastId;
+        return store.customers.values().stream()
+                .filter(customer -> customer.getId() > after)
+                .sorted(BY_ID)
+                .limit(limit)
+                .map(InMemoryFleetStore::copy)
+                .collect(Collectors.toList());
+    }
+}
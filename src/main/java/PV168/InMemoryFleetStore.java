@@ -0,0 +1,329 @@
+package PV168;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Cars, customers and leases kept in memory only, without a database.
+ * <p>
+ * The managers returned by this store share its data and behave like the JDBC
+ * managers on an empty database: ids are generated from 1, leases of deleted cars
+ * and customers are deleted with them and overlapping leases of a car are
+ * rejected. They may replace the JDBC managers where the data need not survive
+ * the process, e.g. in tests, and serve as the baseline the JDBC managers are
+ * measured against.
+ * <p>
+ * Entities are stored by id in {@link LongKeyMap}s as private copies, leases as
+ * rows referring to their car and customer by id, and every read returns new
+ * copies. Secondary indexes by license plate, customer, car and lease dates are
+ * updated after the primary maps, so their readers check the found entities
+ * against the looked up key. Mutations of leases are serialized per car like in
+ * {@link LeaseManagerImpl}, the overlap of leases is checked in a
+ * {@link LeaseIntervalIndex}.
+ */
+public class InMemoryFleetStore {
+
+    private static final int SEGMENTS = 64;
+
+    static final Comparator<LeaseRow> BY_ID = Comparator.comparingLong(row -> row.id);
+
+    final LongKeyMap<Car> cars = new LongKeyMap<>(SEGMENTS);
+    final LongKeyMap<Customer> customers = new LongKeyMap<>(SEGMENTS);
+    final LongKeyMap<LeaseRow> leases = new LongKeyMap<>(SEGMENTS);
+    final AtomicLong carSequence = new AtomicLong();
+    final AtomicLong customerSequence = new AtomicLong();
+    final AtomicLong leaseSequence = new AtomicLong();
+
+    final IdIndex<String> carsByLicensePlate = new IdIndex<>(false);
+    final IdIndex<Long> leasesByCar = new IdIndex<>(false);
+    final IdIndex<Long> leasesByCustomer = new IdIndex<>(false);
+    final IdIndex<LocalDate> leasesByDateFrom = new IdIndex<>(true);
+    final IdIndex<LocalDate> leasesByDateTo = new IdIndex<>(true);
+    final LeaseIntervalIndex leaseRanges = new LeaseIntervalIndex();
+    final StripedLocks carLocks = StripedLocks.forAvailableProcessors();
+    final Clock clock;
+
+    private final InMemoryCarManager carManager = new InMemoryCarManager(this);
+    private final InMemoryCustomerManager customerManager = new InMemoryCustomerManager(this);
+    private final InMemoryLeaseManager leaseManager = new InMemoryLeaseManager(this);
+
+    public InMemoryFleetStore() {
+        this(Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param clock clock which decides what today is for {@link CarManager#getAvailabilityOfCar}
+     */
+    public InMemoryFleetStore(Clock clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("clock is null");
+        }
+        this.clock = clock;
+    }
+
+    public CarManager getCarManager() {
+        return carManager;
+    }
+
+    public CustomerManager getCustomerManager() {
+        return customerManager;
+    }
+
+    public LeaseManager getLeaseManager() {
+        return leaseManager;
+    }
+
+    /**
+     * @return statistics of the locks which serialize mutations of leases of one car
+     */
+    public LockStats getLockStats() {
+        return carLocks.getStats();
+    }
+
+    /**
+     * Lease as it is stored, with its car and customer by id.
+     */
+    static final class LeaseRow {
+
+        final long id;
+        final long customerId;
+        final long carId;
+        final LocalDate dateFrom;
+        final LocalDate dateTo;
+        final BigDecimal price;
+
+        LeaseRow(long id, Lease lease) {
+            this(id, lease.getCustomer().getId(), lease.getCar().getId(),
+                    lease.getDateFrom(), lease.getDateTo(), lease.getPrice());
+        }
+
+        LeaseRow(long id, long customerId, long carId, LocalDate dateFrom, LocalDate dateTo, BigDecimal price) {
+            this.id = id;
+            this.customerId = customerId;
+            this.carId = carId;
+            this.dateFrom = dateFrom;
+            this.dateTo = dateTo;
+            this.price = price;
+        }
+    }
+
+    static Car copy(Car car) {
+        Car copy = new Car(car.getLicensePlate(), car.getModel(), car.getPrice(), car.getNumberOfKM());
+        copy.setId(car.getId());
+        return copy;
+    }
+
+    static Customer copy(Customer customer) {
+        Customer copy = new Customer(customer.getName(), customer.getAddress(), customer.getPhoneNumber());
+        copy.setId(customer.getId());
+        return copy;
+    }
+
+    /**
+     * Stores entities with their given ids, e.g. read from a snapshot or from the
+     * database, and adds them to the indexes in bulk. Cars and customers are
+     * stored as given, so they must be private copies. Ids generated afterwards
+     * follow the greatest stored ones.
+     * <p>
+     * The primary maps and every index are built by a task of their own, the
+     * tasks run in parallel on the common fork/join pool.
+     */
+    void restore(List<Car> newCars, List<Customer> newCustomers, List<LeaseRow> newLeases) {
+        Stream.<Runnable>of(
+                () -> restoreCars(newCars),
+                () -> restoreCustomers(newCustomers),
+                () -> restoreLeases(newLeases),
+                () -> index(leasesByCar, newLeases, row -> row.carId),
+                () -> index(leasesByCustomer, newLeases, row -> row.customerId),
+                () -> index(leasesByDateFrom, newLeases, row -> row.dateFrom),
+                () -> index(leasesByDateTo, newLeases, row -> row.dateTo),
+                () -> restoreRanges(newLeases))
+                .parallel()
+                .forEach(Runnable::run);
+    }
+
+    private void restoreCars(List<Car> newCars) {
+        IdIndex<String>.Loader plates = carsByLicensePlate.loader();
+        for (Car car : newCars) {
+            cars.put(car.getId(), car);
+            plates.add(car.getLicensePlate(), car.getId());
+            carSequence.accumulateAndGet(car.getId(), Math::max);
+        }
+        plates.install();
+    }
+
+    private void restoreCustomers(List<Customer> newCustomers) {
+        for (Customer customer : newCustomers) {
+            customers.put(customer.getId(), customer);
+            customerSequence.accumulateAndGet(customer.getId(), Math::max);
+        }
+    }
+
+    private void restoreLeases(List<LeaseRow> newLeases) {
+        long maxId = 0;
+        for (LeaseRow row : newLeases) {
+            leases.put(row.id, row);
+            maxId = Math.max(maxId, row.id);
+        }
+        leaseSequence.accumulateAndGet(maxId, Math::max);
+    }
+
+    private static <K> void index(IdIndex<K> index, List<LeaseRow> newLeases, Function<LeaseRow, K> key) {
+        IdIndex<K>.Loader loader = index.loader();
+        for (LeaseRow row : newLeases) {
+            loader.add(key.apply(row), row.id);
+        }
+        loader.install();
+    }
+
+    private void restoreRanges(List<LeaseRow> newLeases) {
+        if (leaseRanges.size() != 0) {
+            for (LeaseRow row : newLeases) {
+                leaseRanges.add(row.carId, row.id, row.dateFrom, row.dateTo);
+            }
+            return;
+        }
+        LeaseIntervalIndex.Loader ranges = leaseRanges.loader();
+        for (LeaseRow row : newLeases) {
+            ranges.add(row.carId, row.id, row.dateFrom, row.dateTo);
+        }
+        ranges.install();
+    }
+
+    /**
+     * Stores a new lease and adds it to the indexes. Called with the lock of its car.
+     */
+    void insertLease(LeaseRow row) {
+        leases.put(row.id, row);
+        leasesByCar.add(row.carId, row.id);
+        leasesByCustomer.add(row.customerId, row.id);
+        leasesByDateFrom.add(row.dateFrom, row.id);
+        leasesByDateTo.add(row.dateTo, row.id);
+        leaseRanges.add(row.carId, row.id, row.dateFrom, row.dateTo);
+    }
+
+    /**
+     * Replaces a stored lease and moves it in the indexes. Called with the lock of its new car.
+     */
+    void replaceLease(LeaseRow old, LeaseRow row) {
+        leases.put(row.id, row);
+        if (old.carId != row.carId) {
+            leasesByCar.remove(old.carId, row.id);
+            leasesByCar.add(row.carId, row.id);
+        }
+        if (old.customerId != row.customerId) {
+            leasesByCustomer.remove(old.customerId, row.id);
+            leasesByCustomer.add(row.customerId, row.id);
+        }
+        if (!old.dateFrom.equals(row.dateFrom)) {
+            leasesByDateFrom.remove(old.dateFrom, row.id);
+            leasesByDateFrom.add(row.dateFrom, row.id);
+        }
+        if (!old.dateTo.equals(row.dateTo)) {
+            leasesByDateTo.remove(old.dateTo, row.id);
+            leasesByDateTo.add(row.dateTo, row.id);
+        }
+        leaseRanges.add(row.carId, row.id, row.dateFrom, row.dateTo);
+    }
+
+    /**
+     * Removes a lease under the lock of its car.
+     *
+     * @return removed lease or null when it did not exist
+     */
+    LeaseRow removeLease(long leaseId) {
+        while (true) {
+            LeaseRow row = leases.get(leaseId);
+            if (row == null) {
+                return null;
+            }
+            Lock lock = carLocks.lock(row.carId);
+            try {
+                LeaseRow current = leases.get(leaseId);
+                if (current == null) {
+                    return null;
+                }
+                if (current.carId != row.carId) {
+                    // moved to another car before the lock was acquired
+                    continue;
+                }
+                leases.remove(leaseId);
+                leasesByCar.remove(current.carId, leaseId);
+                leasesByCustomer.remove(current.customerId, leaseId);
+                leasesByDateFrom.remove(current.dateFrom, leaseId);
+                leasesByDateTo.remove(current.dateTo, leaseId);
+                leaseRanges.remove(leaseId);
+                return current;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return number of the removed leases
+     */
+    int removeLeases(long[] leaseIds) {
+        int count = 0;
+        for (long leaseId : leaseIds) {
+            if (removeLease(leaseId) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return stored leases with the given ids, in the order of the ids
+     */
+    List<LeaseRow> leaseRows(long[] leaseIds) {
+        List<LeaseRow> rows = new ArrayList<>(leaseIds.length);
+        for (long leaseId : leaseIds) {
+            LeaseRow row = leases.get(leaseId);
+            if (row != null) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    List<LeaseRow> allLeaseRows() {
+        List<LeaseRow> rows = leases.values();
+        Collections.sort(rows, BY_ID);
+        return rows;
+    }
+
+    /**
+     * Creates leases from stored rows with the current state of their cars and
+     * customers. Cars and customers of more leases are copied only once and shared
+     * between the leases.
+     */
+    List<Lease> toLeases(List<LeaseRow> rows) {
+        Map<Long, Customer> customerCopies = new HashMap<>();
+        Map<Long, Car> carCopies = new HashMap<>();
+        List<Lease> result = new ArrayList<>(rows.size());
+        for (LeaseRow row : rows) {
+            Customer customer = customerCopies.computeIfAbsent(row.customerId, id -> {
+                Customer stored = customers.get(id);
+                return stored == null ? null : copy(stored);
+            });
+            Car car = carCopies.computeIfAbsent(row.carId, id -> {
+                Car stored = cars.get(id);
+                return stored == null ? null : copy(stored);
+            });
+            result.add(new Lease(row.id, customer, car, row.dateFrom, row.price, row.dateTo));
+        }
+        return result;
+    }
+}
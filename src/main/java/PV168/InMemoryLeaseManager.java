@@ -0,0 +1,307 @@
+package PV168;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * {@link LeaseManager} of an {@link InMemoryFleetStore}.
+ */
+class InMemoryLeaseManager implements LeaseManager {
+
+    private final InMemoryFleetStore store;
+
+    InMemoryLeaseManager(InMemoryFleetStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void createLease(Lease lease) {
+        LeaseManagerImpl.validateNewLease(lease);
+        long carId = lease.getCar().getId();
+        long id;
+        Lock lock = store.carLocks.lock(carId);
+        try {
+            checkLease(lease, null);
+            id = store.leaseSequence.incrementAndGet();
+            store.insertLease(new InMemoryFleetStore.LeaseRow(id, lease));
+            if (store.customers.get(lease.getCustomer().getId()) == null) {
+                // the customer was deleted concurrently and may have missed the lease
+                store.removeLease(id);
+                throw new IllegalEntityException("Customer " + lease.getCustomer() + " does not exist");
+            }
+        } finally {
+            lock.unlock();
+        }
+        lease.setId(id);
+        lease.getCar().setIsBorrowed(true);
+    }
+
+    /**
+     * Creates the leases one by one; a lease which is not valid or overlaps an
+     * existing lease, including one created earlier by this call, is reported
+     * as a failure and the others are created.
+     */
+    @Override
+    public BulkInsertResult<Lease> createLeases(Collection<Lease> leases) {
+        if (leases == null) {
+            throw new IllegalArgumentException("leases are null");
+        }
+        BulkInsertResult<Lease> result = new BulkInsertResult<>();
+        int index = 0;
+        for (Lease lease : leases) {
+            try {
+                createLease(lease);
+                result.addInserted(lease);
+            } catch (IllegalArgumentException | IllegalEntityException ex) {
+                result.addFailure(index, lease, ex);
+            }
+            index++;
+        }
+        return result;
+    }
+
+    /**
+     * Checks that the car and the customer of the lease exist and that no other
+     * lease of the car overlaps it. Called with the lock of the car.
+     */
+    private void checkLease(Lease lease, Long excludedLeaseId) {
+        long carId = lease.getCar().getId();
+        if (store.cars.get(carId) == null) {
+            throw new IllegalEntityException("Car " + lease.getCar() + " does not exist");
+        }
+        if (store.customers.get(lease.getCustomer().getId()) == null) {
+            throw new IllegalEntityException("Customer " + lease.getCustomer() + " does not exist");
+        }
+        Long conflict = store.leaseRanges.findConflict(carId, lease.getDateFrom(), lease.getDateTo(), excludedLeaseId);
+        if (conflict != null) {
+            throw new IllegalEntityException("Car " + lease.getCar() + " is already leased between "
+                    + lease.getDateFrom() + " and " + lease.getDateTo() + " by lease with id=" + conflict);
+        }
+    }
+
+    @Override
+    public Lease getLeaseByID(Long id) {
+        if (id == null) {
+            throw new IllegalArgumentException("id is null");
+        }
+        if (id < 0) {
+            throw new IllegalArgumentException("id is negative");
+        }
+        InMemoryFleetStore.LeaseRow row = store.leases.get(id);
+        return row == null ? null : store.toLeases(Collections.singletonList(row)).get(0);
+    }
+
+    @Override
+    public List<Lease> getAllLeases() {
+        return store.toLeases(store.allLeaseRows());
+    }
+
+    @Override
+    public Stream<Lease> streamAllLeases() {
+        return getAllLeases().stream();
+    }
+
+    @Override
+    public List<Lease> getLeasesAfter(Long lastId, int limit) {
+        checkPageLimit(limit);
+        long after = lastId == null ? 0 : lastId;
+        List<InMemoryFleetStore.LeaseRow> rows = store.leases.values().stream()
+                .filter(row -> row.id > after)
+                .sorted(InMemoryFleetStore.BY_ID)
+                .limit(limit)
+                .collect(Collectors.toList());
+        return store.toLeases(rows);
+    }
+
+    @Override
+    public List<Lease> getLeasesByDateFromAfter(LocalDate lastDateFrom, Long lastId, int limit) {
+        return getLeasesByDateAfter(store.leasesByDateFrom, true, lastDateFrom, lastId, limit);
+    }
+
+    @Override
+    public List<Lease> getLeasesByDateToAfter(LocalDate lastDateTo, Long lastId, int limit) {
+        return getLeasesByDateAfter(store.leasesByDateTo, false, lastDateTo, lastId, limit);
+    }
+
+    /**
+     * Keyset page ordered by (date, id), read from the sorted date index starting
+     * at the last seen date.
+     */
+    private List<Lease> getLeasesByDateAfter(IdIndex<LocalDate> index, boolean byDateFrom,
+                                             LocalDate lastDate, Long lastId, int limit) {
+        checkPageLimit(limit);
+        if ((lastDate == null) != (lastId == null)) {
+            throw new IllegalArgumentException("last date and last id must be both set or both null");
+        }
+        NavigableMap<LocalDate, long[]> days = lastDate == null
+                ? index.sorted() : index.sorted().tailMap(lastDate, true);
+        List<InMemoryFleetStore.LeaseRow> rows = new ArrayList<>(limit);
+        for (Map.Entry<LocalDate, long[]> day : days.entrySet()) {
+            for (InMemoryFleetStore.LeaseRow row : store.leaseRows(day.getValue())) {
+                LocalDate date = byDateFrom ? row.dateFrom : row.dateTo;
+                if (!day.getKey().equals(date)
+                        || (lastDate != null && date.equals(lastDate) && row.id <= lastId)) {
+                    continue;
+                }
+                rows.add(row);
+                if (rows.size() == limit) {
+                    return store.toLeases(rows);
+                }
+            }
+        }
+        return store.toLeases(rows);
+    }
+
+    private static void checkPageLimit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("page limit is not positive");
+        }
+    }
+
+    @Override
+    public List<Lease> getAllLeasesByEndDate(LocalDate endDate) {
+        if (endDate == null) {
+            throw new IllegalArgumentException("end lease is null");
+        }
+        List<InMemoryFleetStore.LeaseRow> rows = store.leaseRows(store.leasesByDateTo.get(endDate));
+        rows.removeIf(row -> !endDate.equals(row.dateTo));
+        return store.toLeases(rows);
+    }
+
+    @Override
+    public List<Lease> findLeasesForCustomer(Customer customer) {
+        if (customer == null) {
+            throw new IllegalArgumentException("customer is null");
+        }
+        if (customer.getId() == null) {
+            throw new IllegalArgumentException("customer id is null");
+        }
+        long customerId = customer.getId();
+        List<InMemoryFleetStore.LeaseRow> rows = store.leaseRows(store.leasesByCustomer.get(customerId));
+        rows.removeIf(row -> row.customerId != customerId);
+        return store.toLeases(rows);
+    }
+
+    @Override
+    public List<Lease> findLeasesForCar(Car car) {
+        if (car == null) {
+            throw new IllegalArgumentException("car is null");
+        }
+        if (car.getId() == null) {
+            throw new IllegalArgumentException("car id is null");
+        }
+        long carId = car.getId();
+        List<InMemoryFleetStore.LeaseRow> rows = store.leaseRows(store.leasesByCar.get(carId));
+        rows.removeIf(row -> row.carId != carId);
+        return store.toLeases(rows);
+    }
+
+    /**
+     * Filters the leases by a parallel stream, which splits them into parts
+     * filtered by tasks of the common fork/join pool.
+     */
+    @Override
+    public List<Lease> findLeases(LeaseQuery query) {
+        if (query == null) {
+            throw new IllegalArgumentException("query is null");
+        }
+        return getAllLeases().parallelStream()
+                .filter(query::test)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Locks both the car the lease is moved from and the car it is moved to, so
+     * that the lease is not deleted with its old car meanwhile.
+     */
+    @Override
+    public void updateLease(Lease lease) {
+        LeaseManagerImpl.validateLease(lease);
+        if (lease.getId() == null) {
+            throw new IllegalArgumentException("lease id is null");
+        }
+        if (lease.getDateFrom() == null) {
+            throw new IllegalArgumentException("Date from is null");
+        }
+        if (lease.getDateTo().isBefore(lease.getDateFrom())) {
+            throw new IllegalArgumentException("Date to is after real end date.");
+        }
+        long id = lease.getId();
+        long carId = lease.getCar().getId();
+        while (true) {
+            InMemoryFleetStore.LeaseRow old = store.leases.get(id);
+            if (old == null) {
+                throw new IllegalArgumentException("lease with id=" + id + " do not exist");
+            }
+            List<Lock> locks = store.carLocks.lock(old.carId, carId);
+            try {
+                InMemoryFleetStore.LeaseRow current = store.leases.get(id);
+                if (current == null) {
+                    throw new IllegalArgumentException("lease with id=" + id + " do not exist");
+                }
+                if (current.carId == old.carId) {
+                    checkLease(lease, id);
+                    store.replaceLease(current, new InMemoryFleetStore.LeaseRow(id, lease));
+                    return;
+                }
+                // moved to another car before the locks were acquired
+            } finally {
+                for (int i = locks.size() - 1; i >= 0; i--) {
+                    locks.get(i).unlock();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void deleteLease(Lease lease) {
+        if (lease == null) {
+            throw new IllegalArgumentException("lease is null");
+        }
+        if (lease.getId() == null) {
+            throw new IllegalArgumentException("lease id is null");
+        }
+        if (lease.getCar() == null || lease.getCar().getId() == null) {
+            throw new IllegalArgumentException("car of the lease is null");
+        }
+        if (store.removeLease(lease.getId()) == null) {
+            throw new IllegalArgumentException("lease with id=" + lease.getId() + " do not exist");
+        }
+        lease.getCar().setIsBorrowed(false);
+    }
+
+    @Override
+    public int deleteAllLeases() {
+        int count = 0;
+        for (InMemoryFleetStore.LeaseRow row : store.leases.values()) {
+            if (store.removeLease(row.id) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int deleteLeasesEndedBefore(LocalDate date) {
+        if (date == null) {
+            throw new IllegalArgumentException("date is null");
+        }
+        int count = 0;
+        for (long[] ids : store.leasesByDateTo.sorted().headMap(date, false).values()) {
+            for (InMemoryFleetStore.LeaseRow row : store.leaseRows(ids)) {
+                if (row.dateTo.isBefore(date) && store.removeLease(row.id) != null) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,138 @@
+package PV168;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Data source measuring how long callers wait for connections of the underlying
+ * pool and how many of them wait at once.
+ */
+public class InstrumentedDataSource implements DataSource {
+
+    private final DataSource delegate;
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final LongAdder served = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+
+    public InstrumentedDataSource(DataSource delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate is null");
+        }
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = begin();
+        try {
+            return served(delegate.getConnection());
+        } finally {
+            end(start);
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = begin();
+        try {
+            return served(delegate.getConnection(username, password));
+        } finally {
+            end(start);
+        }
+    }
+
+    /**
+     * @return number of threads currently waiting for a connection
+     */
+    public int getWaiters() {
+        return waiters.get();
+    }
+
+    /**
+     * @return number of connections handed out
+     */
+    public long getConnectionsServed() {
+        return served.sum();
+    }
+
+    /**
+     * @return total time spent waiting for connections in nanoseconds
+     */
+    public long getTotalWaitNanos() {
+        return totalWaitNanos.sum();
+    }
+
+    /**
+     * @return longest wait for a single connection in nanoseconds
+     */
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    private long begin() {
+        waiters.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    private Connection served(Connection connection) {
+        served.increment();
+        return connection;
+    }
+
+    private void end(long start) {
+        long waited = System.nanoTime() - start;
+        waiters.decrementAndGet();
+        totalWaitNanos.add(waited);
+        maxWaitNanos.accumulate(waited);
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return delegate.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        delegate.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        delegate.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return delegate.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        // pools built for JDBC 4.0 do not implement this method
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        if (iface.isInstance(delegate)) {
+            return iface.cast(delegate);
+        }
+        return delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || iface.isInstance(delegate) || delegate.isWrapperFor(iface);
+    }
+}
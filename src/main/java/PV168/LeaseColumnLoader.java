@@ -0,0 +1,99 @@
+package PV168;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Reads the leases into {@link LeaseColumns}.
+ * <p>
+ * The leases are read in one pass over a forward-only cursor; dates are selected
+ * as integers {@code yyyymmdd} and prices as cents, see {@link EpochDays}, and
+ * appended to the columns as primitives, so reading a row does not allocate.
+ * The number of leases counted before the pass sizes the columns; leases created
+ * in between grow them.
+ */
+public class LeaseColumnLoader {
+
+    private final StatementRegistry statements = new StatementRegistry();
+    private final StatementRegistry.Sql countLeases = statements.register("countLeases",
+            "SELECT COUNT(*) FROM LEASES");
+    private final StatementRegistry.Sql allLeases = statements.register("allLeases",
+            "SELECT ID, IDCAR, IDCUSTOMER, " + EpochDays.ymd("DATEFROM") + ", " + EpochDays.ymd("DATETO")
+            + ", " + EpochDays.cents("PRICE") + " FROM LEASES");
+
+    private final DataSource dataSource;
+    private int fetchSize = 1000;
+
+    public LeaseColumnLoader(DataSource dataSource) {
+        if (dataSource == null) {
+            throw new IllegalArgumentException("dataSource is null");
+        }
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Sets number of rows fetched at once when reading the leases.
+     *
+     * @param fetchSize positive number of rows
+     */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException("fetch size is not positive");
+        }
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * @return execution statistics of the statements of this service by their names
+     */
+    public Map<String, StatementStats> getStatementStats() {
+        return statements.getStats();
+    }
+
+    /**
+     * Reads all leases.
+     *
+     * @return columns of the leases
+     * @throws ServiceFailureException when the leases can not be read
+     */
+    public LeaseColumns load() throws ServiceFailureException {
+        Connection conn = null;
+        PreparedStatement countSt = null;
+        PreparedStatement leasesSt = null;
+        try {
+            conn = dataSource.getConnection();
+            countSt = statements.prepare(conn, countLeases);
+            int count;
+            try (ResultSet rs = countSt.executeQuery()) {
+                rs.next();
+                count = rs.getInt(1);
+            }
+            LeaseColumns.Builder columns = new LeaseColumns.Builder(count);
+            leasesSt = statements.prepare(conn, allLeases);
+            leasesSt.setFetchSize(fetchSize);
+            try (ResultSet rs = leasesSt.executeQuery()) {
+                while (rs.next()) {
+                    int id = rs.getInt(1);
+                    // getInt returns 0, which is NO_ID, for a missing car or customer
+                    int carId = rs.getInt(2);
+                    int customerId = rs.getInt(3);
+                    int dateFrom = rs.getInt(4);
+                    int fromDay = rs.wasNull() ? LeaseColumns.NO_FROM : (int) EpochDays.fromYmd(dateFrom);
+                    int dateTo = rs.getInt(5);
+                    int toDay = rs.wasNull() ? LeaseColumns.NO_TO : (int) EpochDays.fromYmd(dateTo);
+                    long cents = rs.getLong(6);
+                    columns.add(id, carId, customerId, fromDay, toDay, rs.wasNull() ? LeaseColumns.NO_PRICE : cents);
+                }
+            }
+            return columns.build();
+        } catch (SQLException ex) {
+            throw new ServiceFailureException("Error when reading lease columns", ex);
+        } finally {
+            DBUtils.closeQuietly(conn, countSt, leasesSt);
+        }
+    }
+}
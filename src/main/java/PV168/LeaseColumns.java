@@ -0,0 +1,354 @@
+package PV168;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Columnar projection of the leases for analytical scans, read by {@link LeaseColumnLoader}.
+ * <p>
+ * Every column is a direct buffer outside of the heap holding one primitive per
+ * lease: lease, car and customer ids and first and last day as {@code int}s,
+ * price as {@code long} cents. A lease takes {@link #BYTES_PER_LEASE} bytes
+ * instead of the {@link Lease}, {@link Car}, {@link Customer}, {@link LocalDate}
+ * and {@link java.math.BigDecimal} objects of its hydrated graph, and a scan
+ * reads consecutive memory.
+ * <p>
+ * A {@link Scan} compares every row with lower and upper bounds of each column,
+ * unrestricted columns having the bounds of the whole type, using non-short-circuit
+ * operators. Aggregates add the result without branching, so the loop body is the
+ * same straight code for matching and other rows.
+ * <p>
+ * The columns are a snapshot of the table when it was read; they are not changed
+ * afterwards and may be scanned by several threads at once.
+ */
+public final class LeaseColumns {
+
+    /** lease id, car id, customer id, first day, last day, price */
+    public static final int BYTES_PER_LEASE = 4 + 4 + 4 + 4 + 4 + 8;
+
+    /** id of a missing car or customer */
+    static final int NO_ID = 0;
+    /** first day of a lease without a start */
+    static final int NO_FROM = Integer.MIN_VALUE;
+    /** last day of a lease without an end */
+    static final int NO_TO = Integer.MAX_VALUE;
+    /** price of a lease without a price */
+    static final long NO_PRICE = Long.MIN_VALUE;
+
+    private final int size;
+    private final IntBuffer ids;
+    private final IntBuffer carIds;
+    private final IntBuffer customerIds;
+    private final IntBuffer fromDays;
+    private final IntBuffer toDays;
+    private final LongBuffer prices;
+
+    private LeaseColumns(Builder builder) {
+        this.size = builder.size;
+        this.ids = builder.ids;
+        this.carIds = builder.carIds;
+        this.customerIds = builder.customerIds;
+        this.fromDays = builder.fromDays;
+        this.toDays = builder.toDays;
+        this.prices = builder.prices;
+    }
+
+    /**
+     * @return number of leases
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of bytes of the columns outside of the heap
+     */
+    public long getMemoryBytes() {
+        return (long) ids.capacity() * BYTES_PER_LEASE;
+    }
+
+    public long getLeaseId(int row) {
+        return ids.get(checkRow(row));
+    }
+
+    /**
+     * @return id of the car of the lease, null when the lease has none
+     */
+    public Long getCarId(int row) {
+        int id = carIds.get(checkRow(row));
+        return id == NO_ID ? null : Long.valueOf(id);
+    }
+
+    /**
+     * @return id of the customer of the lease, null when the lease has none
+     */
+    public Long getCustomerId(int row) {
+        int id = customerIds.get(checkRow(row));
+        return id == NO_ID ? null : Long.valueOf(id);
+    }
+
+    /**
+     * @return first day of the lease, null when the lease has none
+     */
+    public LocalDate getDateFrom(int row) {
+        int day = fromDays.get(checkRow(row));
+        return day == NO_FROM ? null : LocalDate.ofEpochDay(day);
+    }
+
+    /**
+     * @return last day of the lease, null when the lease has none
+     */
+    public LocalDate getDateTo(int row) {
+        int day = toDays.get(checkRow(row));
+        return day == NO_TO ? null : LocalDate.ofEpochDay(day);
+    }
+
+    /**
+     * @return price of the lease in cents, null when the lease has none
+     */
+    public Long getPriceCents(int row) {
+        long cents = prices.get(checkRow(row));
+        return cents == NO_PRICE ? null : Long.valueOf(cents);
+    }
+
+    private int checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row " + row + " of " + size);
+        }
+        return row;
+    }
+
+    /**
+     * @return scan of all leases, narrowed by the methods of the scan
+     */
+    public Scan scan() {
+        return new Scan();
+    }
+
+    /**
+     * Conditions on the leases of a scan and the aggregates of the matching leases.
+     * Conditions set by the same method replace each other, different ones are
+     * combined.
+     */
+    public final class Scan {
+
+        private int carLo = Integer.MIN_VALUE;
+        private int carHi = Integer.MAX_VALUE;
+        private int customerLo = Integer.MIN_VALUE;
+        private int customerHi = Integer.MAX_VALUE;
+        private int periodFrom = NO_FROM;
+        private int periodTo = NO_TO;
+        private long minCents = Long.MIN_VALUE;
+        private long maxCents = Long.MAX_VALUE;
+
+        private Scan() {
+        }
+
+        /**
+         * Keeps the leases of the car.
+         */
+        public Scan car(long carId) {
+            carLo = carHi = toId(carId);
+            return this;
+        }
+
+        /**
+         * Keeps the leases of the customer.
+         */
+        public Scan customer(long customerId) {
+            customerLo = customerHi = toId(customerId);
+            return this;
+        }
+
+        /**
+         * Keeps the leases sharing at least one day with the period; leases
+         * without a start or an end are open on that side.
+         *
+         * @throws IllegalArgumentException when the period is null or empty
+         */
+        public Scan overlapping(LocalDate from, LocalDate to) {
+            if (from == null || to == null) {
+                throw new IllegalArgumentException("period is null");
+            }
+            if (to.isBefore(from)) {
+                throw new IllegalArgumentException("period ends before it starts");
+            }
+            periodFrom = (int) Math.max(from.toEpochDay(), NO_FROM + 1L);
+            periodTo = (int) Math.min(to.toEpochDay(), NO_TO - 1L);
+            return this;
+        }
+
+        /**
+         * Keeps the leases with a price between the bounds, both inclusive.
+         *
+         * @throws IllegalArgumentException when the range is empty
+         */
+        public Scan priceBetween(long minCents, long maxCents) {
+            if (maxCents < minCents) {
+                throw new IllegalArgumentException("price range is empty");
+            }
+            // leases without a price are outside of every range
+            this.minCents = Math.max(minCents, NO_PRICE + 1);
+            this.maxCents = maxCents;
+            return this;
+        }
+
+        private boolean matches(int row) {
+            int car = carIds.get(row);
+            int customer = customerIds.get(row);
+            long price = prices.get(row);
+            return car >= carLo & car <= carHi
+                    & customer >= customerLo & customer <= customerHi
+                    & fromDays.get(row) <= periodTo & toDays.get(row) >= periodFrom
+                    & price >= minCents & price <= maxCents;
+        }
+
+        /**
+         * @return number of matching leases
+         */
+        public int count() {
+            return (int) aggregate(false);
+        }
+
+        /**
+         * @return sum of prices of the matching leases in cents, leases without a price count as 0
+         * @throws ArithmeticException when the sum overflows
+         */
+        public long sumPriceCents() {
+            return aggregate(true);
+        }
+
+        private long aggregate(boolean sum) {
+            // the bounds and columns are copied to locals, so the loop reads only the columns
+            IntBuffer cars = carIds;
+            IntBuffer customers = customerIds;
+            IntBuffer froms = fromDays;
+            IntBuffer tos = toDays;
+            LongBuffer amounts = prices;
+            int carLo = this.carLo;
+            int carHi = this.carHi;
+            int customerLo = this.customerLo;
+            int customerHi = this.customerHi;
+            int periodFrom = this.periodFrom;
+            int periodTo = this.periodTo;
+            long minCents = this.minCents;
+            long maxCents = this.maxCents;
+            int n = size;
+            long count = 0;
+            long cents = 0;
+            for (int i = 0; i < n; i++) {
+                int car = cars.get(i);
+                int customer = customers.get(i);
+                long price = amounts.get(i);
+                boolean hit = car >= carLo & car <= carHi
+                        & customer >= customerLo & customer <= customerHi
+                        & froms.get(i) <= periodTo & tos.get(i) >= periodFrom
+                        & price >= minCents & price <= maxCents;
+                count += hit ? 1 : 0;
+                cents = Math.addExact(cents, hit & price != NO_PRICE ? price : 0);
+            }
+            return sum ? cents : count;
+        }
+
+        /**
+         * @return ids of the matching leases in the order they were read
+         */
+        public long[] leaseIds() {
+            long[] found = new long[16];
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                if (matches(i)) {
+                    if (n == found.length) {
+                        found = Arrays.copyOf(found, n * 2);
+                    }
+                    found[n++] = ids.get(i);
+                }
+            }
+            return Arrays.copyOf(found, n);
+        }
+    }
+
+    private static int toId(long id) {
+        // ids are INT columns, no lease refers to another one
+        if (id <= NO_ID || id > Integer.MAX_VALUE) {
+            return -1;
+        }
+        return (int) id;
+    }
+
+    /**
+     * Appends leases to growing columns.
+     */
+    static final class Builder {
+
+        private int size;
+        private IntBuffer ids;
+        private IntBuffer carIds;
+        private IntBuffer customerIds;
+        private IntBuffer fromDays;
+        private IntBuffer toDays;
+        private LongBuffer prices;
+
+        Builder(int capacity) {
+            allocate(Math.max(capacity, 16));
+        }
+
+        private void allocate(int capacity) {
+            IntBuffer oldIds = ids;
+            IntBuffer oldCarIds = carIds;
+            IntBuffer oldCustomerIds = customerIds;
+            IntBuffer oldFromDays = fromDays;
+            IntBuffer oldToDays = toDays;
+            LongBuffer oldPrices = prices;
+            ids = ints(capacity, oldIds, size);
+            carIds = ints(capacity, oldCarIds, size);
+            customerIds = ints(capacity, oldCustomerIds, size);
+            fromDays = ints(capacity, oldFromDays, size);
+            toDays = ints(capacity, oldToDays, size);
+            prices = ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+            if (oldPrices != null) {
+                LongBuffer copied = oldPrices.duplicate();
+                copied.clear().limit(size);
+                prices.put(copied).clear();
+            }
+        }
+
+        private static IntBuffer ints(int capacity, IntBuffer old, int size) {
+            IntBuffer buffer = ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+            if (old != null) {
+                IntBuffer copied = old.duplicate();
+                copied.clear().limit(size);
+                buffer.put(copied).clear();
+            }
+            return buffer;
+        }
+
+        /**
+         * Appends a lease; missing values are passed as {@link #NO_ID}, {@link #NO_FROM},
+         * {@link #NO_TO} and {@link #NO_PRICE}.
+         */
+        void add(int id, int carId, int customerId, int fromDay, int toDay, long cents) {
+            if (size == ids.capacity()) {
+                if (size > Integer.MAX_VALUE / Long.BYTES / 2) {
+                    throw new IllegalStateException("too many leases for the columns");
+                }
+                allocate(size * 2);
+            }
+            ids.put(size, id);
+            carIds.put(size, carId);
+            customerIds.put(size, customerId);
+            fromDays.put(size, fromDay);
+            toDays.put(size, toDay);
+            prices.put(size, cents);
+            size++;
+        }
+
+        LeaseColumns build() {
+            return new LeaseColumns(this);
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package PV168;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory index of lease date ranges per car.
+ * <p>
+ * Ranges of one car are kept in an immutable snapshot of arrays sorted by the
+ * first day, together with the running maximum of the last days. An overlap
+ * query binary searches the last range starting before the end of the queried
+ * range and walks back only while the running maximum still reaches its start,
+ * so it costs O(log n) plus the number of overlapping ranges. Mutations copy the
+ * snapshot of the one car, reads are lock-free. Lease ids must be positive.
+ */
+public class LeaseIntervalIndex {
+
+    private final Map<Long, CarIntervals> byCar = new ConcurrentHashMap<>();
+    private final LongKeyMap<Long> carByLease = new LongKeyMap<>(64);
+
+    /**
+     * Adds the range of a lease. An existing range of the same lease is replaced.
+     *
+     * @param carId id of the leased car
+     * @param leaseId id of the lease
+     * @param from first day of the lease, null for unbounded
+     * @param to last day of the lease, null for unbounded
+     */
+    public void add(long carId, long leaseId, LocalDate from, LocalDate to) {
+        remove(leaseId);
+        int fromDay = fromDay(from);
+        int toDay = toDay(to);
+        byCar.compute(carId, (id, intervals) ->
+                (intervals == null ? CarIntervals.EMPTY : intervals).with(leaseId, fromDay, toDay));
+        carByLease.put(leaseId, carId);
+    }
+
+    /**
+     * Removes the range of a lease.
+     *
+     * @param leaseId id of the lease
+     * @return true when the lease was indexed
+     */
+    public boolean remove(long leaseId) {
+        Long carId = carByLease.remove(leaseId);
+        if (carId == null) {
+            return false;
+        }
+        byCar.computeIfPresent(carId, (id, intervals) -> intervals.without(leaseId));
+        return true;
+    }
+
+    /**
+     * Removes ranges of all leases which ended before the given day.
+     *
+     * @param date first day which is kept
+     */
+    public void removeEndedBefore(LocalDate date) {
+        int day = (int) date.toEpochDay();
+        for (Long carId : byCar.keySet()) {
+            byCar.computeIfPresent(carId, (id, intervals) -> {
+                for (int i = 0; i < intervals.to.length; i++) {
+                    if (intervals.to[i] < day) {
+                        carByLease.remove(intervals.leaseIds[i], id);
+                    }
+                }
+                return intervals.endingFrom(day);
+            });
+        }
+    }
+
+    /**
+     * Finds a lease of the car whose range overlaps the given one.
+     *
+     * @param carId id of the car
+     * @param from first day of the range, null for unbounded
+     * @param to last day of the range, null for unbounded
+     * @param excludedLeaseId lease which is ignored, e.g. the one being updated, or null
+     * @return id of an overlapping lease or null when there is none
+     */
+    public Long findConflict(long carId, LocalDate from, LocalDate to, Long excludedLeaseId) {
+        CarIntervals intervals = byCar.get(carId);
+        if (intervals == null) {
+            return null;
+        }
+        long excluded = excludedLeaseId == null ? Long.MIN_VALUE : excludedLeaseId;
+        return intervals.findConflict(fromDay(from), toDay(to), excluded);
+    }
+
+    /**
+     * @param leaseId id of the lease
+     * @return id of the car of the indexed lease or null when the lease is not indexed
+     */
+    public Long getCar(long leaseId) {
+        return carByLease.get(leaseId);
+    }
+
+    /**
+     * Removes all ranges.
+     */
+    public void clear() {
+        byCar.clear();
+        carByLease.clear();
+    }
+
+    /**
+     * @return number of indexed leases
+     */
+    public int size() {
+        return carByLease.size();
+    }
+
+    /**
+     * Creates a loader which replaces the content of this index at once,
+     * without copying the per-car snapshots for every loaded lease.
+     *
+     * @return new loader
+     */
+    public Loader loader() {
+        return new Loader();
+    }
+
+    /**
+     * Collects ranges of many leases and installs them into the index.
+     */
+    public class Loader {
+
+        private final Map<Long, Rows> rows = new HashMap<>();
+
+        public void add(long carId, long leaseId, LocalDate from, LocalDate to) {
+            Rows car = rows.get(carId);
+            if (car == null) {
+                car = new Rows();
+                rows.put(carId, car);
+            }
+            car.add(leaseId, fromDay(from), toDay(to));
+        }
+
+        /**
+         * Replaces the content of the index with the collected ranges.
+         */
+        public void install() {
+            clear();
+            for (Map.Entry<Long, Rows> entry : rows.entrySet()) {
+                Rows car = entry.getValue();
+                byCar.put(entry.getKey(), CarIntervals.of(car.leaseIds, car.from, car.to, car.size));
+                for (int i = 0; i < car.size; i++) {
+                    carByLease.put(car.leaseIds[i], entry.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * Growable ranges of one car collected by a {@link Loader}.
+     */
+    private static final class Rows {
+
+        long[] leaseIds = new long[4];
+        int[] from = new int[4];
+        int[] to = new int[4];
+        int size;
+
+        void add(long leaseId, int fromDay, int toDay) {
+            if (size == leaseIds.length) {
+                leaseIds = Arrays.copyOf(leaseIds, size * 2);
+                from = Arrays.copyOf(from, size * 2);
+                to = Arrays.copyOf(to, size * 2);
+            }
+            leaseIds[size] = leaseId;
+            from[size] = fromDay;
+            to[size] = toDay;
+            size++;
+        }
+    }
+
+    private static int fromDay(LocalDate from) {
+        return from == null ? Integer.MIN_VALUE : (int) from.toEpochDay();
+    }
+
+    private static int toDay(LocalDate to) {
+        return to == null ? Integer.MAX_VALUE : (int) to.toEpochDay();
+    }
+
+    /**
+     * Immutable ranges of one car sorted by the first day.
+     */
+    private static final class CarIntervals {
+
+        static final CarIntervals EMPTY = new CarIntervals(new long[0], new int[0], new int[0]);
+
+        private final long[] leaseIds;
+        private final int[] from;
+        private final int[] to;
+        /** maxTo[i] is the maximum of to[0..i] */
+        private final int[] maxTo;
+
+        private CarIntervals(long[] leaseIds, int[] from, int[] to) {
+            this.leaseIds = leaseIds;
+            this.from = from;
+            this.to = to;
+            this.maxTo = new int[to.length];
+            int max = Integer.MIN_VALUE;
+            for (int i = 0; i < to.length; i++) {
+                max = Math.max(max, to[i]);
+                maxTo[i] = max;
+            }
+        }
+
+        /**
+         * @return ranges of the first n elements of the arrays, sorted by the first day
+         */
+        static CarIntervals of(long[] ids, int[] fromDays, int[] toDays, int n) {
+            // the first day in the high half sorts the positions by it as primitives
+            long[] order = new long[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = ((long) fromDays[i] << 32) | i;
+            }
+            Arrays.sort(order);
+            long[] leaseIds = new long[n];
+            int[] from = new int[n];
+            int[] to = new int[n];
+            for (int i = 0; i < n; i++) {
+                int pos = (int) order[i];
+                leaseIds[i] = ids[pos];
+                from[i] = fromDays[pos];
+                to[i] = toDays[pos];
+            }
+            return new CarIntervals(leaseIds, from, to);
+        }
+
+        CarIntervals with(long leaseId, int fromDay, int toDay) {
+            int n = leaseIds.length;
+            int pos = startingAfter(fromDay);
+            long[] newIds = new long[n + 1];
+            int[] newFrom = new int[n + 1];
+            int[] newTo = new int[n + 1];
+            System.arraycopy(leaseIds, 0, newIds, 0, pos);
+            System.arraycopy(from, 0, newFrom, 0, pos);
+            System.arraycopy(to, 0, newTo, 0, pos);
+            newIds[pos] = leaseId;
+            newFrom[pos] = fromDay;
+            newTo[pos] = toDay;
+            System.arraycopy(leaseIds, pos, newIds, pos + 1, n - pos);
+            System.arraycopy(from, pos, newFrom, pos + 1, n - pos);
+            System.arraycopy(to, pos, newTo, pos + 1, n - pos);
+            return new CarIntervals(newIds, newFrom, newTo);
+        }
+
+        CarIntervals without(long leaseId) {
+            int n = leaseIds.length;
+            for (int pos = 0; pos < n; pos++) {
+                if (leaseIds[pos] == leaseId) {
+                    if (n == 1) {
+                        return null;
+                    }
+                    long[] newIds = new long[n - 1];
+                    int[] newFrom = new int[n - 1];
+                    int[] newTo = new int[n - 1];
+                    System.arraycopy(leaseIds, 0, newIds, 0, pos);
+                    System.arraycopy(from, 0, newFrom, 0, pos);
+                    System.arraycopy(to, 0, newTo, 0, pos);
+                    System.arraycopy(leaseIds, pos + 1, newIds, pos, n - pos - 1);
+                    System.arraycopy(from, pos + 1, newFrom, pos, n - pos - 1);
+                    System.arraycopy(to, pos + 1, newTo, pos, n - pos - 1);
+                    return new CarIntervals(newIds, newFrom, newTo);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * @return ranges ending on the given day or later, null when there are none
+         */
+        CarIntervals endingFrom(int day) {
+            int n = 0;
+            for (int value : to) {
+                if (value >= day) {
+                    n++;
+                }
+            }
+            if (n == to.length) {
+                return this;
+            }
+            if (n == 0) {
+                return null;
+            }
+            long[] newIds = new long[n];
+            int[] newFrom = new int[n];
+            int[] newTo = new int[n];
+            int j = 0;
+            for (int i = 0; i < to.length; i++) {
+                if (to[i] >= day) {
+                    newIds[j] = leaseIds[i];
+                    newFrom[j] = from[i];
+                    newTo[j] = to[i];
+                    j++;
+                }
+            }
+            return new CarIntervals(newIds, newFrom, newTo);
+        }
+
+        Long findConflict(int fromDay, int toDay, long excluded) {
+            for (int i = startingAfter(toDay) - 1; i >= 0 && maxTo[i] >= fromDay; i--) {
+                if (to[i] >= fromDay && leaseIds[i] != excluded) {
+                    return leaseIds[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return index of the first range starting after the given day
+         */
+        private int startingAfter(int day) {
+            int low = 0;
+            int high = from.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (from[mid] <= day) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
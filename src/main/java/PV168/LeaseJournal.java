@@ -0,0 +1,370 @@
+package PV168;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of lease mutations, see {@link WriteBehindLeaseManager}.
+ * <p>
+ * Entries are fixed-width records followed by the CRC32 of the record. An entry
+ * is durable once {@link #append} returns: the file is forced to the disk before.
+ * Threads appending at the same time share one force, whoever forces first
+ * makes durable everything written so far and the others only check that their
+ * entry is covered (group commit).
+ * <p>
+ * Durable entries are queued for the writer which applies them to the database,
+ * in the order of their sequence numbers. When all appended entries have been
+ * applied, the file is truncated.
+ * <p>
+ * A crash while appending leaves at most a partial last record, which was never
+ * acknowledged; it fails its checksum and is cut off when the file is opened.
+ */
+final class LeaseJournal implements Closeable {
+
+    enum Type {
+        CREATE, UPDATE, DELETE
+    }
+
+    /** sequence, type, lease id, customer id, car id, first day, last day, price in cents */
+    static final int RECORD_SIZE = 8 + 1 + 8 + 8 + 8 + 8 + 8 + 8;
+    static final int FRAME_SIZE = RECORD_SIZE + 4;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(FRAME_SIZE);
+    private final List<Entry> recovered;
+
+    /** guards appending, the fields below and the queue of durable entries */
+    private final Object appendLock = new Object();
+    /** serializes forcing the file */
+    private final Object syncLock = new Object();
+
+    private long nextSequence;
+    private long lastSequence;
+    private long written;
+    private long durable;
+    private long durableSequence;
+    private long syncs;
+    private final ArrayDeque<Entry> unapplied = new ArrayDeque<>();
+    private IOException failure;
+
+    private LeaseJournal(FileChannel channel, List<Entry> recovered, long size) {
+        this.channel = channel;
+        this.recovered = recovered;
+        this.written = size;
+        this.durable = size;
+    }
+
+    /**
+     * Opens the journal, reads its entries and cuts off a partial last record.
+     *
+     * @param file journal file, created when it does not exist
+     * @return opened journal
+     * @throws IOException when the file can not be read
+     */
+    static LeaseJournal open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            List<Entry> entries = new ArrayList<>();
+            ByteBuffer frame = ByteBuffer.allocate(FRAME_SIZE);
+            long position = 0;
+            long size = channel.size();
+            while (position + FRAME_SIZE <= size) {
+                frame.clear();
+                while (frame.hasRemaining() && channel.read(frame, position + frame.position()) >= 0) {
+                    // reads the whole frame
+                }
+                frame.flip();
+                Entry entry = decode(frame);
+                if (entry == null) {
+                    break;
+                }
+                entries.add(entry);
+                position += FRAME_SIZE;
+            }
+            if (position < size) {
+                channel.truncate(position);
+                channel.force(true);
+            }
+            channel.position(position);
+            LeaseJournal journal = new LeaseJournal(channel, Collections.unmodifiableList(entries), position);
+            if (!entries.isEmpty()) {
+                journal.lastSequence = entries.get(entries.size() - 1).sequence;
+                journal.durableSequence = journal.lastSequence;
+            }
+            return journal;
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return entries found in the file when it was opened, in the order of their sequence numbers
+     */
+    List<Entry> getRecovered() {
+        return recovered;
+    }
+
+    /**
+     * Sets the sequence number of the next appended entry, so that numbering
+     * continues after entries which were applied and truncated.
+     */
+    void startSequence(long nextSequence) {
+        synchronized (appendLock) {
+            this.nextSequence = Math.max(nextSequence, lastSequence + 1);
+        }
+    }
+
+    /**
+     * Appends an entry and forces it to the disk.
+     *
+     * @return appended entry with its sequence number
+     * @throws IOException when the entry can not be written; the journal then rejects all further entries
+     */
+    Entry append(Type type, long leaseId, long customerId, long carId,
+                 long fromDay, long toDay, long cents) throws IOException {
+        Entry entry;
+        long end;
+        synchronized (appendLock) {
+            if (failure != null) {
+                throw new IOException("journal failed before", failure);
+            }
+            entry = new Entry(nextSequence++, type, leaseId, customerId, carId,
+                    fromDay, toDay, cents);
+            buffer.clear();
+            encode(entry, buffer);
+            buffer.flip();
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException ex) {
+                failure = ex;
+                throw ex;
+            }
+            written += FRAME_SIZE;
+            end = written;
+            lastSequence = entry.sequence;
+        }
+        sync(end);
+        return entry;
+    }
+
+    private void sync(long end) throws IOException {
+        synchronized (syncLock) {
+            if (durable >= end) {
+                return;
+            }
+            long target;
+            long targetSequence;
+            synchronized (appendLock) {
+                target = written;
+                targetSequence = lastSequence;
+            }
+            try {
+                // fdatasync also persists the file size the data needs to be read
+                channel.force(false);
+            } catch (IOException ex) {
+                synchronized (appendLock) {
+                    failure = ex;
+                }
+                throw ex;
+            }
+            durable = target;
+            syncs++;
+            synchronized (appendLock) {
+                durableSequence = targetSequence;
+                appendLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Queues a durable entry for the writer. Entries are queued right after
+     * {@link #append} in any order and taken in the order of sequence numbers.
+     */
+    void enqueue(Entry entry) {
+        synchronized (appendLock) {
+            unapplied.add(entry);
+            appendLock.notifyAll();
+        }
+    }
+
+    /**
+     * Takes the durable entries which directly follow the given sequence number,
+     * waiting for the first of them up to the timeout.
+     *
+     * @param afterSequence sequence number of the last taken entry
+     * @param max maximal number of taken entries
+     * @return taken entries in the order of sequence numbers, empty after the timeout
+     */
+    List<Entry> take(long afterSequence, int max, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (appendLock) {
+            List<Entry> taken = new ArrayList<>();
+            while (true) {
+                collect(afterSequence, max, taken);
+                long remaining = deadline - System.nanoTime();
+                if (!taken.isEmpty() || remaining <= 0) {
+                    return taken;
+                }
+                TimeUnit.NANOSECONDS.timedWait(appendLock, remaining);
+            }
+        }
+    }
+
+    private void collect(long afterSequence, int max, List<Entry> taken) {
+        if (unapplied.isEmpty()) {
+            return;
+        }
+        // entries are enqueued by their appenders, which may overtake each other
+        List<Entry> sorted = new ArrayList<>(unapplied);
+        sorted.sort((a, b) -> Long.compare(a.sequence, b.sequence));
+        long next = afterSequence + 1;
+        for (Entry entry : sorted) {
+            if (entry.sequence != next || taken.size() == max) {
+                break;
+            }
+            taken.add(entry);
+            next++;
+        }
+        if (!taken.isEmpty()) {
+            unapplied.removeAll(taken);
+        }
+    }
+
+    /**
+     * Truncates the file when the given entry is the last one appended.
+     *
+     * @param appliedSequence sequence number of the last entry applied to the database
+     * @return true when the file was truncated
+     */
+    boolean truncateIfApplied(long appliedSequence) throws IOException {
+        synchronized (syncLock) {
+            synchronized (appendLock) {
+                if (lastSequence != appliedSequence || written == 0 || failure != null) {
+                    return false;
+                }
+                channel.truncate(0);
+                channel.position(0);
+                channel.force(true);
+                written = 0;
+                durable = 0;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return true when writing or forcing the file failed and no more entries are accepted
+     */
+    boolean isFailed() {
+        synchronized (appendLock) {
+            return failure != null;
+        }
+    }
+
+    /**
+     * @return sequence number of the last entry which is durable, 0 when there is none
+     */
+    long getDurableSequence() {
+        synchronized (appendLock) {
+            return durableSequence;
+        }
+    }
+
+    /**
+     * @return number of times the file was forced to the disk, which is lower
+     *         than the number of appended entries when appends were grouped
+     */
+    long getSyncCount() {
+        synchronized (syncLock) {
+            return syncs;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    static void encode(Entry entry, ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.putLong(entry.sequence);
+        buffer.put((byte) entry.type.ordinal());
+        buffer.putLong(entry.leaseId);
+        buffer.putLong(entry.customerId);
+        buffer.putLong(entry.carId);
+        buffer.putLong(entry.fromDay);
+        buffer.putLong(entry.toDay);
+        buffer.putLong(entry.cents);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), buffer.arrayOffset() + start, RECORD_SIZE);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    /**
+     * @return decoded entry or null when the frame is damaged
+     */
+    static Entry decode(ByteBuffer frame) {
+        CRC32 crc = new CRC32();
+        crc.update(frame.array(), frame.arrayOffset() + frame.position(), RECORD_SIZE);
+        if ((int) crc.getValue() != frame.getInt(frame.position() + RECORD_SIZE)) {
+            return null;
+        }
+        long sequence = frame.getLong();
+        int type = frame.get();
+        if (sequence <= 0 || type < 0 || type >= Type.values().length) {
+            return null;
+        }
+        return new Entry(sequence, Type.values()[type], frame.getLong(), frame.getLong(), frame.getLong(),
+                frame.getLong(), frame.getLong(), frame.getLong());
+    }
+
+    /**
+     * One journaled mutation of a lease.
+     */
+    static final class Entry {
+
+        final long sequence;
+        final Type type;
+        final long leaseId;
+        final long customerId;
+        final long carId;
+        final long fromDay;
+        final long toDay;
+        final long cents;
+
+        Entry(long sequence, Type type, long leaseId, long customerId, long carId,
+              long fromDay, long toDay, long cents) {
+            this.sequence = sequence;
+            this.type = type;
+            this.leaseId = leaseId;
+            this.customerId = customerId;
+            this.carId = carId;
+            this.fromDay = fromDay;
+            this.toDay = toDay;
+            this.cents = cents;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" +
+                    "sequence=" + sequence +
+                    ", type=" + type +
+                    ", leaseId=" + leaseId +
+                    '}';
+        }
+    }
+}
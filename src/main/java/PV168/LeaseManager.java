@@ -8,25 +8,101 @@ import java.time.LocalDate;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface LeaseManager {
 
     public void createLease(Lease lease);
 
+    /**
+     * Inserts many leases at once, much faster than calling {@link #createLease(Lease)}
+     * for each. Leases which can not be inserted, e.g. because they overlap another
+     * lease of the car, are reported in the result, the others are inserted.
+     *
+     * @param leases new leases
+     * @return inserted leases with ids set and the failures
+     */
+    public BulkInsertResult<Lease> createLeases(Collection<Lease> leases);
+
     public Lease getLeaseByID(Long id);
 
     public List<Lease> getAllLeases();
 
+    /**
+     * Streams all leases ordered by id from a database cursor. The stream holds
+     * a connection and must be closed, e.g. with try-with-resources.
+     *
+     * @return stream of all leases
+     */
+    public Stream<Lease> streamAllLeases();
+
+    /**
+     * Returns a page of leases ordered by id. The next page is requested with the
+     * id of the last lease of the previous page, so every page costs the same.
+     *
+     * @param lastId id of the last lease of the previous page, null for the first page
+     * @param limit maximal number of leases in the page
+     * @return leases with id greater than lastId
+     */
+    public List<Lease> getLeasesAfter(Long lastId, int limit);
+
+    /**
+     * Returns a page of leases ordered by start date and id. Leases without
+     * start date are not paged.
+     *
+     * @param lastDateFrom start date of the last lease of the previous page, null for the first page
+     * @param lastId id of the last lease of the previous page, null for the first page
+     * @param limit maximal number of leases in the page
+     * @return leases following the given one
+     */
+    public List<Lease> getLeasesByDateFromAfter(LocalDate lastDateFrom, Long lastId, int limit);
+
+    /**
+     * Returns a page of leases ordered by end date and id. Leases without
+     * end date are not paged.
+     *
+     * @param lastDateTo end date of the last lease of the previous page, null for the first page
+     * @param lastId id of the last lease of the previous page, null for the first page
+     * @param limit maximal number of leases in the page
+     * @return leases following the given one
+     */
+    public List<Lease> getLeasesByDateToAfter(LocalDate lastDateTo, Long lastId, int limit);
+
     public List<Lease> getAllLeasesByEndDate(LocalDate endDate);
 
     public List<Lease> findLeasesForCustomer(Customer customer);
 
     public List<Lease> findLeasesForCar(Car car);
 
+    /**
+     * Finds the leases matching a query, e.g. the leases of cars of a model
+     * overlapping a month and costing at least an amount:
+     * {@code forModel(model).and(overlapping(from, to)).and(priceBetween(min, null))}.
+     *
+     * @param query conditions on the leases
+     * @return matching leases ordered by id
+     */
+    public List<Lease> findLeases(LeaseQuery query);
+
     public void updateLease(Lease lease);
 
     public void deleteLease(Lease lease);
 
+    /**
+     * Deletes all leases.
+     *
+     * @return number of deleted leases
+     */
+    public int deleteAllLeases();
+
+    /**
+     * Deletes all leases which ended before the given day.
+     *
+     * @param date first day which is kept
+     * @return number of deleted leases
+     */
+    public int deleteLeasesEndedBefore(LocalDate date);
+
 
 
 }
\ No newline at end of file
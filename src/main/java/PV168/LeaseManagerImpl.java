@@ -7,8 +7,18 @@ import java.time.Clock;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.sql.*;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 
 /**
@@ -16,19 +26,211 @@ import java.util.List;
  */
 public class LeaseManagerImpl implements LeaseManager {
 
+    /**
+     * Parallelism of the default pool of {@link #findLeases}, the default maximum
+     * of active connections of {@link DbcpConnectionPool}.
+     */
+    public static final int DEFAULT_QUERY_PARALLELISM = 8;
+
+    /** car id of a stored lease without a car */
+    private static final long NO_CAR = -1;
+
+    /**
+     * Leases are always read together with their customer and car in one joined query,
+     * so hydrating N leases costs one round trip instead of 2N+1.
+     */
+    private static final String SELECT_LEASES =
+            "SELECT L.ID, L.IDCUSTOMER, L.IDCAR, L.DATEFROM, L.DATETO, L.PRICE,"
+            + " C.ID AS CUSTOMERID, C.NAME, C.ADDRESS, C.PHONENUMBER,"
+            + " R.ID AS CARID, R.LICENSEPLATE, R.MODEL, R.PRICE AS CARPRICE, R.NUMBEROFKM"
+            + " FROM LEASES L"
+            + " LEFT JOIN CUSTOMERS C ON C.ID = L.IDCUSTOMER"
+            + " LEFT JOIN CARS R ON R.ID = L.IDCAR";
+
+    private final StatementRegistry statements = new StatementRegistry();
+    private final StatementRegistry.Sql insertLease = statements.register("insertLease",
+            "INSERT INTO LEASES (IDCUSTOMER, IDCAR, DATEFROM, DATETO, PRICE) VALUES (?,?,?,?,?)");
+    private final StatementRegistry.Sql updateLease = statements.register("updateLease",
+            "UPDATE LEASES SET IDCUSTOMER=?, IDCAR=?, DATEFROM=?, DATETO=?, PRICE=? WHERE id=?");
+    private final StatementRegistry.Sql deleteLease = statements.register("deleteLease",
+            "DELETE FROM LEASES WHERE id=?");
+    private final StatementRegistry.Sql deleteAllLeases = statements.register("deleteAllLeases",
+            "DELETE FROM LEASES");
+    private final StatementRegistry.Sql deleteLeasesEndedBefore = statements.register("deleteLeasesEndedBefore",
+            "DELETE FROM LEASES WHERE DATETO < ?");
+    private final StatementRegistry.Sql leaseById = statements.register("leaseById",
+            SELECT_LEASES + " WHERE L.ID=?");
+    private final StatementRegistry.Sql allLeases = statements.register("allLeases",
+            SELECT_LEASES + " ORDER BY L.ID");
+    private final StatementRegistry.Sql firstLeases = statements.register("firstLeases",
+            SELECT_LEASES + " ORDER BY L.ID FETCH FIRST ? ROWS ONLY");
+    private final StatementRegistry.Sql leasesAfter = statements.register("leasesAfter",
+            SELECT_LEASES + " WHERE L.ID > ? ORDER BY L.ID FETCH FIRST ? ROWS ONLY");
+    private final StatementRegistry.Sql firstLeasesByDateFrom = statements.register("firstLeasesByDateFrom",
+            firstLeasesByDate("L.DATEFROM"));
+    private final StatementRegistry.Sql leasesByDateFromAfter = statements.register("leasesByDateFromAfter",
+            leasesByDateAfter("L.DATEFROM"));
+    private final StatementRegistry.Sql firstLeasesByDateTo = statements.register("firstLeasesByDateTo",
+            firstLeasesByDate("L.DATETO"));
+    private final StatementRegistry.Sql leasesByDateToAfter = statements.register("leasesByDateToAfter",
+            leasesByDateAfter("L.DATETO"));
+    private final StatementRegistry.Sql leasesByEndDate = statements.register("leasesByEndDate",
+            SELECT_LEASES + " WHERE L.DATETO=? ORDER BY L.ID");
+    private final StatementRegistry.Sql leasesForCustomer = statements.register("leasesForCustomer",
+            SELECT_LEASES + " WHERE L.IDCUSTOMER=? ORDER BY L.ID");
+    private final StatementRegistry.Sql leasesForCar = statements.register("leasesForCar",
+            SELECT_LEASES + " WHERE L.IDCAR=? ORDER BY L.ID");
+    private final StatementRegistry.Sql overlappingLease = statements.register("overlappingLease",
+            "SELECT ID FROM LEASES WHERE ID=? AND IDCAR=?"
+            + " AND (DATEFROM IS NULL OR DATEFROM <= ?) AND (DATETO IS NULL OR DATETO >= ?)");
+    private final StatementRegistry.Sql lockCar = statements.register("lockCar",
+            "UPDATE CARS SET LICENSEPLATE = LICENSEPLATE WHERE ID = ?");
+    private final StatementRegistry.Sql carOfLease = statements.register("carOfLease",
+            "SELECT IDCAR FROM LEASES WHERE ID = ?");
+    private final StatementRegistry.Sql conflictingLease = statements.register("conflictingLease",
+            "SELECT ID FROM LEASES WHERE IDCAR=? AND ID<>?"
+            + " AND (DATEFROM IS NULL OR DATEFROM <= ?) AND (DATETO IS NULL OR DATETO >= ?)"
+            + " FETCH FIRST 1 ROWS ONLY");
+    private final StatementRegistry.Sql leaseRanges = statements.register("leaseRanges",
+            "SELECT ID, IDCAR, DATEFROM, DATETO FROM LEASES WHERE IDCAR IS NOT NULL");
+
+    /**
+     * Number of SQL conditions whose statements of {@link #findLeases} are
+     * registered; statements of further conditions are prepared without
+     * statistics, so ad-hoc queries do not grow the registry without bound.
+     */
+    private static final int MAX_REGISTERED_QUERIES = 64;
+
+    /** registered statements of {@link #findLeases} by the SQL condition of the query */
+    private final Map<String, StatementRegistry.Sql[]> queryStatements = new ConcurrentHashMap<>();
+
+    private final DailyStatsWriter dailyStats = new DailyStatsWriter(statements);
+
     private DataSource dataSource;
-    private CustomerManagerImpl customerManager;
-    private CarManagerImpl carManager;
+    private int fetchSize = DBUtils.DEFAULT_FETCH_SIZE;
+    private final LeaseIntervalIndex leaseIndex = new LeaseIntervalIndex();
+    private volatile boolean leaseIndexLoaded;
+    private final StripedLocks carLocks;
+    private volatile ForkJoinPool queryPool;
+    private volatile int queryPartitionSize = 10000;
 
     public LeaseManagerImpl(DataSource dataSource) {
+        this(dataSource, StripedLocks.forAvailableProcessors());
+    }
+
+    /**
+     * Creates the manager with the given per-car locks.
+     * <p>
+     * Single-lease mutations of one car are serialized by its stripe before they
+     * touch the database, so they queue in the JVM instead of on the row lock of
+     * the car, and the time they waited is reported by {@link #getLockStats()}
+     * separately from the database. An update moving a lease to another car holds
+     * the stripes of both cars, since it changes the daily statistics of both.
+     * Managers sharing one database from several JVMs are still protected by the
+     * row lock. {@link #createLeases} is not
+     * striped, it relies on the row lock only.
+     *
+     * @param dataSource source of connections
+     * @param carLocks locks striped by car id
+     */
+    public LeaseManagerImpl(DataSource dataSource, StripedLocks carLocks) {
+        if (carLocks == null) {
+            throw new IllegalArgumentException("carLocks is null");
+        }
+        this.carLocks = carLocks;
         setDataSource(dataSource);
-        customerManager = new CustomerManagerImpl(dataSource);
-        carManager = new CarManagerImpl(dataSource);
     }
 
 
     public void setDataSource(DataSource dataSource) {
         this.dataSource = dataSource;
+        dailyStats.reset();
+    }
+
+    /**
+     * Sets number of rows fetched at once by {@link #streamAllLeases()} and by
+     * the partitions of {@link #findLeases}.
+     *
+     * @param fetchSize positive number of rows
+     */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException("fetch size is not positive");
+        }
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Sets the pool running the partitions of {@link #findLeases}. Every running
+     * partition blocks on a connection, so the parallelism of the pool should not
+     * exceed the connections the data source can spare, see
+     * {@link #createQueryPool(ConnectionPool)}. The common pool is not suitable,
+     * blocked partitions would hold its threads from parallel streams. A pool
+     * with {@link #DEFAULT_QUERY_PARALLELISM} threads, shared by the managers, is
+     * used by default.
+     *
+     * @param queryPool pool of the partitions
+     */
+    public void setQueryPool(ForkJoinPool queryPool) {
+        if (queryPool == null) {
+            throw new IllegalArgumentException("queryPool is null");
+        }
+        this.queryPool = queryPool;
+    }
+
+    /**
+     * Creates a pool for {@link #setQueryPool} with as many threads as the pool
+     * has connections. Its threads are daemons, so the pool need not be shut down.
+     *
+     * @param pool connection pool of the data source of the manager
+     * @return new pool of the partitions of {@link #findLeases}
+     */
+    public static ForkJoinPool createQueryPool(ConnectionPool pool) {
+        int maxActive = pool.getStats().getMaxActive();
+        if (maxActive <= 0) {
+            throw new IllegalArgumentException("pool has no limit of active connections");
+        }
+        return newQueryPool(maxActive);
+    }
+
+    private static ForkJoinPool newQueryPool(int parallelism) {
+        return new ForkJoinPool(parallelism, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("lease-query-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    private static final class DefaultQueryPool {
+        static final ForkJoinPool POOL = newQueryPool(DEFAULT_QUERY_PARALLELISM);
+    }
+
+    /**
+     * Sets the number of matching leases above which {@link #findLeases} splits
+     * the query into partitions.
+     *
+     * @param queryPartitionSize positive number of leases
+     */
+    public void setQueryPartitionSize(int queryPartitionSize) {
+        if (queryPartitionSize <= 0) {
+            throw new IllegalArgumentException("query partition size is not positive");
+        }
+        this.queryPartitionSize = queryPartitionSize;
+    }
+
+    /**
+     * @return execution statistics of the statements of this manager by their names
+     */
+    public Map<String, StatementStats> getStatementStats() {
+        return statements.getStats();
+    }
+
+    /**
+     * @return contention statistics of the per-car locks
+     */
+    public LockStats getLockStats() {
+        return carLocks.getStats();
     }
 
     private void checkDataSource() {
@@ -40,55 +242,120 @@ public class LeaseManagerImpl implements LeaseManager {
     @Override
     public void createLease(Lease lease) {
         checkDataSource();
-        validateLease(lease);
-
-        if(lease.getId() != null){
-            throw new IllegalArgumentException("ID should be null");
-        }
+        validateNewLease(lease);
+        Lock lock = carLocks.lock(lease.getCar().getId());
+        try {
+            checkNoConflict(lease, null);
+
+            Connection conn = null;
+            PreparedStatement st = null;
+            try{
+                conn = dataSource.getConnection();
+                conn.setAutoCommit(false);
+                lockCarAndCheckNoConflict(conn, lease, null);
+                st = statements.prepareReturningKeys(conn, insertLease);
+
+                st.setLong(1, lease.getCustomer().getId());
+                st.setLong(2, lease.getCar().getId());
+                st.setDate(3, toSqlDate(lease.getDateFrom()));
+                st.setDate(4, toSqlDate(lease.getDateTo()));
+
+                try {
+                    st.setBigDecimal(5, lease.getPrice().setScale(2));
+                } catch (ArithmeticException ex){
+                    throw new ServiceFailureException("bad BigDecimal value");
+                }
 
-        if(lease.getDateTo().isBefore(lease.getDateFrom()) ){
-            throw new IllegalArgumentException("Date to should not be before date from");
+                int addedRows = st.executeUpdate();
+                DBUtils.checkUpdatesCount(addedRows,lease,true);
+
+                ResultSet keyRS = st.getGeneratedKeys();
+                lease.setId(getKey(keyRS, lease));
+                dailyStats.addLease(conn, lease.getCar().getId(), lease.getDateFrom(), lease.getDateTo(), lease.getPrice());
+                lease.getCar().setIsBorrowed(true);
+                conn.commit();
+                leaseIndex.add(lease.getCar().getId(), lease.getId(), lease.getDateFrom(), lease.getDateTo());
+            } catch (SQLException ex) {
+                throw new ServiceFailureException("Error when creating cars", ex);
+            } finally{
+                DBUtils.doRollbackQuietly(conn);
+                DBUtils.closeQuietly(conn,st);
+            }
+        } finally {
+            lock.unlock();
         }
+    }
 
+    @Override
+    public BulkInsertResult<Lease> createLeases(Collection<Lease> leases) {
+        return createLeases(leases, BulkInserter.DEFAULT_CHUNK_SIZE);
+    }
 
-        if(lease.getCar().getIsBorrowed()){
-            throw new IllegalArgumentException("Car is already borrowed");
-        }
-
+    /**
+     * Inserts the leases in transactions of the given number of leases. Leases are
+     * checked for overlaps with existing leases as well as with the preceding
+     * leases of the same call.
+     *
+     * @param leases new leases
+     * @param chunkSize number of leases inserted in one transaction
+     * @return inserted leases with ids set and the failures
+     */
+    public BulkInsertResult<Lease> createLeases(Collection<Lease> leases, int chunkSize) {
+        checkDataSource();
+        final LeaseIntervalIndex pending = new LeaseIntervalIndex();
+        return new BulkInserter<Lease>(statements, insertLease) {
+            @Override
+            protected void validate(Lease lease) {
+                validateNewLease(lease);
+                checkNoConflict(lease, null);
+                Long conflict = pending.findConflict(lease.getCar().getId(), lease.getDateFrom(), lease.getDateTo(), null);
+                if (conflict != null) {
+                    throw new IllegalEntityException("Car " + lease.getCar() + " is already leased between "
+                            + lease.getDateFrom() + " and " + lease.getDateTo() + " by lease with id=" + conflict);
+                }
+            }
 
+            @Override
+            protected void beforeInsert(Connection conn, Lease lease) throws SQLException {
+                lockCarAndCheckNoConflict(conn, lease, null);
+            }
 
-        Connection conn = null;
-        PreparedStatement st = null;
-        try{
-            conn = dataSource.getConnection();
-            conn.setAutoCommit(false);
-            st = conn.prepareStatement("INSERT INTO LEASES (IDCUSTOMER, IDCAR, DATEFROM, DATETO, PRICE) VALUES (?,?,?,?,?)",
-                     Statement.RETURN_GENERATED_KEYS);
+            @Override
+            protected void bind(PreparedStatement st, Lease lease) throws SQLException {
+                st.setLong(1, lease.getCustomer().getId());
+                st.setLong(2, lease.getCar().getId());
+                st.setDate(3, toSqlDate(lease.getDateFrom()));
+                st.setDate(4, toSqlDate(lease.getDateTo()));
+                try {
+                    st.setBigDecimal(5, lease.getPrice().setScale(2));
+                } catch (ArithmeticException ex){
+                    throw new IllegalArgumentException("bad BigDecimal value", ex);
+                }
+            }
 
-            st.setLong(1, lease.getCustomer().getId());
-            st.setLong(2, lease.getCar().getId());
-            st.setDate(3, toSqlDate(lease.getDateFrom()));
-            st.setDate(4, toSqlDate(lease.getDateTo()));
+            @Override
+            protected void setId(Lease lease, Long id) {
+                lease.setId(id);
+            }
 
-            try {
-                st.setBigDecimal(5, lease.getPrice().setScale(2));
-            } catch (ArithmeticException ex){
-                throw new ServiceFailureException("bad BigDecimal value");
+            @Override
+            protected void afterInsert(Connection conn, Lease lease) throws SQLException {
+                dailyStats.addLease(conn, lease.getCar().getId(), lease.getDateFrom(), lease.getDateTo(), lease.getPrice());
             }
 
-            int addedRows = st.executeUpdate();
-            DBUtils.checkUpdatesCount(addedRows,lease,true);
+            @Override
+            protected void inserted(Lease lease) {
+                pending.add(lease.getCar().getId(), lease.getId(), lease.getDateFrom(), lease.getDateTo());
+            }
 
-            ResultSet keyRS = st.getGeneratedKeys();
-            lease.setId(getKey(keyRS, lease));
-            lease.getCar().setIsBorrowed(true);
-            conn.commit();
-        } catch (SQLException ex) {
-            throw new ServiceFailureException("Error when creating cars", ex);
-        } finally{
-            DBUtils.doRollbackQuietly(conn);
-            DBUtils.closeQuietly(conn,st);
-        }
+            @Override
+            protected void committed(List<Lease> leases) {
+                for (Lease lease : leases) {
+                    lease.getCar().setIsBorrowed(true);
+                    leaseIndex.add(lease.getCar().getId(), lease.getId(), lease.getDateFrom(), lease.getDateTo());
+                }
+            }
+        }.insert(dataSource, leases, chunkSize);
     }
 
     private Long getKey(ResultSet keyRS, Lease lease) throws SQLException {
@@ -128,20 +395,15 @@ public class LeaseManagerImpl implements LeaseManager {
         PreparedStatement st = null;
         try{
             conn = dataSource.getConnection();
-            st = conn.prepareStatement("SELECT ID, IDCUSTOMER, IDCAR, DATEFROM, DATETO, PRICE FROM LEASES WHERE ID=?");
+            st = statements.prepare(conn, leaseById);
             st.setLong(1, id);
-            ResultSet rs = st.executeQuery();
-            if(rs.next()){
-                Lease lease = resultSetToLease(rs);
-                if (rs.next()) {
-                    throw new ServiceFailureException(
-                            "Internal error: More entities with the same id found "
-                                    + "(source id: " + id + ", found " + lease + " and " + resultSetToLease(rs));
-                }
-                return lease;
-            }else{
-                return null;
+            List<Lease> leases = executeLeaseQuery(st);
+            if (leases.size() > 1) {
+                throw new ServiceFailureException(
+                        "Internal error: More entities with the same id found "
+                                + "(source id: " + id + ", found " + leases.get(0) + " and " + leases.get(1));
             }
+            return leases.isEmpty() ? null : leases.get(0);
         } catch (SQLException ex) {
             throw new ServiceFailureException("Error when retrieving lease by id", ex);
         } finally{
@@ -149,42 +411,357 @@ public class LeaseManagerImpl implements LeaseManager {
         }
     }
 
-    private Lease resultSetToLease(ResultSet rs) throws SQLException {
-        Lease lease= new Lease();
-        lease.setId(rs.getLong("ID"));
-        lease.setCustomer(customerManager.findCustomerById(rs.getLong("IDCUSTOMER")));
-        lease.setCar(carManager.getCarById (rs.getLong("IDCAR")));
-        lease.setDateFrom(toLocalDate(rs.getDate("DATEFROM")));
-        lease.setDateTo(toLocalDate(rs.getDate("DATETO")));
-        try {
-            lease.setPrice(rs.getBigDecimal("PRICE"));
-        } catch (ArithmeticException ex) {
-            throw new ServiceFailureException("bad BigDecimal value");
+    private List<Lease> executeLeaseQuery(PreparedStatement st) throws SQLException {
+        LeaseHydrator hydrator = new LeaseHydrator(0);
+        List<Lease> leases = new ArrayList<>();
+        try (ResultSet rs = st.executeQuery()) {
+            while (rs.next()) {
+                leases.add(hydrator.resultSetToLease(rs));
+            }
         }
-        return lease;
+        return leases;
     }
 
+    /**
+     * Maps rows of {@link #SELECT_LEASES}. Customers and cars which occur in more rows
+     * of one result are mapped only once and shared between the leases, either in
+     * the whole result or within batches of rows.
+     */
+    private static class LeaseHydrator {
+
+        private final Map<Long, Customer> customers = new HashMap<>();
+        private final Map<Long, Car> cars = new HashMap<>();
+        private final int batchSize;
+        private int batchRows;
+
+        /**
+         * @param batchSize number of rows after which the shared customers and cars
+         *                  are forgotten, zero to share them in the whole result
+         */
+        LeaseHydrator(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        Lease resultSetToLease(ResultSet rs) throws SQLException {
+            if (batchSize > 0 && batchRows++ == batchSize) {
+                customers.clear();
+                cars.clear();
+                batchRows = 1;
+            }
+            Lease lease = new Lease();
+            lease.setId(rs.getLong("ID"));
+            lease.setCustomer(resultSetToCustomer(rs));
+            lease.setCar(resultSetToCar(rs));
+            lease.setDateFrom(toLocalDate(rs.getDate("DATEFROM")));
+            lease.setDateTo(toLocalDate(rs.getDate("DATETO")));
+            try {
+                lease.setPrice(rs.getBigDecimal("PRICE"));
+            } catch (ArithmeticException ex) {
+                throw new ServiceFailureException("bad BigDecimal value");
+            }
+            return lease;
+        }
+
+        private Customer resultSetToCustomer(ResultSet rs) throws SQLException {
+            long id = rs.getLong("CUSTOMERID");
+            if (rs.wasNull()) {
+                return null;
+            }
+            Customer customer = customers.get(id);
+            if (customer == null) {
+                customer = new Customer();
+                customer.setId(id);
+                customer.setName(rs.getString("NAME"));
+                customer.setAddress(rs.getString("ADDRESS"));
+                customer.setPhoneNumber(rs.getString("PHONENUMBER"));
+                customers.put(id, customer);
+            }
+            return customer;
+        }
+
+        private Car resultSetToCar(ResultSet rs) throws SQLException {
+            long id = rs.getLong("CARID");
+            if (rs.wasNull()) {
+                return null;
+            }
+            Car car = cars.get(id);
+            if (car == null) {
+                car = new Car();
+                car.setId(id);
+                car.setLicensePlate(rs.getString("LICENSEPLATE"));
+                car.setModel(rs.getString("MODEL"));
+                car.setPrice(rs.getBigDecimal("CARPRICE"));
+                car.setNumberOfKM(rs.getBigDecimal("NUMBEROFKM"));
+                cars.put(id, car);
+            }
+            return car;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Customers and cars are shared between all leases of the list, unlike those
+     * of {@link #streamAllLeases()}.
+     */
     @Override
     public List<Lease> getAllLeases() {
         checkDataSource();
         Connection conn = null;
         PreparedStatement st = null;
+        try {
+            conn = dataSource.getConnection();
+            st = statements.prepare(conn, allLeases);
+            st.setFetchSize(fetchSize);
+            return executeLeaseQuery(st);
+        } catch (SQLException ex) {
+            throw new ServiceFailureException("Error when retrieving all leases", ex);
+        } finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Customers and cars are shared between the leases of one fetched batch of
+     * rows, see {@link #setFetchSize}, and mapped again in the next one, so the
+     * memory held by the stream stays proportional to the fetch size.
+     */
+    @Override
+    public Stream<Lease> streamAllLeases() {
+        checkDataSource();
+        return DBUtils.openCursor(dataSource, statements, allLeases,
+                fetchSize, new LeaseHydrator(fetchSize)::resultSetToLease);
+    }
+
+    @Override
+    public List<Lease> getLeasesAfter(Long lastId, int limit) {
+        checkDataSource();
+        checkPageLimit(limit);
+        Connection conn = null;
+        PreparedStatement st = null;
         try{
             conn = dataSource.getConnection();
-            st = conn.prepareStatement("SELECT ID, IDCUSTOMER, IDCAR, DATEFROM, DATETO, PRICE FROM LEASES");
-            ResultSet rs = st.executeQuery();
-            List<Lease> leases= new ArrayList<>();
-            while(rs.next()){
-                leases.add(resultSetToLease(rs));
+            if (lastId == null) {
+                st = statements.prepare(conn, firstLeases);
+                st.setInt(1, limit);
+            } else {
+                st = statements.prepare(conn, leasesAfter);
+                st.setLong(1, lastId);
+                st.setInt(2, limit);
             }
-            return leases;
+            return executeLeaseQuery(st);
         } catch (SQLException ex) {
-            throw new ServiceFailureException("Error when retrieving all leases", ex);
+            throw new ServiceFailureException("Error when retrieving leases after id " + lastId, ex);
         }finally{
             DBUtils.closeQuietly(conn,st);
         }
     }
 
+    @Override
+    public List<Lease> getLeasesByDateFromAfter(LocalDate lastDateFrom, Long lastId, int limit) {
+        return getLeasesByDateAfter(firstLeasesByDateFrom, leasesByDateFromAfter, lastDateFrom, lastId, limit);
+    }
+
+    @Override
+    public List<Lease> getLeasesByDateToAfter(LocalDate lastDateTo, Long lastId, int limit) {
+        return getLeasesByDateAfter(firstLeasesByDateTo, leasesByDateToAfter, lastDateTo, lastId, limit);
+    }
+
+    private static String firstLeasesByDate(String column) {
+        return SELECT_LEASES + " WHERE " + column + " IS NOT NULL"
+                + " ORDER BY " + column + ", L.ID FETCH FIRST ? ROWS ONLY";
+    }
+
+    /**
+     * Keyset page ordered by (date column, ID). The redundant {@code >=} condition
+     * lets Derby start an index scan on the date column at the last seen date.
+     */
+    private static String leasesByDateAfter(String column) {
+        return SELECT_LEASES + " WHERE " + column + " >= ?"
+                + " AND (" + column + " > ? OR L.ID > ?)"
+                + " ORDER BY " + column + ", L.ID FETCH FIRST ? ROWS ONLY";
+    }
+
+    private List<Lease> getLeasesByDateAfter(StatementRegistry.Sql first, StatementRegistry.Sql after,
+                                             LocalDate lastDate, Long lastId, int limit) {
+        checkDataSource();
+        checkPageLimit(limit);
+        if ((lastDate == null) != (lastId == null)) {
+            throw new IllegalArgumentException("last date and last id must be both set or both null");
+        }
+        Connection conn = null;
+        PreparedStatement st = null;
+        try{
+            conn = dataSource.getConnection();
+            if (lastDate == null) {
+                st = statements.prepare(conn, first);
+                st.setInt(1, limit);
+            } else {
+                st = statements.prepare(conn, after);
+                st.setDate(1, toSqlDate(lastDate));
+                st.setDate(2, toSqlDate(lastDate));
+                st.setLong(3, lastId);
+                st.setInt(4, limit);
+            }
+            return executeLeaseQuery(st);
+        } catch (SQLException ex) {
+            throw new ServiceFailureException("Error when retrieving leases after date "
+                    + lastDate + " and id " + lastId, ex);
+        }finally{
+            DBUtils.closeQuietly(conn,st);
+        }
+    }
+
+    private static void checkPageLimit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("page limit is not positive");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The SQL part of the query is evaluated by the database, first to count the
+     * matching leases and find their lowest and highest id. The range of ids is
+     * then halved by fork/join tasks of the query pool until a part holds about
+     * {@link #setQueryPartitionSize the partition size} leases; every part is read
+     * on its own connection, hydrated and filtered by the rest of the query, and
+     * the parts are concatenated in the order of ids. A query matching fewer
+     * leases is read by the calling thread. The parts are read in separate
+     * transactions, so leases changed meanwhile may be seen in either state.
+     */
+    @Override
+    public List<Lease> findLeases(LeaseQuery query) {
+        checkDataSource();
+        if (query == null) {
+            throw new IllegalArgumentException("query is null");
+        }
+        String condition = query.getSql() == null ? "" : query.getSql();
+        StatementRegistry.Sql[] sql = queryStatements.get(condition);
+        if (sql == null) {
+            // concurrent calls may register a few conditions over the limit
+            sql = queryStatements.size() < MAX_REGISTERED_QUERIES
+                    ? queryStatements.computeIfAbsent(condition, c -> queryStatements(c, true))
+                    : queryStatements(condition, false);
+        }
+        Connection conn = null;
+        PreparedStatement st = null;
+        long first;
+        long last;
+        long count;
+        try {
+            conn = dataSource.getConnection();
+            st = statements.prepare(conn, sql[0]);
+            bindQuery(st, query, 1);
+            try (ResultSet rs = st.executeQuery()) {
+                rs.next();
+                first = rs.getLong(1);
+                last = rs.getLong(2);
+                count = rs.getLong(3);
+            }
+        } catch (SQLException ex) {
+            throw new ServiceFailureException("Error when counting leases of " + query, ex);
+        } finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+        if (count == 0) {
+            return new ArrayList<>();
+        }
+        QueryPartition task = new QueryPartition(sql[1], query, first, last, count, queryPartitionSize);
+        if (count <= queryPartitionSize) {
+            return task.compute();
+        }
+        ForkJoinPool pool = queryPool;
+        return (pool == null ? DefaultQueryPool.POOL : pool).invoke(task);
+    }
+
+    private StatementRegistry.Sql[] queryStatements(String condition, boolean registered) {
+        String name = condition.isEmpty() ? "findLeases" : "findLeases[" + condition + "]";
+        String range = "SELECT MIN(L.ID), MAX(L.ID), COUNT(*) FROM LEASES L"
+                + (condition.isEmpty() ? "" : " WHERE " + condition);
+        String leases = SELECT_LEASES + " WHERE L.ID BETWEEN ? AND ?"
+                + (condition.isEmpty() ? "" : " AND (" + condition + ")") + " ORDER BY L.ID";
+        if (!registered) {
+            return new StatementRegistry.Sql[]{
+                    statements.unregistered(name + ".range", range), statements.unregistered(name, leases)};
+        }
+        return new StatementRegistry.Sql[]{statements.register(name + ".range", range), statements.register(name, leases)};
+    }
+
+    private static void bindQuery(PreparedStatement st, LeaseQuery query, int firstIndex) throws SQLException {
+        List<Object> parameters = query.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            st.setObject(firstIndex + i, parameters.get(i));
+        }
+    }
+
+    /**
+     * Leases of a query with ids in a range.
+     */
+    private final class QueryPartition extends RecursiveTask<List<Lease>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final StatementRegistry.Sql sql;
+        private final LeaseQuery query;
+        private final long first;
+        private final long last;
+        private final long estimatedCount;
+        private final int partitionSize;
+
+        QueryPartition(StatementRegistry.Sql sql, LeaseQuery query, long first, long last,
+                       long estimatedCount, int partitionSize) {
+            this.sql = sql;
+            this.query = query;
+            this.first = first;
+            this.last = last;
+            this.estimatedCount = estimatedCount;
+            this.partitionSize = partitionSize;
+        }
+
+        @Override
+        protected List<Lease> compute() {
+            if (estimatedCount <= partitionSize || first == last) {
+                return read();
+            }
+            long middle = first + (last - first) / 2;
+            QueryPartition left = new QueryPartition(sql, query, first, middle, estimatedCount / 2, partitionSize);
+            QueryPartition right = new QueryPartition(sql, query, middle + 1, last,
+                    estimatedCount - estimatedCount / 2, partitionSize);
+            left.fork();
+            List<Lease> rightLeases = right.compute();
+            List<Lease> leases = left.join();
+            leases.addAll(rightLeases);
+            return leases;
+        }
+
+        private List<Lease> read() {
+            Connection conn = null;
+            PreparedStatement st = null;
+            try {
+                conn = dataSource.getConnection();
+                st = statements.prepare(conn, sql);
+                st.setFetchSize(fetchSize);
+                st.setLong(1, first);
+                st.setLong(2, last);
+                bindQuery(st, query, 3);
+                List<Lease> leases = executeLeaseQuery(st);
+                Predicate<Lease> remaining = query.getRemaining();
+                if (remaining != null) {
+                    leases.removeIf(remaining.negate());
+                }
+                return leases;
+            } catch (SQLException ex) {
+                throw new ServiceFailureException("Error when retrieving leases of " + query
+                        + " with ids from " + first + " to " + last, ex);
+            } finally {
+                DBUtils.closeQuietly(conn, st);
+            }
+        }
+    }
+
     @Override
     public List<Lease> getAllLeasesByEndDate(LocalDate endDate) {
         checkDataSource();
@@ -196,16 +773,13 @@ public class LeaseManagerImpl implements LeaseManager {
         PreparedStatement st = null;
         try{
             conn = dataSource.getConnection();
-            st = conn.prepareStatement("SELECT ID, IDCUSTOMER, IDCAR, DATEFROM, DATETO, PRICE FROM LEASES WHERE DATETO=?");
+            st = statements.prepare(conn, leasesByEndDate);
             st.setDate(1, toSqlDate(endDate));
-            ResultSet rs = st.executeQuery();
-            List<Lease> leases= new ArrayList<>();
-            while(rs.next()){
-                leases.add(resultSetToLease(rs));
-            }
-            return leases;
+            return executeLeaseQuery(st);
         } catch (SQLException ex) {
             throw new ServiceFailureException("Error when retrieving lease for customer", ex);
+        }finally {
+            DBUtils.closeQuietly(conn,st);
         }
     }
 
@@ -224,14 +798,9 @@ public class LeaseManagerImpl implements LeaseManager {
         PreparedStatement st = null;
         try{
             conn = dataSource.getConnection();
-            st = conn.prepareStatement("SELECT ID, IDCUSTOMER, IDCAR, DATEFROM, DATETO, PRICE FROM LEASES WHERE IDCUSTOMER=?");
+            st = statements.prepare(conn, leasesForCustomer);
             st.setLong(1, customer.getId());
-            ResultSet rs = st.executeQuery();
-            List<Lease> leases= new ArrayList<>();
-            while(rs.next()){
-                leases.add(resultSetToLease(rs));
-            }
-            return leases;
+            return executeLeaseQuery(st);
         } catch (SQLException ex) {
             throw new ServiceFailureException("Error when retrieving lease for customer", ex);
         }finally {
@@ -254,14 +823,9 @@ public class LeaseManagerImpl implements LeaseManager {
         PreparedStatement st = null;
         try{
             conn = dataSource.getConnection();
-            st = conn.prepareStatement("SELECT ID, IDCUSTOMER, IDCAR, DATEFROM, DATETO, PRICE FROM LEASES WHERE IDCAR=?");
+            st = statements.prepare(conn, leasesForCar);
             st.setLong(1, car.getId());
-            ResultSet rs = st.executeQuery();
-            List<Lease> leases= new ArrayList<>();
-            while(rs.next()){
-                leases.add(resultSetToLease(rs));
-            }
-            return leases;
+            return executeLeaseQuery(st);
         } catch (SQLException ex) {
             throw new ServiceFailureException("Error when retrieving lease for car", ex);
         }finally {
@@ -285,14 +849,57 @@ public class LeaseManagerImpl implements LeaseManager {
             throw new IllegalArgumentException("Date to is after real end date.");
         }
 
+        long carId = lease.getCar().getId();
+        while (true) {
+            long oldCarId = carOfLease(null, lease.getId());
+            // the old car loses the days of the lease, so it is locked too
+            List<Lock> locks = oldCarId == NO_CAR || oldCarId == carId
+                    ? Collections.singletonList(carLocks.lock(carId)) : carLocks.lock(oldCarId, carId);
+            try {
+                if (updateLease(lease, oldCarId)) {
+                    return;
+                }
+                // moved to another car before the locks were acquired
+            } finally {
+                for (int i = locks.size() - 1; i >= 0; i--) {
+                    locks.get(i).unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates the lease holding the locks of its old and new car.
+     *
+     * @return false when the lease is no longer a lease of the old car
+     */
+    private boolean updateLease(Lease lease, long oldCarId) {
+        long carId = lease.getCar().getId();
+        checkNoConflict(lease, lease.getId());
+
         Connection conn = null;
         PreparedStatement st = null;
         try{
             conn = dataSource.getConnection();
             conn.setAutoCommit(false);
-            st = conn.prepareStatement("UPDATE LEASES SET IDCUSTOMER=?, IDCAR=?, DATEFROM=?, DATETO=?, PRICE=? WHERE id=?");
+            // rows of both cars are locked in the order of ids, as by other updates
+            if (oldCarId != NO_CAR && oldCarId < carId) {
+                lockCarRow(conn, oldCarId);
+            }
+            if (!lockCarRow(conn, carId)) {
+                throw new IllegalEntityException("Car " + lease.getCar() + " does not exist in the db");
+            }
+            if (oldCarId != NO_CAR && oldCarId > carId) {
+                lockCarRow(conn, oldCarId);
+            }
+            if (carOfLease(conn, lease.getId()) != oldCarId) {
+                return false;
+            }
+            checkNoConflictInTransaction(conn, lease, lease.getId());
+            dailyStats.removeLease(conn, lease.getId());
+            st = statements.prepare(conn, updateLease);
             st.setLong(1, lease.getCustomer().getId());
-            st.setLong(2, lease.getCar().getId());
+            st.setLong(2, carId);
             st.setDate(3, toSqlDate(lease.getDateFrom()));
             st.setDate(4, toSqlDate(lease.getDateTo()));
 
@@ -306,7 +913,10 @@ public class LeaseManagerImpl implements LeaseManager {
             if(st.executeUpdate() != 1) {
                 throw new IllegalArgumentException("lease with id=" + lease.getId() + " do not exist");
             }
+            dailyStats.addLease(conn, carId, lease.getDateFrom(), lease.getDateTo(), lease.getPrice());
             conn.commit();
+            leaseIndex.add(carId, lease.getId(), lease.getDateFrom(), lease.getDateTo());
+            return true;
         } catch(SQLException ex) {
             throw new ServiceFailureException("Error when updating lease", ex);
         }finally {
@@ -315,36 +925,177 @@ public class LeaseManagerImpl implements LeaseManager {
         }
     }
 
-    private boolean checkCarID(Long id, Car car) {
-        if(car == null){
-            throw new IllegalArgumentException("car is null");
+    /**
+     * Reads the car of a stored lease, in the transaction of the connection or,
+     * when it is null, on a connection of its own.
+     *
+     * @return id of the car or {@link #NO_CAR} when the lease has none
+     * @throws IllegalArgumentException when the lease does not exist
+     */
+    private long carOfLease(Connection conn, long leaseId) {
+        Connection own = null;
+        PreparedStatement st = null;
+        try {
+            if (conn == null) {
+                conn = own = dataSource.getConnection();
+            }
+            st = statements.prepare(conn, carOfLease);
+            st.setLong(1, leaseId);
+            try (ResultSet rs = st.executeQuery()) {
+                if (!rs.next()) {
+                    throw new IllegalArgumentException("lease with id=" + leaseId + " do not exist");
+                }
+                long carId = rs.getLong(1);
+                return rs.wasNull() ? NO_CAR : carId;
+            }
+        } catch (SQLException ex) {
+            throw new ServiceFailureException("Error when retrieving car of lease " + leaseId, ex);
+        } finally {
+            DBUtils.closeQuietly(own, st);
         }
+    }
 
-        if(car.getId() == null){
-            throw new IllegalArgumentException("car id is null");
+    /**
+     * Checks in the lease index that the car of the lease is not leased by another
+     * lease in any day of the lease. The index only knows about mutations done by this
+     * manager, so an overlap found there is confirmed in the database and dropped
+     * from the index when it is gone, e.g. after its car was deleted.
+     * <p>
+     * This only rejects conflicting leases early, without a transaction. The check
+     * which holds under concurrency is {@link #lockCarAndCheckNoConflict}.
+     *
+     * @param lease checked lease
+     * @param excludedLeaseId id of the lease being updated or null
+     * @throws IllegalEntityException when the car is leased in that time
+     */
+    private void checkNoConflict(Lease lease, Long excludedLeaseId) {
+        LeaseIntervalIndex index = leaseIndex();
+        long carId = lease.getCar().getId();
+        Long conflict;
+        while ((conflict = index.findConflict(carId, lease.getDateFrom(), lease.getDateTo(), excludedLeaseId)) != null) {
+            if (isOverlapping(conflict, carId, lease.getDateFrom(), lease.getDateTo())) {
+                throw new IllegalEntityException("Car " + lease.getCar() + " is already leased between "
+                        + lease.getDateFrom() + " and " + lease.getDateTo() + " by lease with id=" + conflict);
+            }
+            index.remove(conflict);
         }
+    }
+
+    /**
+     * Locks the row of the car of the lease until the end of the transaction and
+     * checks that no other lease of the car overlaps the lease. Mutations of leases
+     * of one car are serialized by the lock, so two concurrent transactions can not
+     * both pass the check for overlapping leases of the same car; mutations for
+     * different cars do not wait for each other. A transaction locks a single car
+     * row, except for bulk inserts, which lock the cars of their leases one by one,
+     * and updates moving a lease to another car, which lock the rows of both cars
+     * in the order of ids.
+     *
+     * @param conn connection with a transaction in progress
+     * @param lease created or updated lease
+     * @param excludedLeaseId id of the lease being updated or null
+     * @throws IllegalEntityException when the car does not exist or is leased in that time
+     */
+    private void lockCarAndCheckNoConflict(Connection conn, Lease lease, Long excludedLeaseId) throws SQLException {
+        if (!lockCarRow(conn, lease.getCar().getId())) {
+            throw new IllegalEntityException("Car " + lease.getCar() + " does not exist in the db");
+        }
+        checkNoConflictInTransaction(conn, lease, excludedLeaseId);
+    }
 
+    /**
+     * @return false when the car does not exist
+     */
+    private boolean lockCarRow(Connection conn, long carId) throws SQLException {
+        try (PreparedStatement st = statements.prepare(conn, lockCar)) {
+            st.setLong(1, carId);
+            return st.executeUpdate() != 0;
+        }
+    }
+
+    private void checkNoConflictInTransaction(Connection conn, Lease lease, Long excludedLeaseId) throws SQLException {
+        long carId = lease.getCar().getId();
+        try (PreparedStatement st = statements.prepare(conn, conflictingLease)) {
+            st.setLong(1, carId);
+            st.setLong(2, excludedLeaseId == null ? -1 : excludedLeaseId);
+            st.setDate(3, toSqlDate(lease.getDateTo()));
+            st.setDate(4, toSqlDate(lease.getDateFrom()));
+            try (ResultSet rs = st.executeQuery()) {
+                if (rs.next()) {
+                    long conflict = rs.getLong(1);
+                    throw new IllegalEntityException("Car " + lease.getCar() + " is already leased between "
+                            + lease.getDateFrom() + " and " + lease.getDateTo() + " by lease with id=" + conflict);
+                }
+            }
+        }
+    }
+
+    private boolean isOverlapping(Long leaseId, long carId, LocalDate from, LocalDate to) {
         Connection conn = null;
         PreparedStatement st = null;
         try{
             conn = dataSource.getConnection();
-            st = conn.prepareStatement("SELECT ID, IDCAR FROM LEASES WHERE IDCAR=? ");
-            st.setLong(1, car.getId());
-            ResultSet rs = st.executeQuery();
-
-            if(rs.next()){
-                return id != rs.getLong("ID");
-            }else{
-                return false;
+            st = statements.prepare(conn, overlappingLease);
+            st.setLong(1, leaseId);
+            st.setLong(2, carId);
+            st.setDate(3, toSqlDate(to));
+            st.setDate(4, toSqlDate(from));
+            try (ResultSet rs = st.executeQuery()) {
+                return rs.next();
             }
-
         } catch (SQLException ex){
-            throw new ServiceFailureException("Error when lease for car", ex);
+            throw new ServiceFailureException("Error when checking lease with id=" + leaseId, ex);
         }finally {
             DBUtils.closeQuietly(conn,st);
         }
     }
 
+    /**
+     * @return index of lease date ranges, loaded from the database on the first use
+     */
+    private LeaseIntervalIndex leaseIndex() {
+        if (!leaseIndexLoaded) {
+            synchronized (leaseIndex) {
+                if (!leaseIndexLoaded) {
+                    loadLeaseIndex();
+                }
+            }
+        }
+        return leaseIndex;
+    }
+
+    /**
+     * (Re)loads the index of lease date ranges used for overlap checks from the
+     * database. It is loaded on the first lease mutation otherwise; call this at
+     * startup to move the cost out of the first request, or after leases were
+     * changed outside of this manager.
+     */
+    public void loadLeaseIndex() {
+        checkDataSource();
+        synchronized (leaseIndex) {
+            LeaseIntervalIndex.Loader loader = leaseIndex.loader();
+            Connection conn = null;
+            PreparedStatement st = null;
+            try{
+                conn = dataSource.getConnection();
+                st = statements.prepare(conn, leaseRanges);
+                st.setFetchSize(fetchSize);
+                try (ResultSet rs = st.executeQuery()) {
+                    while (rs.next()) {
+                        loader.add(rs.getLong("IDCAR"), rs.getLong("ID"),
+                                toLocalDate(rs.getDate("DATEFROM")), toLocalDate(rs.getDate("DATETO")));
+                    }
+                }
+            } catch (SQLException ex){
+                throw new ServiceFailureException("Error when loading lease index", ex);
+            }finally {
+                DBUtils.closeQuietly(conn,st);
+            }
+            loader.install();
+            leaseIndexLoaded = true;
+        }
+    }
+
     @Override
     public void deleteLease(Lease lease) {
         checkDataSource();
@@ -356,36 +1107,105 @@ public class LeaseManagerImpl implements LeaseManager {
             throw new IllegalArgumentException("lease id is null");
         }
 
+        if(lease.getCar() == null || lease.getCar().getId() == null){
+            throw new IllegalArgumentException("car of the lease is null");
+        }
+
+        Lock lock = carLocks.lock(lease.getCar().getId());
+        try {
+            Connection conn = null;
+            PreparedStatement st = null;
+            try{
+                conn = dataSource.getConnection();
+                conn.setAutoCommit(false);
+                dailyStats.removeLease(conn, lease.getId());
+                st = statements.prepare(conn, deleteLease);
+                st.setLong(1, lease.getId());
+                if(st.executeUpdate() != 1) {
+                    throw new IllegalArgumentException("lease with id=" + lease.getId() + " do not exist");
+                }
+                lease.getCar().setIsBorrowed(false);
+                conn.commit();
+                leaseIndex.remove(lease.getId());
+            } catch(SQLException ex) {
+                throw new ServiceFailureException("Error when deleting lease", ex);
+            }finally {
+                DBUtils.doRollbackQuietly(conn);
+                DBUtils.closeQuietly(conn,st);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+
+    /**
+     * Deletes all leases by one statement.
+     *
+     * @return number of deleted leases
+     */
+    @Override
+    public int deleteAllLeases() {
+        checkDataSource();
         Connection conn = null;
         PreparedStatement st = null;
         try{
             conn = dataSource.getConnection();
             conn.setAutoCommit(false);
-            st = conn.prepareStatement("DELETE FROM LEASES WHERE id=?");
-            st.setLong(1, lease.getId());
-            if(st.executeUpdate() != 1) {
-                throw new IllegalArgumentException("lease with id=" + lease.getId() + " do not exist");
-            }
-            lease.getCar().setIsBorrowed(false);
+            dailyStats.removeAll(conn);
+            st = statements.prepare(conn, deleteAllLeases);
+            int count = st.executeUpdate();
             conn.commit();
+            leaseIndex.clear();
+            return count;
         } catch(SQLException ex) {
-            throw new ServiceFailureException("Error when deleting lease", ex);
+            throw new ServiceFailureException("Error when deleting all leases", ex);
         }finally {
             DBUtils.doRollbackQuietly(conn);
             DBUtils.closeQuietly(conn,st);
         }
     }
 
+    @Override
+    public int deleteLeasesEndedBefore(LocalDate date) {
+        checkDataSource();
+        if(date == null){
+            throw new IllegalArgumentException("date is null");
+        }
+        Connection conn = null;
+        PreparedStatement st = null;
+        try{
+            conn = dataSource.getConnection();
+            conn.setAutoCommit(false);
+            dailyStats.removeLeasesEndedBefore(conn, date);
+            st = statements.prepare(conn, deleteLeasesEndedBefore);
+            st.setDate(1, toSqlDate(date));
+            int count = st.executeUpdate();
+            conn.commit();
+            leaseIndex.removeEndedBefore(date);
+            return count;
+        } catch(SQLException ex) {
+            throw new ServiceFailureException("Error when deleting leases ended before " + date, ex);
+        }finally {
+            DBUtils.doRollbackQuietly(conn);
+            DBUtils.closeQuietly(conn,st);
+        }
+    }
+
+    static void validateNewLease(Lease lease) {
+        validateLease(lease);
 
+        if(lease.getId() != null){
+            throw new IllegalArgumentException("ID should be null");
+        }
 
-    public void deleteAllLeases() {
-        Collection<Lease> leases = new ArrayList<>(getAllLeases());
-        for(Lease l : leases) {
-            deleteLease(l);
+        if(lease.getDateTo().isBefore(lease.getDateFrom()) ){
+            throw new IllegalArgumentException("Date to should not be before date from");
         }
     }
 
-    private void validateLease(Lease lease) {
+    static void validateLease(Lease lease) {
         if(lease==null){
             throw new IllegalArgumentException("Lease is null");
         }
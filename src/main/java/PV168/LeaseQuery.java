@@ -0,0 +1,247 @@
+package PV168;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Conditions on leases for {@link LeaseManager#findLeases(LeaseQuery)}, combined
+ * by {@link #and(LeaseQuery)} and {@link #or(LeaseQuery)}.
+ * <p>
+ * Conditions on the car, customer, dates, price and car model are also given as
+ * SQL on the columns of {@code LEASES L}, so a database filters the rows before
+ * they are read. Conditions given by a Java predicate, see {@link #where(Predicate)},
+ * are evaluated on the read leases, and so is an alternative of such a condition
+ * with another one, for which the database only keeps rows matching either SQL part.
+ * <p>
+ * Queries are immutable; combining queries returns a new one.
+ */
+public final class LeaseQuery {
+
+    private static final LeaseQuery ALL = new LeaseQuery(null, Collections.emptyList(), lease -> true, null);
+
+    /** condition in SQL or null when the database does not filter */
+    private final String sql;
+    private final List<Object> parameters;
+    /** whole condition */
+    private final Predicate<Lease> predicate;
+    /** part of the condition the SQL does not cover, null when it covers everything */
+    private final Predicate<Lease> remaining;
+
+    private LeaseQuery(String sql, List<Object> parameters, Predicate<Lease> predicate, Predicate<Lease> remaining) {
+        this.sql = sql;
+        this.parameters = parameters;
+        this.predicate = predicate;
+        this.remaining = remaining;
+    }
+
+    private static LeaseQuery of(String sql, Predicate<Lease> predicate, Object... parameters) {
+        List<Object> list = new ArrayList<>(parameters.length);
+        Collections.addAll(list, parameters);
+        return new LeaseQuery(sql, Collections.unmodifiableList(list), predicate, null);
+    }
+
+    /**
+     * @return query matching all leases
+     */
+    public static LeaseQuery all() {
+        return ALL;
+    }
+
+    /**
+     * @param car car with id
+     * @return query matching leases of the car
+     */
+    public static LeaseQuery forCar(Car car) {
+        if (car == null || car.getId() == null) {
+            throw new IllegalArgumentException("car or its id is null");
+        }
+        long carId = car.getId();
+        return of("L.IDCAR = ?", lease -> lease.getCar() != null && lease.getCar().getId() != null
+                && lease.getCar().getId() == carId, carId);
+    }
+
+    /**
+     * @param customer customer with id
+     * @return query matching leases of the customer
+     */
+    public static LeaseQuery forCustomer(Customer customer) {
+        if (customer == null || customer.getId() == null) {
+            throw new IllegalArgumentException("customer or its id is null");
+        }
+        long customerId = customer.getId();
+        return of("L.IDCUSTOMER = ?", lease -> lease.getCustomer() != null && lease.getCustomer().getId() != null
+                && lease.getCustomer().getId() == customerId, customerId);
+    }
+
+    /**
+     * @param model model of cars
+     * @return query matching leases of cars of the model
+     */
+    public static LeaseQuery forModel(String model) {
+        if (model == null) {
+            throw new IllegalArgumentException("model is null");
+        }
+        return of("L.IDCAR IN (SELECT ID FROM CARS WHERE MODEL = ?)",
+                lease -> lease.getCar() != null && model.equals(lease.getCar().getModel()), model);
+    }
+
+    /**
+     * Leases without a start or an end are open on that side.
+     *
+     * @param from first day of the period
+     * @param to last day of the period
+     * @return query matching leases sharing at least one day with the period
+     */
+    public static LeaseQuery overlapping(LocalDate from, LocalDate to) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("period is null");
+        }
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("period ends before it starts");
+        }
+        return of("(L.DATEFROM IS NULL OR L.DATEFROM <= ?) AND (L.DATETO IS NULL OR L.DATETO >= ?)",
+                lease -> (lease.getDateFrom() == null || !lease.getDateFrom().isAfter(to))
+                        && (lease.getDateTo() == null || !lease.getDateTo().isBefore(from)),
+                Date.valueOf(to), Date.valueOf(from));
+    }
+
+    /**
+     * Leases without a price do not match.
+     *
+     * @param min lowest price, null for no lower bound
+     * @param max highest price, null for no upper bound
+     * @return query matching leases with a price between the bounds, both inclusive
+     */
+    public static LeaseQuery priceBetween(BigDecimal min, BigDecimal max) {
+        if (min == null && max == null) {
+            throw new IllegalArgumentException("both bounds are null");
+        }
+        if (min != null && max != null && max.compareTo(min) < 0) {
+            throw new IllegalArgumentException("price range is empty");
+        }
+        Predicate<Lease> predicate = lease -> lease.getPrice() != null
+                && (min == null || lease.getPrice().compareTo(min) >= 0)
+                && (max == null || lease.getPrice().compareTo(max) <= 0);
+        if (min == null) {
+            return of("L.PRICE <= ?", predicate, max);
+        }
+        if (max == null) {
+            return of("L.PRICE >= ?", predicate, min);
+        }
+        return of("L.PRICE BETWEEN ? AND ?", predicate, min, max);
+    }
+
+    /**
+     * The predicate is evaluated on the read leases, it is not pushed to a database.
+     *
+     * @param predicate condition on a lease
+     * @return query matching leases satisfying the predicate
+     */
+    public static LeaseQuery where(Predicate<Lease> predicate) {
+        if (predicate == null) {
+            throw new IllegalArgumentException("predicate is null");
+        }
+        return new LeaseQuery(null, Collections.emptyList(), predicate, predicate);
+    }
+
+    /**
+     * @param other another query
+     * @return query matching leases matched by both queries
+     */
+    public LeaseQuery and(LeaseQuery other) {
+        if (other == null) {
+            throw new IllegalArgumentException("query is null");
+        }
+        Predicate<Lease> remaining = this.remaining == null ? other.remaining
+                : other.remaining == null ? this.remaining : this.remaining.and(other.remaining);
+        return new LeaseQuery(combine(sql, "AND", other.sql), concat(parameters, other.parameters),
+                predicate.and(other.predicate), remaining);
+    }
+
+    /**
+     * @param other another query
+     * @return query matching leases matched by either query
+     */
+    public LeaseQuery or(LeaseQuery other) {
+        if (other == null) {
+            throw new IllegalArgumentException("query is null");
+        }
+        Predicate<Lease> predicate = this.predicate.or(other.predicate);
+        if (sql == null || other.sql == null) {
+            // one side does not filter in the database, so neither can the alternative
+            return new LeaseQuery(null, Collections.emptyList(), predicate,
+                    remaining == null && other.remaining == null && sql == null && other.sql == null ? null : predicate);
+        }
+        boolean exact = remaining == null && other.remaining == null;
+        return new LeaseQuery(combine(sql, "OR", other.sql), concat(parameters, other.parameters),
+                predicate, exact ? null : predicate);
+    }
+
+    private static String combine(String left, String operator, String right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        return "(" + left + ") " + operator + " (" + right + ")";
+    }
+
+    private static List<Object> concat(List<Object> left, List<Object> right) {
+        if (right.isEmpty()) {
+            return left;
+        }
+        if (left.isEmpty()) {
+            return right;
+        }
+        List<Object> list = new ArrayList<>(left.size() + right.size());
+        list.addAll(left);
+        list.addAll(right);
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * @param lease tested lease
+     * @return true when the lease matches the query
+     */
+    public boolean test(Lease lease) {
+        return predicate.test(lease);
+    }
+
+    /**
+     * @return condition on the columns of {@code LEASES L} with {@code ?} for
+     *         {@link #getParameters()}, null when the database does not filter
+     */
+    String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return values of the parameters of the SQL condition, as JDBC types
+     */
+    List<Object> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * @return condition the rows matching the SQL are filtered by after they are
+     *         read, null when the SQL is the whole condition
+     */
+    Predicate<Lease> getRemaining() {
+        return remaining;
+    }
+
+    @Override
+    public String toString() {
+        return "LeaseQuery{" +
+                "sql=" + sql +
+                ", parameters=" + parameters +
+                ", remaining=" + (remaining != null) +
+                '}';
+    }
+}
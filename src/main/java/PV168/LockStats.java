@@ -0,0 +1,68 @@
+package PV168;
+
+/**
+ * Snapshot of lock statistics.
+ */
+public class LockStats {
+
+    private final int stripes;
+    private final long acquisitions;
+    private final long contended;
+    private final long totalWaitNanos;
+    private final long maxWaitNanos;
+
+    public LockStats(int stripes, long acquisitions, long contended, long totalWaitNanos, long maxWaitNanos) {
+        this.stripes = stripes;
+        this.acquisitions = acquisitions;
+        this.contended = contended;
+        this.totalWaitNanos = totalWaitNanos;
+        this.maxWaitNanos = maxWaitNanos;
+    }
+
+    public int getStripes() {
+        return stripes;
+    }
+
+    public long getAcquisitions() {
+        return acquisitions;
+    }
+
+    /**
+     * @return number of acquisitions which had to wait for another thread
+     */
+    public long getContended() {
+        return contended;
+    }
+
+    /**
+     * @return total time spent waiting for the locks in nanoseconds
+     */
+    public long getTotalWaitNanos() {
+        return totalWaitNanos;
+    }
+
+    /**
+     * @return longest wait for a lock in nanoseconds
+     */
+    public long getMaxWaitNanos() {
+        return maxWaitNanos;
+    }
+
+    /**
+     * @return average wait of a contended acquisition in nanoseconds
+     */
+    public double getAverageContendedWaitNanos() {
+        return contended == 0 ? 0 : (double) totalWaitNanos / contended;
+    }
+
+    @Override
+    public String toString() {
+        return "LockStats{" +
+                "stripes=" + stripes +
+                ", acquisitions=" + acquisitions +
+                ", contended=" + contended +
+                ", averageContendedWaitNanos=" + getAverageContendedWaitNanos() +
+                ", maxWaitNanos=" + maxWaitNanos +
+                '}';
+    }
+}
@@ -0,0 +1,351 @@
+package PV168;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Concurrent map from positive long keys to values.
+ * <p>
+ * The keys are spread over segments, each with its own {@link StampedLock} and
+ * an open-addressing table of primitive keys with linear probing, so neither the
+ * keys nor the table entries are allocated per mapping. Reads are optimistic:
+ * they probe the table without locking and retry under the read lock only when
+ * a write to the same segment interleaved. Writes to different segments do not
+ * contend.
+ *
+ * @param <V> type of the values
+ */
+final class LongKeyMap<V> {
+
+    /** Marks a free slot, keys are positive. */
+    private static final long FREE = 0;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+
+    /**
+     * @param segments minimal number of segments, rounded up to a power of two
+     */
+    LongKeyMap(int segments) {
+        if (segments <= 0) {
+            throw new IllegalArgumentException("number of segments is not positive");
+        }
+        int size = Integer.highestOneBit(segments);
+        if (size < segments) {
+            size <<= 1;
+        }
+        this.segments = new Segment[size];
+        for (int i = 0; i < size; i++) {
+            this.segments[i] = new Segment();
+        }
+        segmentMask = size - 1;
+    }
+
+    /**
+     * @return value of the key or null when there is none
+     */
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        if (key <= FREE) {
+            return null;
+        }
+        long hash = hash(key);
+        return (V) segment(hash).get(key, (int) hash);
+    }
+
+    /**
+     * @return previous value of the key or null when there was none
+     */
+    @SuppressWarnings("unchecked")
+    V put(long key, V value) {
+        checkKey(key);
+        if (value == null) {
+            throw new IllegalArgumentException("value is null");
+        }
+        long hash = hash(key);
+        return (V) segment(hash).put(key, (int) hash, value, false);
+    }
+
+    /**
+     * Replaces the value of the key only when the key has a value.
+     *
+     * @return previous value of the key or null when there was none and nothing was stored
+     */
+    @SuppressWarnings("unchecked")
+    V replace(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value is null");
+        }
+        if (key <= FREE) {
+            return null;
+        }
+        long hash = hash(key);
+        return (V) segment(hash).put(key, (int) hash, value, true);
+    }
+
+    /**
+     * @return removed value of the key or null when there was none
+     */
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        if (key <= FREE) {
+            return null;
+        }
+        long hash = hash(key);
+        return (V) segment(hash).remove(key, (int) hash);
+    }
+
+    /**
+     * Removes the key only when it has the given value.
+     *
+     * @return true when the key was removed
+     */
+    boolean remove(long key, V expected) {
+        if (key <= FREE) {
+            return false;
+        }
+        long hash = hash(key);
+        return segment(hash).removeIf(key, (int) hash, expected);
+    }
+
+    void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return values of all keys in no particular order; each segment is read
+     *         consistently, the segments one after another
+     */
+    @SuppressWarnings("unchecked")
+    List<V> values() {
+        List<V> values = new ArrayList<>();
+        for (Segment segment : segments) {
+            segment.addValues((List<Object>) values);
+        }
+        return values;
+    }
+
+    private static void checkKey(long key) {
+        if (key <= FREE) {
+            throw new IllegalArgumentException("key is not positive");
+        }
+    }
+
+    private static long hash(long key) {
+        // consecutive ids differ in the low bits only, the multiplication spreads them
+        return key * 0x9E3779B97F4A7C15L;
+    }
+
+    private Segment segment(long hash) {
+        return segments[(int) (hash >>> 40) & segmentMask];
+    }
+
+    private static final class Segment {
+
+        private final StampedLock lock = new StampedLock();
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private Object[] values = new Object[INITIAL_CAPACITY];
+        private int size;
+
+        Object get(long key, int hash) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                // the arrays may be replaced meanwhile, the result is used only when validated
+                Object value = find(keys, values, key, hash);
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                return find(keys, values, key, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        Object put(long key, int hash, Object value, boolean onlyExisting) {
+            long stamp = lock.writeLock();
+            try {
+                int mask = keys.length - 1;
+                int i = hash & mask;
+                for (; keys[i] != FREE; i = (i + 1) & mask) {
+                    if (keys[i] == key) {
+                        Object previous = values[i];
+                        values[i] = value;
+                        return previous;
+                    }
+                }
+                if (onlyExisting) {
+                    return null;
+                }
+                keys[i] = key;
+                values[i] = value;
+                if (++size > keys.length * 3 / 4) {
+                    resize();
+                }
+                return null;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        Object remove(long key, int hash) {
+            long stamp = lock.writeLock();
+            try {
+                int i = slot(key, hash);
+                if (i < 0) {
+                    return null;
+                }
+                Object previous = values[i];
+                shiftBack(i);
+                size--;
+                return previous;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        boolean removeIf(long key, int hash, Object expected) {
+            long stamp = lock.writeLock();
+            try {
+                int i = slot(key, hash);
+                if (i < 0 || !values[i].equals(expected)) {
+                    return false;
+                }
+                shiftBack(i);
+                size--;
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void clear() {
+            long stamp = lock.writeLock();
+            try {
+                keys = new long[INITIAL_CAPACITY];
+                values = new Object[INITIAL_CAPACITY];
+                size = 0;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * @return slot of the key or -1 when the key is not there, called with the write lock
+         */
+        private int slot(long key, int hash) {
+            int mask = keys.length - 1;
+            int i = hash & mask;
+            for (; keys[i] != key; i = (i + 1) & mask) {
+                if (keys[i] == FREE) {
+                    return -1;
+                }
+            }
+            return i;
+        }
+
+        int size() {
+            long stamp = lock.tryOptimisticRead();
+            int result = size;
+            if (lock.validate(stamp)) {
+                return result;
+            }
+            stamp = lock.readLock();
+            try {
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        void addValues(List<Object> result) {
+            long stamp = lock.readLock();
+            try {
+                for (int i = 0; i < keys.length; i++) {
+                    if (keys[i] != FREE) {
+                        result.add(values[i]);
+                    }
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private static Object find(long[] keys, Object[] values, long key, int hash) {
+            if (keys.length != values.length) {
+                return null;
+            }
+            int mask = keys.length - 1;
+            int i = hash & mask;
+            for (int probes = 0; probes <= mask; probes++, i = (i + 1) & mask) {
+                long k = keys[i];
+                if (k == key) {
+                    return values[i];
+                }
+                if (k == FREE) {
+                    return null;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Frees the slot and moves later entries of the probe sequence back, so
+         * lookups never need tombstones.
+         */
+        private void shiftBack(int free) {
+            int mask = keys.length - 1;
+            int i = free;
+            while (true) {
+                i = (i + 1) & mask;
+                long key = keys[i];
+                if (key == FREE) {
+                    break;
+                }
+                int home = (int) hash(key) & mask;
+                // the entry may move to the free slot when its home is not between the two
+                if (((i - home) & mask) >= ((i - free) & mask)) {
+                    keys[free] = key;
+                    values[free] = values[i];
+                    free = i;
+                }
+            }
+            keys[free] = FREE;
+            values[free] = null;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            long[] newKeys = new long[oldKeys.length * 2];
+            Object[] newValues = new Object[newKeys.length];
+            int mask = newKeys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] != FREE) {
+                    int i = (int) hash(oldKeys[j]) & mask;
+                    while (newKeys[i] != FREE) {
+                        i = (i + 1) & mask;
+                    }
+                    newKeys[i] = oldKeys[j];
+                    newValues[i] = oldValues[j];
+                }
+            }
+            keys = newKeys;
+            values = newValues;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package PV168;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Runs blocking manager calls off the calling thread.
+ */
+public interface ManagerExecutor extends AutoCloseable {
+
+    /**
+     * Submits a call.
+     *
+     * @param call blocking call
+     * @param <T> type of the result
+     * @return future completed with the result of the call, or exceptionally with the
+     * exception thrown by the call, {@link java.util.concurrent.RejectedExecutionException}
+     * when the executor is saturated or {@link java.util.concurrent.TimeoutException}
+     * when the call did not finish in time
+     */
+    <T> CompletableFuture<T> submit(Supplier<T> call);
+
+    /**
+     * Submits a call without a result.
+     *
+     * @param call blocking call
+     * @return future completed when the call finishes, see {@link #submit(Supplier)}
+     */
+    default CompletableFuture<Void> run(Runnable call) {
+        return submit(() -> {
+            call.run();
+            return null;
+        });
+    }
+
+    /**
+     * Stops accepting calls. Submitted calls are still executed.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,31 @@
+package PV168;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * One versioned change of the database schema, applied by {@link SchemaMigrator}.
+ */
+public interface Migration {
+
+    /**
+     * @return positive version, migrations are applied in ascending order of versions
+     */
+    int getVersion();
+
+    String getDescription();
+
+    /**
+     * @return checksum of the content, an applied migration must not change
+     */
+    long getChecksum();
+
+    /**
+     * Applies the migration. Runs in the transaction of the migration, the
+     * connection must not be committed or closed.
+     *
+     * @param conn connection
+     * @throws SQLException when the migration fails
+     */
+    void apply(Connection conn) throws SQLException;
+}
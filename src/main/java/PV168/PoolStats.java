@@ -0,0 +1,95 @@
+package PV168;
+
+/**
+ * Snapshot of connection pool statistics.
+ */
+public class PoolStats {
+
+    private final int active;
+    private final int idle;
+    private final int maxActive;
+    private final int waiters;
+    private final long connectionsServed;
+    private final long totalWaitNanos;
+    private final long maxWaitNanos;
+
+    public PoolStats(int active, int idle, int maxActive, int waiters,
+                     long connectionsServed, long totalWaitNanos, long maxWaitNanos) {
+        this.active = active;
+        this.idle = idle;
+        this.maxActive = maxActive;
+        this.waiters = waiters;
+        this.connectionsServed = connectionsServed;
+        this.totalWaitNanos = totalWaitNanos;
+        this.maxWaitNanos = maxWaitNanos;
+    }
+
+    /**
+     * @return number of connections borrowed from the pool
+     */
+    public int getActive() {
+        return active;
+    }
+
+    /**
+     * @return number of idle connections in the pool
+     */
+    public int getIdle() {
+        return idle;
+    }
+
+    /**
+     * @return maximum number of borrowed connections, negative for no limit
+     */
+    public int getMaxActive() {
+        return maxActive;
+    }
+
+    /**
+     * @return number of threads currently waiting for a connection
+     */
+    public int getWaiters() {
+        return waiters;
+    }
+
+    /**
+     * @return number of connections handed out since the pool was created
+     */
+    public long getConnectionsServed() {
+        return connectionsServed;
+    }
+
+    /**
+     * @return total time spent waiting for connections in nanoseconds
+     */
+    public long getTotalWaitNanos() {
+        return totalWaitNanos;
+    }
+
+    /**
+     * @return longest wait for a single connection in nanoseconds
+     */
+    public long getMaxWaitNanos() {
+        return maxWaitNanos;
+    }
+
+    /**
+     * @return average wait for a connection in nanoseconds
+     */
+    public double getAverageWaitNanos() {
+        return connectionsServed == 0 ? 0 : (double) totalWaitNanos / connectionsServed;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolStats{" +
+                "active=" + active +
+                ", idle=" + idle +
+                ", maxActive=" + maxActive +
+                ", waiters=" + waiters +
+                ", connectionsServed=" + connectionsServed +
+                ", averageWaitNanos=" + getAverageWaitNanos() +
+                ", maxWaitNanos=" + maxWaitNanos +
+                '}';
+    }
+}
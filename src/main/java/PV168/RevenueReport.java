@@ -0,0 +1,112 @@
+package PV168;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Revenue of leases starting in a period, in total and in buckets of days, weeks or months.
+ * <p>
+ * Amounts are kept in cents and converted to {@link BigDecimal} of scale 2 when
+ * they are returned, so the sums are exact.
+ */
+public class RevenueReport {
+
+    private final LocalDate from;
+    private final LocalDate to;
+    private final RevenueReporter.Granularity granularity;
+    private final long[] bucketStarts;
+    private final long[] cents;
+    private final int[] counts;
+
+    RevenueReport(LocalDate from, LocalDate to, RevenueReporter.Granularity granularity,
+                  long[] bucketStarts, long[] cents, int[] counts) {
+        this.from = from;
+        this.to = to;
+        this.granularity = granularity;
+        this.bucketStarts = bucketStarts;
+        this.cents = cents;
+        this.counts = counts;
+    }
+
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    public LocalDate getTo() {
+        return to;
+    }
+
+    public RevenueReporter.Granularity getGranularity() {
+        return granularity;
+    }
+
+    /**
+     * @return number of leases starting in the period
+     */
+    public long getCount() {
+        long count = 0;
+        for (int value : counts) {
+            count += value;
+        }
+        return count;
+    }
+
+    /**
+     * @return sum of prices of the leases in cents
+     */
+    public long getTotalCents() {
+        long total = 0;
+        for (long value : cents) {
+            total = Math.addExact(total, value);
+        }
+        return total;
+    }
+
+    /**
+     * @return sum of prices of the leases
+     */
+    public BigDecimal getTotal() {
+        return BigDecimal.valueOf(getTotalCents(), 2);
+    }
+
+    /**
+     * @return average price of the leases rounded half up to cents, zero when there are none
+     */
+    public BigDecimal getAverage() {
+        long count = getCount();
+        if (count == 0) {
+            return BigDecimal.valueOf(0, 2);
+        }
+        return getTotal().divide(BigDecimal.valueOf(count), 2, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Buckets are keyed by their first day: the day itself, the Monday of the week
+     * or the first day of the month. The first and the last week may start or end
+     * outside the period, only leases starting in the period are counted in them.
+     *
+     * @return revenue per bucket in chronological order, including empty buckets
+     */
+    public Map<LocalDate, BigDecimal> getBuckets() {
+        Map<LocalDate, BigDecimal> buckets = new LinkedHashMap<>();
+        for (int i = 0; i < bucketStarts.length; i++) {
+            buckets.put(LocalDate.ofEpochDay(bucketStarts[i]), BigDecimal.valueOf(cents[i], 2));
+        }
+        return Collections.unmodifiableMap(buckets);
+    }
+
+    /**
+     * @return number of leases per bucket in chronological order, keyed as {@link #getBuckets()}
+     */
+    public Map<LocalDate, Integer> getBucketCounts() {
+        Map<LocalDate, Integer> buckets = new LinkedHashMap<>();
+        for (int i = 0; i < bucketStarts.length; i++) {
+            buckets.put(LocalDate.ofEpochDay(bucketStarts[i]), counts[i]);
+        }
+        return Collections.unmodifiableMap(buckets);
+    }
+}
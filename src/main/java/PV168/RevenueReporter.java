@@ -0,0 +1,159 @@
+package PV168;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * Sums revenue of leases without {@link java.math.BigDecimal} arithmetic.
+ * <p>
+ * The price is selected as a BIGINT of cents and the start day as an integer
+ * {@code yyyymmdd}, see {@link EpochDays}, so a row is read with
+ * {@code getLong} and {@code getInt} and added to primitive arrays of buckets
+ * without allocating. Since the prices have scale 2, the sums in cents are exact;
+ * they are converted to {@code BigDecimal} only by {@link RevenueReport}.
+ * <p>
+ * A lease belongs to the bucket of the day it starts; leases without a start day
+ * or a price are not counted.
+ */
+public class RevenueReporter {
+
+    /**
+     * Size of the buckets of a report.
+     */
+    public enum Granularity {
+        DAY, WEEK, MONTH
+    }
+
+    private final StatementRegistry statements = new StatementRegistry();
+    private final StatementRegistry.Sql leasesStarting = statements.register("leasesStarting",
+            "SELECT " + EpochDays.ymd("DATEFROM") + ", " + EpochDays.cents("PRICE")
+            + " FROM LEASES WHERE DATEFROM BETWEEN ? AND ? AND PRICE IS NOT NULL");
+
+    private final DataSource dataSource;
+    private int fetchSize = 1000;
+
+    public RevenueReporter(DataSource dataSource) {
+        if (dataSource == null) {
+            throw new IllegalArgumentException("dataSource is null");
+        }
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Sets number of rows fetched at once when reading the leases.
+     *
+     * @param fetchSize positive number of rows
+     */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException("fetch size is not positive");
+        }
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * @return execution statistics of the statements of this service by their names
+     */
+    public Map<String, StatementStats> getStatementStats() {
+        return statements.getStats();
+    }
+
+    /**
+     * Computes revenue of the leases starting in the given period.
+     *
+     * @param from first day of the period
+     * @param to last day of the period
+     * @param granularity size of the buckets
+     * @return revenue in total and per bucket
+     * @throws IllegalArgumentException when an argument is null or the period is empty
+     * @throws ServiceFailureException when the leases can not be read
+     */
+    public RevenueReport revenue(LocalDate from, LocalDate to, Granularity granularity)
+            throws ServiceFailureException {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("period is null");
+        }
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("period ends before it starts");
+        }
+        if (granularity == null) {
+            throw new IllegalArgumentException("granularity is null");
+        }
+        long[] bucketStarts = bucketStarts(from, to, granularity);
+        long[] cents = new long[bucketStarts.length];
+        int[] counts = new int[bucketStarts.length];
+        long firstDay = from.toEpochDay();
+        long firstWeek = EpochDays.weekStart(firstDay);
+        int firstMonth = from.getYear() * 12 + from.getMonthValue() - 1;
+
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = dataSource.getConnection();
+            st = statements.prepare(conn, leasesStarting);
+            st.setFetchSize(fetchSize);
+            st.setDate(1, Date.valueOf(from));
+            st.setDate(2, Date.valueOf(to));
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    int ymd = rs.getInt(1);
+                    int bucket;
+                    switch (granularity) {
+                        case DAY:
+                            bucket = (int) (EpochDays.fromYmd(ymd) - firstDay);
+                            break;
+                        case WEEK:
+                            bucket = (int) ((EpochDays.weekStart(EpochDays.fromYmd(ymd)) - firstWeek) / 7);
+                            break;
+                        default:
+                            bucket = ymd / 10000 * 12 + ymd / 100 % 100 - 1 - firstMonth;
+                    }
+                    cents[bucket] = Math.addExact(cents[bucket], rs.getLong(2));
+                    counts[bucket]++;
+                }
+            }
+        } catch (SQLException ex) {
+            throw new ServiceFailureException("Error when computing revenue", ex);
+        } finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+        return new RevenueReport(from, to, granularity, bucketStarts, cents, counts);
+    }
+
+    private static long[] bucketStarts(LocalDate from, LocalDate to, Granularity granularity) {
+        long firstDay = from.toEpochDay();
+        long lastDay = to.toEpochDay();
+        switch (granularity) {
+            case DAY:
+                return range(firstDay, lastDay - firstDay + 1, 1);
+            case WEEK:
+                long firstWeek = EpochDays.weekStart(firstDay);
+                return range(firstWeek, (EpochDays.weekStart(lastDay) - firstWeek) / 7 + 1, 7);
+            default:
+                int months = (to.getYear() - from.getYear()) * 12 + to.getMonthValue() - from.getMonthValue() + 1;
+                long[] starts = new long[months];
+                LocalDate month = from.withDayOfMonth(1);
+                for (int i = 0; i < months; i++, month = month.plusMonths(1)) {
+                    starts[i] = month.toEpochDay();
+                }
+                return starts;
+        }
+    }
+
+    private static long[] range(long first, long count, int step) {
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("period has too many buckets");
+        }
+        long[] starts = new long[(int) count];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = first + (long) i * step;
+        }
+        return starts;
+    }
+}
@@ -0,0 +1,14 @@
+package PV168;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row of a result set to an entity.
+ *
+ * @param <T> type of the mapped entity
+ */
+public interface RowMapper<T> {
+
+    T map(ResultSet rs) throws SQLException;
+}
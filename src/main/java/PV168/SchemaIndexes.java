@@ -0,0 +1,185 @@
+package PV168;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Secondary indexes of the schema.
+ * <p>
+ * The foreign keys {@code LEASES.IDCUSTOMER} and {@code LEASES.IDCAR} are not
+ * listed, Derby backs every foreign key constraint by an index already. Lookups of
+ * leases by car use the leading column of {@code LEASES_CAR_DATES}, which also
+ * covers the date conditions of the overlap checks.
+ */
+public final class SchemaIndexes {
+
+    private static final Logger log = Logger.getLogger(
+            SchemaIndexes.class.getName());
+
+    public static final List<Index> INDEXES = Collections.unmodifiableList(Arrays.asList(
+            new Index("CARS_LICENSEPLATE", "CARS", true, "LICENSEPLATE"),
+            new Index("LEASES_CAR_DATES", "LEASES", false, "IDCAR", "DATEFROM", "DATETO"),
+            new Index("LEASES_DATEFROM", "LEASES", false, "DATEFROM"),
+            new Index("LEASES_DATETO", "LEASES", false, "DATETO")
+    ));
+
+    private SchemaIndexes() {
+    }
+
+    /**
+     * Creates the indexes which do not exist yet.
+     *
+     * @param ds datasource
+     * @return names of the created indexes
+     * @throws SQLException when operation fails
+     */
+    public static List<String> apply(DataSource ds) throws SQLException {
+        try (Connection conn = ds.getConnection()) {
+            return apply(conn);
+        }
+    }
+
+    static List<String> apply(Connection conn) throws SQLException {
+        List<String> created = new ArrayList<>();
+        for (Index index : INDEXES) {
+            if (!exists(conn, index)) {
+                try (Statement st = conn.createStatement()) {
+                    st.executeUpdate(index.getCreateStatement());
+                }
+                created.add(index.getName());
+                log.log(Level.INFO, "Index " + index.getName() + " created");
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Migration creating the missing indexes. Databases created before schema
+     * versioning may have some of the indexes already, so unlike a script it
+     * creates only the missing ones.
+     *
+     * @param version version of the migration
+     * @return migration
+     */
+    static Migration migration(final int version) {
+        final CRC32 crc = new CRC32();
+        for (Index index : INDEXES) {
+            crc.update(index.getCreateStatement().getBytes(StandardCharsets.UTF_8));
+        }
+        return new Migration() {
+            @Override
+            public int getVersion() {
+                return version;
+            }
+
+            @Override
+            public String getDescription() {
+                return "secondary indexes";
+            }
+
+            @Override
+            public long getChecksum() {
+                return crc.getValue();
+            }
+
+            @Override
+            public void apply(Connection conn) throws SQLException {
+                SchemaIndexes.apply(conn);
+            }
+
+            @Override
+            public String toString() {
+                return "V" + version + " " + getDescription();
+            }
+        };
+    }
+
+    /**
+     * @param ds datasource
+     * @return indexes which do not exist
+     * @throws SQLException when operation fails
+     */
+    public static List<Index> missing(DataSource ds) throws SQLException {
+        try (Connection conn = ds.getConnection()) {
+            List<Index> missing = new ArrayList<>();
+            for (Index index : INDEXES) {
+                if (!exists(conn, index)) {
+                    missing.add(index);
+                }
+            }
+            return missing;
+        }
+    }
+
+    private static boolean exists(Connection conn, Index index) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        Set<String> names = new HashSet<>();
+        try (ResultSet rs = metaData.getIndexInfo(null, null, index.getTable(), false, true)) {
+            while (rs.next()) {
+                String name = rs.getString("INDEX_NAME");
+                if (name != null) {
+                    names.add(name.toUpperCase());
+                }
+            }
+        }
+        return names.contains(index.getName());
+    }
+
+    /**
+     * Definition of one index.
+     */
+    public static final class Index {
+
+        private final String name;
+        private final String table;
+        private final boolean unique;
+        private final List<String> columns;
+
+        Index(String name, String table, boolean unique, String... columns) {
+            this.name = name;
+            this.table = table;
+            this.unique = unique;
+            this.columns = Collections.unmodifiableList(Arrays.asList(columns));
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public boolean isUnique() {
+            return unique;
+        }
+
+        public List<String> getColumns() {
+            return columns;
+        }
+
+        public String getCreateStatement() {
+            return "CREATE " + (unique ? "UNIQUE " : "") + "INDEX " + name
+                    + " ON " + table + " (" + String.join(", ", columns) + ")";
+        }
+
+        @Override
+        public String toString() {
+            return getCreateStatement();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package PV168;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Brings the database schema to the latest version.
+ * <p>
+ * Applied migrations are recorded in the {@code SCHEMA_VERSION} table with their
+ * checksums. Each pending migration runs in its own transaction together with
+ * its record, so a failed migration leaves no trace and is run again next time.
+ * On an up-to-date database {@link #migrate()} costs one query of the version
+ * table.
+ * <p>
+ * A database created before schema versioning, which has the tables but no
+ * version table, is recorded as being at version 1 without running it.
+ */
+public class SchemaMigrator {
+
+    private static final Logger log = Logger.getLogger(
+            SchemaMigrator.class.getName());
+
+    public static final String VERSION_TABLE = "SCHEMA_VERSION";
+
+    private static final String CREATE_VERSION_TABLE = "CREATE TABLE " + VERSION_TABLE + " ("
+            + "VERSION INT PRIMARY KEY,"
+            + "DESCRIPTION VARCHAR(200),"
+            + "CHECKSUM BIGINT NOT NULL,"
+            + "INSTALLED_ON TIMESTAMP NOT NULL)";
+
+    private final DataSource dataSource;
+    private final List<Migration> migrations;
+
+    public SchemaMigrator(DataSource dataSource) {
+        this(dataSource, defaultMigrations());
+    }
+
+    public SchemaMigrator(DataSource dataSource, List<Migration> migrations) {
+        if (dataSource == null) {
+            throw new IllegalArgumentException("dataSource is null");
+        }
+        if (migrations == null) {
+            throw new IllegalArgumentException("migrations are null");
+        }
+        List<Migration> sorted = new ArrayList<>(migrations);
+        sorted.sort(Comparator.comparingInt(Migration::getVersion));
+        for (int i = 1; i < sorted.size(); i++) {
+            if (sorted.get(i).getVersion() == sorted.get(i - 1).getVersion()) {
+                throw new IllegalArgumentException("duplicate migration version " + sorted.get(i).getVersion());
+            }
+        }
+        this.dataSource = dataSource;
+        this.migrations = Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * @return migrations of the schema of this project, without the optional
+     *         {@link WriteBehindSchema#migrations()}
+     */
+    public static List<Migration> defaultMigrations() {
+        return Arrays.asList(
+                SqlMigration.fromResource("/db/migration/V1__create_tables.sql"),
+                SchemaIndexes.migration(2),
+                SqlMigration.fromResource("/db/migration/V3__create_daily_stats.sql"));
+    }
+
+    /**
+     * Applies all pending migrations.
+     *
+     * @return number of applied migrations
+     * @throws ServiceFailureException when a migration fails or an applied one was changed
+     */
+    public int migrate() throws ServiceFailureException {
+        return migrate(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Applies pending migrations up to the given version.
+     *
+     * @param targetVersion last version to apply
+     * @return number of applied migrations
+     * @throws ServiceFailureException when a migration fails or an applied one was changed
+     */
+    public synchronized int migrate(int targetVersion) throws ServiceFailureException {
+        Connection conn = null;
+        try {
+            conn = dataSource.getConnection();
+            TreeMap<Integer, Long> applied = readAppliedVersions(conn);
+            if (applied == null) {
+                applied = createVersionTable(conn);
+            }
+            int count = 0;
+            for (Migration migration : migrations) {
+                if (migration.getVersion() > targetVersion) {
+                    break;
+                }
+                Long checksum = applied.get(migration.getVersion());
+                if (checksum == null) {
+                    apply(conn, migration);
+                    count++;
+                } else if (checksum != migration.getChecksum()) {
+                    throw new ServiceFailureException("Applied migration " + migration
+                            + " was changed, checksum " + migration.getChecksum() + " differs from " + checksum);
+                }
+            }
+            return count;
+        } catch (SQLException ex) {
+            throw new ServiceFailureException("Error when migrating database schema", ex);
+        } finally {
+            DBUtils.closeQuietly(conn);
+        }
+    }
+
+    /**
+     * @return version of the last applied migration, zero when none was applied
+     * @throws ServiceFailureException when the version can not be read
+     */
+    public int getCurrentVersion() throws ServiceFailureException {
+        try (Connection conn = dataSource.getConnection()) {
+            TreeMap<Integer, Long> applied = readAppliedVersions(conn);
+            return applied == null || applied.isEmpty() ? 0 : applied.lastKey();
+        } catch (SQLException ex) {
+            throw new ServiceFailureException("Error when reading schema version", ex);
+        }
+    }
+
+    /**
+     * @return checksums of the applied migrations by their versions, null when there is no version table
+     */
+    private static TreeMap<Integer, Long> readAppliedVersions(Connection conn) throws SQLException {
+        TreeMap<Integer, Long> applied = new TreeMap<>();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT VERSION, CHECKSUM FROM " + VERSION_TABLE)) {
+            while (rs.next()) {
+                applied.put(rs.getInt(1), rs.getLong(2));
+            }
+            return applied;
+        } catch (SQLException ex) {
+            if ("42X05".equals(ex.getSQLState())) {
+                // This code represents "Table does not exist"
+                // This code is Derby specific!
+                return null;
+            }
+            throw ex;
+        }
+    }
+
+    private TreeMap<Integer, Long> createVersionTable(Connection conn) throws SQLException {
+        TreeMap<Integer, Long> applied = new TreeMap<>();
+        boolean legacy = tableExists(conn, "CARS");
+        conn.setAutoCommit(false);
+        try {
+            try (Statement st = conn.createStatement()) {
+                st.executeUpdate(CREATE_VERSION_TABLE);
+            }
+            if (legacy && !migrations.isEmpty() && migrations.get(0).getVersion() == 1) {
+                Migration baseline = migrations.get(0);
+                record(conn, baseline);
+                applied.put(baseline.getVersion(), baseline.getChecksum());
+                log.log(Level.INFO, "Existing schema recorded as " + baseline);
+            }
+            conn.commit();
+            return applied;
+        } finally {
+            DBUtils.doRollbackQuietly(conn);
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private static void apply(Connection conn, Migration migration) throws SQLException {
+        conn.setAutoCommit(false);
+        try {
+            migration.apply(conn);
+            record(conn, migration);
+            conn.commit();
+            log.log(Level.INFO, "Migration " + migration + " applied");
+        } finally {
+            DBUtils.doRollbackQuietly(conn);
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private static void record(Connection conn, Migration migration) throws SQLException {
+        try (PreparedStatement st = conn.prepareStatement("INSERT INTO " + VERSION_TABLE
+                + " (VERSION, DESCRIPTION, CHECKSUM, INSTALLED_ON) VALUES (?,?,?,?)")) {
+            st.setInt(1, migration.getVersion());
+            st.setString(2, migration.getDescription());
+            st.setLong(3, migration.getChecksum());
+            st.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
+            st.executeUpdate();
+        }
+    }
+
+    private static boolean tableExists(Connection conn, String table) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        try (ResultSet rs = metaData.getTables(null, null, table, new String[]{"TABLE"})) {
+            return rs.next();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package PV168;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Migration defined by a SQL script named {@code V<version>__<description>.sql}.
+ * The statements of the script are executed as one batch.
+ */
+public class SqlMigration implements Migration {
+
+    private static final Pattern NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+
+    private final int version;
+    private final String description;
+    private final List<String> statements;
+    private final long checksum;
+
+    public SqlMigration(int version, String description, String script) {
+        if (version <= 0) {
+            throw new IllegalArgumentException("version is not positive");
+        }
+        this.version = version;
+        this.description = description;
+        this.statements = DBUtils.splitSqlStatements(script);
+        CRC32 crc = new CRC32();
+        crc.update(String.join(";", statements).getBytes(StandardCharsets.UTF_8));
+        this.checksum = crc.getValue();
+    }
+
+    /**
+     * Reads migration from a script on the classpath.
+     *
+     * @param path absolute classpath path of the script
+     * @return migration
+     * @throws IllegalArgumentException when the script does not exist or is not named by a version
+     */
+    public static SqlMigration fromResource(String path) {
+        URL url = SqlMigration.class.getResource(path);
+        if (url == null) {
+            throw new IllegalArgumentException("migration " + path + " not found in the classpath");
+        }
+        Matcher matcher = NAME.matcher(path.substring(path.lastIndexOf('/') + 1));
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("migration " + path + " is not named V<version>__<description>.sql");
+        }
+        return new SqlMigration(Integer.parseInt(matcher.group(1)), matcher.group(2).replace('_', ' '),
+                DBUtils.readSqlScript(url));
+    }
+
+    @Override
+    public int getVersion() {
+        return version;
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public long getChecksum() {
+        return checksum;
+    }
+
+    @Override
+    public void apply(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            for (String sql : statements) {
+                st.addBatch(sql);
+            }
+            st.executeBatch();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "V" + version + " " + description;
+    }
+}
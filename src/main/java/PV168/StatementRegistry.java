@@ -0,0 +1,141 @@
+package PV168;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registry of the named SQL statements of a manager.
+ * <p>
+ * Every statement is registered once under a name with its canonical SQL text,
+ * and always prepared through the registry, so each query reaches the database
+ * with exactly the same text. That lets the prepared statement pool of the
+ * connection pool (see {@code DBPoolMaxOpenStatements}) hand back the statement
+ * already prepared on the borrowed connection, and Derby reuse the compiled plan
+ * from its statement cache, instead of compiling the query again.
+ * <p>
+ * Prepared statements count their executions and execution time.
+ */
+public class StatementRegistry {
+
+    private final Map<String, Sql> statements = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a statement.
+     *
+     * @param name unique name of the statement
+     * @param sql SQL text of the statement
+     * @return the registered statement
+     * @throws IllegalArgumentException when another statement with the name is registered
+     */
+    public Sql register(String name, String sql) {
+        if (name == null || sql == null) {
+            throw new IllegalArgumentException("name or sql is null");
+        }
+        Sql statement = new Sql(name, sql);
+        if (statements.putIfAbsent(name, statement) != null) {
+            throw new IllegalArgumentException("statement " + name + " is already registered");
+        }
+        return statement;
+    }
+
+    /**
+     * Creates a statement prepared like the registered ones but not kept by the
+     * registry, for SQL composed at run time which would fill the registry.
+     * Its executions are counted by the returned statement only.
+     *
+     * @param name name of the statement
+     * @param sql SQL text of the statement
+     * @return the statement
+     */
+    public Sql unregistered(String name, String sql) {
+        if (name == null || sql == null) {
+            throw new IllegalArgumentException("name or sql is null");
+        }
+        return new Sql(name, sql);
+    }
+
+    /**
+     * Prepares a registered statement on the connection.
+     *
+     * @param conn connection
+     * @param sql registered statement
+     * @return prepared statement counting its executions
+     * @throws SQLException when the statement can not be prepared
+     */
+    public PreparedStatement prepare(Connection conn, Sql sql) throws SQLException {
+        return sql.counting(conn.prepareStatement(sql.sql));
+    }
+
+    /**
+     * Prepares a registered statement returning generated keys on the connection.
+     *
+     * @param conn connection
+     * @param sql registered statement
+     * @return prepared statement counting its executions
+     * @throws SQLException when the statement can not be prepared
+     */
+    public PreparedStatement prepareReturningKeys(Connection conn, Sql sql) throws SQLException {
+        return sql.counting(conn.prepareStatement(sql.sql, Statement.RETURN_GENERATED_KEYS));
+    }
+
+    /**
+     * @return statistics of all registered statements by their names
+     */
+    public Map<String, StatementStats> getStats() {
+        Map<String, StatementStats> stats = new LinkedHashMap<>();
+        statements.values().stream()
+                .sorted((a, b) -> a.name.compareTo(b.name))
+                .forEach(sql -> stats.put(sql.name, sql.getStats()));
+        return stats;
+    }
+
+    /**
+     * Named SQL statement registered in a {@link StatementRegistry}.
+     */
+    public static final class Sql {
+
+        private final String name;
+        private final String sql;
+        private final LongAdder prepares = new LongAdder();
+        private final LongAdder executions = new LongAdder();
+        private final LongAdder executionNanos = new LongAdder();
+
+        private Sql(String name, String sql) {
+            this.name = name;
+            this.sql = sql;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public StatementStats getStats() {
+            return new StatementStats(name, sql, prepares.sum(), executions.sum(), executionNanos.sum());
+        }
+
+        private PreparedStatement counting(PreparedStatement st) {
+            prepares.increment();
+            return new CountingPreparedStatement(st, this);
+        }
+
+        void executed(long nanos) {
+            executions.increment();
+            executionNanos.add(nanos);
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + sql;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package PV168;
+
+/**
+ * Snapshot of execution statistics of one named statement.
+ */
+public class StatementStats {
+
+    private final String name;
+    private final String sql;
+    private final long prepares;
+    private final long executions;
+    private final long totalExecutionNanos;
+
+    public StatementStats(String name, String sql, long prepares, long executions, long totalExecutionNanos) {
+        this.name = name;
+        this.sql = sql;
+        this.prepares = prepares;
+        this.executions = executions;
+        this.totalExecutionNanos = totalExecutionNanos;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return number of times the statement was prepared on a connection
+     */
+    public long getPrepares() {
+        return prepares;
+    }
+
+    /**
+     * @return number of executions of the statement
+     */
+    public long getExecutions() {
+        return executions;
+    }
+
+    /**
+     * @return total time spent in the executions in nanoseconds
+     */
+    public long getTotalExecutionNanos() {
+        return totalExecutionNanos;
+    }
+
+    /**
+     * @return average time of one execution in nanoseconds
+     */
+    public double getAverageExecutionNanos() {
+        return executions == 0 ? 0 : (double) totalExecutionNanos / executions;
+    }
+
+    @Override
+    public String toString() {
+        return "StatementStats{" +
+                "name='" + name + '\'' +
+                ", prepares=" + prepares +
+                ", executions=" + executions +
+                ", averageExecutionNanos=" + getAverageExecutionNanos() +
+                '}';
+    }
+}
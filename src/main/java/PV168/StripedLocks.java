@@ -0,0 +1,105 @@
+package PV168;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed table of locks shared by keys with the same hash. Threads working with
+ * the same key are serialized, threads working with different keys mostly do
+ * not contend. Time spent waiting for the locks is measured.
+ */
+public class StripedLocks {
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param stripes minimal number of locks, rounded up to a power of two
+     */
+    public StripedLocks(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("number of stripes is not positive");
+        }
+        int size = Integer.highestOneBit(stripes);
+        if (size < stripes) {
+            size <<= 1;
+        }
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * @return locks with four stripes per available processor, so that threads
+     *         working with different keys rarely share a stripe
+     */
+    public static StripedLocks forAvailableProcessors() {
+        return new StripedLocks(4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Acquires the lock of the key, waiting for it if necessary.
+     *
+     * @param key key
+     * @return acquired lock, to be unlocked by the caller
+     */
+    public Lock lock(long key) {
+        ReentrantLock lock = locks[stripe(key)];
+        acquisitions.increment();
+        if (!lock.tryLock()) {
+            long start = System.nanoTime();
+            lock.lock();
+            long waited = System.nanoTime() - start;
+            contended.increment();
+            waitNanos.add(waited);
+            maxWaitNanos.accumulate(waited);
+        }
+        return lock;
+    }
+
+    /**
+     * Acquires the locks of two keys in the order of their stripes, so that
+     * threads which lock pairs of keys can not deadlock each other.
+     *
+     * @param first key
+     * @param second key
+     * @return acquired locks, a single one when the keys share a stripe, to be
+     *         unlocked by the caller in reverse order
+     */
+    public List<Lock> lock(long first, long second) {
+        int firstStripe = stripe(first);
+        int secondStripe = stripe(second);
+        if (firstStripe == secondStripe) {
+            return Collections.singletonList(lock(first));
+        }
+        if (firstStripe < secondStripe) {
+            return Arrays.asList(lock(first), lock(second));
+        }
+        return Arrays.asList(lock(second), lock(first));
+    }
+
+    public int getStripes() {
+        return locks.length;
+    }
+
+    public LockStats getStats() {
+        return new LockStats(locks.length, acquisitions.sum(), contended.sum(), waitNanos.sum(), maxWaitNanos.get());
+    }
+
+    private int stripe(long key) {
+        // spreads consecutive ids, which differ in the low bits only, over the stripes
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & mask;
+    }
+}
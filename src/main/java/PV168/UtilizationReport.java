@@ -0,0 +1,70 @@
+package PV168;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Map;
+
+/**
+ * Utilization of the fleet over a period, per car, per model and per month.
+ */
+public class UtilizationReport {
+
+    private final LocalDate from;
+    private final LocalDate to;
+    private final UtilizationStats total;
+    private final Map<Long, UtilizationStats> byCar;
+    private final Map<String, UtilizationStats> byModel;
+    private final Map<YearMonth, UtilizationStats> byMonth;
+
+    UtilizationReport(LocalDate from, LocalDate to, UtilizationStats total, Map<Long, UtilizationStats> byCar,
+                      Map<String, UtilizationStats> byModel, Map<YearMonth, UtilizationStats> byMonth) {
+        this.from = from;
+        this.to = to;
+        this.total = total;
+        this.byCar = byCar;
+        this.byModel = byModel;
+        this.byMonth = byMonth;
+    }
+
+    /**
+     * @return first day of the period
+     */
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    /**
+     * @return last day of the period
+     */
+    public LocalDate getTo() {
+        return to;
+    }
+
+    /**
+     * @return utilization of the whole fleet
+     */
+    public UtilizationStats getTotal() {
+        return total;
+    }
+
+    /**
+     * @return unmodifiable utilization per car id, including cars without leases
+     */
+    public Map<Long, UtilizationStats> getByCar() {
+        return byCar;
+    }
+
+    /**
+     * @return unmodifiable utilization per model, cars without a model are under null
+     */
+    public Map<String, UtilizationStats> getByModel() {
+        return byModel;
+    }
+
+    /**
+     * @return unmodifiable utilization per month of the period, in chronological order
+     */
+    public Map<YearMonth, UtilizationStats> getByMonth() {
+        return byMonth;
+    }
+}
@@ -0,0 +1,77 @@
+package PV168;
+
+import java.math.BigDecimal;
+
+/**
+ * Utilization of a group of cars - one car, one model or the whole fleet in one
+ * month - over a period.
+ */
+public class UtilizationStats {
+
+    private final long availableDays;
+    private final long leasedDays;
+    private final long revenueCents;
+    private final int leaseCount;
+    private final long leaseDays;
+
+    public UtilizationStats(long availableDays, long leasedDays, long revenueCents, int leaseCount, long leaseDays) {
+        this.availableDays = availableDays;
+        this.leasedDays = leasedDays;
+        this.revenueCents = revenueCents;
+        this.leaseCount = leaseCount;
+        this.leaseDays = leaseDays;
+    }
+
+    /**
+     * @return number of car-days in the period, i.e. number of cars times number of days
+     */
+    public long getAvailableDays() {
+        return availableDays;
+    }
+
+    /**
+     * @return number of car-days in the period covered by leases
+     */
+    public long getLeasedDays() {
+        return leasedDays;
+    }
+
+    /**
+     * @return share of the available days which were leased, between 0 and 1
+     */
+    public double getUtilization() {
+        return availableDays == 0 ? 0 : (double) leasedDays / availableDays;
+    }
+
+    /**
+     * @return sum of prices of the leases starting in the period
+     */
+    public BigDecimal getRevenue() {
+        return BigDecimal.valueOf(revenueCents, 2);
+    }
+
+    /**
+     * @return number of leases starting in the period
+     */
+    public int getLeaseCount() {
+        return leaseCount;
+    }
+
+    /**
+     * @return average length in days of the leases starting in the period, 0 when there are none
+     */
+    public double getAverageLeaseDays() {
+        return leaseCount == 0 ? 0 : (double) leaseDays / leaseCount;
+    }
+
+    @Override
+    public String toString() {
+        return "UtilizationStats{" +
+                "availableDays=" + availableDays +
+                ", leasedDays=" + leasedDays +
+                ", revenue=" + getRevenue() +
+                ", leaseCount=" + leaseCount +
+                ", averageLeaseDays=" + getAverageLeaseDays() +
+                '}';
+    }
+}
@@ -0,0 +1,920 @@
+package PV168;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * {@link LeaseManager} which acknowledges lease mutations once they are in a
+ * {@link LeaseJournal} on the disk and applies them to the database later, in
+ * batches, on a background thread.
+ * <p>
+ * A mutation is validated against the database and against an in-memory index
+ * of lease ranges under the lock of its car, gets its lease id, is appended to
+ * the journal and forced to the disk together with mutations of other threads,
+ * and returns. The writer applies the journaled mutations in the order of the
+ * journal, each batch in one transaction which also records the sequence
+ * number of its last mutation in {@code WRITE_BEHIND_STATE}. Reads wait until
+ * every acknowledged mutation is applied and are then answered by a
+ * {@link LeaseManagerImpl}, so a caller always reads its own writes.
+ * {@link #deleteAllLeases()} and {@link #deleteLeasesEndedBefore} are not
+ * journaled, they wait for the writer and run directly.
+ * <p>
+ * Crash recovery: a mutation which was acknowledged is applied to the database
+ * exactly once and in journal order, by this manager or, after a crash, by the
+ * next manager opened on the same journal and database, before it accepts any
+ * call. Mutations of calls which did not return may or may not be applied. A
+ * journaled lease whose car or customer was deleted before it was applied is
+ * dropped, as the cascade of the foreign key would have deleted it, and logged.
+ * <p>
+ * Lease ids are assigned by this manager, so no other manager may create leases
+ * in the database while it is open. {@code LEASES.ID} must accept given values
+ * and the state table must exist, so the database must be migrated with
+ * {@link WriteBehindSchema#migrations()} in addition to the default migrations.
+ */
+public class WriteBehindLeaseManager implements LeaseManager, AutoCloseable {
+
+    private static final Logger log = Logger.getLogger(
+            WriteBehindLeaseManager.class.getName());
+
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private static final long MAX_RETRY_DELAY_MILLIS = 5000;
+
+    private final StatementRegistry statements = new StatementRegistry();
+    private final StatementRegistry.Sql insertLease = statements.register("writeBehindInsertLease",
+            "INSERT INTO LEASES (ID, IDCUSTOMER, IDCAR, DATEFROM, DATETO, PRICE) VALUES (?,?,?,?,?,?)");
+    private final StatementRegistry.Sql updateLease = statements.register("writeBehindUpdateLease",
+            "UPDATE LEASES SET IDCUSTOMER=?, IDCAR=?, DATEFROM=?, DATETO=?, PRICE=? WHERE ID=?");
+    private final StatementRegistry.Sql deleteLease = statements.register("writeBehindDeleteLease",
+            "DELETE FROM LEASES WHERE ID=?");
+    private final StatementRegistry.Sql carExists = statements.register("writeBehindCarExists",
+            "SELECT ID FROM CARS WHERE ID=?");
+    private final StatementRegistry.Sql customerExists = statements.register("writeBehindCustomerExists",
+            "SELECT ID FROM CUSTOMERS WHERE ID=?");
+    private final StatementRegistry.Sql overlappingLease = statements.register("writeBehindOverlappingLease",
+            "SELECT ID FROM LEASES WHERE ID=? AND IDCAR=?"
+            + " AND (DATEFROM IS NULL OR DATEFROM <= ?) AND (DATETO IS NULL OR DATETO >= ?)");
+    private final StatementRegistry.Sql leaseExists = statements.register("writeBehindLeaseExists",
+            "SELECT ID FROM LEASES WHERE ID=?");
+    private final StatementRegistry.Sql leaseRanges = statements.register("writeBehindLeaseRanges",
+            "SELECT ID, IDCAR, DATEFROM, DATETO FROM LEASES WHERE IDCAR IS NOT NULL");
+    private final StatementRegistry.Sql maxLeaseId = statements.register("writeBehindMaxLeaseId",
+            "SELECT MAX(ID) FROM LEASES");
+    private final StatementRegistry.Sql selectApplied = statements.register("writeBehindSelectApplied",
+            "SELECT APPLIED FROM " + WriteBehindSchema.STATE_TABLE + " WHERE JOURNAL=?");
+    private final StatementRegistry.Sql insertApplied = statements.register("writeBehindInsertApplied",
+            "INSERT INTO " + WriteBehindSchema.STATE_TABLE + " (JOURNAL, APPLIED) VALUES (?,?)");
+    private final StatementRegistry.Sql updateApplied = statements.register("writeBehindUpdateApplied",
+            "UPDATE " + WriteBehindSchema.STATE_TABLE + " SET APPLIED=? WHERE JOURNAL=?");
+
+    private final DailyStatsWriter dailyStats = new DailyStatsWriter(statements);
+
+    private final DataSource dataSource;
+    private final LeaseManagerImpl delegate;
+    private final LeaseJournal journal;
+    private final String journalName;
+    private final int batchSize;
+    private final StripedLocks carLocks;
+    private final LeaseIntervalIndex leaseIndex = new LeaseIntervalIndex();
+    private final AtomicLong lastLeaseId = new AtomicLong();
+    /** single-lease mutations take the read lock, the bulk deletes and close the write lock */
+    private final ReadWriteLock bulkLock = new ReentrantReadWriteLock();
+
+    private final Object appliedLock = new Object();
+    /** sequence number of the last journal entry applied to the database, guarded by appliedLock */
+    private long appliedSequence;
+
+    private final Thread writer;
+    private volatile boolean running = true;
+    private volatile boolean closed;
+
+    /**
+     * Opens the manager with the default batch size.
+     *
+     * @param dataSource source of connections
+     * @param journalFile journal file, created when it does not exist
+     */
+    public WriteBehindLeaseManager(DataSource dataSource, Path journalFile) {
+        this(dataSource, journalFile, DEFAULT_BATCH_SIZE, StripedLocks.forAvailableProcessors());
+    }
+
+    /**
+     * Opens the journal, applies the entries a previous manager did not apply
+     * and starts the writer.
+     *
+     * @param dataSource source of connections
+     * @param journalFile journal file, created when it does not exist; its file
+     *        name identifies the journal in the state table
+     * @param batchSize maximal number of mutations applied in one transaction
+     * @param carLocks locks striped by car id
+     * @throws IllegalStateException when the database lacks {@link WriteBehindSchema#migrations()}
+     */
+    public WriteBehindLeaseManager(DataSource dataSource, Path journalFile, int batchSize, StripedLocks carLocks) {
+        if (dataSource == null) {
+            throw new IllegalArgumentException("dataSource is null");
+        }
+        if (journalFile == null) {
+            throw new IllegalArgumentException("journalFile is null");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batch size is not positive");
+        }
+        if (carLocks == null) {
+            throw new IllegalArgumentException("carLocks is null");
+        }
+        checkSchema(dataSource);
+        this.dataSource = dataSource;
+        this.delegate = new LeaseManagerImpl(dataSource);
+        this.journalName = journalFile.getFileName().toString();
+        this.batchSize = batchSize;
+        this.carLocks = carLocks;
+        try {
+            this.journal = LeaseJournal.open(journalFile);
+        } catch (IOException ex) {
+            throw new ServiceFailureException("Error when opening journal " + journalFile, ex);
+        }
+        try {
+            recover();
+        } catch (RuntimeException ex) {
+            closeJournalQuietly();
+            throw ex;
+        }
+        writer = new Thread(this::runWriter, "write-behind-" + journalName);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private static void checkSchema(DataSource dataSource) {
+        try (Connection conn = dataSource.getConnection()) {
+            if (!WriteBehindSchema.isApplied(conn)) {
+                throw new IllegalStateException("database is not migrated for write-behind mode,"
+                        + " migrate it with WriteBehindSchema.migrations()");
+            }
+        } catch (SQLException ex) {
+            throw new ServiceFailureException("Error when checking schema for write-behind mode", ex);
+        }
+    }
+
+    /**
+     * Applies the journaled entries which follow the applied sequence number
+     * stored in the database, then prepares ids and the index for new mutations.
+     */
+    private void recover() {
+        long applied = readApplied();
+        List<LeaseJournal.Entry> pending = new ArrayList<>();
+        for (LeaseJournal.Entry entry : journal.getRecovered()) {
+            if (entry.sequence > applied) {
+                pending.add(entry);
+            }
+        }
+        synchronized (appliedLock) {
+            appliedSequence = applied;
+        }
+        for (int i = 0; i < pending.size(); i += batchSize) {
+            applyBatch(pending.subList(i, Math.min(i + batchSize, pending.size())));
+        }
+        if (!pending.isEmpty()) {
+            log.log(Level.INFO, pending.size() + " journaled lease mutations applied after restart");
+        }
+        journal.startSequence(getAppliedSequence() + 1);
+        try {
+            journal.truncateIfApplied(getAppliedSequence());
+        } catch (IOException ex) {
+            throw new ServiceFailureException("Error when truncating journal " + journalName, ex);
+        }
+
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = dataSource.getConnection();
+            WriteBehindSchema.restartLeaseIds(conn);
+            st = statements.prepare(conn, maxLeaseId);
+            try (ResultSet rs = st.executeQuery()) {
+                rs.next();
+                lastLeaseId.set(rs.getLong(1));
+            }
+        } catch (SQLException ex) {
+            throw new ServiceFailureException("Error when reading lease ids", ex);
+        } finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+        loadLeaseIndex();
+    }
+
+    private long readApplied() {
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = dataSource.getConnection();
+            st = statements.prepare(conn, selectApplied);
+            st.setString(1, journalName);
+            try (ResultSet rs = st.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getLong(1);
+                }
+            }
+            try (PreparedStatement insert = statements.prepare(conn, insertApplied)) {
+                insert.setString(1, journalName);
+                insert.setLong(2, 0);
+                insert.executeUpdate();
+            }
+            return 0;
+        } catch (SQLException ex) {
+            throw new ServiceFailureException("Error when reading state of journal " + journalName, ex);
+        } finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+    }
+
+    private void loadLeaseIndex() {
+        LeaseIntervalIndex.Loader loader = leaseIndex.loader();
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = dataSource.getConnection();
+            st = statements.prepare(conn, leaseRanges);
+            st.setFetchSize(DBUtils.DEFAULT_FETCH_SIZE);
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    loader.add(rs.getLong("IDCAR"), rs.getLong("ID"),
+                            toLocalDate(rs.getDate("DATEFROM")), toLocalDate(rs.getDate("DATETO")));
+                }
+            }
+        } catch (SQLException ex) {
+            throw new ServiceFailureException("Error when loading lease index", ex);
+        } finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+        loader.install();
+    }
+
+    /**
+     * @return execution statistics of the statements of this manager and of the
+     *         manager answering the reads by their names
+     */
+    public Map<String, StatementStats> getStatementStats() {
+        Map<String, StatementStats> stats = new HashMap<>(delegate.getStatementStats());
+        stats.putAll(statements.getStats());
+        return stats;
+    }
+
+    /**
+     * @return contention statistics of the per-car locks
+     */
+    public LockStats getLockStats() {
+        return carLocks.getStats();
+    }
+
+    /**
+     * @return sequence number of the last journaled mutation applied to the database
+     */
+    public long getAppliedSequence() {
+        synchronized (appliedLock) {
+            return appliedSequence;
+        }
+    }
+
+    /**
+     * @return number of acknowledged mutations not applied to the database yet
+     */
+    public long getPendingCount() {
+        return Math.max(0, journal.getDurableSequence() - getAppliedSequence());
+    }
+
+    /**
+     * @return number of times the journal was forced to the disk
+     */
+    public long getJournalSyncCount() {
+        return journal.getSyncCount();
+    }
+
+    @Override
+    public void createLease(Lease lease) {
+        LeaseManagerImpl.validateNewLease(lease);
+        long cents = toCents(lease.getPrice());
+        long carId = lease.getCar().getId();
+        long customerId = lease.getCustomer().getId();
+        Lock bulk = lockSingle();
+        try {
+            Lock lock = carLocks.lock(carId);
+            try {
+                checkCarAndCustomer(lease);
+                checkNoConflict(lease, null);
+                long id = lastLeaseId.incrementAndGet();
+                journal(LeaseJournal.Type.CREATE, id, customerId, carId,
+                        lease.getDateFrom().toEpochDay(), lease.getDateTo().toEpochDay(), cents);
+                leaseIndex.add(carId, id, lease.getDateFrom(), lease.getDateTo());
+                lease.setId(id);
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            bulk.unlock();
+        }
+        lease.getCar().setIsBorrowed(true);
+    }
+
+    /**
+     * Creates the leases one by one, each journaled on its own; a lease which is
+     * not valid or overlaps an existing lease, including one created earlier by
+     * this call, is reported as a failure and the others are created.
+     */
+    @Override
+    public BulkInsertResult<Lease> createLeases(Collection<Lease> leases) {
+        if (leases == null) {
+            throw new IllegalArgumentException("leases are null");
+        }
+        BulkInsertResult<Lease> result = new BulkInsertResult<>();
+        int index = 0;
+        for (Lease lease : leases) {
+            try {
+                createLease(lease);
+                result.addInserted(lease);
+            } catch (IllegalArgumentException | IllegalEntityException ex) {
+                result.addFailure(index, lease, ex);
+            }
+            index++;
+        }
+        return result;
+    }
+
+    /**
+     * Locks both the car the lease is moved from and the car it is moved to, so
+     * that the overlap checks of both cars see the move.
+     */
+    @Override
+    public void updateLease(Lease lease) {
+        LeaseManagerImpl.validateLease(lease);
+        if (lease.getId() == null) {
+            throw new IllegalArgumentException("lease id is null");
+        }
+        if (lease.getDateFrom() == null) {
+            throw new IllegalArgumentException("Date from is null");
+        }
+        if (lease.getDateTo().isBefore(lease.getDateFrom())) {
+            throw new IllegalArgumentException("Date to is after real end date.");
+        }
+        long cents = toCents(lease.getPrice());
+        long id = lease.getId();
+        long carId = lease.getCar().getId();
+        Lock bulk = lockSingle();
+        try {
+            while (true) {
+                Long oldCarId = leaseIndex.getCar(id);
+                List<Lock> locks = carLocks.lock(oldCarId == null ? carId : oldCarId, carId);
+                try {
+                    if (!Objects.equals(oldCarId, leaseIndex.getCar(id))) {
+                        // moved to another car before the locks were acquired
+                        continue;
+                    }
+                    if (oldCarId == null && !existsApplied(id)) {
+                        throw new IllegalArgumentException("lease with id=" + id + " do not exist");
+                    }
+                    checkCarAndCustomer(lease);
+                    checkNoConflict(lease, id);
+                    journal(LeaseJournal.Type.UPDATE, id, lease.getCustomer().getId(), carId,
+                            lease.getDateFrom().toEpochDay(), lease.getDateTo().toEpochDay(), cents);
+                    leaseIndex.add(carId, id, lease.getDateFrom(), lease.getDateTo());
+                    return;
+                } finally {
+                    for (int i = locks.size() - 1; i >= 0; i--) {
+                        locks.get(i).unlock();
+                    }
+                }
+            }
+        } finally {
+            bulk.unlock();
+        }
+    }
+
+    @Override
+    public void deleteLease(Lease lease) {
+        if (lease == null) {
+            throw new IllegalArgumentException("lease is null");
+        }
+        if (lease.getId() == null) {
+            throw new IllegalArgumentException("lease id is null");
+        }
+        if (lease.getCar() == null || lease.getCar().getId() == null) {
+            throw new IllegalArgumentException("car of the lease is null");
+        }
+        long id = lease.getId();
+        Lock bulk = lockSingle();
+        try {
+            while (true) {
+                Long carId = leaseIndex.getCar(id);
+                Lock lock = carLocks.lock(carId == null ? lease.getCar().getId() : carId);
+                try {
+                    if (!Objects.equals(carId, leaseIndex.getCar(id))) {
+                        continue;
+                    }
+                    if (carId == null && !existsApplied(id)) {
+                        throw new IllegalArgumentException("lease with id=" + id + " do not exist");
+                    }
+                    journal(LeaseJournal.Type.DELETE, id, 0, carId == null ? 0 : carId, 0, 0, 0);
+                    leaseIndex.remove(id);
+                    break;
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } finally {
+            bulk.unlock();
+        }
+        lease.getCar().setIsBorrowed(false);
+    }
+
+    /**
+     * Waits until all journaled mutations are applied and deletes all leases directly.
+     */
+    @Override
+    public int deleteAllLeases() {
+        Lock bulk = lockBulk();
+        try {
+            awaitApplied();
+            int count = delegate.deleteAllLeases();
+            leaseIndex.clear();
+            return count;
+        } finally {
+            bulk.unlock();
+        }
+    }
+
+    /**
+     * Waits until all journaled mutations are applied and deletes the leases directly.
+     */
+    @Override
+    public int deleteLeasesEndedBefore(LocalDate date) {
+        if (date == null) {
+            throw new IllegalArgumentException("date is null");
+        }
+        Lock bulk = lockBulk();
+        try {
+            awaitApplied();
+            int count = delegate.deleteLeasesEndedBefore(date);
+            leaseIndex.removeEndedBefore(date);
+            return count;
+        } finally {
+            bulk.unlock();
+        }
+    }
+
+    @Override
+    public Lease getLeaseByID(Long id) {
+        awaitApplied();
+        return delegate.getLeaseByID(id);
+    }
+
+    @Override
+    public List<Lease> getAllLeases() {
+        awaitApplied();
+        return delegate.getAllLeases();
+    }
+
+    @Override
+    public Stream<Lease> streamAllLeases() {
+        awaitApplied();
+        return delegate.streamAllLeases();
+    }
+
+    @Override
+    public List<Lease> getLeasesAfter(Long lastId, int limit) {
+        awaitApplied();
+        return delegate.getLeasesAfter(lastId, limit);
+    }
+
+    @Override
+    public List<Lease> getLeasesByDateFromAfter(LocalDate lastDateFrom, Long lastId, int limit) {
+        awaitApplied();
+        return delegate.getLeasesByDateFromAfter(lastDateFrom, lastId, limit);
+    }
+
+    @Override
+    public List<Lease> getLeasesByDateToAfter(LocalDate lastDateTo, Long lastId, int limit) {
+        awaitApplied();
+        return delegate.getLeasesByDateToAfter(lastDateTo, lastId, limit);
+    }
+
+    @Override
+    public List<Lease> getAllLeasesByEndDate(LocalDate endDate) {
+        awaitApplied();
+        return delegate.getAllLeasesByEndDate(endDate);
+    }
+
+    @Override
+    public List<Lease> findLeasesForCustomer(Customer customer) {
+        awaitApplied();
+        return delegate.findLeasesForCustomer(customer);
+    }
+
+    @Override
+    public List<Lease> findLeasesForCar(Car car) {
+        awaitApplied();
+        return delegate.findLeasesForCar(car);
+    }
+
+    @Override
+    public List<Lease> findLeases(LeaseQuery query) {
+        awaitApplied();
+        return delegate.findLeases(query);
+    }
+
+    /**
+     * Waits until every acknowledged mutation is applied, stops the writer,
+     * makes the identity of {@code LEASES.ID} continue after the ids this manager
+     * assigned, so other managers can create leases again, truncates the journal
+     * and closes it.
+     */
+    @Override
+    public void close() {
+        Lock bulk = bulkLock.writeLock();
+        bulk.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                awaitApplied();
+            } finally {
+                running = false;
+                try {
+                    writer.join();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            restartLeaseIds();
+            try {
+                journal.truncateIfApplied(getAppliedSequence());
+            } catch (IOException ex) {
+                throw new ServiceFailureException("Error when truncating journal " + journalName, ex);
+            }
+        } finally {
+            closeJournalQuietly();
+            bulk.unlock();
+        }
+    }
+
+    private void restartLeaseIds() {
+        Connection conn = null;
+        try {
+            conn = dataSource.getConnection();
+            WriteBehindSchema.restartLeaseIds(conn);
+        } catch (SQLException ex) {
+            throw new ServiceFailureException("Error when restarting lease ids", ex);
+        } finally {
+            DBUtils.closeQuietly(conn);
+        }
+    }
+
+    private void closeJournalQuietly() {
+        try {
+            journal.close();
+        } catch (IOException ex) {
+            log.log(Level.SEVERE, "Error when closing journal " + journalName, ex);
+        }
+    }
+
+    private Lock lockSingle() {
+        Lock lock = bulkLock.readLock();
+        lock.lock();
+        if (closed) {
+            lock.unlock();
+            throw new IllegalStateException("manager is closed");
+        }
+        return lock;
+    }
+
+    private Lock lockBulk() {
+        Lock lock = bulkLock.writeLock();
+        lock.lock();
+        if (closed) {
+            lock.unlock();
+            throw new IllegalStateException("manager is closed");
+        }
+        return lock;
+    }
+
+    private void journal(LeaseJournal.Type type, long leaseId, long customerId, long carId,
+                         long fromDay, long toDay, long cents) {
+        LeaseJournal.Entry entry;
+        try {
+            entry = journal.append(type, leaseId, customerId, carId, fromDay, toDay, cents);
+        } catch (IOException ex) {
+            throw new ServiceFailureException("Error when journaling lease with id=" + leaseId, ex);
+        }
+        journal.enqueue(entry);
+    }
+
+    /**
+     * Waits until the writer applied every mutation acknowledged so far.
+     */
+    private void awaitApplied() {
+        long target = journal.getDurableSequence();
+        synchronized (appliedLock) {
+            while (appliedSequence < target) {
+                if (journal.isFailed()) {
+                    throw new ServiceFailureException("Journal " + journalName
+                            + " failed, its mutations are applied when it is opened again");
+                }
+                try {
+                    appliedLock.wait(100);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new ServiceFailureException("Interrupted when waiting for journaled leases", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true when the lease exists in the database once the pending mutations are applied
+     */
+    private boolean existsApplied(long leaseId) {
+        awaitApplied();
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = dataSource.getConnection();
+            st = statements.prepare(conn, leaseExists);
+            st.setLong(1, leaseId);
+            try (ResultSet rs = st.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException ex) {
+            throw new ServiceFailureException("Error when checking lease with id=" + leaseId, ex);
+        } finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+    }
+
+    private void checkCarAndCustomer(Lease lease) {
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = dataSource.getConnection();
+            st = statements.prepare(conn, carExists);
+            st.setLong(1, lease.getCar().getId());
+            try (ResultSet rs = st.executeQuery()) {
+                if (!rs.next()) {
+                    throw new IllegalEntityException("Car " + lease.getCar() + " does not exist in the db");
+                }
+            }
+            try (PreparedStatement customer = statements.prepare(conn, customerExists)) {
+                customer.setLong(1, lease.getCustomer().getId());
+                try (ResultSet rs = customer.executeQuery()) {
+                    if (!rs.next()) {
+                        throw new IllegalEntityException("Customer " + lease.getCustomer() + " does not exist in the db");
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            throw new ServiceFailureException("Error when checking lease " + lease, ex);
+        } finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+    }
+
+    /**
+     * Checks in the lease index that no other lease of the car overlaps the lease.
+     * The index also holds leases which are not applied yet; an overlapping lease
+     * is confirmed in the database once they are, and dropped from the index when
+     * it is gone, e.g. after its car was deleted. Called with the lock of the car.
+     */
+    private void checkNoConflict(Lease lease, Long excludedLeaseId) {
+        long carId = lease.getCar().getId();
+        Long conflict;
+        while ((conflict = leaseIndex.findConflict(carId, lease.getDateFrom(), lease.getDateTo(), excludedLeaseId)) != null) {
+            awaitApplied();
+            if (isOverlapping(conflict, carId, lease.getDateFrom(), lease.getDateTo())) {
+                throw new IllegalEntityException("Car " + lease.getCar() + " is already leased between "
+                        + lease.getDateFrom() + " and " + lease.getDateTo() + " by lease with id=" + conflict);
+            }
+            leaseIndex.remove(conflict);
+        }
+    }
+
+    private boolean isOverlapping(long leaseId, long carId, LocalDate from, LocalDate to) {
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = dataSource.getConnection();
+            st = statements.prepare(conn, overlappingLease);
+            st.setLong(1, leaseId);
+            st.setLong(2, carId);
+            st.setDate(3, toSqlDate(to));
+            st.setDate(4, toSqlDate(from));
+            try (ResultSet rs = st.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException ex) {
+            throw new ServiceFailureException("Error when checking lease with id=" + leaseId, ex);
+        } finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+    }
+
+    private void runWriter() {
+        List<LeaseJournal.Entry> batch = Collections.emptyList();
+        long delay = 100;
+        while (running) {
+            try {
+                if (batch.isEmpty()) {
+                    batch = journal.take(getAppliedSequence(), batchSize, 100, TimeUnit.MILLISECONDS);
+                    if (batch.isEmpty()) {
+                        continue;
+                    }
+                }
+                applyBatch(batch);
+                batch = Collections.emptyList();
+                delay = 100;
+                journal.truncateIfApplied(getAppliedSequence());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ServiceFailureException | IOException ex) {
+                log.log(Level.WARNING, "Applying journaled leases failed, retrying in " + delay + " ms", ex);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                delay = Math.min(delay * 2, MAX_RETRY_DELAY_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Applies the entries in one transaction. When it fails, the entries are
+     * applied one by one, and an entry which violates a constraint of the
+     * database, e.g. a lease of a car deleted meanwhile, is skipped.
+     */
+    private void applyBatch(List<LeaseJournal.Entry> batch) {
+        long applied = getAppliedSequence();
+        List<LeaseJournal.Entry> entries = new ArrayList<>(batch.size());
+        for (LeaseJournal.Entry entry : batch) {
+            if (entry.sequence > applied) {
+                entries.add(entry);
+            }
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+        try {
+            applyInTransaction(entries, false);
+            return;
+        } catch (SQLException ex) {
+            if (entries.size() == 1 && !isConstraintViolation(ex)) {
+                throw new ServiceFailureException("Error when applying journaled lease " + entries.get(0), ex);
+            }
+        }
+        for (LeaseJournal.Entry entry : entries) {
+            List<LeaseJournal.Entry> single = Collections.singletonList(entry);
+            try {
+                try {
+                    applyInTransaction(single, false);
+                } catch (SQLException ex) {
+                    if (!isConstraintViolation(ex)) {
+                        throw ex;
+                    }
+                    log.log(Level.WARNING, "Journaled lease mutation " + entry + " skipped", ex);
+                    applyInTransaction(single, true);
+                }
+            } catch (SQLException ex) {
+                throw new ServiceFailureException("Error when applying journaled lease " + entry, ex);
+            }
+        }
+    }
+
+    /**
+     * Applies the entries and records the last of them as applied, in one transaction.
+     *
+     * @param skip true to only record the entries as applied
+     */
+    private void applyInTransaction(List<LeaseJournal.Entry> entries, boolean skip) throws SQLException {
+        long last = entries.get(entries.size() - 1).sequence;
+        Connection conn = null;
+        try {
+            conn = dataSource.getConnection();
+            conn.setAutoCommit(false);
+            if (!skip) {
+                for (LeaseJournal.Entry entry : entries) {
+                    apply(conn, entry);
+                }
+            }
+            try (PreparedStatement st = statements.prepare(conn, updateApplied)) {
+                st.setLong(1, last);
+                st.setString(2, journalName);
+                if (st.executeUpdate() != 1) {
+                    throw new SQLException("state of journal " + journalName + " is missing");
+                }
+            }
+            conn.commit();
+        } finally {
+            DBUtils.doRollbackQuietly(conn);
+            DBUtils.closeQuietly(conn);
+        }
+        synchronized (appliedLock) {
+            appliedSequence = last;
+            appliedLock.notifyAll();
+        }
+    }
+
+    private void apply(Connection conn, LeaseJournal.Entry entry) throws SQLException {
+        switch (entry.type) {
+            case CREATE:
+                try (PreparedStatement st = statements.prepare(conn, insertLease)) {
+                    st.setLong(1, entry.leaseId);
+                    bindRow(st, 2, entry);
+                    st.executeUpdate();
+                }
+                addDailyStats(conn, entry);
+                break;
+            case UPDATE:
+                dailyStats.removeLease(conn, entry.leaseId);
+                try (PreparedStatement st = statements.prepare(conn, updateLease)) {
+                    bindRow(st, 1, entry);
+                    st.setLong(6, entry.leaseId);
+                    if (st.executeUpdate() == 1) {
+                        addDailyStats(conn, entry);
+                    }
+                }
+                break;
+            case DELETE:
+                dailyStats.removeLease(conn, entry.leaseId);
+                try (PreparedStatement st = statements.prepare(conn, deleteLease)) {
+                    st.setLong(1, entry.leaseId);
+                    st.executeUpdate();
+                }
+                break;
+            default:
+                throw new IllegalStateException("unknown journal entry " + entry);
+        }
+    }
+
+    private static void bindRow(PreparedStatement st, int first, LeaseJournal.Entry entry) throws SQLException {
+        st.setLong(first, entry.customerId);
+        st.setLong(first + 1, entry.carId);
+        st.setDate(first + 2, Date.valueOf(LocalDate.ofEpochDay(entry.fromDay)));
+        st.setDate(first + 3, Date.valueOf(LocalDate.ofEpochDay(entry.toDay)));
+        st.setBigDecimal(first + 4, BigDecimal.valueOf(entry.cents, 2));
+    }
+
+    private void addDailyStats(Connection conn, LeaseJournal.Entry entry) throws SQLException {
+        dailyStats.addLease(conn, entry.carId, LocalDate.ofEpochDay(entry.fromDay),
+                LocalDate.ofEpochDay(entry.toDay), BigDecimal.valueOf(entry.cents, 2));
+    }
+
+    /**
+     * @return true for integrity constraint violations, SQL state class 23
+     */
+    private static boolean isConstraintViolation(SQLException ex) {
+        for (SQLException e = ex; e != null; e = e.getNextException()) {
+            if (e.getSQLState() != null && e.getSQLState().startsWith("23")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long toCents(BigDecimal price) {
+        try {
+            return DailyStatsWriter.toCents(price);
+        } catch (ArithmeticException ex) {
+            throw new IllegalArgumentException("bad BigDecimal value", ex);
+        }
+    }
+
+    private static Date toSqlDate(LocalDate localDate) {
+        return localDate == null ? null : Date.valueOf(localDate);
+    }
+
+    private static LocalDate toLocalDate(Date date) {
+        return date == null ? null : date.toLocalDate();
+    }
+}
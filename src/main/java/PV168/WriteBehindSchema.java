@@ -0,0 +1,132 @@
+package PV168;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Schema changes needed by {@link WriteBehindLeaseManager}.
+ * <p>
+ * Leases created in write-behind mode get their id when they are journaled,
+ * before they are inserted, so {@code LEASES.ID} must accept given values. Derby
+ * can not change an identity column from {@code GENERATED ALWAYS} to
+ * {@code GENERATED BY DEFAULT}, so the table is copied into a new one, and the
+ * identity of the new table continues after the copied ids. The indexes of
+ * {@link SchemaIndexes} on the table are created again.
+ * <p>
+ * {@code WRITE_BEHIND_STATE} holds the sequence number of the last journal entry
+ * applied to the database, updated in the transaction which applies the entry.
+ * <p>
+ * Rebuilding {@code LEASES} copies every lease in one transaction, so the
+ * migration is not among {@link SchemaMigrator#defaultMigrations()}; deployments
+ * using write-behind mode append {@link #migrations()} to them.
+ */
+public final class WriteBehindSchema {
+
+    /** version of the migration of {@link #migrations()} */
+    public static final int VERSION = 4;
+
+    static final String STATE_TABLE = "WRITE_BEHIND_STATE";
+
+    static final List<String> STATEMENTS = Collections.unmodifiableList(Arrays.asList(
+            "CREATE TABLE LEASES_V4 (ID INT NOT NULL GENERATED BY DEFAULT AS IDENTITY,"
+                    + " IDCUSTOMER INT, IDCAR INT, DATEFROM DATE, DATETO DATE, REALENDDATE DATE,"
+                    + " PRICE DECIMAL(20,2))",
+            "INSERT INTO LEASES_V4 (ID, IDCUSTOMER, IDCAR, DATEFROM, DATETO, REALENDDATE, PRICE)"
+                    + " SELECT ID, IDCUSTOMER, IDCAR, DATEFROM, DATETO, REALENDDATE, PRICE FROM LEASES",
+            "DROP TABLE LEASES",
+            "RENAME TABLE LEASES_V4 TO LEASES",
+            "ALTER TABLE LEASES ADD PRIMARY KEY (ID)",
+            "ALTER TABLE LEASES ADD FOREIGN KEY (IDCUSTOMER) REFERENCES CUSTOMERS (ID) ON DELETE CASCADE",
+            "ALTER TABLE LEASES ADD FOREIGN KEY (IDCAR) REFERENCES CARS (ID) ON DELETE CASCADE",
+            "CREATE TABLE " + STATE_TABLE + " (JOURNAL VARCHAR(255) PRIMARY KEY, APPLIED BIGINT NOT NULL)"));
+
+    private WriteBehindSchema() {
+    }
+
+    /**
+     * @return migrations needed by {@link WriteBehindLeaseManager}, following
+     *         {@link SchemaMigrator#defaultMigrations()}
+     */
+    public static List<Migration> migrations() {
+        return Collections.singletonList(migration(VERSION));
+    }
+
+    /**
+     * @param conn connection
+     * @return true when the migration of {@link #migrations()} was applied
+     * @throws SQLException when operation fails
+     */
+    static boolean isApplied(Connection conn) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getTables(null, null, STATE_TABLE, null)) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * Makes the next generated lease id follow the greatest existing one, e.g.
+     * after leases with given ids were inserted.
+     *
+     * @param conn connection
+     * @throws SQLException when operation fails
+     */
+    static void restartLeaseIds(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            long next;
+            try (ResultSet rs = st.executeQuery("SELECT MAX(ID) FROM LEASES")) {
+                rs.next();
+                next = rs.getLong(1) + 1;
+            }
+            st.executeUpdate("ALTER TABLE LEASES ALTER COLUMN ID RESTART WITH " + next);
+        }
+    }
+
+    /**
+     * @param version version of the migration
+     * @return migration making lease ids assignable and creating the state table
+     */
+    static Migration migration(final int version) {
+        final CRC32 crc = new CRC32();
+        for (String statement : STATEMENTS) {
+            crc.update(statement.getBytes(StandardCharsets.UTF_8));
+        }
+        return new Migration() {
+            @Override
+            public int getVersion() {
+                return version;
+            }
+
+            @Override
+            public String getDescription() {
+                return "write behind";
+            }
+
+            @Override
+            public long getChecksum() {
+                return crc.getValue();
+            }
+
+            @Override
+            public void apply(Connection conn) throws SQLException {
+                try (Statement st = conn.createStatement()) {
+                    for (String statement : STATEMENTS) {
+                        st.executeUpdate(statement);
+                    }
+                }
+                restartLeaseIds(conn);
+                SchemaIndexes.apply(conn);
+            }
+
+            @Override
+            public String toString() {
+                return "V" + version + " " + getDescription();
+            }
+        };
+    }
+}
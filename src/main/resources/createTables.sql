@@ -1,15 +0,0 @@
-
-CREATE TABLE "CUSTOMER" (
-    "ID" BIGINT NOT NULL PRIMARY KEY GENERATED ALWAYS AS IDENTITY,
-    "NAME" VARCHAR(255) NOT NULL,
-    "ADDRESS" VARCHAR(255) NOT NULL,
-    "PHONENUMBER" VARCHAR(255) NOT NULL,
-);
-
-CREATE TABLE "CAR" (
-    "ID" BIGINT NOT NULL PRIMARY KEY GENERATED ALWAYS AS IDENTITY,
-    "LICENSEPLATE" VARCHAR(255) NOT NULL,
-    "MODEL" VARCHAR(255) NOT NULL,
-    "PRICE" DECIMAL,
-    "NUMBEROFKM" DECIMAL,
-);
\ No newline at end of file
@@ -0,0 +1,7 @@
+CREATE TABLE daily_stats (
+  day         DATE NOT NULL,
+  IdCar       INT NOT NULL REFERENCES cars (id) ON DELETE CASCADE,
+  revenue     DECIMAL(20,2) NOT NULL,
+  leases      INT NOT NULL,
+  PRIMARY KEY (day, IdCar)
+);
@@ -1,2 +1,5 @@
-DROP TABLE "CUSTOMER";
-DROP TABLE "CAR";
\ No newline at end of file
+DROP TABLE DAILY_STATS;
+DROP TABLE LEASES;
+DROP TABLE CUSTOMERS;
+DROP TABLE CARS;
+DROP TABLE SCHEMA_VERSION;
@@ -0,0 +1,122 @@
+package PV168;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class BoundedManagerExecutorTest {
+
+    private BoundedManagerExecutor executor;
+    private CountDownLatch release;
+
+    @Before
+    public void setUp() {
+        executor = new BoundedManagerExecutor(1, 1, 200, TimeUnit.MILLISECONDS);
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.close();
+    }
+
+    @Test
+    public void submitCompletesWithResult() throws Exception {
+        assertEquals("car", executor.submit(() -> "car").get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void submitCompletesWithException() throws Exception {
+        CompletableFuture<Object> future = executor.submit(() -> {
+            throw new ServiceFailureException("db down");
+        });
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause(), is(instanceOf(ServiceFailureException.class)));
+        }
+    }
+
+    @Test
+    public void submitRejectsWhenQueueIsFull() throws Exception {
+        executor.run(this::await);
+        executor.run(this::await);
+        CompletableFuture<Void> rejected = executor.run(this::await);
+
+        assertTrue(rejected.isCompletedExceptionally());
+        assertEquals(1, executor.getRejectedCount());
+        try {
+            rejected.get();
+            fail();
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause(), is(instanceOf(RejectedExecutionException.class)));
+        }
+    }
+
+    @Test
+    public void submitTimesOut() throws Exception {
+        CompletableFuture<Void> slow = executor.run(this::await);
+        try {
+            slow.get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause(), is(instanceOf(TimeoutException.class)));
+        }
+        assertEquals(1, executor.getTimedOutCount());
+    }
+
+    @Test
+    public void timeoutDropsQueuedCallAndLetsRunningCallFinish() throws Exception {
+        BoundedManagerExecutor executor = new BoundedManagerExecutor(1, 2, 200, TimeUnit.MILLISECONDS);
+        try {
+            AtomicBoolean interrupted = new AtomicBoolean();
+            AtomicBoolean queuedRan = new AtomicBoolean();
+            CountDownLatch finished = new CountDownLatch(1);
+            CompletableFuture<Void> running = executor.run(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    interrupted.set(true);
+                }
+                finished.countDown();
+            });
+            CompletableFuture<Void> queued = executor.run(() -> queuedRan.set(true));
+            try {
+                queued.get(1, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException ex) {
+                assertThat(ex.getCause(), is(instanceOf(TimeoutException.class)));
+            }
+            assertTrue(running.isCompletedExceptionally());
+
+            release.countDown();
+            assertTrue(finished.await(1, TimeUnit.SECONDS));
+            assertEquals("car", executor.submit(() -> "car").get(1, TimeUnit.SECONDS));
+            assertFalse("running call was interrupted", interrupted.get());
+            assertFalse("queued call ran after its timeout", queuedRan.get());
+        } finally {
+            executor.close();
+        }
+    }
+
+    private void await() {
+        try {
+            release.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
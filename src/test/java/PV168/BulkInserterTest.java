@@ -0,0 +1,77 @@
+package PV168;
+
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BulkInserterTest {
+
+    private EmbeddedDataSource dataSource;
+    private final StatementRegistry statements = new StatementRegistry();
+    private final StatementRegistry.Sql insertCar = statements.register("insertCar",
+            "INSERT INTO CARS (LICENSEPLATE,MODEL,PRICE,NUMBEROFKM) VALUES (?,?,?,?)");
+
+    @Before
+    public void setUp() {
+        dataSource = new EmbeddedDataSource();
+        dataSource.setDatabaseName("memory:bulk-inserter-test");
+        dataSource.setCreateDatabase("create");
+        new SchemaMigrator(dataSource).migrate();
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DBUtils.executeSqlScript(dataSource, SchemaMigrator.class.getResource("/dropTables.sql"));
+    }
+
+    @Test
+    public void failingCallbackRollsBackChunkAndClearsIds() {
+        Car first = new Car("1A1 2547", "Audi A3", new BigDecimal(450), new BigDecimal(23000));
+        Car second = new Car("2B2 1111", "Skoda Fabia", new BigDecimal(300), new BigDecimal(5000));
+        List<Car> cars = Arrays.asList(first, second);
+        BulkInserter<Car> inserter = new BulkInserter<Car>(statements, insertCar) {
+            @Override
+            protected void validate(Car car) {
+            }
+
+            @Override
+            protected void bind(PreparedStatement st, Car car) throws SQLException {
+                st.setString(1, car.getLicensePlate());
+                st.setString(2, car.getModel());
+                st.setBigDecimal(3, car.getPrice());
+                st.setBigDecimal(4, car.getNumberOfKM());
+            }
+
+            @Override
+            protected void setId(Car car, Long id) {
+                car.setId(id);
+            }
+
+            @Override
+            protected void inserted(Car car) {
+                if (car == second) {
+                    throw new IllegalStateException("callback failed");
+                }
+            }
+        };
+
+        try {
+            inserter.insert(dataSource, cars, 10);
+            fail("failing callback did not fail the chunk");
+        } catch (ServiceFailureException ex) {
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+        assertNull(first.getId());
+        assertNull(second.getId());
+        assertTrue(new CarManagerImpl(dataSource).getAllCars().isEmpty());
+    }
+}
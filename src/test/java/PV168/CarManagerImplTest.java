@@ -14,16 +14,21 @@ import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
 /**
  * Created by jima88 on 16.3.2016.
  */
 public class CarManagerImplTest {
 
-    private CarManagerImpl manager;
+    private CarManager manager;
     private DataSource dataSource;
 
     @Before
@@ -37,7 +42,14 @@ public class CarManagerImplTest {
                     + "numberOfKM int,"
                     + "price int)").executeUpdate();
         }
-        manager = new CarManagerImpl(dataSource);
+        manager = createManager(dataSource);
+    }
+
+    /**
+     * @return tested manager, working with the given data source when it needs one
+     */
+    protected CarManager createManager(DataSource dataSource) {
+        return new CarManagerImpl(dataSource);
     }
 
     @Rule
@@ -135,6 +147,24 @@ public class CarManagerImplTest {
         }
     }
 
+    @Test
+    public void testAddCars() throws Exception {
+        Car car1 = new Car( "4M2 3000", "Volkswagen Passat", new BigDecimal(5000), new BigDecimal(20000));
+        Car invalid = new Car( "4M2 3001", null, new BigDecimal(5000), new BigDecimal(20000));
+        Car car2 = new Car( "5M1 2164", "Skoda Octavia", new BigDecimal(4000), new BigDecimal(40000));
+        Car car3 = new Car( "1T5 6784", "VW PASSAT", new BigDecimal(467), new BigDecimal(57000));
+
+        List<Car> cars = Arrays.asList(car1, invalid, car2, car3);
+        BulkInsertResult<Car> result = manager instanceof CarManagerImpl
+                ? ((CarManagerImpl) manager).addCars(cars, 2) : manager.addCars(cars);
+
+        assertEquals(Arrays.asList(car1, car2, car3), result.getInserted());
+        assertEquals(1, result.getFailures().size());
+        assertEquals(1, result.getFailures().get(0).getIndex());
+        assertNull(invalid.getId());
+        assertEquals(Arrays.asList(car1, car2, car3), manager.getAllCars());
+    }
+
     @Test
     public void testDeleteCar() throws Exception {
         // try delete method with null argument
@@ -174,9 +204,9 @@ public class CarManagerImplTest {
         assertThat("number of km was changed", car1.getNumberOfKM(), is(equalTo(new BigDecimal(20000))));
 
         car1 = manager.getCarById(carId);
-        car1.setLicensePlate("5M1 2164");
+        car1.setLicensePlate("6M1 2165");
         manager.editCar(car1);
-        assertThat("license plate was not changed", car1.getLicensePlate(), is(equalTo("5M1 2164")));
+        assertThat("license plate was not changed", car1.getLicensePlate(), is(equalTo("6M1 2165")));
         assertThat("number of km was changed", car1.getNumberOfKM(), is(equalTo(new BigDecimal(20000))));
 
         car1 = manager.getCarById(carId);
@@ -188,6 +218,35 @@ public class CarManagerImplTest {
         assertDeepEquals(car2, manager.getCarById(car2.getId()));
     }
 
+    @Test
+    public void testLicensePlateIsUnique() throws Exception {
+        Car car1 = new Car( "4M2 3000", "Volkswagen Passat", new BigDecimal(5000), new BigDecimal(20000));
+        Car car2 = new Car( "5M1 2164", "Skoda Octavia", new BigDecimal(4000), new BigDecimal(40000));
+        manager.addCar(car1);
+        manager.addCar(car2);
+
+        Car duplicate = new Car( "4M2 3000", "VW PASSAT", new BigDecimal(467), new BigDecimal(57000));
+        try {
+            manager.addCar(duplicate);
+            fail("car with a used license plate was added");
+        } catch (ServiceFailureException ex) {
+            //OK
+        }
+
+        Car edited = manager.getCarById(car2.getId());
+        edited.setLicensePlate("4M2 3000");
+        try {
+            manager.editCar(edited);
+            fail("car was changed to a used license plate");
+        } catch (ServiceFailureException ex) {
+            //OK
+        }
+
+        assertEquals(2, manager.getAllCars().size());
+        assertDeepEquals(car1, manager.getCarByLicensePlate("4M2 3000"));
+        assertDeepEquals(car2, manager.getCarByLicensePlate("5M1 2164"));
+    }
+
     @Test
     public void testGetAllCars() throws Exception {
         Car car1 = new Car( "4M2 3000", "Volkswagen Passat", new BigDecimal(5000), new BigDecimal(20000));
@@ -203,6 +262,43 @@ public class CarManagerImplTest {
         assertDeepEquals(expected, actual);
     }
 
+    @Test
+    public void testStreamAllCars() throws Exception {
+        Car car1 = new Car( "4M2 3000", "Volkswagen Passat", new BigDecimal(5000), new BigDecimal(20000));
+        Car car2 = new Car( "5M1 2164", "Skoda Octavia", new BigDecimal(4000), new BigDecimal(40000));
+
+        manager.addCar(car1);
+        manager.addCar(car2);
+        if (manager instanceof CarManagerImpl) {
+            ((CarManagerImpl) manager).setFetchSize(1);
+        }
+
+        List<Car> actual;
+        try (Stream<Car> cars = manager.streamAllCars()) {
+            actual = cars.collect(Collectors.toList());
+        }
+
+        assertEquals(Arrays.asList(car1, car2), actual);
+    }
+
+    @Test
+    public void testGetCarsAfter() throws Exception {
+        Car car1 = new Car( "4M2 3000", "Volkswagen Passat", new BigDecimal(5000), new BigDecimal(20000));
+        Car car2 = new Car( "5M1 2164", "Skoda Octavia", new BigDecimal(4000), new BigDecimal(40000));
+        Car car3 = new Car( "1T5 6784", "VW PASSAT", new BigDecimal(467), new BigDecimal(57000));
+        manager.addCar(car1);
+        manager.addCar(car2);
+        manager.addCar(car3);
+
+        List<Car> page = manager.getCarsAfter(null, 2);
+        assertEquals(Arrays.asList(car1, car2), page);
+
+        page = manager.getCarsAfter(page.get(1).getId(), 2);
+        assertEquals(Arrays.asList(car3), page);
+
+        assertTrue(manager.getCarsAfter(car3.getId(), 2).isEmpty());
+    }
+
     @Test
     public void testGetCarById() throws Exception {
         // try find by null argument
@@ -224,6 +320,23 @@ public class CarManagerImplTest {
         assertEquals(car, c);
     }
 
+    @Test
+    public void testStatementStats() throws Exception {
+        assumeTrue(manager instanceof CarManagerImpl);
+        CarManagerImpl manager = (CarManagerImpl) this.manager;
+        Car car = new Car( "4M2 3000", "Volkswagen Passat", new BigDecimal(5000), new BigDecimal(20000));
+        manager.addCar(car);
+        manager.configureCache(0, 1, TimeUnit.SECONDS);
+
+        manager.getCarById(car.getId());
+        manager.getCarById(car.getId());
+
+        Map<String, StatementStats> stats = manager.getStatementStats();
+        assertEquals(1, stats.get("insertCar").getExecutions());
+        assertEquals(2, stats.get("carById").getExecutions());
+        assertEquals(0, stats.get("deleteCar").getExecutions());
+    }
+
     @Test
     public void testGetCarByLicensePlate() throws Exception {
         // try find by null argument
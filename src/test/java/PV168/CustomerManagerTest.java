@@ -18,13 +18,14 @@ import org.junit.Rule;
 import org.junit.rules.ExpectedException;
 
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
 /**
  * Created by TomyAngelo on 9. 3. 2016.
  */
 public class CustomerManagerTest {
 
-    private CustomerManagerImpl manager;
+    private CustomerManager manager;
     private DataSource dataSource;
 
     @Before
@@ -37,7 +38,14 @@ public class CustomerManagerTest {
                     + "address varchar(255),"
                     + "phoneNumber varchar(255))").executeUpdate();
         }
-        manager = new CustomerManagerImpl(dataSource);
+        manager = createManager(dataSource);
+    }
+
+    /**
+     * @return tested manager, working with the given data source when it needs one
+     */
+    protected CustomerManager createManager(DataSource dataSource) {
+        return new CustomerManagerImpl(dataSource);
     }
 
     @Rule
@@ -172,6 +180,29 @@ public class CustomerManagerTest {
         assertDeepEquals(cus2, manager.findCustomerById(cus2.getId()));
     }
 
+    @Test
+    public void findCustomerByIdUsesCache(){
+        assumeTrue(manager instanceof CustomerManagerImpl);
+        CustomerManagerImpl manager = (CustomerManagerImpl) this.manager;
+        Customer customer = new Customer("Tomy","Brno 102", "0944999777");
+        manager.createCustomer(customer);
+
+        Customer first = manager.findCustomerById(customer.getId());
+        Customer second = manager.findCustomerById(customer.getId());
+        assertEquals(first, second);
+        assertThat("cached customer is shared", second, is(not(sameInstance(first))));
+        assertEquals(1, manager.getCacheStats().getHits());
+        assertEquals(1, manager.getCacheStats().getMisses());
+
+        second.setName("Paul");
+        manager.updateCustomer(second);
+        assertEquals("Paul", manager.findCustomerById(customer.getId()).getName());
+        assertEquals(2, manager.getCacheStats().getMisses());
+
+        manager.deleteCustomer(customer);
+        assertNull(manager.findCustomerById(customer.getId()));
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testUpdateWithNull() throws Exception {
         manager.updateCustomer(null);
@@ -0,0 +1,156 @@
+package PV168;
+
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DailyStatsTest {
+
+    private EmbeddedDataSource dataSource;
+    private LeaseManagerImpl manager;
+    private DailyStats stats;
+    private Car car;
+    private Customer customer;
+
+    @Before
+    public void setUp() {
+        dataSource = new EmbeddedDataSource();
+        dataSource.setDatabaseName("memory:daily-stats-test");
+        dataSource.setCreateDatabase("create");
+        new SchemaMigrator(dataSource).migrate();
+
+        car = new Car("1A1 2547", "Audi A3", new BigDecimal(450), new BigDecimal(23000));
+        new CarManagerImpl(dataSource).addCar(car);
+        customer = new Customer("Michal Vitek", "Vajanskeho 47", "+420746654738");
+        new CustomerManagerImpl(dataSource).createCustomer(customer);
+        manager = new LeaseManagerImpl(dataSource);
+        stats = new DailyStats(dataSource);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DBUtils.executeSqlScript(dataSource, SchemaMigrator.class.getResource("/dropTables.sql"));
+    }
+
+    private Lease lease(LocalDate from, LocalDate to, String price) {
+        return new Lease(null, customer, car, from, new BigDecimal(price), to);
+    }
+
+    @Test
+    public void leaseMutationsUpdateDays() {
+        Lease lease = lease(LocalDate.of(2016, 3, 1), LocalDate.of(2016, 3, 3), "100.00");
+        manager.createLease(lease);
+
+        List<DailySummary> days = stats.getSummaries(LocalDate.of(2016, 2, 29), LocalDate.of(2016, 3, 4));
+        assertEquals(5, days.size());
+        assertEquals(0, days.get(0).getOccupiedCars());
+        assertEquals(new BigDecimal("33.34"), days.get(1).getRevenue());
+        assertEquals(new BigDecimal("33.33"), days.get(2).getRevenue());
+        assertEquals(new BigDecimal("33.33"), days.get(3).getRevenue());
+        assertEquals(1, days.get(3).getOccupiedCars());
+        assertEquals(0, days.get(4).getOccupiedCars());
+
+        lease.setDateFrom(LocalDate.of(2016, 3, 2));
+        lease.setPrice(new BigDecimal("10.00"));
+        manager.updateLease(lease);
+        assertEquals(0, stats.getSummary(LocalDate.of(2016, 3, 1)).getOccupiedCars());
+        assertEquals(new BigDecimal("5.00"), stats.getSummary(LocalDate.of(2016, 3, 3)).getRevenue());
+
+        manager.deleteLease(lease);
+        assertEquals(0, stats.getSummary(LocalDate.of(2016, 3, 2)).getOccupiedCars());
+        assertEquals(new BigDecimal("0.00"), stats.getSummary(LocalDate.of(2016, 3, 2)).getRevenue());
+    }
+
+    @Test
+    public void rebuildMatchesIncrementalUpdates() {
+        manager.createLease(lease(LocalDate.of(2016, 3, 1), LocalDate.of(2016, 3, 7), "70.01"));
+        manager.createLease(lease(LocalDate.of(2016, 3, 10), LocalDate.of(2016, 3, 11), "0.01"));
+        manager.deleteLeasesEndedBefore(LocalDate.of(2016, 3, 8));
+        List<DailySummary> incremental = stats.getSummaries(LocalDate.of(2016, 3, 1), LocalDate.of(2016, 3, 12));
+
+        assertEquals(2, stats.rebuild());
+        List<DailySummary> rebuilt = stats.getSummaries(LocalDate.of(2016, 3, 1), LocalDate.of(2016, 3, 12));
+
+        assertEquals(incremental.toString(), rebuilt.toString());
+        assertEquals(new BigDecimal("0.01"), rebuilt.get(9).getRevenue());
+        assertEquals(1, rebuilt.get(10).getOccupiedCars());
+    }
+
+    @Test
+    public void deletedCustomersTakeTheirLeases() {
+        CustomerManagerImpl customerManager = new CustomerManagerImpl(dataSource);
+        Customer other = new Customer("Jana Mala", "Botanicka 68", "+420603111222");
+        customerManager.createCustomer(other);
+        manager.createLease(lease(LocalDate.of(2016, 3, 1), LocalDate.of(2016, 3, 2), "20.00"));
+        manager.createLease(new Lease(null, other, car, LocalDate.of(2016, 3, 3), new BigDecimal("30.00"),
+                LocalDate.of(2016, 3, 3)));
+
+        customerManager.deleteCustomer(customer);
+        assertEquals(0, stats.getSummary(LocalDate.of(2016, 3, 1)).getOccupiedCars());
+        assertEquals(new BigDecimal("0.00"), stats.getSummary(LocalDate.of(2016, 3, 2)).getRevenue());
+        assertEquals(new BigDecimal("30.00"), stats.getSummary(LocalDate.of(2016, 3, 3)).getRevenue());
+
+        assertEquals(1, customerManager.deleteAllCustomers());
+        assertEquals(0, stats.getSummary(LocalDate.of(2016, 3, 3)).getOccupiedCars());
+        assertEquals(new BigDecimal("0.00"), stats.getSummary(LocalDate.of(2016, 3, 3)).getRevenue());
+        assertEquals(0, stats.rebuild());
+    }
+
+    @Test
+    public void longLeaseIsSpreadOverAllDays() {
+        LocalDate from = LocalDate.of(2016, 1, 1);
+        LocalDate to = from.plusDays(799);
+        Lease lease = lease(from, to, "800.03");
+        manager.createLease(lease);
+
+        List<DailySummary> days = stats.getSummaries(from, to.plusDays(1));
+        BigDecimal total = BigDecimal.ZERO;
+        for (DailySummary day : days.subList(0, 800)) {
+            assertEquals(1, day.getOccupiedCars());
+            total = total.add(day.getRevenue());
+        }
+        assertEquals(new BigDecimal("800.03"), total);
+        assertEquals(new BigDecimal("1.01"), days.get(2).getRevenue());
+        assertEquals(new BigDecimal("1.00"), days.get(3).getRevenue());
+        assertEquals(0, days.get(800).getOccupiedCars());
+
+        manager.deleteLease(lease);
+        assertEquals(0, stats.getSummary(to).getOccupiedCars());
+        assertEquals(0, stats.rebuild());
+    }
+
+    @Test
+    public void statsAreKeptOnceTheTableIsMigrated() throws SQLException {
+        EmbeddedDataSource late = new EmbeddedDataSource();
+        late.setDatabaseName("memory:daily-stats-late-test");
+        late.setCreateDatabase("create");
+        SchemaMigrator migrator = new SchemaMigrator(late);
+        migrator.migrate(2);
+        try {
+            Car lateCar = new Car("2B2 1111", "Skoda Fabia", new BigDecimal(300), new BigDecimal(5000));
+            new CarManagerImpl(late).addCar(lateCar);
+            Customer lateCustomer = new Customer("Jana Mala", "Botanicka 68", "+420603111222");
+            new CustomerManagerImpl(late).createCustomer(lateCustomer);
+            LeaseManagerImpl lateManager = new LeaseManagerImpl(late);
+            lateManager.createLease(new Lease(null, lateCustomer, lateCar, LocalDate.of(2016, 3, 1),
+                    new BigDecimal("10.00"), LocalDate.of(2016, 3, 1)));
+
+            migrator.migrate();
+            lateManager.createLease(new Lease(null, lateCustomer, lateCar, LocalDate.of(2016, 3, 2),
+                    new BigDecimal("20.00"), LocalDate.of(2016, 3, 2)));
+            DailyStats lateStats = new DailyStats(late);
+            assertEquals(0, lateStats.getSummary(LocalDate.of(2016, 3, 1)).getOccupiedCars());
+            assertEquals(new BigDecimal("20.00"), lateStats.getSummary(LocalDate.of(2016, 3, 2)).getRevenue());
+        } finally {
+            DBUtils.executeSqlScript(late, SchemaMigrator.class.getResource("/dropTables.sql"));
+        }
+    }
+}
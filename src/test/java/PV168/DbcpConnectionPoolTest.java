@@ -0,0 +1,57 @@
+package PV168;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class DbcpConnectionPoolTest {
+
+    private ConnectionPool pool;
+
+    @Before
+    public void setUp() {
+        Properties prop = new Properties();
+        prop.setProperty("DBDriverClassName", "org.apache.derby.jdbc.EmbeddedDriver");
+        prop.setProperty("DBUrl", "jdbc:derby:memory:");
+        prop.setProperty("DBName", "pool-test;create=true");
+        prop.setProperty("DBPoolMaxActive", "2");
+        prop.setProperty("DBPoolMaxIdle", "2");
+        prop.setProperty("DBPoolValidationQuery", "VALUES 1");
+        prop.setProperty("DBPoolMaxOpenStatements", "10");
+        pool = DBUtils.createConnectionPool(prop);
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    public void statsTrackBorrowedConnections() throws Exception {
+        try (Connection first = pool.getDataSource().getConnection();
+             Connection second = pool.getDataSource().getConnection()) {
+            assertTrue(first.isValid(1));
+            assertTrue(second.isValid(1));
+            PoolStats stats = pool.getStats();
+            assertEquals(2, stats.getActive());
+            assertEquals(2, stats.getMaxActive());
+            assertEquals(0, stats.getWaiters());
+        }
+        PoolStats stats = pool.getStats();
+        assertEquals(0, stats.getActive());
+        assertEquals(2, stats.getIdle());
+        assertEquals(2, stats.getConnectionsServed());
+    }
+
+    @Test(expected = ServiceFailureException.class)
+    public void unknownProviderFails() {
+        Properties prop = new Properties();
+        prop.setProperty("DBPoolProvider", "PV168.NoSuchPool");
+        DBUtils.createConnectionPool(prop);
+    }
+}
@@ -0,0 +1,108 @@
+package PV168;
+
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+
+import static org.junit.Assert.*;
+
+public class FleetAnalyticsTest {
+
+    private EmbeddedDataSource dataSource;
+    private FleetAnalytics analytics;
+
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = new EmbeddedDataSource();
+        dataSource.setDatabaseName("memory:fleet-analytics-test");
+        dataSource.setCreateDatabase("create");
+        new SchemaMigrator(dataSource).migrate();
+        analytics = new FleetAnalytics(dataSource);
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.prepareStatement("INSERT INTO CUSTOMERS (NAME) VALUES ('Anna')").executeUpdate();
+            connection.prepareStatement("INSERT INTO CARS (LICENSEPLATE, MODEL) VALUES ('BA1', 'Octavia')").executeUpdate();
+            connection.prepareStatement("INSERT INTO CARS (LICENSEPLATE, MODEL) VALUES ('BA2', 'Octavia')").executeUpdate();
+            connection.prepareStatement("INSERT INTO CARS (LICENSEPLATE, MODEL) VALUES ('BA3', 'Fabia')").executeUpdate();
+        }
+        // car 1: 10 days in January, 5 days across the end of February
+        insertLease(1, "2016-01-01", "2016-01-10", "100.00");
+        insertLease(1, "2016-02-27", "2016-03-02", "50.50");
+        // car 2: started before the period, 3 days in it
+        insertLease(2, "2015-12-20", "2016-01-03", "300.00");
+        // car 3: outside the period
+        insertLease(3, "2016-05-01", "2016-05-02", "20.00");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DBUtils.executeSqlScript(dataSource, SchemaMigrator.class.getResource("/dropTables.sql"));
+    }
+
+    private void insertLease(long carId, String from, String to, String price) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement st = connection.prepareStatement(
+                     "INSERT INTO LEASES (IDCUSTOMER, IDCAR, DATEFROM, DATETO, PRICE) VALUES (1,?,?,?,?)")) {
+            st.setLong(1, carId);
+            st.setDate(2, java.sql.Date.valueOf(from));
+            st.setDate(3, java.sql.Date.valueOf(to));
+            st.setBigDecimal(4, new BigDecimal(price));
+            st.executeUpdate();
+        }
+    }
+
+    @Test
+    public void utilizationPerCar() {
+        UtilizationReport report = analytics.utilization(LocalDate.of(2016, 1, 1), LocalDate.of(2016, 2, 29));
+
+        UtilizationStats car1 = report.getByCar().get(1L);
+        assertEquals(60, car1.getAvailableDays());
+        assertEquals(13, car1.getLeasedDays());
+        assertEquals(new BigDecimal("150.50"), car1.getRevenue());
+        assertEquals(2, car1.getLeaseCount());
+        assertEquals(6.5, car1.getAverageLeaseDays(), 0.001);
+
+        UtilizationStats car2 = report.getByCar().get(2L);
+        assertEquals(3, car2.getLeasedDays());
+        assertEquals(new BigDecimal("0.00"), car2.getRevenue());
+        assertEquals(0, car2.getLeaseCount());
+
+        assertEquals(0, report.getByCar().get(3L).getLeasedDays());
+    }
+
+    @Test
+    public void utilizationPerModelAndMonth() {
+        UtilizationReport report = analytics.utilization(LocalDate.of(2016, 1, 1), LocalDate.of(2016, 2, 29));
+
+        UtilizationStats octavia = report.getByModel().get("Octavia");
+        assertEquals(120, octavia.getAvailableDays());
+        assertEquals(16, octavia.getLeasedDays());
+        assertEquals(0, report.getByModel().get("Fabia").getLeasedDays());
+
+        UtilizationStats january = report.getByMonth().get(YearMonth.of(2016, 1));
+        assertEquals(3 * 31, january.getAvailableDays());
+        assertEquals(13, january.getLeasedDays());
+        assertEquals(new BigDecimal("100.00"), january.getRevenue());
+
+        UtilizationStats february = report.getByMonth().get(YearMonth.of(2016, 2));
+        assertEquals(3 * 29, february.getAvailableDays());
+        assertEquals(3, february.getLeasedDays());
+        assertEquals(new BigDecimal("50.50"), february.getRevenue());
+
+        assertEquals(16, report.getTotal().getLeasedDays());
+        assertEquals(new BigDecimal("150.50"), report.getTotal().getRevenue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyPeriod() {
+        analytics.utilization(LocalDate.of(2016, 2, 1), LocalDate.of(2016, 1, 1));
+    }
+}
@@ -0,0 +1,92 @@
+package PV168;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import static org.junit.Assert.*;
+
+public class FleetSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private InMemoryFleetStore source;
+    private Path file;
+    private Car car;
+    private Customer customer;
+
+    @Before
+    public void setUp() {
+        source = new InMemoryFleetStore();
+        file = folder.getRoot().toPath().resolve("fleet.snapshot");
+        car = new Car("1A1 2547", "Audi A3", new BigDecimal("450.50"), new BigDecimal(23000));
+        source.getCarManager().addCar(car);
+        source.getCarManager().addCar(new Car("1B3 3546", "Audi A3", new BigDecimal(340), new BigDecimal(45000)));
+        customer = new Customer("Michal Vitek", "Vajanskeho 47", "+420746654738");
+        source.getCustomerManager().createCustomer(customer);
+        source.getCustomerManager().createCustomer(new Customer("Jozko Voracek", "Vajanskeho 47", "+420733456980"));
+        source.getLeaseManager().createLease(lease(LocalDate.of(2016, 3, 1), LocalDate.of(2016, 3, 3)));
+        source.getLeaseManager().createLease(lease(LocalDate.of(2016, 3, 4), LocalDate.of(2016, 3, 5)));
+    }
+
+    private Lease lease(LocalDate from, LocalDate to) {
+        return new Lease(null, customer, car, from, new BigDecimal("100.00"), to);
+    }
+
+    @Test
+    public void readStoreEqualsWrittenStore() throws IOException {
+        FleetSnapshot.write(source, file);
+        InMemoryFleetStore store = FleetSnapshot.read(file);
+
+        assertEquals(source.getCarManager().getAllCars(), store.getCarManager().getAllCars());
+        assertEquals(source.getCustomerManager().getAllCustomers(), store.getCustomerManager().getAllCustomers());
+        assertEquals(source.getLeaseManager().getAllLeases(), store.getLeaseManager().getAllLeases());
+        assertEquals(car, store.getCarManager().getCarByLicensePlate("1A1 2547"));
+        assertEquals(2, store.getLeaseManager().findLeasesForCar(car).size());
+        assertEquals(1, store.getLeaseManager().getAllLeasesByEndDate(LocalDate.of(2016, 3, 5)).size());
+
+        try {
+            store.getLeaseManager().createLease(lease(LocalDate.of(2016, 3, 2), LocalDate.of(2016, 3, 2)));
+            fail("overlapping lease was created");
+        } catch (IllegalEntityException ex) {
+            // expected
+        }
+        Lease next = lease(LocalDate.of(2016, 3, 6), LocalDate.of(2016, 3, 6));
+        store.getLeaseManager().createLease(next);
+        assertEquals(Long.valueOf(3), next.getId());
+    }
+
+    @Test
+    public void catchUpReadsNewerEntities() throws IOException {
+        FleetSnapshot.write(source, file);
+        Car newCar = new Car("1T5 6784", "VW PASSAT", new BigDecimal(467), new BigDecimal(57000));
+        source.getCarManager().addCar(newCar);
+        source.getLeaseManager().createLease(
+                new Lease(null, customer, newCar, LocalDate.of(2016, 3, 1), new BigDecimal("10.00"), LocalDate.of(2016, 3, 1)));
+
+        InMemoryFleetStore store = FleetSnapshot.read(file);
+        assertEquals(2, FleetSnapshot.catchUp(store, source.getCarManager(), source.getCustomerManager(),
+                source.getLeaseManager(), 1));
+
+        assertEquals(source.getCarManager().getAllCars(), store.getCarManager().getAllCars());
+        assertEquals(source.getLeaseManager().getAllLeases(), store.getLeaseManager().getAllLeases());
+        assertEquals(1, store.getLeaseManager().findLeasesForCar(newCar).size());
+    }
+
+    @Test(expected = IOException.class)
+    public void damagedSnapshotIsRejected() throws IOException {
+        FleetSnapshot.write(source, file);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[FleetSnapshot.HEADER_SIZE + 1] ^= 1;
+        Files.write(file, bytes);
+        FleetSnapshot.read(file);
+    }
+}
@@ -0,0 +1,14 @@
+package PV168;
+
+import javax.sql.DataSource;
+
+/**
+ * Runs the tests of the JDBC car manager against the in-memory store.
+ */
+public class InMemoryCarManagerTest extends CarManagerImplTest {
+
+    @Override
+    protected CarManager createManager(DataSource dataSource) {
+        return new InMemoryFleetStore().getCarManager();
+    }
+}
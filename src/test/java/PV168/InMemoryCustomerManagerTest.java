@@ -0,0 +1,14 @@
+package PV168;
+
+import javax.sql.DataSource;
+
+/**
+ * Runs the tests of the JDBC customer manager against the in-memory store.
+ */
+public class InMemoryCustomerManagerTest extends CustomerManagerTest {
+
+    @Override
+    protected CustomerManager createManager(DataSource dataSource) {
+        return new InMemoryFleetStore().getCustomerManager();
+    }
+}
@@ -0,0 +1,68 @@
+package PV168;
+
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the tests of the JDBC lease manager against the in-memory store, together
+ * with the cascades the database does by its foreign keys.
+ */
+public class InMemoryLeaseManagerTest extends LeaseManagerImplTest {
+
+    @Override
+    protected void createManagers(DataSource ds) {
+        InMemoryFleetStore store = new InMemoryFleetStore();
+        manager = store.getLeaseManager();
+        managercar = store.getCarManager();
+        managercust = store.getCustomerManager();
+    }
+
+    @Test
+    public void deletingCarOrCustomerDeletesTheirLeases() {
+        Car car = new Car("1A1 2547", "Audi A3", new BigDecimal(450), new BigDecimal(23000));
+        Car other = new Car("1B3 3546", "BMW X6", new BigDecimal(340), new BigDecimal(45000));
+        Customer customer = new Customer("Michal Vitek", "Vajanskeho 47", "+420746654738");
+        managercar.addCar(car);
+        managercar.addCar(other);
+        managercust.createCustomer(customer);
+        Lease first = new Lease(null, customer, car, LocalDate.of(2017, 3, 1), new BigDecimal(100), LocalDate.of(2017, 3, 3));
+        Lease second = new Lease(null, customer, other, LocalDate.of(2017, 3, 1), new BigDecimal(100), LocalDate.of(2017, 3, 3));
+        manager.createLease(first);
+        manager.createLease(second);
+
+        managercar.deleteCar(car);
+        assertNull(manager.getLeaseByID(first.getId()));
+        assertEquals(Collections.singletonList(second), manager.getAllLeases());
+        assertTrue(managercar.isCarAvailable(other.getId(), LocalDate.of(2017, 3, 4), LocalDate.of(2017, 3, 9)));
+
+        managercust.deleteCustomer(customer);
+        assertTrue(manager.getAllLeases().isEmpty());
+        assertTrue(managercar.isCarAvailable(other.getId(), LocalDate.of(2017, 3, 1), LocalDate.of(2017, 3, 3)));
+    }
+
+    @Test
+    public void updateMovesLeaseBetweenCars() {
+        Car car = new Car("1A1 2547", "Audi A3", new BigDecimal(450), new BigDecimal(23000));
+        Car other = new Car("1B3 3546", "BMW X6", new BigDecimal(340), new BigDecimal(45000));
+        Customer customer = new Customer("Michal Vitek", "Vajanskeho 47", "+420746654738");
+        managercar.addCar(car);
+        managercar.addCar(other);
+        managercust.createCustomer(customer);
+        Lease lease = new Lease(null, customer, car, LocalDate.of(2017, 3, 1), new BigDecimal(100), LocalDate.of(2017, 3, 3));
+        manager.createLease(lease);
+
+        lease.setCar(other);
+        manager.updateLease(lease);
+        assertTrue(manager.findLeasesForCar(car).isEmpty());
+        assertEquals(Collections.singletonList(lease), manager.findLeasesForCar(other));
+        assertEquals(Collections.singletonList(lease), manager.getLeasesByDateFromAfter(null, null, 5));
+        assertTrue(managercar.isCarAvailable(car.getId(), LocalDate.of(2017, 3, 1), LocalDate.of(2017, 3, 3)));
+        assertFalse(managercar.isCarAvailable(other.getId(), LocalDate.of(2017, 3, 3), LocalDate.of(2017, 3, 3)));
+    }
+}
@@ -0,0 +1,101 @@
+package PV168;
+
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class LeaseColumnsTest {
+
+    private EmbeddedDataSource dataSource;
+    private LeaseColumns columns;
+
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = new EmbeddedDataSource();
+        dataSource.setDatabaseName("memory:lease-columns-test");
+        dataSource.setCreateDatabase("create");
+        new SchemaMigrator(dataSource).migrate();
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.prepareStatement("INSERT INTO CUSTOMERS (NAME) VALUES ('Anna')").executeUpdate();
+            connection.prepareStatement("INSERT INTO CUSTOMERS (NAME) VALUES ('Petr')").executeUpdate();
+            connection.prepareStatement("INSERT INTO CARS (LICENSEPLATE, MODEL) VALUES ('BA1', 'Octavia')").executeUpdate();
+            connection.prepareStatement("INSERT INTO CARS (LICENSEPLATE, MODEL) VALUES ('BA2', 'Fabia')").executeUpdate();
+        }
+        insertLease(1, 1, "2016-01-01", "2016-01-10", "100.00");
+        insertLease(1, 2, "2016-02-27", "2016-03-02", "50.50");
+        insertLease(2, 1, "2015-12-20", "2016-01-03", "300.00");
+        insertLease(2, 2, "2016-05-01", null, null);
+
+        LeaseColumnLoader loader = new LeaseColumnLoader(dataSource);
+        loader.setFetchSize(2);
+        columns = loader.load();
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DBUtils.executeSqlScript(dataSource, SchemaMigrator.class.getResource("/dropTables.sql"));
+    }
+
+    private void insertLease(long carId, long customerId, String from, String to, String price) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement st = connection.prepareStatement(
+                     "INSERT INTO LEASES (IDCUSTOMER, IDCAR, DATEFROM, DATETO, PRICE) VALUES (?,?,?,?,?)")) {
+            st.setLong(1, customerId);
+            st.setLong(2, carId);
+            st.setDate(3, java.sql.Date.valueOf(from));
+            st.setDate(4, to == null ? null : java.sql.Date.valueOf(to));
+            st.setBigDecimal(5, price == null ? null : new BigDecimal(price));
+            st.executeUpdate();
+        }
+    }
+
+    @Test
+    public void columnsHoldAllLeases() {
+        assertEquals(4, columns.size());
+        assertTrue(columns.getMemoryBytes() >= 4L * LeaseColumns.BYTES_PER_LEASE);
+        assertEquals(Long.valueOf(1), columns.getCarId(0));
+        assertEquals(LocalDate.of(2016, 2, 27), columns.getDateFrom(1));
+        assertEquals(Long.valueOf(5050), columns.getPriceCents(1));
+        assertNull(columns.getDateTo(3));
+        assertNull(columns.getPriceCents(3));
+        assertEquals(45050, columns.scan().sumPriceCents());
+    }
+
+    @Test
+    public void scanCombinesConditions() {
+        assertEquals(2, columns.scan().car(1).count());
+        assertEquals(2, columns.scan().customer(2).count());
+        assertEquals(0, columns.scan().car(3).count());
+
+        LeaseColumns.Scan january = columns.scan().overlapping(LocalDate.of(2016, 1, 1), LocalDate.of(2016, 1, 31));
+        assertEquals(2, january.count());
+        assertEquals(40000, january.sumPriceCents());
+        assertEquals(30000, january.car(2).sumPriceCents());
+
+        // a lease without an end overlaps every later period
+        assertEquals(1, columns.scan().overlapping(LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 1)).count());
+
+        // a lease without a price is outside of every price range
+        LeaseColumns.Scan cheap = columns.scan().priceBetween(0, 10000);
+        long[] ids = cheap.leaseIds();
+        Arrays.sort(ids);
+        assertArrayEquals(new long[]{1, 2}, ids);
+        assertEquals(15050, cheap.sumPriceCents());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyPeriodIsRejected() {
+        columns.scan().overlapping(LocalDate.of(2016, 1, 2), LocalDate.of(2016, 1, 1));
+    }
+}
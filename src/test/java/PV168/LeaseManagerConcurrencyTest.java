@@ -0,0 +1,162 @@
+package PV168;
+
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Many threads booking one car at once must never create overlapping leases.
+ */
+public class LeaseManagerConcurrencyTest {
+
+    private static final Logger log = Logger.getLogger(
+            LeaseManagerConcurrencyTest.class.getName());
+
+    private static final int THREADS = 64;
+    private static final int ATTEMPTS_PER_THREAD = 50;
+    private static final int MANAGERS = 4;
+
+    private EmbeddedDataSource ds;
+    private LeaseManagerImpl manager;
+    private Car car;
+    private Customer customer;
+
+    @Before
+    public void setUp() {
+        ds = new EmbeddedDataSource();
+        ds.setDatabaseName("memory:lease-concurrency-test");
+        ds.setCreateDatabase("create");
+        new SchemaMigrator(ds).migrate();
+
+        car = new Car("1A1 2547", "Audi A3", new BigDecimal(450), new BigDecimal(23000));
+        new CarManagerImpl(ds).addCar(car);
+        customer = new Customer("Michal Vitek", "Vajanskeho 47", "+420746654738");
+        new CustomerManagerImpl(ds).createCustomer(customer);
+        manager = new LeaseManagerImpl(ds);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DBUtils.executeSqlScript(ds, LeaseManager.class.getResource("/dropTables.sql"));
+    }
+
+    @Test
+    public void concurrentLeasesOfOneCarNeverOverlap() throws Exception {
+        bookConcurrently(Collections.singletonList(manager));
+    }
+
+    /**
+     * Managers with locks of their own, as in separate JVMs, are kept apart by
+     * the row lock of the car and the conflict check in the database only.
+     */
+    @Test
+    public void concurrentLeasesFromSeveralManagersNeverOverlap() throws Exception {
+        List<LeaseManagerImpl> managers = new ArrayList<>();
+        for (int i = 0; i < MANAGERS; i++) {
+            managers.add(new LeaseManagerImpl(ds, new StripedLocks(16)));
+        }
+        bookConcurrently(managers);
+    }
+
+    private void bookConcurrently(List<LeaseManagerImpl> managers) throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Void>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            final Random random = new Random(t);
+            final LeaseManagerImpl manager = managers.get(t % managers.size());
+            results.add(executor.submit((Callable<Void>) () -> {
+                for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                    LocalDate from = LocalDate.of(2017, 1, 1).plusDays(random.nextInt(365));
+                    Lease lease = new Lease(null, customer, car, from, new BigDecimal(1000),
+                            from.plusDays(random.nextInt(5)));
+                    try {
+                        manager.createLease(lease);
+                        created.incrementAndGet();
+                    } catch (IllegalEntityException ex) {
+                        rejected.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<Void> result : results) {
+            result.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+
+        log.log(Level.INFO, String.format("%d attempts (%d created, %d rejected) from %d threads of %d managers"
+                        + " in %d ms, %.0f attempts/s",
+                THREADS * ATTEMPTS_PER_THREAD, created.get(), rejected.get(), THREADS, managers.size(),
+                TimeUnit.NANOSECONDS.toMillis(elapsed), THREADS * ATTEMPTS_PER_THREAD * 1e9 / elapsed));
+
+        assertEquals(THREADS * ATTEMPTS_PER_THREAD, created.get() + rejected.get());
+        List<Lease> leases = manager.findLeasesForCar(car);
+        assertEquals(created.get(), leases.size());
+        leases.sort((a, b) -> a.getDateFrom().compareTo(b.getDateFrom()));
+        for (int i = 1; i < leases.size(); i++) {
+            assertTrue("leases " + leases.get(i - 1) + " and " + leases.get(i) + " overlap",
+                    leases.get(i - 1).getDateTo().isBefore(leases.get(i).getDateFrom()));
+        }
+    }
+
+    @Test
+    public void leasesMovedBetweenCarsInOppositeDirectionsDoNotDeadlock() throws Exception {
+        Car other = new Car("2B2 1111", "Skoda Fabia", new BigDecimal(300), new BigDecimal(5000));
+        new CarManagerImpl(ds).addCar(other);
+        Lease first = new Lease(null, customer, car, LocalDate.of(2017, 1, 1), new BigDecimal(1000),
+                LocalDate.of(2017, 1, 5));
+        Lease second = new Lease(null, customer, other, LocalDate.of(2017, 2, 1), new BigDecimal(2000),
+                LocalDate.of(2017, 2, 5));
+        manager.createLease(first);
+        manager.createLease(second);
+        DailyStats stats = new DailyStats(ds);
+
+        // managers with locks of their own, as in separate JVMs, rely on the row locks only
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        List<Future<Void>> results = new ArrayList<>();
+        for (Lease lease : new Lease[]{first, second}) {
+            LeaseManagerImpl own = new LeaseManagerImpl(ds, new StripedLocks(16));
+            Car from = lease.getCar();
+            Car to = from == car ? other : car;
+            results.add(executor.submit((Callable<Void>) () -> {
+                for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                    lease.setCar(i % 2 == 0 ? to : from);
+                    own.updateLease(lease);
+                }
+                return null;
+            }));
+        }
+        for (Future<Void> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+
+        List<DailySummary> incremental = stats.getSummaries(LocalDate.of(2017, 1, 1), LocalDate.of(2017, 2, 5));
+        stats.rebuild();
+        assertEquals(incremental.toString(),
+                stats.getSummaries(LocalDate.of(2017, 1, 1), LocalDate.of(2017, 2, 5)).toString());
+    }
+}
@@ -16,9 +16,12 @@ import java.text.SimpleDateFormat;
 import java.time.Clock;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.*;
 
 /**
@@ -26,9 +29,9 @@ import static org.junit.Assert.*;
  */
 public class LeaseManagerImplTest {
 
-    private LeaseManagerImpl manager;
-    private CustomerManagerImpl managercust;
-    private CarManagerImpl managercar;
+    protected LeaseManager manager;
+    protected CustomerManager managercust;
+    protected CarManager managercar;
     private DataSource ds;
     private static Car car1;
     private static Car car2;
@@ -80,6 +83,13 @@ public class LeaseManagerImplTest {
                     + "DATETO DATE,"
                     + "PRICE DECIMAL)").executeUpdate();
         }
+        createManagers(ds);
+    }
+
+    /**
+     * Creates the tested managers, working with the given data source when they need one.
+     */
+    protected void createManagers(DataSource ds) {
         manager = new LeaseManagerImpl( ds);
         managercar=new CarManagerImpl(ds);
         managercust=new CustomerManagerImpl(ds);
@@ -333,6 +343,207 @@ public class LeaseManagerImplTest {
         assertDeepEquals(expected, actual);
     }
 
+    @Test
+    public void testLeasesShareCustomerAndCar() throws Exception {
+        managercust.createCustomer(customer1);
+        managercar.addCar(car1);
+        managercar.addCar(car2);
+
+        Lease lease1 = createLease1();
+        Lease lease2 = createLease1();
+        lease2.setCar(car2);
+        manager.createLease(lease1);
+        manager.createLease(lease2);
+
+        List<Lease> leases = manager.findLeasesForCustomer(customer1);
+        assertEquals(2, leases.size());
+        assertThat(leases.get(0).getCustomer(), is(sameInstance(leases.get(1).getCustomer())));
+        assertEquals(customer1, leases.get(0).getCustomer());
+        assertEquals(car1, leases.get(0).getCar());
+        assertEquals(car2, leases.get(1).getCar());
+    }
+
+    @Test
+    public void testFindLeases() throws Exception {
+        if (manager instanceof LeaseManagerImpl) {
+            // every lease is read by its own partition
+            ((LeaseManagerImpl) manager).setQueryPartitionSize(1);
+        }
+        managercust.createCustomer(customer1);
+        managercust.createCustomer(customer2);
+        managercust.createCustomer(customer3);
+        managercar.addCar(car1);
+        managercar.addCar(car2);
+        managercar.addCar(car3);
+        Lease lease1 = createLease1();
+        Lease lease2 = createLease2();
+        Lease lease3 = createLease3();
+        manager.createLease(lease1);
+        manager.createLease(lease2);
+        manager.createLease(lease3);
+
+        LeaseQuery march = LeaseQuery.overlapping(LocalDate.of(2017, 3, 1), LocalDate.of(2017, 3, 31));
+        assertEquals(Arrays.asList(lease1, lease2, lease3), manager.findLeases(LeaseQuery.all()));
+        assertEquals(Arrays.asList(lease1, lease3), manager.findLeases(march));
+        assertEquals(Collections.singletonList(lease3), manager.findLeases(LeaseQuery.forModel("VW PASSAT")
+                .and(march).and(LeaseQuery.priceBetween(new BigDecimal(13000), null))));
+        assertEquals(Arrays.asList(lease1, lease2),
+                manager.findLeases(LeaseQuery.forCar(car1).or(LeaseQuery.forCustomer(customer2))));
+        assertTrue(manager.findLeases(LeaseQuery.forCar(car1).and(LeaseQuery.forCustomer(customer2))).isEmpty());
+
+        LeaseQuery cheap = LeaseQuery.where(lease -> lease.getPrice().compareTo(new BigDecimal(13000)) < 0);
+        assertEquals(Collections.singletonList(lease1), manager.findLeases(march.and(cheap)));
+        List<Lease> found = manager.findLeases(LeaseQuery.forCar(car3).or(cheap));
+        assertEquals(Arrays.asList(lease1, lease2, lease3), found);
+        assertDeepEquals(Arrays.asList(lease1, lease2, lease3), found);
+    }
+
+    @Test
+    public void testStreamAllLeasesSharesEntitiesWithinFetch() throws Exception {
+        if (!(manager instanceof LeaseManagerImpl)) {
+            return;
+        }
+        ((LeaseManagerImpl) manager).setFetchSize(2);
+        managercust.createCustomer(customer1);
+        managercar.addCar(car1);
+        managercar.addCar(car2);
+        managercar.addCar(car3);
+        for (Lease lease : Arrays.asList(createLease1(), createLease2(), createLease3())) {
+            lease.setCustomer(customer1);
+            manager.createLease(lease);
+        }
+
+        List<Lease> leases;
+        try (Stream<Lease> stream = manager.streamAllLeases()) {
+            leases = stream.collect(Collectors.toList());
+        }
+        assertEquals(3, leases.size());
+        assertSame(leases.get(0).getCustomer(), leases.get(1).getCustomer());
+        assertNotSame(leases.get(1).getCustomer(), leases.get(2).getCustomer());
+        assertEquals(customer1, leases.get(2).getCustomer());
+    }
+
+    @Test
+    public void testGetAllLeasesSharesEntitiesAcrossFetches() throws Exception {
+        if (!(manager instanceof LeaseManagerImpl)) {
+            return;
+        }
+        ((LeaseManagerImpl) manager).setFetchSize(2);
+        managercust.createCustomer(customer1);
+        managercust.createCustomer(customer2);
+        managercust.createCustomer(customer3);
+        managercar.addCar(car1);
+        for (Lease lease : Arrays.asList(createLease1(), createLease2(), createLease3())) {
+            lease.setCar(car1);
+            manager.createLease(lease);
+        }
+
+        List<Lease> leases = manager.getAllLeases();
+        assertEquals(3, leases.size());
+        assertSame(leases.get(0).getCar(), leases.get(2).getCar());
+    }
+
+    @Test
+    public void testGetLeasesByDateToAfter() throws Exception {
+        managercust.createCustomer(customer1);
+        managercust.createCustomer(customer2);
+        managercust.createCustomer(customer3);
+        managercar.addCar(car1);
+        managercar.addCar(car2);
+        managercar.addCar(car3);
+
+        Lease lease1 = createLease1();
+        Lease lease2 = createLease2();
+        Lease lease3 = createLease3();
+        manager.createLease(lease1);
+        manager.createLease(lease2);
+        manager.createLease(lease3);
+
+        List<Lease> page = manager.getLeasesByDateToAfter(null, null, 2);
+        assertEquals(Arrays.asList(lease2, lease3), page);
+
+        Lease last = page.get(1);
+        page = manager.getLeasesByDateToAfter(last.getDateTo(), last.getId(), 2);
+        assertEquals(Arrays.asList(lease1), page);
+
+        assertEquals(Arrays.asList(lease2, lease3), manager.getLeasesAfter(lease1.getId(), 5));
+    }
+
+    @Test
+    public void testCarAvailability() throws Exception {
+        managercust.createCustomer(customer1);
+        managercar.addCar(car1);
+        managercar.addCar(car2);
+        manager.createLease(createLease1());
+
+        assertFalse(managercar.isCarAvailable(car1.getId(), LocalDate.of(2017,3,27), LocalDate.of(2017,3,30)));
+        assertFalse(managercar.isCarAvailable(car1.getId(), LocalDate.of(2017,3,20), LocalDate.of(2017,4,1)));
+        assertTrue(managercar.isCarAvailable(car1.getId(), LocalDate.of(2017,3,28), LocalDate.of(2017,3,30)));
+        assertTrue(managercar.isCarAvailable(car2.getId(), LocalDate.of(2017,3,25), LocalDate.of(2017,3,25)));
+        assertFalse(managercar.isCarAvailable(Long.MAX_VALUE, LocalDate.of(2017,3,25), LocalDate.of(2017,3,25)));
+
+        Set<Long> available = managercar.getAvailableCars(
+                Arrays.asList(car1.getId(), car2.getId(), Long.MAX_VALUE),
+                LocalDate.of(2017,3,26), LocalDate.of(2017,3,26));
+        assertEquals(Collections.singleton(car2.getId()), available);
+    }
+
+    @Test
+    public void testCreateOverlappingLease() throws Exception {
+        managercust.createCustomer(customer1);
+        managercust.createCustomer(customer2);
+        managercar.addCar(car1);
+        manager.createLease(createLease1());
+
+        Lease overlapping = createLease1();
+        overlapping.setCustomer(customer2);
+        overlapping.setDateFrom(LocalDate.of(2017,3,27));
+        overlapping.setDateTo(LocalDate.of(2017,3,29));
+        try {
+            manager.createLease(overlapping);
+            fail("overlapping lease was created");
+        } catch (IllegalEntityException ex) {
+            //OK
+        }
+
+        Lease following = createLease1();
+        following.setCustomer(customer2);
+        following.setDateFrom(LocalDate.of(2017,3,28));
+        following.setDateTo(LocalDate.of(2017,3,29));
+        manager.createLease(following);
+        assertNotNull(following.getId());
+
+        following.setDateFrom(LocalDate.of(2017,3,26));
+        try {
+            manager.updateLease(following);
+            fail("lease was updated to overlap another one");
+        } catch (IllegalEntityException ex) {
+            //OK
+        }
+        assertEquals(LocalDate.of(2017,3,28), manager.getLeaseByID(following.getId()).getDateFrom());
+    }
+
+    @Test
+    public void testCreateLeases() throws Exception {
+        managercust.createCustomer(customer1);
+        managercust.createCustomer(customer2);
+        managercar.addCar(car1);
+        managercar.addCar(car2);
+
+        Lease lease1 = createLease1();
+        Lease overlapping = createLease1();
+        overlapping.setCustomer(customer2);
+        Lease lease2 = createLease2();
+
+        BulkInsertResult<Lease> result = manager.createLeases(Arrays.asList(lease1, overlapping, lease2));
+
+        assertEquals(Arrays.asList(lease1, lease2), result.getInserted());
+        assertEquals(1, result.getFailures().size());
+        assertThat(result.getFailures().get(0).getEntity(), is(sameInstance(overlapping)));
+        assertNull(overlapping.getId());
+        assertEquals(Arrays.asList(lease1, lease2), manager.getAllLeases());
+    }
+
     @Test
     public void testUpdateLease() throws Exception {
         managercust.createCustomer(customer1);
@@ -437,6 +648,33 @@ public class LeaseManagerImplTest {
         assertEquals("Po vymazani zakazniku z databaze neni prazdna", 0, leases.size());
     }
 
+    @Test
+    public void testDeleteLeasesEndedBefore() {
+        managercust.createCustomer(customer1);
+        managercust.createCustomer(customer2);
+        managercust.createCustomer(customer3);
+        managercar.addCar(car1);
+        managercar.addCar(car2);
+        managercar.addCar(car3);
+
+        Lease lease1 = createLease1();
+        Lease lease2 = createLease2();
+        Lease lease3 = createLease3();
+        manager.createLease(lease1);
+        manager.createLease(lease2);
+        manager.createLease(lease3);
+
+        assertEquals(2, manager.deleteLeasesEndedBefore(LocalDate.of(2017,3,20)));
+        assertEquals(Arrays.asList(lease1), manager.getAllLeases());
+
+        Lease again = createLease2();
+        manager.createLease(again);
+        assertNotNull(again.getId());
+
+        assertEquals(2, manager.deleteAllLeases());
+        assertTrue(manager.getAllLeases().isEmpty());
+    }
+
     @Test
     public void testAddLeaseErrors() {
         manager.deleteAllLeases();
@@ -0,0 +1,98 @@
+package PV168;
+
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class RevenueReporterTest {
+
+    private EmbeddedDataSource dataSource;
+    private RevenueReporter reporter;
+
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = new EmbeddedDataSource();
+        dataSource.setDatabaseName("memory:revenue-reporter-test");
+        dataSource.setCreateDatabase("create");
+        new SchemaMigrator(dataSource).migrate();
+        reporter = new RevenueReporter(dataSource);
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.prepareStatement("INSERT INTO CUSTOMERS (NAME) VALUES ('Anna')").executeUpdate();
+            connection.prepareStatement("INSERT INTO CARS (LICENSEPLATE, MODEL) VALUES ('BA1', 'Octavia')").executeUpdate();
+        }
+        insertLease("2016-02-29", "0.10");
+        insertLease("2016-02-29", "0.20");
+        insertLease("2016-03-01", "99999999.99");
+        insertLease("2016-03-14", "1.01");
+        insertLease("2016-04-01", "5.00");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DBUtils.executeSqlScript(dataSource, SchemaMigrator.class.getResource("/dropTables.sql"));
+    }
+
+    private void insertLease(String from, String price) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement st = connection.prepareStatement(
+                     "INSERT INTO LEASES (IDCUSTOMER, IDCAR, DATEFROM, DATETO, PRICE) VALUES (1,1,?,?,?)")) {
+            st.setDate(1, java.sql.Date.valueOf(from));
+            st.setDate(2, java.sql.Date.valueOf(from));
+            st.setBigDecimal(3, new BigDecimal(price));
+            st.executeUpdate();
+        }
+    }
+
+    @Test
+    public void epochDaysMatchLocalDate() {
+        for (LocalDate date = LocalDate.of(1899, 12, 1); date.getYear() < 2101; date = date.plusDays(1)) {
+            int ymd = date.getYear() * 10000 + date.getMonthValue() * 100 + date.getDayOfMonth();
+            assertEquals(date.toString(), date.toEpochDay(), EpochDays.fromYmd(ymd));
+        }
+        LocalDate day = LocalDate.of(2016, 3, 3);
+        assertEquals(day.with(DayOfWeek.MONDAY).toEpochDay(), EpochDays.weekStart(day.toEpochDay()));
+    }
+
+    @Test
+    public void revenueIsExact() {
+        RevenueReport report = reporter.revenue(LocalDate.of(2016, 2, 1), LocalDate.of(2016, 3, 31),
+                RevenueReporter.Granularity.MONTH);
+
+        assertEquals(4, report.getCount());
+        assertEquals(new BigDecimal("100000001.30"), report.getTotal());
+        assertEquals(new BigDecimal("25000000.33"), report.getAverage());
+
+        Map<LocalDate, BigDecimal> buckets = report.getBuckets();
+        assertEquals(2, buckets.size());
+        assertEquals(new BigDecimal("0.30"), buckets.get(LocalDate.of(2016, 2, 1)));
+        assertEquals(new BigDecimal("100000001.00"), buckets.get(LocalDate.of(2016, 3, 1)));
+    }
+
+    @Test
+    public void revenuePerDayAndWeek() {
+        RevenueReport days = reporter.revenue(LocalDate.of(2016, 2, 28), LocalDate.of(2016, 3, 1),
+                RevenueReporter.Granularity.DAY);
+        assertEquals(3, days.getBuckets().size());
+        assertEquals(new BigDecimal("0.00"), days.getBuckets().get(LocalDate.of(2016, 2, 28)));
+        assertEquals(Integer.valueOf(2), days.getBucketCounts().get(LocalDate.of(2016, 2, 29)));
+
+        RevenueReport weeks = reporter.revenue(LocalDate.of(2016, 2, 29), LocalDate.of(2016, 3, 16),
+                RevenueReporter.Granularity.WEEK);
+        assertEquals(3, weeks.getBuckets().size());
+        assertEquals(new BigDecimal("100000000.29"), weeks.getBuckets().get(LocalDate.of(2016, 2, 29)));
+        assertEquals(new BigDecimal("0.00"), weeks.getBuckets().get(LocalDate.of(2016, 3, 7)));
+        assertEquals(new BigDecimal("1.01"), weeks.getBuckets().get(LocalDate.of(2016, 3, 14)));
+    }
+}
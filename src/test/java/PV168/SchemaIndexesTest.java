@@ -0,0 +1,38 @@
+package PV168;
+
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class SchemaIndexesTest {
+
+    private EmbeddedDataSource dataSource;
+
+    @Before
+    public void setUp() {
+        dataSource = new EmbeddedDataSource();
+        dataSource.setDatabaseName("memory:schema-indexes-test");
+        dataSource.setCreateDatabase("create");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DBUtils.executeSqlScript(dataSource, SchemaMigrator.class.getResource("/dropTables.sql"));
+    }
+
+    @Test
+    public void migrateCreatesIndexesOnce() throws Exception {
+        SchemaMigrator migrator = new SchemaMigrator(dataSource);
+        migrator.migrate();
+        assertEquals(Collections.emptyList(), SchemaIndexes.missing(dataSource));
+
+        assertEquals(0, migrator.migrate());
+        assertEquals(Collections.emptyList(), SchemaIndexes.apply(dataSource));
+    }
+}
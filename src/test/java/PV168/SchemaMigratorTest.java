@@ -0,0 +1,114 @@
+package PV168;
+
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SchemaMigratorTest {
+
+    private EmbeddedDataSource dataSource;
+
+    @Before
+    public void setUp() {
+        dataSource = new EmbeddedDataSource();
+        dataSource.setDatabaseName("memory:schema-migrator-test");
+        dataSource.setCreateDatabase("create");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        for (String table : new String[]{"WRITE_BEHIND_STATE", "DAILY_STATS", "LEASES", "CUSTOMERS", "CARS", "SCHEMA_VERSION"}) {
+            try (Connection connection = dataSource.getConnection()) {
+                connection.prepareStatement("DROP TABLE " + table).executeUpdate();
+            } catch (SQLException ex) {
+                // tests which migrate only to some version do not create all tables
+                if (!"42Y55".equals(ex.getSQLState())) {
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void migrateAppliesPendingMigrationsOnce() {
+        SchemaMigrator migrator = new SchemaMigrator(dataSource);
+        assertEquals(0, migrator.getCurrentVersion());
+
+        assertEquals(3, migrator.migrate());
+        assertEquals(3, migrator.getCurrentVersion());
+
+        assertEquals(0, migrator.migrate());
+        assertEquals(3, migrator.getCurrentVersion());
+    }
+
+    @Test
+    public void migrateUpToVersion() throws Exception {
+        SchemaMigrator migrator = new SchemaMigrator(dataSource);
+
+        assertEquals(1, migrator.migrate(1));
+        assertEquals(1, migrator.getCurrentVersion());
+        assertEquals(SchemaIndexes.INDEXES, SchemaIndexes.missing(dataSource));
+
+        assertEquals(2, migrator.migrate());
+        assertEquals(Collections.emptyList(), SchemaIndexes.missing(dataSource));
+    }
+
+    @Test
+    public void migrateRecordsSchemaCreatedWithoutVersioning() throws Exception {
+        DBUtils.executeSqlScript(dataSource, SchemaMigrator.class.getResource("/db/migration/V1__create_tables.sql"));
+        SchemaMigrator migrator = new SchemaMigrator(dataSource);
+
+        assertEquals(2, migrator.migrate());
+        assertEquals(3, migrator.getCurrentVersion());
+    }
+
+    @Test
+    public void writeBehindMigrationIsOptional() throws Exception {
+        new SchemaMigrator(dataSource).migrate();
+        List<Migration> migrations = new ArrayList<>(SchemaMigrator.defaultMigrations());
+        migrations.addAll(WriteBehindSchema.migrations());
+        SchemaMigrator migrator = new SchemaMigrator(dataSource, migrations);
+
+        assertEquals(1, migrator.migrate());
+        assertEquals(WriteBehindSchema.VERSION, migrator.getCurrentVersion());
+        assertEquals(Collections.emptyList(), SchemaIndexes.missing(dataSource));
+    }
+
+    @Test
+    public void failedMigrationIsRolledBack() throws Exception {
+        SchemaMigrator migrator = new SchemaMigrator(dataSource, Arrays.asList(
+                SqlMigration.fromResource("/db/migration/V1__create_tables.sql"),
+                new SqlMigration(2, "broken", "CREATE INDEX LEASES_BROKEN ON LEASES (DATEFROM);"
+                        + "CREATE INDEX LEASES_BROKEN ON NO_SUCH_TABLE (ID)")));
+        try {
+            migrator.migrate();
+            fail();
+        } catch (ServiceFailureException ex) {
+            //OK
+        }
+        assertEquals(1, migrator.getCurrentVersion());
+
+        // the index created before the failure was rolled back, so it can be created again
+        SchemaMigrator fixed = new SchemaMigrator(dataSource, Arrays.asList(
+                SqlMigration.fromResource("/db/migration/V1__create_tables.sql"),
+                new SqlMigration(2, "fixed", "CREATE INDEX LEASES_BROKEN ON LEASES (DATEFROM)")));
+        assertEquals(1, fixed.migrate());
+    }
+
+    @Test(expected = ServiceFailureException.class)
+    public void changedMigrationIsRejected() {
+        new SchemaMigrator(dataSource).migrate(1);
+        new SchemaMigrator(dataSource, Collections.<Migration>singletonList(
+                new SqlMigration(1, "create tables", "CREATE TABLE CARS (ID INT)"))).migrate();
+    }
+}
@@ -0,0 +1,45 @@
+package PV168;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.Assert.*;
+
+public class StripedLocksTest {
+
+    @Test
+    public void stripesAreRoundedUpToPowerOfTwo() {
+        assertEquals(1, new StripedLocks(1).getStripes());
+        assertEquals(8, new StripedLocks(5).getStripes());
+        assertEquals(16, new StripedLocks(16).getStripes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveStripes() {
+        new StripedLocks(0);
+    }
+
+    @Test
+    public void sameKeyIsSerializedAndWaitIsRecorded() throws Exception {
+        StripedLocks locks = new StripedLocks(4);
+        Lock lock = locks.lock(7);
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread other = new Thread(() -> {
+            locks.lock(7).unlock();
+            acquired.countDown();
+        });
+        other.start();
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        lock.unlock();
+        assertTrue(acquired.await(1, TimeUnit.SECONDS));
+        other.join();
+
+        LockStats stats = locks.getStats();
+        assertEquals(2, stats.getAcquisitions());
+        assertEquals(1, stats.getContended());
+        assertTrue(stats.getMaxWaitNanos() > 0);
+    }
+}
@@ -0,0 +1,177 @@
+package PV168;
+
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WriteBehindLeaseManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private EmbeddedDataSource dataSource;
+    private Path journalFile;
+    private Car car;
+    private Customer customer;
+
+    @Before
+    public void setUp() throws IOException {
+        dataSource = new EmbeddedDataSource();
+        dataSource.setDatabaseName("memory:write-behind-test");
+        dataSource.setCreateDatabase("create");
+        List<Migration> migrations = new ArrayList<>(SchemaMigrator.defaultMigrations());
+        migrations.addAll(WriteBehindSchema.migrations());
+        new SchemaMigrator(dataSource, migrations).migrate();
+        journalFile = folder.getRoot().toPath().resolve("leases.journal");
+
+        car = new Car("1A1 2547", "Audi A3", new BigDecimal(450), new BigDecimal(23000));
+        new CarManagerImpl(dataSource).addCar(car);
+        customer = new Customer("Michal Vitek", "Vajanskeho 47", "+420746654738");
+        new CustomerManagerImpl(dataSource).createCustomer(customer);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.prepareStatement("DROP TABLE " + WriteBehindSchema.STATE_TABLE).executeUpdate();
+        }
+        DBUtils.executeSqlScript(dataSource, SchemaMigrator.class.getResource("/dropTables.sql"));
+    }
+
+    private Lease lease(LocalDate from, LocalDate to) {
+        return new Lease(null, customer, car, from, new BigDecimal("100.00"), to);
+    }
+
+    @Test
+    public void readsSeeAcknowledgedMutations() throws IOException {
+        Lease first = lease(LocalDate.of(2016, 3, 1), LocalDate.of(2016, 3, 3));
+        Lease second = lease(LocalDate.of(2016, 3, 4), LocalDate.of(2016, 3, 5));
+        try (WriteBehindLeaseManager manager = new WriteBehindLeaseManager(dataSource, journalFile)) {
+            manager.createLease(first);
+            manager.createLease(second);
+            assertEquals(LocalDate.of(2016, 3, 3), manager.getLeaseByID(first.getId()).getDateTo());
+
+            second.setDateTo(LocalDate.of(2016, 3, 9));
+            manager.updateLease(second);
+            manager.deleteLease(first);
+            List<Lease> leases = manager.getAllLeases();
+            assertEquals(1, leases.size());
+            assertEquals(LocalDate.of(2016, 3, 9), leases.get(0).getDateTo());
+            assertEquals(0, manager.getPendingCount());
+
+            try {
+                manager.createLease(lease(LocalDate.of(2016, 3, 8), LocalDate.of(2016, 3, 10)));
+                fail("overlapping lease was created");
+            } catch (IllegalEntityException ex) {
+                // expected
+            }
+        }
+
+        assertEquals(0, Files.size(journalFile));
+        List<Lease> stored = new LeaseManagerImpl(dataSource).getAllLeases();
+        assertEquals(1, stored.size());
+        assertEquals(second.getId(), stored.get(0).getId());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void schemaWithoutWriteBehindMigrationIsRejected() throws SQLException {
+        EmbeddedDataSource plain = new EmbeddedDataSource();
+        plain.setDatabaseName("memory:write-behind-plain-test");
+        plain.setCreateDatabase("create");
+        new SchemaMigrator(plain).migrate();
+        try {
+            new WriteBehindLeaseManager(plain, journalFile);
+        } finally {
+            DBUtils.executeSqlScript(plain, SchemaMigrator.class.getResource("/dropTables.sql"));
+        }
+    }
+
+    @Test
+    public void leaseManagerCreatesLeasesAfterClose() throws IOException {
+        Lease first = lease(LocalDate.of(2016, 3, 1), LocalDate.of(2016, 3, 3));
+        try (WriteBehindLeaseManager manager = new WriteBehindLeaseManager(dataSource, journalFile)) {
+            manager.createLease(first);
+        }
+
+        Lease second = lease(LocalDate.of(2016, 3, 4), LocalDate.of(2016, 3, 5));
+        new LeaseManagerImpl(dataSource).createLease(second);
+        assertEquals(Long.valueOf(first.getId() + 1), second.getId());
+        assertEquals(2, new LeaseManagerImpl(dataSource).getAllLeases().size());
+    }
+
+    @Test
+    public void unappliedEntriesAreReplayedOnOpen() throws IOException {
+        try (LeaseJournal journal = LeaseJournal.open(journalFile)) {
+            journal.startSequence(1);
+            journal.append(LeaseJournal.Type.CREATE, 1, customer.getId(), car.getId(),
+                    LocalDate.of(2016, 3, 1).toEpochDay(), LocalDate.of(2016, 3, 3).toEpochDay(), 10000);
+            journal.append(LeaseJournal.Type.CREATE, 2, customer.getId(), car.getId(),
+                    LocalDate.of(2016, 3, 4).toEpochDay(), LocalDate.of(2016, 3, 4).toEpochDay(), 500);
+            journal.append(LeaseJournal.Type.DELETE, 1, 0, car.getId(), 0, 0, 0);
+        }
+
+        try (WriteBehindLeaseManager manager = new WriteBehindLeaseManager(dataSource, journalFile)) {
+            assertEquals(3, manager.getAppliedSequence());
+            assertNull(manager.getLeaseByID(1L));
+            assertEquals(new BigDecimal("5.00"), manager.getLeaseByID(2L).getPrice());
+
+            Lease lease = lease(LocalDate.of(2016, 3, 5), LocalDate.of(2016, 3, 6));
+            manager.createLease(lease);
+            assertEquals(Long.valueOf(3), lease.getId());
+        }
+        assertEquals(2, new LeaseManagerImpl(dataSource).getAllLeases().size());
+    }
+
+    @Test
+    public void tornTailIsIgnored() throws IOException {
+        try (LeaseJournal journal = LeaseJournal.open(journalFile)) {
+            journal.startSequence(1);
+            journal.append(LeaseJournal.Type.CREATE, 1, customer.getId(), car.getId(),
+                    LocalDate.of(2016, 3, 1).toEpochDay(), LocalDate.of(2016, 3, 3).toEpochDay(), 10000);
+        }
+        try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[LeaseJournal.FRAME_SIZE - 1]));
+        }
+
+        try (WriteBehindLeaseManager manager = new WriteBehindLeaseManager(dataSource, journalFile)) {
+            assertEquals(1, manager.getAppliedSequence());
+            assertEquals(1, manager.getAllLeases().size());
+        }
+    }
+
+    @Test
+    public void leaseOfDeletedCarIsDropped() throws IOException {
+        try (LeaseJournal journal = LeaseJournal.open(journalFile)) {
+            journal.startSequence(1);
+            journal.append(LeaseJournal.Type.CREATE, 1, customer.getId(), car.getId() + 100,
+                    LocalDate.of(2016, 3, 1).toEpochDay(), LocalDate.of(2016, 3, 3).toEpochDay(), 10000);
+            journal.append(LeaseJournal.Type.CREATE, 2, customer.getId(), car.getId(),
+                    LocalDate.of(2016, 3, 1).toEpochDay(), LocalDate.of(2016, 3, 3).toEpochDay(), 10000);
+        }
+
+        try (WriteBehindLeaseManager manager = new WriteBehindLeaseManager(dataSource, journalFile)) {
+            assertEquals(2, manager.getAppliedSequence());
+            List<Lease> leases = manager.getAllLeases();
+            assertEquals(1, leases.size());
+            assertEquals(Long.valueOf(2), leases.get(0).getId());
+        }
+    }
+}
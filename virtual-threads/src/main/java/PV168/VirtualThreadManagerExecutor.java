@@ -0,0 +1,153 @@
+package PV168;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Executes every manager call on its own virtual thread.
+ * <p>
+ * Virtual threads are cheap, connections are not: a semaphore with as many
+ * permits as the pool has connections limits the calls running at once, the rest
+ * wait for a permit on their parked virtual thread instead of blocking in the
+ * pool. The number of calls admitted at once is bounded too, calls over the
+ * limit are rejected. Calls which do not finish within the timeout, waiting for
+ * a permit included, complete with {@link java.util.concurrent.TimeoutException}.
+ * A call still waiting for a permit is then interrupted and never runs, a running
+ * call is not interrupted and runs to its end with its result discarded, so a
+ * timed out mutation may still be committed.
+ */
+public class VirtualThreadManagerExecutor implements ManagerExecutor {
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("manager-virtual-", 0).factory());
+    private final Semaphore permits;
+    private final int maxPending;
+    private final long timeoutNanos;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param concurrency number of calls running at once
+     * @param maxPending number of calls admitted at once, running or waiting
+     * @param timeout timeout of a call, zero for none
+     * @param unit unit of the timeout
+     */
+    public VirtualThreadManagerExecutor(int concurrency, int maxPending, long timeout, TimeUnit unit) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency is not positive");
+        }
+        if (maxPending < concurrency) {
+            throw new IllegalArgumentException("max pending calls is lower than concurrency");
+        }
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout is negative");
+        }
+        this.permits = new Semaphore(concurrency, true);
+        this.maxPending = maxPending;
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Creates executor running as many calls at once as the pool has connections.
+     *
+     * @param pool connection pool used by the managers
+     * @param maxPending number of calls admitted at once, running or waiting
+     * @param timeout timeout of a call, zero for none
+     * @param unit unit of the timeout
+     * @return new executor
+     */
+    public static VirtualThreadManagerExecutor forPool(ConnectionPool pool, int maxPending, long timeout, TimeUnit unit) {
+        int maxActive = pool.getStats().getMaxActive();
+        if (maxActive <= 0) {
+            throw new IllegalArgumentException("pool has no limit of active connections");
+        }
+        return new VirtualThreadManagerExecutor(maxActive, maxPending, timeout, unit);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> submit(Supplier<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            rejected.increment();
+            result.completeExceptionally(new RejectedExecutionException("Too many pending calls"));
+            return result;
+        }
+        // set by the call when it starts running or by the caller when it gives up on
+        // the waiting call, whichever is first
+        AtomicBoolean claimed = new AtomicBoolean();
+        Future<?> task;
+        try {
+            task = executor.submit(() -> {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException ex) {
+                    // timed out or cancelled while waiting for a permit
+                    result.completeExceptionally(ex);
+                    return;
+                }
+                try {
+                    if (claimed.compareAndSet(false, true) && !result.isDone()) {
+                        result.complete(call.get());
+                    }
+                } catch (Throwable ex) {
+                    result.completeExceptionally(ex);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            pending.decrementAndGet();
+            rejected.increment();
+            result.completeExceptionally(ex);
+            return result;
+        }
+        if (timeoutNanos > 0) {
+            result.orTimeout(timeoutNanos, TimeUnit.NANOSECONDS);
+        }
+        result.whenComplete((value, ex) -> {
+            pending.decrementAndGet();
+            if (ex != null && claimed.compareAndSet(false, true)) {
+                // stops the call when it was cancelled or timed out while waiting for a permit,
+                // a running call is left to finish so that its transaction is not broken off
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return number of calls admitted and not finished yet
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * @return number of calls waiting for a permit
+     */
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * @return number of rejected calls
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
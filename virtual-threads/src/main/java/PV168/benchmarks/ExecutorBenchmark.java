@@ -0,0 +1,135 @@
+package PV168.benchmarks;
+
+import PV168.AsyncLeaseManager;
+import PV168.AsyncLeaseManagerImpl;
+import PV168.BoundedManagerExecutor;
+import PV168.BulkInsertResult;
+import PV168.Car;
+import PV168.CarManagerImpl;
+import PV168.Customer;
+import PV168.CustomerManagerImpl;
+import PV168.Lease;
+import PV168.LeaseManagerImpl;
+import PV168.ManagerExecutor;
+import PV168.SchemaMigrator;
+import PV168.VirtualThreadManagerExecutor;
+import org.apache.commons.dbcp.BasicDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lease lookups issued by many concurrent clients, executed either by the
+ * platform thread pool of {@link BoundedManagerExecutor} or by one virtual thread
+ * per call of {@link VirtualThreadManagerExecutor}. Both are limited to the size
+ * of the connection pool. One operation is one round of lookups, one per client.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExecutorBenchmark {
+
+    private static final int POOL_SIZE = 16;
+    private static final int LEASES = 10000;
+
+    @Param({"1000", "10000"})
+    public int clients;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    private String url;
+    private BasicDataSource dataSource;
+    private ManagerExecutor executor;
+    private AsyncLeaseManager leaseManager;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        url = "jdbc:derby:memory:executor-bench-" + System.nanoTime();
+        dataSource = new BasicDataSource();
+        dataSource.setDriverClassName("org.apache.derby.jdbc.EmbeddedDriver");
+        dataSource.setUrl(url + ";create=true");
+        dataSource.setMaxActive(POOL_SIZE);
+        dataSource.setMaxIdle(POOL_SIZE);
+        new SchemaMigrator(dataSource).migrate();
+        LeaseManagerImpl leases = new LeaseManagerImpl(dataSource);
+        seed(new CarManagerImpl(dataSource), new CustomerManagerImpl(dataSource), leases);
+
+        executor = "virtual".equals(threads)
+                ? new VirtualThreadManagerExecutor(POOL_SIZE, clients, 0, TimeUnit.SECONDS)
+                : new BoundedManagerExecutor(POOL_SIZE, clients, 0, TimeUnit.SECONDS);
+        leaseManager = new AsyncLeaseManagerImpl(leases, executor);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        executor.close();
+        dataSource.close();
+        try {
+            DriverManager.getConnection(url + ";drop=true").close();
+        } catch (SQLException ex) {
+            // Derby reports a successful drop by SQL state 08006
+            if (!"08006".equals(ex.getSQLState())) {
+                throw ex;
+            }
+        }
+    }
+
+    @Benchmark
+    public int lookupRound() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        CompletableFuture<?>[] calls = new CompletableFuture<?>[clients];
+        for (int i = 0; i < clients; i++) {
+            calls[i] = leaseManager.getLeaseByID(1L + random.nextInt(LEASES));
+        }
+        CompletableFuture.allOf(calls).join();
+        return calls.length;
+    }
+
+    private static void seed(CarManagerImpl cars, CustomerManagerImpl customers, LeaseManagerImpl leases) {
+        List<Car> newCars = new ArrayList<>();
+        for (int i = 0; i < LEASES / 10; i++) {
+            newCars.add(new Car(String.format("VT%06d", i), "Skoda Fabia", new BigDecimal(50), new BigDecimal(1000)));
+        }
+        List<Car> carList = cars.addCars(newCars).getInserted();
+        Customer customer = new Customer();
+        customer.setName("Client");
+        customer.setAddress("Botanicka 68a, Brno");
+        customer.setPhoneNumber("+420123456789");
+        customers.createCustomer(customer);
+
+        List<Lease> newLeases = new ArrayList<>();
+        for (int i = 0; i < LEASES; i++) {
+            LocalDate from = LocalDate.of(2015, 1, 1).plusWeeks(i / carList.size());
+            newLeases.add(new Lease(null, customer, carList.get(i % carList.size()), from,
+                    new BigDecimal(200), from.plusDays(3)));
+        }
+        BulkInsertResult<Lease> result = leases.createLeases(newLeases);
+        if (!result.getFailures().isEmpty()) {
+            throw new IllegalStateException("Seeding failed: " + result.getFailures().get(0).getCause());
+        }
+    }
+}
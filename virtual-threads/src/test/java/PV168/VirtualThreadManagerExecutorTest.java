@@ -0,0 +1,129 @@
+package PV168;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class VirtualThreadManagerExecutorTest {
+
+    private VirtualThreadManagerExecutor executor;
+    private CountDownLatch release;
+
+    @Before
+    public void setUp() {
+        executor = new VirtualThreadManagerExecutor(2, 4, 500, TimeUnit.MILLISECONDS);
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.close();
+    }
+
+    @Test
+    public void submitCompletesWithResult() throws Exception {
+        assertEquals("car", executor.submit(() -> "car").get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void concurrencyIsLimited() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<CompletableFuture<Void>> calls = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            calls.add(executor.run(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+            }));
+        }
+        CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[0])).get(1, TimeUnit.SECONDS);
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    public void submitRejectsOverMaxPending() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            executor.run(this::await);
+        }
+        CompletableFuture<Void> rejected = executor.run(this::await);
+
+        assertEquals(1, executor.getRejectedCount());
+        try {
+            rejected.get();
+            fail();
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    @Test
+    public void submitTimesOut() throws Exception {
+        try {
+            executor.run(this::await).get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof TimeoutException);
+        }
+    }
+
+    @Test
+    public void timeoutStopsWaitingCallAndLetsRunningCallsFinish() throws Exception {
+        AtomicInteger interrupted = new AtomicInteger();
+        AtomicBoolean waitingRan = new AtomicBoolean();
+        CountDownLatch finished = new CountDownLatch(2);
+        List<CompletableFuture<Void>> running = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            running.add(executor.run(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    interrupted.incrementAndGet();
+                }
+                finished.countDown();
+            }));
+        }
+        CompletableFuture<Void> waiting = executor.run(() -> waitingRan.set(true));
+        try {
+            waiting.get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof TimeoutException);
+        }
+        for (CompletableFuture<Void> call : running) {
+            assertTrue(call.isCompletedExceptionally());
+        }
+
+        release.countDown();
+        assertTrue(finished.await(1, TimeUnit.SECONDS));
+        assertEquals("car", executor.submit(() -> "car").get(1, TimeUnit.SECONDS));
+        assertEquals("running calls were interrupted", 0, interrupted.get());
+        assertFalse("waiting call ran after its timeout", waitingRan.get());
+    }
+
+    private void await() {
+        try {
+            release.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}